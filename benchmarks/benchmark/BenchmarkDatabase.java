@@ -0,0 +1,382 @@
+/**
+ * @version 1.0
+ * Class: BenchmarkDatabase.java
+ * Purpose: JMH state shared by every thread of a benchmark. Starts an embedded DB, fills it with a dataset whose size
+ *  is set by the members parameter and gives each benchmark thread a connection from its pool. Every other table is
+ *  sized from the number of members so one parameter scales the whole schema:
+ *      - trainers: members / 100, courses: members / 250 ( at least 4 of each ), 4 classes per course
+ *      - 2 courses per package, 2 classes per member, 3 rentals per member ( the last one not returned yet )
+ *      - 4 transactions per member and a negative balance for 1 member in 10
+ *  Members have ids 1 to members, every other row gets an id above that, and the sequence is moved past the seeded ids
+ *  so the ids DBUtils generates during a benchmark never collide with them. The data is made from a fixed seed so
+ *  every run measures the same dataset.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.time.*
+ *  - java.util.*
+ *  - org.openjdk.jmh.annotations.*
+ *  - repository.EmbeddedDatabase
+ *  - repository.JdbcGymStore
+ *  - utils.ConnectionPool
+ *
+ * Methods:
+ *  setUp():
+ *      - Creates and fills the DB, run once per benchmark
+ *  tearDown():
+ *      - Closes the pool and drops the DB
+ *  getMemberCount(), getClassCount(), ...:
+ *      - Sizes of the seeded tables so benchmarks can pick random rows
+ */
+
+package benchmark;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import repository.EmbeddedDatabase;
+import repository.JdbcGymStore;
+import utils.ConnectionPool;
+
+@State( Scope.Benchmark )
+public class BenchmarkDatabase {
+
+    public static final String[] CATEGORIES = { "YOGA", "SPIN", "BOX", "SWIM", "LIFT", "DANCE" };
+
+    public static final int RENTAL_ITEMS = 20;
+
+    public static final int CLASSES_PER_COURSE = 4;
+
+    private static final int COURSES_PER_PACKAGE = 2;
+    private static final int CLASSES_PER_MEMBER = 2;
+    private static final int RENTALS_PER_MEMBER = 3;
+    private static final int TRANSACTIONS_PER_MEMBER = 4;
+    private static final int BATCH_SIZE = 1000;
+    private static final long SEED = 460;
+
+    private static final AtomicInteger databaseCount = new AtomicInteger(); // Each trial gets a fresh DB
+
+    @Param( { "1000", "10000" } )
+    public int members;
+
+    private JdbcGymStore store;
+
+    private String databaseName;
+
+    private int trainerCount;
+    private int courseCount;
+    private int packageCount;
+
+    // First id of each seeded table, members start at 1
+    private int firstTrainerID;
+    private int firstCourseID;
+    private int firstClassID;
+    private int firstItemNum;
+    private int nextID;
+
+    @Setup( Level.Trial )
+    public void setUp() throws SQLException {
+        databaseName = "benchmark" + databaseCount.incrementAndGet();
+        store = EmbeddedDatabase.createStore( databaseName );
+        trainerCount = Math.max( 4, members / 100 );
+        courseCount = Math.max( 4, members / 250 );
+        packageCount = Math.max( 2, courseCount / COURSES_PER_PACKAGE );
+
+        Connection dbConnection = store.getConnectionPool().borrowConnection();
+        try {
+            dbConnection.setAutoCommit( false );
+            seed( dbConnection, new Random( SEED ) );
+            dbConnection.commit();
+        } finally {
+            dbConnection.setAutoCommit( true );
+            store.getConnectionPool().returnConnection( dbConnection );
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws SQLException {
+        Connection dbConnection = store.getConnectionPool().borrowConnection();
+        try {
+            Statement stmt = dbConnection.createStatement();
+            stmt.execute( "SHUTDOWN" );
+            stmt.close();
+        } finally {
+            store.getConnectionPool().returnConnection( dbConnection );
+            store.close();
+        }
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return store.getConnectionPool();
+    }
+
+    public int getMemberCount() {
+        return members;
+    }
+
+    public int getTrainerCount() {
+        return trainerCount;
+    }
+
+    public int getCourseCount() {
+        return courseCount;
+    }
+
+    public int getClassCount() {
+        return courseCount * CLASSES_PER_COURSE;
+    }
+
+    public int getPackageCount() {
+        return packageCount;
+    }
+
+    public int getFirstTrainerID() {
+        return firstTrainerID;
+    }
+
+    public int getFirstCourseID() {
+        return firstCourseID;
+    }
+
+    public int getFirstClassID() {
+        return firstClassID;
+    }
+
+    public int getFirstItemNum() {
+        return firstItemNum;
+    }
+
+    /**
+     * Name given to a seeded package
+     * @param index Package index, 0 to getPackageCount() - 1
+     * @return Package name
+     */
+    public static String packageName( int index ) {
+        return "PACKAGE" + index;
+    }
+
+    /**
+     * Name given to a seeded rental item
+     * @param index Item index, 0 to RENTAL_ITEMS - 1
+     * @return Item name
+     */
+    public static String itemName( int index ) {
+        return "ITEM" + index;
+    }
+
+    /**
+     * Index of the item a seeded member has not returned yet
+     * @param memberID Id of the member
+     * @return Item index, 0 to RENTAL_ITEMS - 1
+     */
+    public static int openRentalItem( int memberID ) {
+        return memberID % RENTAL_ITEMS;
+    }
+
+    /**
+     * Category of a seeded course
+     * @param index Course index, 0 to getCourseCount() - 1
+     * @return Category of the course
+     */
+    public static String courseCategory( int index ) {
+        return CATEGORIES[index % CATEGORIES.length];
+    }
+
+    /**
+     * Catalog number of a seeded course, unique within its category
+     * @param index Course index, 0 to getCourseCount() - 1
+     * @return Catalog number of the course
+     */
+    public static int courseCatalogNum( int index ) {
+        return 100 + index / CATEGORIES.length;
+    }
+
+    /**
+     * Fills every table, ids are handed out in table order after the member ids
+     * @param dbConnection Connection with auto commit off
+     * @param random Source of the data
+     * @throws SQLException if a row could not be inserted
+     */
+    private void seed( Connection dbConnection, Random random ) throws SQLException {
+        nextID = members + 1;
+        int[] enrollment = new int[getClassCount()];
+
+        // Members, 1 in 10 owes the gym money
+        PreparedStatement stmt = dbConnection
+            .prepareStatement( "INSERT INTO BODE1.MEMBER VALUES ( ?, ?, ?, ?, ?, 'BASIC', ? )" );
+        for ( int i = 1 ; i <= members ; i++ ) {
+            stmt.setInt( 1, i );
+            stmt.setString( 2, "FIRST" + i );
+            stmt.setString( 3, "LAST" + i );
+            stmt.setString( 4, String.format( "520%07d", i ) );
+            stmt.setString( 5, "member" + i + "@gym.com" );
+            stmt.setFloat( 6, random.nextInt( 10 ) == 0 ? -random.nextInt( 200 ) - 1 : random.nextInt( 500 ) );
+            addBatch( stmt, i );
+        }
+        finishBatch( stmt );
+
+        // Trainers
+        firstTrainerID = nextID;
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.TRAINER VALUES ( ?, ?, ?, ? )" );
+        for ( int i = 0 ; i < trainerCount ; i++ ) {
+            stmt.setInt( 1, nextID++ );
+            stmt.setString( 2, "TRAINER" + i );
+            stmt.setString( 3, "LAST" + i );
+            stmt.setString( 4, String.format( "520%07d", i ) );
+            addBatch( stmt, i + 1 );
+        }
+        finishBatch( stmt );
+
+        // Courses
+        firstCourseID = nextID;
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.COURSE VALUES ( ?, ?, ? )" );
+        for ( int i = 0 ; i < courseCount ; i++ ) {
+            stmt.setInt( 1, nextID++ );
+            stmt.setString( 2, courseCategory( i ) );
+            stmt.setInt( 3, courseCatalogNum( i ) );
+            addBatch( stmt, i + 1 );
+        }
+        finishBatch( stmt );
+
+        // Packages and the courses in them
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.PACKAGE VALUES ( ?, ? )" );
+        PreparedStatement coursePackage = dbConnection
+            .prepareStatement( "INSERT INTO BODE1.COURSEPACKAGE VALUES ( ?, ? )" );
+        for ( int i = 0 ; i < packageCount ; i++ ) {
+            stmt.setString( 1, packageName( i ) );
+            stmt.setFloat( 2, 50 + random.nextInt( 200 ) );
+            stmt.addBatch();
+            for ( int j = 0 ; j < COURSES_PER_PACKAGE ; j++ ) {
+                coursePackage.setInt( 1, firstCourseID + ( i * COURSES_PER_PACKAGE + j ) % courseCount );
+                coursePackage.setString( 2, packageName( i ) );
+                coursePackage.addBatch();
+            }
+        }
+        finishBatch( stmt );
+        finishBatch( coursePackage );
+
+        // Member enrollment, picked before the classes so their enrollment numbers match
+        firstClassID = nextID;
+        nextID += getClassCount();
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.MEMBERCLASS VALUES ( ?, ? )" );
+        int rows = 0;
+        for ( int i = 1 ; i <= members ; i++ ) {
+            int first = random.nextInt( enrollment.length );
+            for ( int j = 0 ; j < CLASSES_PER_MEMBER && j < enrollment.length ; j++ ) {
+                int classIndex = ( first + j ) % enrollment.length;
+                enrollment[classIndex]++;
+                stmt.setInt( 1, i );
+                stmt.setInt( 2, firstClassID + classIndex );
+                addBatch( stmt, ++rows );
+            }
+        }
+        finishBatch( stmt );
+
+        // Classes spread over this year, each with room for a few more members
+        int year = Year.now().getValue();
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.CLASS VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ? )" );
+        for ( int i = 0 ; i < enrollment.length ; i++ ) {
+            LocalDate startDate = LocalDate.of( year, 1 + random.nextInt( 12 ), 1 + random.nextInt( 28 ) );
+            LocalDate endDate = startDate.plusWeeks( 1 + random.nextInt( 8 ) );
+            stmt.setInt( 1, firstClassID + i );
+            stmt.setInt( 2, firstCourseID + i / CLASSES_PER_COURSE );
+            stmt.setInt( 3, firstTrainerID + i % trainerCount );
+            stmt.setTimestamp( 4, Timestamp.valueOf( startDate.atTime( 6 + random.nextInt( 14 ), 0 ) ) );
+            stmt.setFloat( 5, 30 + 15 * random.nextInt( 5 ) );
+            stmt.setDate( 6, Date.valueOf( startDate ) );
+            stmt.setDate( 7, Date.valueOf( endDate ) );
+            stmt.setInt( 8, enrollment[i] );
+            stmt.setInt( 9, enrollment[i] + 5 );
+            addBatch( stmt, i + 1 );
+        }
+        finishBatch( stmt );
+
+        // Rental items
+        firstItemNum = nextID;
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.RENTALITEM VALUES ( ?, ?, ? )" );
+        for ( int i = 0 ; i < RENTAL_ITEMS ; i++ ) {
+            stmt.setInt( 1, nextID++ );
+            stmt.setString( 2, itemName( i ) );
+            stmt.setInt( 3, 1000 + random.nextInt( 1000 ) );
+            stmt.addBatch();
+        }
+        finishBatch( stmt );
+
+        // Rentals, the last one of each member is still out and is always of item ( member id % RENTAL_ITEMS )
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.RENTALLOG VALUES ( ?, ?, ?, ?, ?, ? )" );
+        rows = 0;
+        for ( int i = 1 ; i <= members ; i++ ) {
+            for ( int j = 0 ; j < RENTALS_PER_MEMBER ; j++ ) {
+                stmt.setInt( 1, nextID++ );
+                stmt.setInt( 2, i );
+                boolean open = j == RENTALS_PER_MEMBER - 1;
+                stmt.setInt( 3, firstItemNum + ( open ? openRentalItem( i ) : random.nextInt( RENTAL_ITEMS ) ) );
+                stmt.setDate( 4, Date.valueOf( LocalDate.of( year, 1 + random.nextInt( 12 ), 1 ) ) );
+                stmt.setInt( 5, 1 + random.nextInt( 3 ) );
+                stmt.setInt( 6, open ? 0 : 1 );
+                addBatch( stmt, ++rows );
+            }
+        }
+        finishBatch( stmt );
+
+        // Transactions, purchases are stored as negative amounts like MemberOperations does
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.TRANSACTION VALUES ( ?, ?, ?, ?, ? )" );
+        rows = 0;
+        for ( int i = 1 ; i <= members ; i++ ) {
+            for ( int j = 0 ; j < TRANSACTIONS_PER_MEMBER ; j++ ) {
+                boolean purchase = random.nextBoolean();
+                stmt.setInt( 1, nextID++ );
+                stmt.setInt( 2, i );
+                stmt.setString( 3, purchase ? "PURCHASE" : "RECHARGE" );
+                stmt.setDate( 4, Date.valueOf( LocalDate.of( year, 1 + random.nextInt( 12 ), 1 ) ) );
+                stmt.setFloat( 5, ( purchase ? -1 : 1 ) * ( 10 + random.nextInt( 300 ) ) );
+                addBatch( stmt, ++rows );
+            }
+        }
+        finishBatch( stmt );
+
+        // Keep the sequence clear of every seeded id
+        Statement restart = dbConnection.createStatement();
+        restart.execute( "ALTER SEQUENCE FRANCISCOG852.ALL_SEQ RESTART WITH " + nextID );
+        restart.close();
+    }
+
+    /**
+     * Adds a row to a batch, sending the batch every BATCH_SIZE rows
+     * @param stmt Statement with the row's values set
+     * @param rows Number of rows added so far, including this one
+     * @throws SQLException if the batch failed
+     */
+    private static void addBatch( PreparedStatement stmt, int rows ) throws SQLException {
+        stmt.addBatch();
+        if ( rows % BATCH_SIZE == 0 ) {
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Sends what is left of a batch and closes the statement
+     * @param stmt Statement to finish
+     * @throws SQLException if the batch failed
+     */
+    private static void finishBatch( PreparedStatement stmt ) throws SQLException {
+        stmt.executeBatch();
+        stmt.close();
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * @version 1.0
+ * Class: BenchmarkRunner.java
+ * Purpose: Starts the benchmarks. Takes the same command line options as JMH ( a regex of the benchmarks to run,
+ *  -p members=100000 to change the data size, -t 4 for four threads, ... ) and always adds the GC profiler so the
+ *  allocation rate of every benchmark is reported next to its throughput and latency percentiles.
+ *
+ * Utilizes:
+ *  - org.openjdk.jmh.*
+ *
+ * Methods:
+ *  main( String[] ):
+ *      - Runs the benchmarks picked by the command line options, every benchmark if none are picked
+ */
+
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+    /**
+     * Keeps from creating a new instance of this class
+     */
+    private BenchmarkRunner() {
+    }
+
+    public static void main( String[] args ) throws RunnerException {
+        CommandLineOptions commandLineOptions;
+        try {
+            commandLineOptions = new CommandLineOptions( args );
+        } catch ( CommandLineOptionException e ) {
+            System.err.println( "Unable to read the benchmark options: " + e.getMessage() );
+            System.exit( 1 );
+            return;
+        }
+
+        Options options = new OptionsBuilder()
+            .parent( commandLineOptions )
+            .addProfiler( GCProfiler.class )
+            .build();
+        new Runner( options ).run();
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * @version 1.0
+ * Class: BenchmarkSession.java
+ * Purpose: JMH state kept by each benchmark thread. Holds the connection the thread borrowed from the benchmark DB's
+ *  pool for the whole run, the same way an operations menu holds one while it runs, and picks random seeded rows so
+ *  the benchmarks do not keep hitting the same row.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.SplittableRandom
+ *  - org.openjdk.jmh.annotations.*
+ *  - entities.GymMember
+ *  - enums.MembershipLevelEnum
+ *
+ * Methods:
+ *  open( BenchmarkDatabase ), close():
+ *      - Borrow and return the thread's connection
+ *  randomMemberID(), randomMember(), randomClassID(), ...:
+ *      - Picks a random seeded row
+ */
+
+package benchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import entities.GymMember;
+import enums.MembershipLevelEnum;
+
+@State( Scope.Thread )
+public class BenchmarkSession {
+
+    private BenchmarkDatabase database;
+
+    private Connection dbConnection;
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    @Setup( Level.Trial )
+    public void open( BenchmarkDatabase database ) throws SQLException {
+        this.database = database;
+        this.dbConnection = database.getConnectionPool().borrowConnection();
+    }
+
+    @TearDown( Level.Trial )
+    public void close() {
+        database.getConnectionPool().returnConnection( dbConnection );
+        dbConnection = null;
+    }
+
+    public Connection getConnection() {
+        return dbConnection;
+    }
+
+    public BenchmarkDatabase getDatabase() {
+        return database;
+    }
+
+    public int randomMemberID() {
+        return 1 + random.nextInt( database.getMemberCount() );
+    }
+
+    /**
+     * Builds a seeded member without going to the DB
+     * @return Member with a random seeded id
+     */
+    public GymMember randomMember() {
+        int memberID = randomMemberID();
+        return new GymMember(
+            memberID,
+            "FIRST" + memberID,
+            "LAST" + memberID,
+            String.format( "520%07d", memberID ),
+            "member" + memberID + "@gym.com",
+            MembershipLevelEnum.BASIC,
+            random.nextInt( 500 ) );
+    }
+
+    public int randomTrainerID() {
+        return database.getFirstTrainerID() + random.nextInt( database.getTrainerCount() );
+    }
+
+    public int randomCourseIndex() {
+        return random.nextInt( database.getCourseCount() );
+    }
+
+    public int randomClassID() {
+        return database.getFirstClassID() + random.nextInt( database.getClassCount() );
+    }
+
+    public int randomItemIndex() {
+        return random.nextInt( BenchmarkDatabase.RENTAL_ITEMS );
+    }
+
+    public String randomPackageName() {
+        return BenchmarkDatabase.packageName( random.nextInt( database.getPackageCount() ) );
+    }
+
+    public int randomMonth() {
+        return 1 + random.nextInt( 12 );
+    }
+
+    public int nextInt( int bound ) {
+        return random.nextInt( bound );
+    }
+
+}
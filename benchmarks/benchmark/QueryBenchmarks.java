@@ -0,0 +1,143 @@
+/**
+ * @version 1.0
+ * Class: QueryBenchmarks.java
+ * Purpose: Benchmarks of the DBUtils methods that only read the DB. Each call picks a random seeded member, class,
+ *  course, trainer or month so the caches in DBUtils see the same mix of hits and misses they would in use.
+ *
+ * Utilizes:
+ *  - java.sql.Timestamp
+ *  - java.util.*
+ *  - org.openjdk.jmh.annotations.*
+ *  - entities.*
+ *  - utils.DBUtils
+ *
+ * Methods:
+ *  - One benchmark per read method of DBUtils, named after it
+ */
+
+package benchmark;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entities.Course;
+import entities.GymMember;
+import entities.RentalItem;
+import entities.ScheduleEntry;
+import entities.Trainer;
+import utils.DBUtils;
+
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class QueryBenchmarks {
+
+    // Members
+
+    @Benchmark
+    public GymMember retrieveMemberFromID( BenchmarkSession session ) {
+        return DBUtils.retrieveMemberFromID( session.randomMemberID(), session.getConnection() );
+    }
+
+    @Benchmark
+    public Map<String, String> getNegativeAccountUsers( BenchmarkSession session ) {
+        return DBUtils.getNegativeAccountUsers( session.getConnection() );
+    }
+
+    @Benchmark
+    public List<ScheduleEntry> getMemberScheduleForMonth( BenchmarkSession session ) {
+        return DBUtils
+            .getMemberScheduleForMonth( session.randomMember(), session.randomMonth(), session.getConnection() );
+    }
+
+    // Classes, courses and trainers
+
+    @Benchmark
+    public int getCourseId( BenchmarkSession session ) {
+        int course = session.randomCourseIndex();
+        return DBUtils
+            .getCourseId(
+                BenchmarkDatabase.courseCategory( course ),
+                BenchmarkDatabase.courseCatalogNum( course ),
+                session.getConnection() );
+    }
+
+    @Benchmark
+    public int getCourseIDFromName( BenchmarkSession session ) {
+        int course = session.randomCourseIndex();
+        String name = BenchmarkDatabase.courseCategory( course ) + " " + BenchmarkDatabase.courseCatalogNum( course );
+        return DBUtils.getCourseIDFromName( name, session.getConnection() );
+    }
+
+    @Benchmark
+    public List<Course> getAllCourses( BenchmarkSession session ) {
+        return DBUtils.getAllCourses( session.getConnection() );
+    }
+
+    @Benchmark
+    public int getTrainerId( BenchmarkSession session ) {
+        int trainer = session.randomTrainerID() - session.getDatabase().getFirstTrainerID();
+        return DBUtils.getTrainerId( "TRAINER" + trainer, "LAST" + trainer, session.getConnection() );
+    }
+
+    @Benchmark
+    public List<Trainer> listAllTrainers( BenchmarkSession session ) {
+        return DBUtils.listAllTrainers( session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean trainerScheduleConflict( BenchmarkSession session ) {
+        Timestamp startTime = new Timestamp( System.currentTimeMillis() );
+        Date endDate = new Date( startTime.getTime() + TimeUnit.DAYS.toMillis( 12 * 7 ) ); // Meets for 12 weeks
+        return DBUtils
+            .trainerScheduleConflict( session.randomTrainerID(), startTime, 60, endDate, session.getConnection() );
+    }
+
+    @Benchmark
+    public Map<String, Float> getAllTrainersWorkinghours( BenchmarkSession session ) {
+        return DBUtils.getAllTrainersWorkinghours( session.randomMonth(), session.getConnection() );
+    }
+
+    @Benchmark
+    public Map<String, float[]> getAllTrainersWorkinghoursByMonth( BenchmarkSession session ) {
+        return DBUtils.getAllTrainersWorkinghoursByMonth( session.getConnection() );
+    }
+
+    // Packages
+
+    @Benchmark
+    public Map<String, Float> getPackagesAndPrices( BenchmarkSession session ) {
+        return DBUtils.getPackagesAndPrices( session.getConnection() );
+    }
+
+    // Rentals
+
+    @Benchmark
+    public Map<String, Integer> getCheckoutRentalsForMember( BenchmarkSession session ) {
+        return DBUtils.getCheckoutRentalsForMember( session.randomMember(), session.getConnection() );
+    }
+
+    @Benchmark
+    public Map<String, Integer> getRentalItemsAndQuantities( BenchmarkSession session ) {
+        return DBUtils.getRentalItemsAndQuantities( session.getConnection() );
+    }
+
+    @Benchmark
+    public List<RentalItem> getRentalItems( BenchmarkSession session ) {
+        return DBUtils.getRentalItems( session.getConnection() );
+    }
+
+}
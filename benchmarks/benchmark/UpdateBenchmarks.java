@@ -0,0 +1,258 @@
+/**
+ * @version 1.0
+ * Class: UpdateBenchmarks.java
+ * Purpose: Benchmarks of the DBUtils methods that write to the DB. Every call runs inside a unit of work that is
+ *  started before the call and rolled back after it, outside of the measured time, so the seeded data is the same for
+ *  every call no matter how many rows a benchmark adds, changes or deletes. Ids for new rows are also taken before the
+ *  call. Since the timer is stopped and started around every call, calls that take less than a few microseconds are
+ *  measured less precisely than the ones in QueryBenchmarks.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.*
+ *  - org.openjdk.jmh.annotations.*
+ *  - entities.*
+ *  - utils.DBUtils
+ *  - utils.UnitOfWork
+ *
+ * Methods:
+ *  - One benchmark per write method of DBUtils, named after it
+ */
+
+package benchmark;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entities.Class;
+import entities.Course;
+import entities.CoursePackage;
+import entities.GymMember;
+import entities.Package;
+import entities.RentalLogEntry;
+import entities.Transaction;
+import utils.DBUtils;
+import utils.UnitOfWork;
+
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime } )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class UpdateBenchmarks {
+
+    private static final int CHECKOUT_ITEMS = 3; // Different items rented out together by the rental benchmarks
+
+    /**
+     * Session that runs every call in its own unit of work and has ids ready for the new rows the call adds, taken from
+     * the ID allocator like the program takes them. Extends the session instead of taking it as a parameter so both
+     * are sure to use the same connection.
+     */
+    @State( Scope.Thread )
+    public static class RolledBackSession extends BenchmarkSession {
+
+        private UnitOfWork unitOfWork;
+
+        int newID; // Id for a call that adds one row, the same as newIDs[0]
+
+        final int[] newIDs = new int[CHECKOUT_ITEMS]; // Ids for a call that adds a row per item
+
+        @Setup( Level.Invocation )
+        public void begin() throws SQLException {
+            // The allocator hands the IDs next to one out to any thread, so every row gets one of its own
+            for ( int i = 0 ; i < newIDs.length ; i++ ) {
+                newIDs[i] = DBUtils.generateIDNumberFromSequence( getConnection() );
+            }
+            newID = newIDs[0];
+            unitOfWork = UnitOfWork.begin( getConnection() );
+        }
+
+        @TearDown( Level.Invocation )
+        public void rollback() {
+            unitOfWork.close();
+        }
+
+    }
+
+    // Members
+
+    @Benchmark
+    public boolean addNewGymMemberToDB( RolledBackSession session ) {
+        GymMember member = new GymMember( "NEW", "MEMBER", "5205550000", "new@gym.com" );
+        return DBUtils.addNewGymMemberToDB( member, session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean saveChangesToMember( RolledBackSession session ) {
+        return DBUtils.saveChangesToMember( session.randomMember(), session.getConnection() );
+    }
+
+    @Benchmark
+    public void removeMemberFromDB( RolledBackSession session ) {
+        DBUtils.removeMemberFromDB( session.randomMember(), session.getConnection() );
+    }
+
+    @Benchmark
+    public void removeMemberFromAllTheirClasses( RolledBackSession session ) {
+        DBUtils.removeMemberFromAllTheirClasses( session.randomMemberID(), session.getConnection() );
+    }
+
+    // Classes, courses and trainers
+
+    @Benchmark
+    public void saveNewCourse( RolledBackSession session ) {
+        DBUtils.saveNewCourse( new Course( session.newID, "BENCH", 100 ), session.getConnection() );
+    }
+
+    @Benchmark
+    public void saveNewClass( RolledBackSession session ) {
+        DBUtils.saveNewClass( newClass( session, session.newID ), session.getConnection() );
+    }
+
+    @Benchmark
+    public void saveClassInfo( RolledBackSession session ) {
+        DBUtils.saveClassInfo( newClass( session, session.randomClassID() ), session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean addToMemberClassTable( RolledBackSession session ) {
+        Class gymClass = newClass( session, session.randomClassID() );
+        return DBUtils.addToMemberClassTable( session.randomMember(), gymClass, session.getConnection() );
+    }
+
+    @Benchmark
+    public List<Integer> addMemberToPackageCourses( RolledBackSession session ) {
+        return DBUtils
+            .addMemberToPackageCourses( session.randomMember(), session.randomPackageName(), session.getConnection() );
+    }
+
+    // Packages
+
+    @Benchmark
+    public boolean saveNewPackage( RolledBackSession session ) {
+        return DBUtils.saveNewPackage( new Package( "BENCH" + session.newID, 100 ), session.getConnection() );
+    }
+
+    @Benchmark
+    public void saveNewCoursePackage( RolledBackSession session ) {
+        // Seeded package i has courses 2i and 2i + 1, so course 2i + 2 is never in it yet
+        int packageIndex = session.nextInt( session.getDatabase().getPackageCount() );
+        int courseIndex = ( packageIndex * 2 + 2 ) % session.getDatabase().getCourseCount();
+        CoursePackage coursePackage = new CoursePackage(
+            session.getDatabase().getFirstCourseID() + courseIndex,
+            BenchmarkDatabase.packageName( packageIndex ) );
+        DBUtils.saveNewCoursePackage( coursePackage, session.getConnection() );
+    }
+
+    // Rentals
+
+    @Benchmark
+    public void saveNewRentalLogEntry( RolledBackSession session ) {
+        RentalLogEntry entry = new RentalLogEntry(
+            session.newID,
+            session.randomMemberID(),
+            session.getDatabase().getFirstItemNum() + session.randomItemIndex(),
+            new Date( System.currentTimeMillis() ),
+            false,
+            1 );
+        DBUtils.saveNewRentalLogEntry( entry, session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean saveNewRentalLogEntries( RolledBackSession session ) {
+        List<RentalLogEntry> entries = new ArrayList<>();
+        int memberID = session.randomMemberID();
+        for ( int i = 0 ; i < CHECKOUT_ITEMS ; i++ ) {
+            entries
+                .add(
+                    new RentalLogEntry(
+                        session.newIDs[i],
+                        memberID,
+                        session.getDatabase().getFirstItemNum() + session.randomItemIndex(),
+                        new Date( System.currentTimeMillis() ),
+                        false,
+                        1 ) );
+        }
+        return DBUtils.saveNewRentalLogEntries( entries, session.getConnection() );
+    }
+
+    @Benchmark
+    public List<Integer> takeRentalItemsFromStock( RolledBackSession session ) {
+        Map<Integer, Integer> quantities = new HashMap<>();
+        while ( quantities.size() < CHECKOUT_ITEMS ) {
+            quantities.put( session.getDatabase().getFirstItemNum() + session.randomItemIndex(), 1 );
+        }
+        return DBUtils.takeRentalItemsFromStock( quantities, session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean putRentalItemsBackInStock( RolledBackSession session ) {
+        int itemNum = session.getDatabase().getFirstItemNum() + session.randomItemIndex();
+        return DBUtils.putRentalItemsBackInStock( Map.of( itemNum, 1 ), session.getConnection() );
+    }
+
+    @Benchmark
+    public RentalLogEntry updateRentalLog( RolledBackSession session ) {
+        GymMember member = session.randomMember();
+        String itemName = BenchmarkDatabase.itemName( BenchmarkDatabase.openRentalItem( member.getMemberID() ) );
+        return DBUtils.updateRentalLog( member, itemName, session.getConnection() );
+    }
+
+    // Transactions
+
+    @Benchmark
+    public int generateIDNumberFromSequence( BenchmarkSession session ) {
+        return DBUtils.generateIDNumberFromSequence( session.getConnection() );
+    }
+
+    @Benchmark
+    public boolean saveNewTransaction( RolledBackSession session ) {
+        Transaction transaction = new Transaction(
+            session.newID,
+            session.randomMemberID(),
+            "RECHARGE",
+            new Date( System.currentTimeMillis() ),
+            50 );
+        return DBUtils.saveNewTransaction( transaction, session.getConnection() );
+    }
+
+    /**
+     * Builds a class of a random seeded course and trainer
+     * @param session Session to pick the course and trainer with
+     * @param classNum Number to give the class
+     * @return Class running for the next four weeks
+     */
+    private static Class newClass( BenchmarkSession session, int classNum ) {
+        long now = System.currentTimeMillis();
+        return new Class(
+            classNum,
+            session.getDatabase().getFirstCourseID() + session.randomCourseIndex(),
+            session.randomTrainerID(),
+            new Timestamp( now ),
+            60,
+            new Date( now ),
+            new Date( now + TimeUnit.DAYS.toMillis( 28 ) ),
+            0,
+            20 );
+    }
+
+}
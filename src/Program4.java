@@ -21,29 +21,122 @@
  *   - Checking a trainer's working hours for December.
  *   - Listing all unreturned items that a user has checked out from the rental
  *     center.
+ *  Started with -e the program uses an embedded database with the same
+ *  schema instead, so it can be run and tested without the Oracle DB ( and
+ *  with -g it is first filled with generated data for scale testing ), and
+ *  started with -m it keeps all of the data in memory with no DB at all.
+ *  With -b the menus are skipped and the commands in a script are run
+ *  instead, for bulk work, and with -i the members in a CSV file are
+ *  imported instead. With -l the menus are served to many terminals at
+ *  once over a local port or Unix domain socket, all sharing one store.
  */
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import exit_thread.ExitThread;
 import gui.CommandLineGui;
+import gui.MemberImporter;
+import gui.ScriptRunner;
+import gui.SessionServer;
+import repository.DatasetGenerator;
+import repository.EmbeddedDatabase;
+import repository.GymStore;
+import repository.InMemoryGymStore;
+import repository.JdbcGymStore;
+import utils.CallMetrics;
 import utils.CommandLineArgumentsUtils;
+import utils.ConnectionPool;
 
 public class Program4 {
 
     private static final String jdbcURL = "jdbc:oracle:thin:@aloe.cs.arizona.edu:1521:oracle";
 
     public static void main( String[] args ) {
+        // Pick where the gym data is kept, the Oracle DB unless the embedded DB or memory was asked for
+        GymStore gymStore;
+        if ( CommandLineArgumentsUtils.useInMemoryStore( args ) ) {
+            gymStore = new InMemoryGymStore();
+        } else if ( CommandLineArgumentsUtils.useEmbeddedDatabase( args ) ) {
+            gymStore = openEmbeddedStore( args );
+        } else {
+            gymStore = openOracleStore( args );
+        }
+
+        // Write the DB call metrics to a file every so often, the in memory store makes no DB calls
+        if ( !CommandLineArgumentsUtils.useInMemoryStore( args ) ) {
+            CallMetrics.startPeriodicDump();
+        }
+
+        // Run a script with no menus if one was given
+        String scriptFile = CommandLineArgumentsUtils.getScriptFile( args );
+        if ( scriptFile != null ) {
+            int failed = runScript( gymStore, scriptFile );
+            gymStore.close();
+            CallMetrics.stopPeriodicDump();
+            System.exit( failed == 0 ? 0 : 1 );
+        }
+
+        // Import members from a CSV file with no menus if one was given
+        String importFile = CommandLineArgumentsUtils.getImportFile( args );
+        if ( importFile != null ) {
+            int skipped = importMembers( gymStore, importFile );
+            gymStore.close();
+            CallMetrics.stopPeriodicDump();
+            System.exit( skipped == 0 ? 0 : 1 );
+        }
+
+        // Serve the menus to terminals that connect if a port or socket was given
+        String listenAddress = CommandLineArgumentsUtils.getListenAddress( args );
+        if ( listenAddress != null ) {
+            Runtime.getRuntime().addShutdownHook( new ExitThread( gymStore ) );
+            try {
+                new SessionServer( gymStore, listenAddress ).serve();
+            } catch ( IOException | IllegalArgumentException e ) {
+                System.out.println( "Unable to accept terminal sessions on " + listenAddress );
+                System.out.println( e.getMessage() );
+                System.exit( 1 );
+            }
+        }
+
+        // Start the cli
+        CommandLineGui gui = new CommandLineGui( gymStore );
+        gui.startGui();
+        System.exit( 0 );
+    }
+
+    /**
+     * Connects to the Oracle DB with the username and password given on the command line, exits the program if
+     * that is not possible
+     * @param args Command line arguments
+     * @return Store over a pool of connections to the Oracle DB
+     */
+    private static GymStore openOracleStore( String[] args ) {
         // Get the username and password and verify that were set with a command line argument
         String username = CommandLineArgumentsUtils.getUsername( args );
         String password = CommandLineArgumentsUtils.getPassword( args );
 
         if ( username == null || password == null ) {
-            System.out.println( "\nUsage: Program4 <-u username> <-p password>\n" );
+            System.out
+                .println(
+                    "\nUsage: Program4 <-u username> <-p password> | <-e [-g members [-s seed]]> | <-m>"
+                        + " [-b script | -i csv | -l port]\n" );
             System.out.println( "Options:" );
             System.out.println( "\t-u Username to login with to oracle database" );
             System.out.println( "\t-p Password to login with to oracle database" );
+            System.out.println( "\t-e Use an embedded database instead of oracle ( H2 jar must be on the classpath )" );
+            System.out.println( "\t-g Fill the embedded database with generated data for this many members" );
+            System.out.println( "\t-s Seed of the generated data, the same seed always generates the same data" );
+            System.out.println( "\t-m Keep all of the data in memory instead of in a database" );
+            System.out.println( "\t-b Run the commands in a script file ( - for stdin ) instead of showing the menus" );
+            System.out.println( "\t-i Import the members in a CSV file instead of showing the menus" );
+            System.out
+                .println( "\t-l Serve the menus to terminals connecting to this local port or Unix domain socket" );
             System.out.println();
             System.exit( 1 );
         }
@@ -56,20 +149,91 @@ public class Program4 {
             System.exit( 1 );
         }
 
-        // Grab connection to the DB
-        Connection dbConnection = null;
+        // Create the pool of connections to the DB and make sure we can log in before starting
+        ConnectionPool connectionPool = new ConnectionPool( jdbcURL, username, password );
         try {
-            dbConnection = DriverManager.getConnection( jdbcURL, username, password );
-            dbConnection.setAutoCommit( true );
+            Connection dbConnection = connectionPool.borrowConnection();
+            connectionPool.returnConnection( dbConnection );
         } catch ( SQLException e ) {
             System.out.println( "Unable to connect to DB." );
             System.out.println( "Check username/password" );
             System.exit( 1 );
         }
+        return new JdbcGymStore( connectionPool );
+    }
 
-        // Start the cli
-        CommandLineGui gui = new CommandLineGui( dbConnection );
-        gui.startGui();
+    /**
+     * Starts the embedded DB with the gym schema, filled with generated data if that was asked for on the command
+     * line. Exits the program if the DB cannot be started.
+     * @param args Command line arguments
+     * @return Store over a pool of connections to the embedded DB
+     */
+    private static GymStore openEmbeddedStore( String[] args ) {
+        int generatedMembers = CommandLineArgumentsUtils.getGeneratedMemberCount( args );
+        if ( generatedMembers < 0 ) {
+            System.out.println( "The number of members to generate must be a positive number" );
+            System.exit( 1 );
+        }
+
+        JdbcGymStore gymStore = null;
+        try {
+            gymStore = EmbeddedDatabase.createStore( EmbeddedDatabase.DEFAULT_NAME );
+        } catch ( SQLException e ) {
+            System.err.println( "Unable to start the embedded DB." );
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+        }
+
+        if ( generatedMembers > 0 ) {
+            System.out.println( "Generating data for " + generatedMembers + " members..." );
+            ConnectionPool connectionPool = gymStore.getConnectionPool();
+            DatasetGenerator generator = new DatasetGenerator(
+                CommandLineArgumentsUtils.getSeed( args ),
+                generatedMembers,
+                connectionPool.getMaxPoolSize() );
+            try {
+                System.out.println( generator.generate( connectionPool ) );
+            } catch ( SQLException e ) {
+                System.err.println( "Unable to generate the data." );
+                System.err.println( e.getMessage() );
+                System.exit( 1 );
+            }
+        }
+        return gymStore;
+    }
+
+    /**
+     * Runs the commands of a script against the store
+     * @param gymStore Store the gym data is kept in
+     * @param scriptFile Path of the script, "-" to read it from stdin
+     * @return Number of commands that failed, -1 if the script could not be run
+     */
+    private static int runScript( GymStore gymStore, String scriptFile ) {
+        try ( BufferedReader script = scriptFile.equals( "-" )
+            ? new BufferedReader( new InputStreamReader( System.in ) )
+            : new BufferedReader( new FileReader( scriptFile ) ) ) {
+            return new ScriptRunner( gymStore ).run( script );
+        } catch ( IOException e ) {
+            System.out.println( "Unable to read the script " + scriptFile );
+            System.out.println( e.getMessage() );
+            return -1;
+        }
+    }
+
+    /**
+     * Imports the members in a CSV file into the store, continuing an import of the same file that stopped part way
+     * @param gymStore Store the gym data is kept in
+     * @param importFile Path of the CSV file
+     * @return Number of rows that were skipped, -1 if the import stopped before the end of the file
+     */
+    private static int importMembers( GymStore gymStore, String importFile ) {
+        try {
+            return new MemberImporter( gymStore ).importMembers( Paths.get( importFile ) );
+        } catch ( IOException e ) {
+            System.out.println( "Unable to read the CSV file " + importFile );
+            System.out.println( e.getMessage() );
+            return -1;
+        }
     }
 
 }
@@ -0,0 +1,44 @@
+/*
+ * Class name: ScheduleEntry
+ * Utilizes java.sql.*
+ * Purpose: This class holds one row of a member's class schedule, which is
+ *  built by joining the MemberClass and Class tables. Only the columns needed
+ *  to print the schedule are kept, instead of the full Class tuple.
+ * Constructor: ScheduleEntry(...) takes in the class number, the weekly start
+ *  time and the duration ( in minutes ) of the class.
+ * Public getters for every attribute are defined in this class.
+ */
+
+package entities;
+
+import java.sql.Timestamp;
+
+public class ScheduleEntry {
+
+    private int classNum;
+
+    private Timestamp startTime;
+
+    private float duration;
+
+    public ScheduleEntry( int classNum, Timestamp startTime, float duration ) {
+        this.classNum = classNum;
+        this.startTime = startTime;
+        this.duration = duration;
+    }
+
+    // Getters
+
+    public int getClassNum() {
+        return classNum;
+    }
+
+    public Timestamp getStartTime() {
+        return startTime;
+    }
+
+    public float getDuration() {
+        return duration;
+    }
+
+}
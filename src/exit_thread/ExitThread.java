@@ -1,16 +1,18 @@
 /**
  * @author Francisco Gonzalez
  * Class: ExitThread.java
- * Purpose: Thread to run cleanup tasks when JVM is signalled to stop. Cleans up resources such as the connection to the database and closes the scanner that was used throughout the application
+ * Purpose: Thread to run cleanup tasks when JVM is signalled to stop. Cleans up resources such as the store the gym data is kept in and closes the scanner that was used throughout the application
  * 
  * Extends the Thread class
  * Utilizes:
- *  - java.sql.Connection
- *  - java.sql.SQLException
  *  - java.util.Scanner
+ *  - repository.GymStore
+ *  - utils.CallMetrics
  * 
- * Constructor( Connection, Scanner ):
+ * Constructor( GymStore, Scanner ):
  *          Give the two resources that need to be closed at the end of the application
+ * Constructor( GymStore ):
+ *          Only the store needs to be closed, when terminal sessions read their own input instead of stdin
  * 
  * Methods:
  *  - run()
@@ -19,40 +21,46 @@
  */
 package exit_thread;
 
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.Scanner;
 
+import repository.GymStore;
+import utils.CallMetrics;
 import utils.CommonPrints;
 
 public class ExitThread extends Thread {
 
-    private Connection dbConnection; // Connection to close
+    private GymStore gymStore; // Store to close along with its connections
 
     private Scanner scanner; // Object for user input
 
     /* 
      * This constructor sets the values of the instance variables for
-     *  the Connection object and the java.util Scanner
+     *  the GymStore object and the java.util Scanner
      */
-    public ExitThread( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    public ExitThread( GymStore gymStore, Scanner scanner ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
     }
 
+    /*
+     * This constructor is used when there is no Scanner over stdin to close
+     */
+    public ExitThread( GymStore gymStore ) {
+        this( gymStore, null );
+    }
+
     /*
      * This method is run when the program is exited, in order to close
-     *  the user input Scanner and the Oracle database connection
+     *  the user input Scanner and the database connections
      */
     @Override
     public void run() {
         CommonPrints.printExitMessage(); // Print exit message
-        scanner.close(); // Close the scanner used for the program
-        try {
-            dbConnection.close(); // Close DB Connection
-        } catch ( SQLException e ) {
-            System.err.println( "Unable to close the connection to the DB" );
+        if ( scanner != null ) {
+            scanner.close(); // Close the scanner used for the program
         }
+        gymStore.close(); // Close DB Connections
+        CallMetrics.stopPeriodicDump(); // Write the DB call metrics one last time
     }
 
 }
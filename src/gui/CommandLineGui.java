@@ -8,15 +8,21 @@
  * place to terminate the program cleanly.
  * 
  * Utilizes:
- *  - java.sql.Connection
+ *  - java.io.InputStream
  *  - java.util.Scanner
+ *  - repository.GymStore
+ *  - repository.MemberPrefetcher
  * 
- * Constructor: CommandLineGui(Connection)
- *  - Will use the single connection to database throughout all the operations that are being called
+ * Constructor: CommandLineGui(GymStore)
+ *  - Will share the store the gym data is kept in with all the operations that are being called
+ * Constructor: CommandLineGui(GymStore, InputStream)
+ *  - Same for one terminal session of the SessionServer, reading that terminal instead of stdin
+ *  Either way the member and rental operations share one MemberPrefetcher, the cache of the session
  * 
  * Methods:
  *  startGui():
- *      - Starts the application loop for the program and prints the diffrent operations types
+ *      - Starts the application loop for the program and prints the diffrent operations types, returns once exit
+ *        is selected
  *  getOperationSelection():
  *      - Reads input from the user and validates the the input is a valid input from the options presented to the user.
  *        Will then send the option over to the openOperationsMenu(int option) function.
@@ -43,7 +49,7 @@
 
 package gui;
 
-import java.sql.Connection;
+import java.io.InputStream;
 import java.util.Scanner;
 
 import exit_thread.ExitThread;
@@ -52,6 +58,8 @@ import operations.CourseOperations;
 import operations.MemberOperations;
 import operations.PackageOperations;
 import operations.RentalOperations;
+import repository.GymStore;
+import repository.MemberPrefetcher;
 import utils.CommonPrints;
 
 public class CommandLineGui {
@@ -66,7 +74,9 @@ public class CommandLineGui {
     private static final int ADMIN_MENU_OPTION = 5;
     private static final int EXIT_MENU_OPTION = 6;
 
-    private Scanner scanner; // Scanner to read from stdin
+    private Scanner scanner; // Scanner to read from stdin, or from the terminal of a session
+
+    private boolean running; // False once exit has been selected
 
     // Operations that can be performed
     private MemberOperations memberOperations;
@@ -76,34 +86,46 @@ public class CommandLineGui {
     private RentalOperations rentalOperations;
 
     /**
-     * Creates a new instance of a CommandLineGui and access to a SQL DB Connection
+     * Creates a new instance of a CommandLineGui with access to the store the gym data is kept in
      * Also sets the runtime thread to close resources that need to be freed at the end of the program
-     * @param dbConnection
+     * @param gymStore
      * @return a new instance of CommandLineGui
      */
-    public CommandLineGui( Connection dbConnection ) {
-        scanner = new Scanner( System.in );
-
-        // Create the operations objects that will be needed throughout the front end program
-        memberOperations = new MemberOperations( dbConnection, scanner );
-        courseOperations = new CourseOperations( dbConnection, scanner );
-        adminOperations = new AdminOperations( dbConnection, scanner );
-        packageOperations = new PackageOperations( dbConnection, scanner );
-        rentalOperations = new RentalOperations( dbConnection, scanner );
+    public CommandLineGui( GymStore gymStore ) {
+        this( gymStore, System.in );
 
         // Give objects that need to be closed to the ExitThread to free resources at the end
-        Runtime.getRuntime().addShutdownHook( new ExitThread( dbConnection, scanner ) );
+        Runtime.getRuntime().addShutdownHook( new ExitThread( gymStore, scanner ) );
+    }
+
+    /**
+     * Creates a CommandLineGui for one terminal session, with its own scanner and menu state over the shared store.
+     * The store is closed by whoever created it, not when the session ends.
+     * @param gymStore Store the gym data is kept in
+     * @param input Stream the user's input is read from
+     */
+    public CommandLineGui( GymStore gymStore, InputStream input ) {
+        scanner = new Scanner( input );
+        MemberPrefetcher prefetcher = new MemberPrefetcher( gymStore ); // Reads ahead for the member at the desk
+
+        // Create the operations objects that will be needed throughout the front end program
+        memberOperations = new MemberOperations( gymStore, scanner, prefetcher );
+        courseOperations = new CourseOperations( gymStore, scanner );
+        adminOperations = new AdminOperations( gymStore, scanner );
+        packageOperations = new PackageOperations( gymStore, scanner );
+        rentalOperations = new RentalOperations( gymStore, scanner, prefetcher );
     }
 
     /**
-     * Starts the command line interface to interact with the gym database
+     * Starts the command line interface to interact with the gym database, returns once the user selects exit
      */
     public void startGui() {
         CommonPrints.printWelcomeMessage();
         System.out.println( "\n" );
 
 	// continually prompts for user input until program is exited
-        while ( true ) {
+        running = true;
+        while ( running ) {
             CommonPrints.promptUserToSelectTypeOfOperation();
             CommonPrints.printStandardOptions();
             getOperationSelection();
@@ -157,7 +179,7 @@ public class CommandLineGui {
                 adminOperations.openMenu();
                 break;
             case EXIT_MENU_OPTION:
-                System.exit( 0 );
+                running = false;
         }
     }
 
@@ -0,0 +1,280 @@
+/**
+ * @version 1.0
+ * Class: HistoryExporter.java
+ * Purpose: Writes the TRANSACTION and RENTALLOG history to a file for accounting, as CSV ( with a header line ) or as
+ *  newline delimited JSON ( one object per line, keyed by column name ). The rows can be limited to a range of days
+ *  and to one member. Rows are written as the repository streams them out of the DB, through a buffered writer over a
+ *  file channel, so tens of millions of rows are exported in the same memory as ten. The export is written to a
+ *  temporary file that is moved over the file once every row is written, so a failed export never leaves half a file
+ *  behind.
+ *
+ * Utilizes:
+ *  - java.io.*
+ *  - java.nio.channels.*
+ *  - java.nio.charset.StandardCharsets
+ *  - java.nio.file.*
+ *  - java.sql.*
+ *  - repository.GymRepository
+ *
+ * Constructor: HistoryExporter( GymRepository ):
+ *  - Repository the history is read from
+ *
+ * Methods:
+ *  exportTransactions( Path, String, Date, Date, int ):
+ *      - Writes the transactions in a range of days, for one member or all of them, and returns how many there were
+ *  exportRentals( Path, String, Date, Date, int ):
+ *      - Same for the rental log
+ */
+
+package gui;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.SQLException;
+
+import repository.GymRepository;
+
+public class HistoryExporter {
+
+    // Formats the history can be written in
+    public static final String CSV = "csv";
+    public static final String NDJSON = "ndjson";
+
+    private static final int BUFFER_SIZE = 64 * 1024; // Characters held before they are written to the file
+
+    private static final String[] TRANSACTION_COLUMNS = {
+        "TRANSACTIONID", "MEMBERID", "XACTTYPE", "XACTDATE", "AMOUNT" };
+    private static final String[] RENTAL_LOG_COLUMNS = {
+        "RENTALID", "MEMBERID", "ITEMNUM", "OUTTIME", "QUANTITY", "RETURNED" };
+
+    private final GymRepository repository;
+
+    /**
+     * Creates an exporter
+     * @param repository Repository the history is read from
+     */
+    public HistoryExporter( GymRepository repository ) {
+        this.repository = repository;
+    }
+
+    /**
+     * Writes transactions to a file
+     * @param file File to write, replaced if it exists
+     * @param format CSV or NDJSON
+     * @param from First day to write, null to start from the first transaction
+     * @param to Last day to write, null to write up to the last transaction
+     * @param memberID Member whose transactions are written, 0 for every member
+     * @return Number of transactions written
+     * @throws SQLException if the transactions could not be read
+     * @throws IOException if the file could not be written
+     */
+    public long exportTransactions( Path file, String format, Date from, Date to, int memberID )
+        throws SQLException, IOException {
+        return writeFile( file, format, TRANSACTION_COLUMNS, rows -> repository
+            .forEachTransaction( from, to, memberID, transaction -> {
+                rows.startRow();
+                rows.number( transaction.getTransactionID() );
+                rows.number( transaction.getMemberID() );
+                rows.text( transaction.getXactType() );
+                rows.text( transaction.getXactDate().toString() );
+                rows.number( transaction.getAmount() );
+                rows.endRow();
+            } ) );
+    }
+
+    /**
+     * Writes rental log entries to a file
+     * @param file File to write, replaced if it exists
+     * @param format CSV or NDJSON
+     * @param from First day to write, null to start from the first rental
+     * @param to Last day to write, null to write up to the last rental
+     * @param memberID Member whose rentals are written, 0 for every member
+     * @return Number of entries written
+     * @throws SQLException if the entries could not be read
+     * @throws IOException if the file could not be written
+     */
+    public long exportRentals( Path file, String format, Date from, Date to, int memberID )
+        throws SQLException, IOException {
+        return writeFile( file, format, RENTAL_LOG_COLUMNS, rows -> repository
+            .forEachRentalLogEntry( from, to, memberID, entry -> {
+                rows.startRow();
+                rows.number( entry.getRentalID() );
+                rows.number( entry.getMemberID() );
+                rows.number( entry.getItemNum() );
+                rows.text( entry.getOutTime().toString() );
+                rows.number( entry.getQuantityBorrowed() );
+                rows.number( entry.isReturned() ? 1 : 0 );
+                rows.endRow();
+            } ) );
+    }
+
+    /**
+     * Runs an export into a temporary file and moves it over the file once it is complete
+     * @param file File to write
+     * @param format CSV or NDJSON
+     * @param columns Names of the columns written for every row
+     * @param export Reads the rows and writes each one
+     * @return Number of rows written
+     * @throws SQLException if the rows could not be read
+     * @throws IOException if the file could not be written
+     */
+    private static long writeFile( Path file, String format, String[] columns, Export export )
+        throws SQLException, IOException {
+        if ( !format.equals( CSV ) && !format.equals( NDJSON ) ) {
+            throw new IllegalArgumentException( "Format must be " + CSV + " or " + NDJSON + ", found " + format );
+        }
+        Path tempFile = file.resolveSibling( file.getFileName() + ".tmp" );
+        long count;
+        try ( FileChannel channel = FileChannel
+            .open(
+                tempFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE );
+            Writer out = new BufferedWriter( Channels.newWriter( channel, StandardCharsets.UTF_8 ), BUFFER_SIZE ) ) {
+            RowWriter rows = new RowWriter( out, columns, format.equals( NDJSON ) );
+            rows.header();
+            count = export.run( rows );
+        } catch ( SQLException | IOException | RuntimeException e ) {
+            Files.deleteIfExists( tempFile );
+            throw e;
+        }
+        try {
+            Files.move( tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( AtomicMoveNotSupportedException e ) {
+            Files.move( tempFile, file, StandardCopyOption.REPLACE_EXISTING );
+        }
+        return count;
+    }
+
+    /**
+     * Reads the rows of an export and writes each one
+     */
+    private interface Export {
+
+        long run( RowWriter rows ) throws SQLException, IOException;
+
+    }
+
+    /**
+     * Writes rows one value at a time straight to the output, as CSV or as JSON objects
+     */
+    private static class RowWriter {
+
+        private final Writer out;
+
+        private final String[] columns;
+
+        private final boolean json;
+
+        private int column; // Column the next value is written to
+
+        private RowWriter( Writer out, String[] columns, boolean json ) {
+            this.out = out;
+            this.columns = columns;
+            this.json = json;
+        }
+
+        /**
+         * Writes the header line of a CSV file, JSON lines name their own columns
+         * @throws IOException if the line could not be written
+         */
+        private void header() throws IOException {
+            if ( !json ) {
+                out.write( String.join( ",", columns ) );
+                out.write( '\n' );
+            }
+        }
+
+        private void startRow() throws IOException {
+            column = 0;
+            if ( json ) {
+                out.write( '{' );
+            }
+        }
+
+        private void endRow() throws IOException {
+            if ( json ) {
+                out.write( '}' );
+            }
+            out.write( '\n' );
+        }
+
+        private void number( int value ) throws IOException {
+            startValue();
+            out.write( Integer.toString( value ) );
+        }
+
+        private void number( float value ) throws IOException {
+            startValue();
+            out.write( Float.toString( value ) );
+        }
+
+        /**
+         * Writes a text value, quoted when the format needs it
+         * @param value Value to write
+         * @throws IOException if the value could not be written
+         */
+        private void text( String value ) throws IOException {
+            startValue();
+            if ( json ) {
+                writeJsonString( value );
+            } else if ( value.indexOf( ',' ) >= 0 || value.indexOf( '"' ) >= 0 || value.indexOf( '\n' ) >= 0 ) {
+                out.write( '"' );
+                out.write( value.replace( "\"", "\"\"" ) );
+                out.write( '"' );
+            } else {
+                out.write( value );
+            }
+        }
+
+        /**
+         * Writes the separator before a value and, for JSON, the name of its column
+         * @throws IOException if they could not be written
+         */
+        private void startValue() throws IOException {
+            if ( column > 0 ) {
+                out.write( ',' );
+            }
+            if ( json ) {
+                out.write( '"' );
+                out.write( columns[column] );
+                out.write( "\":" );
+            }
+            column++;
+        }
+
+        /**
+         * Writes a JSON string, escaping quotes, backslashes and control characters
+         * @param value Value to write
+         * @throws IOException if the value could not be written
+         */
+        private void writeJsonString( String value ) throws IOException {
+            out.write( '"' );
+            for ( int i = 0 ; i < value.length() ; i++ ) {
+                char c = value.charAt( i );
+                if ( c == '"' || c == '\\' ) {
+                    out.write( '\\' );
+                    out.write( c );
+                } else if ( c < 0x20 ) {
+                    out.write( String.format( "\\u%04x", (int) c ) );
+                } else {
+                    out.write( c );
+                }
+            }
+            out.write( '"' );
+        }
+
+    }
+
+}
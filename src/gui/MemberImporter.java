@@ -0,0 +1,398 @@
+/**
+ * @version 1.0
+ * Class: MemberImporter.java
+ * Purpose: Imports the members of another gym from a CSV file, for example when the gym takes over a smaller one.
+ *  The file is read as a stream, one block of rows at a time, so files of any size can be imported with the same
+ *  memory. The first line is a header and is skipped, every other line is one member:
+ *      first name,last name,phone number,email
+ *  Values with commas are put in double quotes ( a quote inside them is written twice ), a value can not span lines.
+ *  Blocks of rows are checked by several threads at once ( names, phone numbers and emails, see ValidationUtils )
+ *  while the blocks before them are saved, each block with one batch of inserts and one commit. Rows that do not pass
+ *  are printed with their line number and skipped, the rest of the file is still imported.
+ *  After every commit the last saved line is written to a checkpoint file next to the CSV file ( <file>.checkpoint ).
+ *  If the import stops part way ( the DB went away, the program was killed, ... ) running it again skips every line up
+ *  to the checkpoint, so no member is imported twice. The checkpoint is deleted once the whole file is imported.
+ *  The rows per block and the number of checking threads can be set with -Dgym.import.batchSize and
+ *  -Dgym.import.threads.
+ *
+ * Utilizes:
+ *  - java.io.*
+ *  - java.nio.file.*
+ *  - java.sql.SQLException
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - entities.GymMember
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - utils.QueryTracer
+ *  - utils.ValidationUtils
+ *
+ * Constructor: MemberImporter( GymStore ):
+ *  - Store the members are imported into, one repository is opened from it for the whole import
+ *
+ * Methods:
+ *  importMembers( Path ):
+ *      - Imports every member of the file that was not imported by an earlier run and returns how many were skipped
+ */
+
+package gui;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import entities.GymMember;
+import repository.GymRepository;
+import repository.GymStore;
+import utils.QueryTracer;
+import utils.ValidationUtils;
+
+public class MemberImporter {
+
+    private static final int DEFAULT_BATCH_SIZE = 500; // Rows checked together and saved with one commit
+
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+    // Longest values the MEMBER columns hold
+    private static final int MAX_NAME_LENGTH = 50;
+    private static final int MAX_PHONE_LENGTH = 20;
+    private static final int MAX_EMAIL_LENGTH = 100;
+
+    private static final int COLUMNS = 4; // First name, last name, phone number, email
+
+    private final GymStore gymStore;
+
+    private final int batchSize;
+
+    private final int threads;
+
+    /**
+     * Creates an importer
+     * @param gymStore Store the members are imported into
+     */
+    public MemberImporter( GymStore gymStore ) {
+        this.gymStore = gymStore;
+        this.batchSize = Math.max( 1, Integer.getInteger( "gym.import.batchSize", DEFAULT_BATCH_SIZE ) );
+        this.threads = Math
+            .max( 1, Integer.getInteger( "gym.import.threads", Runtime.getRuntime().availableProcessors() ) );
+    }
+
+    /**
+     * Imports the members in a CSV file, starting after the last line saved by an earlier run of the same file
+     * @param csvFile File to import
+     * @return Number of rows that were skipped because they did not pass the checks, -1 if the import stopped before
+     *  the end of the file
+     * @throws IOException if the file could not be read
+     */
+    public int importMembers( Path csvFile ) throws IOException {
+        Path checkpointFile = csvFile.resolveSibling( csvFile.getFileName() + CHECKPOINT_EXTENSION );
+        int resumeLine = readCheckpoint( checkpointFile );
+        if ( resumeLine > 0 ) {
+            System.out.println( "Resuming the import after line " + resumeLine );
+        }
+
+        GymRepository repository;
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return -1;
+        }
+
+        ExecutorService validators = Executors.newFixedThreadPool( threads, runnable -> {
+            Thread thread = new Thread( runnable, "member-import-validator" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+
+        // Blocks being checked, oldest first. At most one per thread plus the one being filled are held at once.
+        Deque<Future<Block>> pending = new ArrayDeque<>();
+        int importedCount = 0;
+        int rejectedCount = 0;
+        long startTime = System.nanoTime();
+        try ( BufferedReader reader = Files.newBufferedReader( csvFile ) ) {
+            int lineNumber = 0;
+            Block block = null;
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                lineNumber++;
+                if ( lineNumber == 1 || lineNumber <= resumeLine ) {
+                    continue; // Header or already imported
+                }
+                if ( block == null ) {
+                    block = new Block( lineNumber );
+                }
+                block.lines.add( line );
+                if ( block.lines.size() == batchSize ) {
+                    Block full = block;
+                    pending.addLast( validators.submit( () -> full.validate() ) );
+                    block = null;
+                }
+                if ( pending.size() > threads ) {
+                    Block validated = pending.removeFirst().get();
+                    importedCount += save( repository, validated, checkpointFile );
+                    rejectedCount += validated.rejections.size();
+                }
+            }
+            if ( block != null ) {
+                Block last = block;
+                pending.addLast( validators.submit( () -> last.validate() ) );
+            }
+            while ( !pending.isEmpty() ) {
+                Block validated = pending.removeFirst().get();
+                importedCount += save( repository, validated, checkpointFile );
+                rejectedCount += validated.rejections.size();
+            }
+        } catch ( ImportException e ) {
+            System.out.println( e.getMessage() );
+            System.out
+                .println(
+                    "Imported " + importedCount + " members before stopping, run the import again to continue from "
+                        + "where it stopped" );
+            return -1;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch ( ExecutionException e ) {
+            throw new IllegalStateException( "Unable to check the rows of the file", e.getCause() );
+        } finally {
+            validators.shutdownNow();
+            repository.close();
+        }
+
+        Files.deleteIfExists( checkpointFile );
+        double seconds = ( System.nanoTime() - startTime ) / 1e9;
+        System.out
+            .println(
+                String.format(
+                    "Imported %d members in %.3f s ( %.1f members/s ), %d rows skipped",
+                    importedCount,
+                    seconds,
+                    seconds == 0 ? 0 : importedCount / seconds,
+                    rejectedCount ) );
+        return rejectedCount;
+    }
+
+    /**
+     * Saves the members of a checked block with one commit and moves the checkpoint past it
+     * @param repository Repository to save to
+     * @param block Block that was checked
+     * @param checkpointFile File that keeps the last line saved
+     * @return Number of members saved
+     * @throws ImportException if the block could not be saved, in which case none of it was
+     */
+    private static int save( GymRepository repository, Block block, Path checkpointFile ) throws ImportException {
+        for ( String rejection : block.rejections ) {
+            System.out.println( rejection );
+        }
+        if ( !block.members.isEmpty() ) {
+            QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Import: members" );
+            try {
+                repository.beginUnitOfWork();
+                if ( !repository.addNewGymMembersToDB( block.members ) ) {
+                    throw new SQLException( "The members could not be inserted" );
+                }
+                repository.commitUnitOfWork();
+            } catch ( SQLException e ) {
+                throw new ImportException(
+                    "Unable to save lines " + block.firstLine + " to " + block.getLastLine() + ": " + e.getMessage() );
+            } finally {
+                repository.endUnitOfWork();
+                operation.end();
+            }
+        }
+        try {
+            writeCheckpoint( checkpointFile, block.getLastLine() );
+        } catch ( IOException e ) {
+            throw new ImportException(
+                "Unable to write the checkpoint " + checkpointFile + " after line " + block.getLastLine() + ": "
+                    + e.getMessage() );
+        }
+        return block.members.size();
+    }
+
+    /**
+     * Reads the last line saved by an earlier run
+     * @param checkpointFile File that keeps the last line saved
+     * @return Line number, 0 if there is no checkpoint
+     * @throws IOException if the checkpoint exists but could not be read
+     */
+    private static int readCheckpoint( Path checkpointFile ) throws IOException {
+        if ( !Files.exists( checkpointFile ) ) {
+            return 0;
+        }
+        String checkpoint = Files.readString( checkpointFile ).trim();
+        try {
+            return Integer.parseInt( checkpoint );
+        } catch ( NumberFormatException e ) {
+            throw new IOException( "The checkpoint " + checkpointFile + " does not hold a line number: " + checkpoint );
+        }
+    }
+
+    /**
+     * Writes the last line saved to a temporary file and moves it over the checkpoint, so the checkpoint is never
+     * seen half written
+     * @param checkpointFile File that keeps the last line saved
+     * @param lineNumber Last line saved
+     * @throws IOException if the checkpoint could not be written
+     */
+    private static void writeCheckpoint( Path checkpointFile, int lineNumber ) throws IOException {
+        Path tempFile = checkpointFile.resolveSibling( checkpointFile.getFileName() + ".tmp" );
+        Files.writeString( tempFile, lineNumber + "\n" );
+        try {
+            Files.move( tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( AtomicMoveNotSupportedException e ) {
+            Files.move( tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    /**
+     * Splits one line of the file into its values
+     * @param line The line
+     * @return Values in the order they appear
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    private static List<String> parseLine( String line ) {
+        List<String> values = new ArrayList<>( COLUMNS );
+        StringBuilder value = new StringBuilder();
+        boolean inQuotes = false;
+        for ( int i = 0 ; i < line.length() ; i++ ) {
+            char c = line.charAt( i );
+            if ( inQuotes ) {
+                if ( c == '"' && i + 1 < line.length() && line.charAt( i + 1 ) == '"' ) {
+                    value.append( '"' );
+                    i++;
+                } else if ( c == '"' ) {
+                    inQuotes = false;
+                } else {
+                    value.append( c );
+                }
+            } else if ( c == '"' ) {
+                inQuotes = true;
+            } else if ( c == ',' ) {
+                values.add( value.toString().trim() );
+                value.setLength( 0 );
+            } else {
+                value.append( c );
+            }
+        }
+        if ( inQuotes ) {
+            throw new IllegalArgumentException( "a quote was not closed" );
+        }
+        values.add( value.toString().trim() );
+        return values;
+    }
+
+    /**
+     * Checks the values of one row
+     * @param values Values of the row
+     * @return Why the row can not be imported, null if it can
+     */
+    private static String checkRow( List<String> values ) {
+        if ( values.size() != COLUMNS ) {
+            return "expected " + COLUMNS + " values but found " + values.size();
+        }
+        String firstName = values.get( 0 );
+        String lastName = values.get( 1 );
+        String phoneNumber = values.get( 2 );
+        String email = values.get( 3 );
+        if ( firstName.isEmpty() || lastName.isEmpty() ) {
+            return "first and last name are required";
+        }
+        if ( firstName.length() > MAX_NAME_LENGTH || lastName.length() > MAX_NAME_LENGTH ) {
+            return "names can be at most " + MAX_NAME_LENGTH + " characters";
+        }
+        if ( phoneNumber.length() > MAX_PHONE_LENGTH || !ValidationUtils.validatePhoneNumber( phoneNumber ) ) {
+            return "not a valid phone number: " + phoneNumber;
+        }
+        if ( email.length() > MAX_EMAIL_LENGTH || !ValidationUtils.validateEmail( email ) ) {
+            return "not a valid email: " + email;
+        }
+        return null;
+    }
+
+    /**
+     * Consecutive lines of the file that are checked together and saved with one commit
+     */
+    private static class Block {
+
+        private final int firstLine;
+
+        private List<String> lines = new ArrayList<>(); // Lines as read, null once they have been checked
+
+        private int lineCount; // Number of lines in the block, set once they have been checked
+
+        private final List<GymMember> members = new ArrayList<>();
+
+        private final List<String> rejections = new ArrayList<>(); // Message for every row that did not pass
+
+        private Block( int firstLine ) {
+            this.firstLine = firstLine;
+        }
+
+        /**
+         * Turns every line that passes the checks into a member and drops the lines, which are no longer needed
+         * @return This block
+         */
+        private Block validate() {
+            for ( int i = 0 ; i < lines.size() ; i++ ) {
+                String line = lines.get( i );
+                if ( line.isBlank() ) {
+                    continue;
+                }
+                String problem;
+                List<String> values = null;
+                try {
+                    values = parseLine( line );
+                    problem = checkRow( values );
+                } catch ( IllegalArgumentException e ) {
+                    problem = e.getMessage();
+                }
+                if ( problem != null ) {
+                    rejections.add( "Line " + ( firstLine + i ) + " skipped, " + problem );
+                    continue;
+                }
+                members.add( new GymMember( values.get( 0 ), values.get( 1 ), values.get( 2 ), values.get( 3 ) ) );
+            }
+            lineCount = lines.size();
+            lines = null;
+            return this;
+        }
+
+        /**
+         * Gets the number of the last line in the block
+         * @return Line number
+         */
+        private int getLastLine() {
+            return firstLine + lineCount - 1;
+        }
+
+    }
+
+    /**
+     * Error that stops the import
+     */
+    private static class ImportException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private ImportException( String message ) {
+            super( message );
+        }
+
+    }
+
+}
@@ -0,0 +1,552 @@
+/**
+ * @version 1.0
+ * Class: ScriptRunner.java
+ * Purpose: Runs a script of commands against the gym data without any menus, so bulk work ( recharging thousands of
+ *  accounts, returning a day of rentals, ... ) can be done at machine speed instead of by a person typing menu numbers.
+ *  Each line of the script is one command followed by its arguments written as name=value, for example
+ *      member.recharge id=42 amount=50
+ *      member.add first=Jane last=Doe phone=5205550000 email=jane@gym.com package="Summer Pack"
+ *  Values with spaces are put in double quotes, blank lines and lines starting with # are skipped. Each command
+ *  makes the same changes its menu option would and prints one line with its result, and the total throughput is
+ *  printed once the script ends. A command that fails does not stop the script.
+ *
+ * Utilizes:
+ *  - java.io.*
+ *  - java.nio.file.*
+ *  - java.sql.*
+ *  - java.util.*
+ *  - entities.*
+ *  - operations.MemberOperations
+ *  - operations.RentalOperations
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - utils.QueryTracer
+ *  - utils.ValidationUtils
+ *
+ * Constructor: ScriptRunner( GymStore ):
+ *  - Store the gym data is kept in, one repository is opened from it for the whole script
+ *
+ * Methods:
+ *  run( BufferedReader ):
+ *      - Runs every command of the script and returns how many failed
+ */
+
+package gui;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import entities.GymMember;
+import entities.RentalItem;
+import entities.ScheduleEntry;
+import operations.MemberOperations;
+import operations.RentalOperations;
+import repository.GymRepository;
+import repository.GymStore;
+import utils.QueryTracer;
+import utils.ValidationUtils;
+
+public class ScriptRunner {
+
+    private static final String COMMENT = "#"; // Lines starting with this are skipped
+
+    private final GymStore gymStore;
+
+    private final Map<String, Command> commands = new TreeMap<>(); // Commands by name
+
+    private GymRepository repository; // Repository opened for the script that is running
+
+    /**
+     * A command a script can run
+     */
+    private interface Command {
+
+        /**
+         * Runs the command
+         * @param arguments Arguments of the command by name
+         * @return Result to print for the command
+         * @throws ScriptException if the command could not be done
+         */
+        String run( Map<String, String> arguments ) throws ScriptException;
+
+    }
+
+    /**
+     * Thrown when a command can not be done, the message is printed as its result
+     */
+    private static class ScriptException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private ScriptException( String message ) {
+            super( message );
+        }
+
+    }
+
+    public ScriptRunner( GymStore gymStore ) {
+        this.gymStore = gymStore;
+
+        // Member operations
+        commands.put( "member.add", this::addMember );
+        commands.put( "member.remove", this::removeMember );
+        commands.put( "member.recharge", this::rechargeFunds );
+        commands.put( "member.purchase", this::purchasePackage );
+        commands.put( "member.schedule", this::getMemberSchedule );
+
+        // Rental operations
+        commands.put( "rental.checkout", this::rentOutItem );
+        commands.put( "rental.return", this::returnItem );
+        commands.put( "rental.unreturned", this::listUnreturnedItems );
+        commands.put( "rental.quantities", arguments -> repository.getRentalItemsAndQuantities().toString() );
+
+        // Admin operations
+        commands.put( "admin.negative-balances", arguments -> repository.getNegativeAccountUsers().toString() );
+        commands.put( "admin.trainer-hours", this::getTrainerHours );
+
+        // History exports for accounting
+        commands.put( "export.transactions", this::exportTransactions );
+        commands.put( "export.rentals", this::exportRentals );
+    }
+
+    /**
+     * Runs every command of a script in order and prints the result of each one, then the number of commands run
+     * per second
+     * @param script Reader of the script
+     * @return Number of commands that failed, -1 if the script could not be run at all
+     * @throws IOException if the script could not be read
+     */
+    public int run( BufferedReader script ) throws IOException {
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return -1;
+        }
+
+        int commandCount = 0;
+        int failedCount = 0;
+        long startTime = System.nanoTime();
+        try {
+            String line;
+            int lineNumber = 0;
+            while ( ( line = script.readLine() ) != null ) {
+                lineNumber++;
+                line = line.trim();
+                if ( line.isEmpty() || line.startsWith( COMMENT ) ) {
+                    continue;
+                }
+                commandCount++;
+                if ( !runLine( lineNumber, line ) ) {
+                    failedCount++;
+                }
+            }
+        } finally {
+            repository.close();
+            repository = null;
+        }
+
+        double seconds = ( System.nanoTime() - startTime ) / 1e9;
+        System.out
+            .println(
+                String.format(
+                    "Ran %d commands in %.3f s ( %.1f commands/s ), %d succeeded, %d failed",
+                    commandCount,
+                    seconds,
+                    seconds == 0 ? 0 : commandCount / seconds,
+                    commandCount - failedCount,
+                    failedCount ) );
+        return failedCount;
+    }
+
+    /**
+     * Runs the command on one line of the script and prints its result
+     * @param lineNumber Line number in the script, printed with the result
+     * @param line The line
+     * @return True if the command succeeded
+     */
+    private boolean runLine( int lineNumber, String line ) {
+        String commandName = line.split( "\\s+", 2 )[0];
+        String result;
+        boolean succeeded = false;
+        try {
+            Command command = commands.get( commandName );
+            if ( command == null ) {
+                throw new ScriptException( "Unknown command, the commands are " + commands.keySet() );
+            }
+            Map<String, String> arguments = parseArguments( line.substring( commandName.length() ) );
+
+            // Tag the statements run by the command so they can be traced like the menu options
+            QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Script: " + commandName );
+            try {
+                result = command.run( arguments );
+            } finally {
+                operation.end();
+            }
+            succeeded = true;
+        } catch ( ScriptException e ) {
+            result = e.getMessage();
+        } catch ( RuntimeException e ) {
+            result = "Unexpected error: " + e;
+        }
+        System.out.println( lineNumber + ": " + ( succeeded ? "OK " : "FAILED " ) + commandName + " -> " + result );
+        return succeeded;
+    }
+
+    /**
+     * Splits the arguments of a command into name=value pairs. Values can be put in double quotes to include spaces.
+     * @param text Text of the line after the command name
+     * @return Values by argument name
+     * @throws ScriptException if an argument is not written as name=value or a quote is not closed
+     */
+    private static Map<String, String> parseArguments( String text ) throws ScriptException {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean inQuotes = false;
+        for ( char c : text.toCharArray() ) {
+            if ( c == '"' ) {
+                inQuotes = !inQuotes;
+            } else if ( Character.isWhitespace( c ) && !inQuotes ) {
+                if ( token.length() > 0 ) {
+                    tokens.add( token.toString() );
+                    token.setLength( 0 );
+                }
+            } else {
+                token.append( c );
+            }
+        }
+        if ( inQuotes ) {
+            throw new ScriptException( "A quote was not closed" );
+        }
+        if ( token.length() > 0 ) {
+            tokens.add( token.toString() );
+        }
+
+        Map<String, String> arguments = new HashMap<>();
+        for ( String argument : tokens ) {
+            int equals = argument.indexOf( '=' );
+            if ( equals <= 0 ) {
+                throw new ScriptException( "Arguments must be written as name=value, found " + argument );
+            }
+            arguments.put( argument.substring( 0, equals ), argument.substring( equals + 1 ) );
+        }
+        return arguments;
+    }
+
+    // Commands
+
+    /**
+     * member.add first= last= phone= email= [package=]
+     */
+    private String addMember( Map<String, String> arguments ) throws ScriptException {
+        String phoneNumber = getString( arguments, "phone" );
+        String email = getString( arguments, "email" );
+        if ( !ValidationUtils.validatePhoneNumber( phoneNumber ) ) {
+            throw new ScriptException( "Not a valid phone number: " + phoneNumber );
+        }
+        if ( !ValidationUtils.validateEmail( email ) ) {
+            throw new ScriptException( "Not a valid email: " + email );
+        }
+        GymMember member = new GymMember(
+            getString( arguments, "first" ),
+            getString( arguments, "last" ),
+            phoneNumber,
+            email );
+        if ( !repository.addNewGymMemberToDB( member ) ) {
+            throw new ScriptException( "Member creation failed" );
+        }
+
+        String result = "Member ID " + member.getMemberID();
+        if ( arguments.containsKey( "package" ) ) {
+            result += ", " + purchasePackage( member, arguments.get( "package" ) );
+        }
+        return result;
+    }
+
+    /**
+     * member.remove id=
+     */
+    private String removeMember( Map<String, String> arguments ) throws ScriptException {
+        GymMember member = getMember( arguments );
+        if ( member.getBalance() < 0 ) {
+            throw new ScriptException(
+                "Member must pay $" + member.getBalance() + " before they can cancel their membership" );
+        }
+        repository.removeMemberFromAllTheirClasses( member.getMemberID() );
+        repository.removeMemberFromDB( member );
+        return "Removed " + member.getFullName();
+    }
+
+    /**
+     * member.recharge id= amount=
+     */
+    private String rechargeFunds( Map<String, String> arguments ) throws ScriptException {
+        GymMember member = getMember( arguments );
+        float amount = getFloat( arguments, "amount" );
+        if ( amount < 0 ) {
+            throw new ScriptException( "Recharge amount must be positive" );
+        }
+        makePurchaseOrRecharge( member, amount, null );
+        return "Balance $" + member.getBalance();
+    }
+
+    /**
+     * member.purchase id= package=
+     */
+    private String purchasePackage( Map<String, String> arguments ) throws ScriptException {
+        return purchasePackage( getMember( arguments ), getString( arguments, "package" ) );
+    }
+
+    /**
+     * member.schedule id= month=
+     */
+    private String getMemberSchedule( Map<String, String> arguments ) throws ScriptException {
+        GymMember member = getMember( arguments );
+        int month = getInt( arguments, "month" );
+        if ( month < 1 || month > 12 ) {
+            throw new ScriptException( "Month must be 1-12" );
+        }
+        List<ScheduleEntry> schedule = repository.getMemberScheduleForMonth( member, month );
+        List<Integer> classNums = new ArrayList<>();
+        for ( ScheduleEntry entry : schedule ) {
+            classNums.add( entry.getClassNum() );
+        }
+        return schedule.size() + " classes " + classNums;
+    }
+
+    /**
+     * rental.checkout id= item= qty=, item can list several items separated by commas and qty ( 1 if not given ) is
+     * rented out of each
+     */
+    private String rentOutItem( Map<String, String> arguments ) throws ScriptException {
+        GymMember member = getMember( arguments );
+        int quantity = arguments.containsKey( "qty" ) ? getInt( arguments, "qty" ) : 1;
+        if ( quantity < 1 ) {
+            throw new ScriptException( "Quantity must be at least 1" );
+        }
+        List<RentalItem> rentalItems = repository.getRentalItems();
+        Map<RentalItem, Integer> itemsSelected = new LinkedHashMap<>();
+        for ( String itemName : getString( arguments, "item" ).split( "," ) ) {
+            RentalItem itemSelected = null;
+            for ( RentalItem rentalItem : rentalItems ) {
+                if ( rentalItem.getItemName().equalsIgnoreCase( itemName.trim() ) ) {
+                    itemSelected = rentalItem;
+                    break;
+                }
+            }
+            if ( itemSelected == null ) {
+                throw new ScriptException( "No rental item named " + itemName.trim() );
+            }
+            itemsSelected.merge( itemSelected, quantity, Integer::sum );
+        }
+
+        List<String> shortItems;
+        try {
+            shortItems = RentalOperations.rentOutItems( repository, member, itemsSelected );
+        } catch ( SQLException e ) {
+            throw new ScriptException( "Unable to rent out the items: " + e.getMessage() );
+        }
+        if ( shortItems == null ) {
+            throw new ScriptException( "Unable to rent out the items, no changes were saved" );
+        }
+        if ( !shortItems.isEmpty() ) {
+            throw new ScriptException( "Not enough in stock of " + String.join( ", ", shortItems ) );
+        }
+        List<String> left = new ArrayList<>();
+        for ( RentalItem rentalItem : itemsSelected.keySet() ) {
+            left.add( rentalItem.getQuantityInStock() + " " + rentalItem.getItemName() );
+        }
+        return String.join( ", ", left ) + " left in stock";
+    }
+
+    /**
+     * rental.return id= item=
+     */
+    private String returnItem( Map<String, String> arguments ) throws ScriptException {
+        GymMember member = getMember( arguments );
+        String itemName = getString( arguments, "item" );
+        if ( !repository.getCheckoutRentalsForMember( member ).containsKey( itemName ) ) {
+            throw new ScriptException( member.getFullName() + " has no unreturned " + itemName );
+        }
+        try {
+            if ( !RentalOperations.returnItem( repository, member, itemName ) ) {
+                throw new ScriptException( "Unable to return " + itemName + ", no changes were saved" );
+            }
+        } catch ( SQLException e ) {
+            throw new ScriptException( "Unable to return " + itemName + ": " + e.getMessage() );
+        }
+        return "Returned " + itemName;
+    }
+
+    /**
+     * rental.unreturned id=
+     */
+    private String listUnreturnedItems( Map<String, String> arguments ) throws ScriptException {
+        return repository.getCheckoutRentalsForMember( getMember( arguments ) ).toString();
+    }
+
+    /**
+     * admin.trainer-hours month=
+     */
+    private String getTrainerHours( Map<String, String> arguments ) throws ScriptException {
+        int month = getInt( arguments, "month" );
+        if ( month < 1 || month > 12 ) {
+            throw new ScriptException( "Month must be 1-12" );
+        }
+        return repository.getAllTrainersWorkinghours( month ).toString();
+    }
+
+    /**
+     * export.transactions file= [format=csv|ndjson] [from=YYYY-MM-DD] [to=YYYY-MM-DD] [id=]
+     */
+    private String exportTransactions( Map<String, String> arguments ) throws ScriptException {
+        Path file = Paths.get( getString( arguments, "file" ) );
+        try {
+            long rows = new HistoryExporter( repository )
+                .exportTransactions(
+                    file,
+                    arguments.getOrDefault( "format", HistoryExporter.CSV ),
+                    getDate( arguments, "from" ),
+                    getDate( arguments, "to" ),
+                    arguments.containsKey( "id" ) ? getInt( arguments, "id" ) : 0 );
+            return "Wrote " + rows + " transactions to " + file;
+        } catch ( SQLException | IOException | IllegalArgumentException e ) {
+            throw new ScriptException( "Unable to export the transactions: " + e.getMessage() );
+        }
+    }
+
+    /**
+     * export.rentals file= [format=csv|ndjson] [from=YYYY-MM-DD] [to=YYYY-MM-DD] [id=]
+     */
+    private String exportRentals( Map<String, String> arguments ) throws ScriptException {
+        Path file = Paths.get( getString( arguments, "file" ) );
+        try {
+            long rows = new HistoryExporter( repository )
+                .exportRentals(
+                    file,
+                    arguments.getOrDefault( "format", HistoryExporter.CSV ),
+                    getDate( arguments, "from" ),
+                    getDate( arguments, "to" ),
+                    arguments.containsKey( "id" ) ? getInt( arguments, "id" ) : 0 );
+            return "Wrote " + rows + " rentals to " + file;
+        } catch ( SQLException | IOException | IllegalArgumentException e ) {
+            throw new ScriptException( "Unable to export the rentals: " + e.getMessage() );
+        }
+    }
+
+    // Helpers shared by the commands
+
+    /**
+     * Buys a package for a member at their discounted price
+     * @param member Member buying the package
+     * @param packageName Name of the package
+     * @return Result to print
+     * @throws ScriptException if there is no such package or the purchase was not saved
+     */
+    private String purchasePackage( GymMember member, String packageName ) throws ScriptException {
+        Float price = repository.getPackagesAndPrices().get( packageName );
+        if ( price == null ) {
+            throw new ScriptException( "No package named " + packageName );
+        }
+        float cost = MemberOperations.getPackageCost( price, member );
+        List<Integer> fullClasses = makePurchaseOrRecharge( member, -cost, packageName );
+        String result = "Bought " + packageName + " for $" + cost + ", balance $" + member.getBalance();
+        if ( !fullClasses.isEmpty() ) {
+            result += ", not enrolled in full classes " + fullClasses;
+        }
+        return result;
+    }
+
+    /**
+     * Saves a purchase or recharge the same way the member menu does
+     * @param member Member whose balance changes
+     * @param amount Amount to add, negative for a purchase
+     * @param packageName Package bought, null for a recharge
+     * @return Class numbers of the package that were full
+     * @throws ScriptException if nothing was saved
+     */
+    private List<Integer> makePurchaseOrRecharge( GymMember member, float amount, String packageName )
+        throws ScriptException {
+        List<Integer> fullClasses;
+        try {
+            fullClasses = MemberOperations.makePurchaseOrRecharge( repository, member, amount, packageName );
+        } catch ( SQLException e ) {
+            throw new ScriptException( "Unable to complete the transaction: " + e.getMessage() );
+        }
+        if ( fullClasses == null ) {
+            throw new ScriptException( "Unable to complete the transaction, no changes were saved" );
+        }
+        return fullClasses;
+    }
+
+    /**
+     * Gets the member whose ID is the id argument
+     * @param arguments Arguments of the command
+     * @return Member
+     * @throws ScriptException if the argument is missing or there is no such member
+     */
+    private GymMember getMember( Map<String, String> arguments ) throws ScriptException {
+        int memberID = getInt( arguments, "id" );
+        GymMember member = repository.retrieveMemberFromID( memberID );
+        if ( member == null ) {
+            throw new ScriptException( "No member with id " + memberID );
+        }
+        return member;
+    }
+
+    private static String getString( Map<String, String> arguments, String name ) throws ScriptException {
+        String value = arguments.get( name );
+        if ( value == null || value.isEmpty() ) {
+            throw new ScriptException( "Missing argument " + name + "=" );
+        }
+        return value;
+    }
+
+    private static int getInt( Map<String, String> arguments, String name ) throws ScriptException {
+        String value = getString( arguments, name );
+        try {
+            return Integer.parseInt( value );
+        } catch ( NumberFormatException e ) {
+            throw new ScriptException( name + " must be a whole number, found " + value );
+        }
+    }
+
+    private static Date getDate( Map<String, String> arguments, String name ) throws ScriptException {
+        String value = arguments.get( name );
+        if ( value == null ) {
+            return null;
+        }
+        try {
+            return Date.valueOf( value );
+        } catch ( IllegalArgumentException e ) {
+            throw new ScriptException( name + " must be a date written as YYYY-MM-DD, found " + value );
+        }
+    }
+
+    private static float getFloat( Map<String, String> arguments, String name ) throws ScriptException {
+        String value = getString( arguments, name );
+        float number;
+        try {
+            number = Float.parseFloat( value );
+        } catch ( NumberFormatException e ) {
+            throw new ScriptException( name + " must be a number, found " + value );
+        }
+        // parseFloat takes NaN and Infinity, which would be saved as a balance or price
+        if ( !Float.isFinite( number ) ) {
+            throw new ScriptException( name + " must be a number, found " + value );
+        }
+        return number;
+    }
+
+}
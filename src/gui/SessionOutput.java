@@ -0,0 +1,249 @@
+/**
+ * @version 1.0
+ * Class: SessionOutput.java
+ * Purpose: Stands in for System.out while terminal sessions are being served, so everything the menus, CommonPrints
+ *  and DBUtils print goes to the terminal of the session whose thread printed it. A session thread binds its own
+ *  stream with bind() and unbinds it with unbind() when the session ends, every other thread ( the server, the
+ *  metrics dump, shutdown hooks ) still prints to the console. Every call is passed straight to the stream of the
+ *  calling thread, so sessions never wait on each other to print.
+ *
+ * Extends the PrintStream class
+ * Utilizes:
+ *  - java.io.*
+ *  - java.util.Locale
+ *
+ * Methods:
+ *  install():
+ *      - Replaces System.out with one SessionOutput, once
+ *  bind( PrintStream ), unbind():
+ *      - Sends what the calling thread prints to a stream, and back to the console
+ */
+
+package gui;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+public class SessionOutput extends PrintStream {
+
+    private static final ThreadLocal<PrintStream> sessionStream = new ThreadLocal<>();
+
+    private static SessionOutput installed; // The SessionOutput that replaced System.out, null until install()
+
+    private final PrintStream console; // Where threads with no session print
+
+    private SessionOutput( PrintStream console ) {
+        super( console, true );
+        this.console = console;
+    }
+
+    /**
+     * Replaces System.out with a SessionOutput that prints to the console until a thread binds its own stream.
+     * Calling it again does nothing.
+     */
+    public static synchronized void install() {
+        if ( installed == null ) {
+            installed = new SessionOutput( System.out );
+            System.setOut( installed );
+        }
+    }
+
+    /**
+     * Sends everything the calling thread prints to System.out to a stream
+     * @param out Stream of the session the thread serves
+     */
+    public static void bind( PrintStream out ) {
+        sessionStream.set( out );
+    }
+
+    /**
+     * Sends what the calling thread prints back to the console
+     */
+    public static void unbind() {
+        sessionStream.remove();
+    }
+
+    /**
+     * Stream the calling thread prints to
+     */
+    private PrintStream target() {
+        PrintStream out = sessionStream.get();
+        return out != null ? out : console;
+    }
+
+    @Override
+    public void write( int b ) {
+        target().write( b );
+    }
+
+    @Override
+    public void write( byte[] buf, int off, int len ) {
+        target().write( buf, off, len );
+    }
+
+    @Override
+    public void write( byte[] buf ) {
+        target().write( buf, 0, buf.length );
+    }
+
+    @Override
+    public void writeBytes( byte[] buf ) {
+        target().write( buf, 0, buf.length );
+    }
+
+    @Override
+    public void flush() {
+        target().flush();
+    }
+
+    /**
+     * Closing System.out would close the console or a session's terminal for every thread, so nothing is closed
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    @Override
+    public boolean checkError() {
+        return target().checkError();
+    }
+
+    @Override
+    public void print( boolean b ) {
+        target().print( b );
+    }
+
+    @Override
+    public void print( char c ) {
+        target().print( c );
+    }
+
+    @Override
+    public void print( int i ) {
+        target().print( i );
+    }
+
+    @Override
+    public void print( long l ) {
+        target().print( l );
+    }
+
+    @Override
+    public void print( float f ) {
+        target().print( f );
+    }
+
+    @Override
+    public void print( double d ) {
+        target().print( d );
+    }
+
+    @Override
+    public void print( char[] s ) {
+        target().print( s );
+    }
+
+    @Override
+    public void print( String s ) {
+        target().print( s );
+    }
+
+    @Override
+    public void print( Object obj ) {
+        target().print( obj );
+    }
+
+    @Override
+    public void println() {
+        target().println();
+    }
+
+    @Override
+    public void println( boolean x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( char x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( int x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( long x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( float x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( double x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( char[] x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( String x ) {
+        target().println( x );
+    }
+
+    @Override
+    public void println( Object x ) {
+        target().println( x );
+    }
+
+    @Override
+    public PrintStream printf( String format, Object... args ) {
+        target().printf( format, args );
+        return this;
+    }
+
+    @Override
+    public PrintStream printf( Locale l, String format, Object... args ) {
+        target().printf( l, format, args );
+        return this;
+    }
+
+    @Override
+    public PrintStream format( String format, Object... args ) {
+        target().format( format, args );
+        return this;
+    }
+
+    @Override
+    public PrintStream format( Locale l, String format, Object... args ) {
+        target().format( l, format, args );
+        return this;
+    }
+
+    @Override
+    public PrintStream append( CharSequence csq ) {
+        target().append( csq );
+        return this;
+    }
+
+    @Override
+    public PrintStream append( CharSequence csq, int start, int end ) {
+        target().append( csq, start, end );
+        return this;
+    }
+
+    @Override
+    public PrintStream append( char c ) {
+        target().append( c );
+        return this;
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * @version 1.0
+ * Class: SessionServer.java
+ * Purpose: Serves many terminals from one running program, so the front desks of a gym share one pool of DB
+ *  connections and one copy of the member cache, rental catalog and trainer schedule instead of each starting the
+ *  program. Terminals connect over TCP on the loopback address ( nc localhost 4600 ) or over a Unix domain socket
+ *  ( socat - UNIX-CONNECT:gym.sock ), only from the same machine. Every session gets its own thread with its own
+ *  CommandLineGui, so its scanner and menu state are its own, and SessionOutput sends what that thread prints back to
+ *  its terminal. A session ends when the user selects exit or the terminal disconnects. At most 32 sessions are
+ *  served at once ( -Dgym.server.maxSessions ), terminals that connect past that are told to try again later. A
+ *  session only holds one of the pool's connections while a DB call of its menus runs, not while it waits for the
+ *  user to type, so many more sessions can be served than the pool has connections.
+ *
+ * Utilizes:
+ *  - java.io.*
+ *  - java.net.*
+ *  - java.nio.channels.*
+ *  - java.nio.charset.StandardCharsets
+ *  - java.nio.file.*
+ *  - java.util.NoSuchElementException
+ *  - java.util.concurrent.atomic.*
+ *  - repository.GymStore
+ *  - utils.CommonPrints
+ *
+ * Constructor: SessionServer( GymStore, String ):
+ *  - Store every session shares, and a port number or the path of a Unix domain socket to listen on
+ *
+ * Methods:
+ *  serve():
+ *      - Accepts terminals until the program is stopped
+ */
+
+package gui;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import repository.GymStore;
+import utils.CommonPrints;
+
+public class SessionServer {
+
+    private static final int MAX_SESSIONS = Integer.getInteger( "gym.server.maxSessions", 32 );
+
+    private static final int OUTPUT_BUFFER_SIZE = 8 * 1024; // Bytes printed before they are sent to the terminal
+
+    private final GymStore gymStore;
+
+    private final SocketAddress address;
+
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    private final AtomicLong sessionCount = new AtomicLong(); // Sessions started so far, numbers the next one
+
+    /**
+     * Creates a server, nothing is listened on until serve() is called
+     * @param gymStore Store every session shares
+     * @param listenOn Port to listen on at the loopback address, or the path of a Unix domain socket
+     */
+    public SessionServer( GymStore gymStore, String listenOn ) {
+        this.gymStore = gymStore;
+        if ( listenOn.matches( "\\d+" ) ) {
+            address = new InetSocketAddress( InetAddress.getLoopbackAddress(), Integer.parseInt( listenOn ) );
+        } else {
+            address = UnixDomainSocketAddress.of( listenOn );
+        }
+    }
+
+    /**
+     * Listens for terminals and starts a session for each one until the program is stopped. A Unix domain socket
+     * file is deleted when the program exits.
+     * @throws IOException if the address cannot be listened on
+     */
+    public void serve() throws IOException {
+        SessionOutput.install();
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        try ( ServerSocketChannel server = unix
+            ? ServerSocketChannel.open( StandardProtocolFamily.UNIX )
+            : ServerSocketChannel.open() ) {
+            server.bind( address );
+            if ( unix ) {
+                ( (UnixDomainSocketAddress) address ).getPath().toFile().deleteOnExit();
+            }
+            System.out.println( "Accepting terminal sessions on " + describe( address ) );
+
+            while ( true ) {
+                SocketChannel channel = server.accept();
+                int active = activeSessions.incrementAndGet();
+                if ( active > MAX_SESSIONS ) {
+                    activeSessions.decrementAndGet();
+                    System.out.println( "Refused a terminal, " + MAX_SESSIONS + " sessions are active" );
+                    refuse( channel );
+                    continue;
+                }
+                long sessionNum = sessionCount.incrementAndGet();
+                System.out.println( "Session " + sessionNum + " started ( " + active + " active )" );
+                Thread thread = new Thread( () -> runSession( channel, sessionNum ), "terminal-session-" + sessionNum );
+                thread.setDaemon( true );
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Runs the menus for one terminal until the user exits or the terminal disconnects
+     * @param channel Connection to the terminal, closed when the session ends
+     * @param sessionNum Number of the session, for the console
+     */
+    private void runSession( SocketChannel channel, long sessionNum ) {
+        try ( channel ) {
+            PrintStream out = new PrintStream(
+                new BufferedOutputStream( Channels.newOutputStream( channel ), OUTPUT_BUFFER_SIZE ),
+                true,
+                StandardCharsets.UTF_8 );
+            SessionOutput.bind( out );
+            try {
+                new CommandLineGui( gymStore, flushBeforeRead( Channels.newInputStream( channel ), out ) ).startGui();
+                CommonPrints.printExitMessage();
+            } catch ( NoSuchElementException e ) {
+                // The terminal disconnected while the menus waited for input
+            } finally {
+                out.flush();
+                SessionOutput.unbind();
+            }
+        } catch ( IOException | RuntimeException e ) {
+            System.out.println( "Unable to serve session " + sessionNum );
+            System.out.println( e.getMessage() );
+        }
+        System.out.println( "Session " + sessionNum + " ended ( " + activeSessions.decrementAndGet() + " active )" );
+    }
+
+    /**
+     * Wraps the input of a terminal so everything printed to it is sent before waiting for the user to type, prompts
+     * printed without a new line would otherwise stay in the buffer
+     * @param in Input of the terminal
+     * @param out Output of the same terminal
+     * @return Stream that flushes out before every read
+     */
+    private static InputStream flushBeforeRead( InputStream in, PrintStream out ) {
+        return new FilterInputStream( in ) {
+
+            @Override
+            public int read() throws IOException {
+                out.flush();
+                return super.read();
+            }
+
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                out.flush();
+                return super.read( b, off, len );
+            }
+        };
+    }
+
+    /**
+     * Tells a terminal that connected past the limit of sessions to try again and disconnects it
+     * @param channel Connection to the terminal
+     */
+    private static void refuse( SocketChannel channel ) {
+        try ( channel ) {
+            PrintStream out = new PrintStream( Channels.newOutputStream( channel ), true, StandardCharsets.UTF_8 );
+            out.println( "Every terminal session is in use, try again later." );
+        } catch ( IOException e ) {
+            // The terminal is gone already
+        }
+    }
+
+    private static String describe( SocketAddress address ) {
+        if ( address instanceof UnixDomainSocketAddress ) {
+            Path path = ( (UnixDomainSocketAddress) address ).getPath();
+            return "Unix domain socket " + Paths.get( "" ).toAbsolutePath().resolve( path );
+        }
+        InetSocketAddress inetAddress = (InetSocketAddress) address;
+        return inetAddress.getHostString() + " port " + inetAddress.getPort();
+    }
+
+}
@@ -8,18 +8,22 @@
  *          hours.
  * 
  * Utilizes:
- *  - java,sql.Connection
+ *  - java.sql.SQLException
  *  - java.time.Month
  *  - java.util.ArrayList
  *  - java.util.Collections
  *  - java.util.List
  *  - java.util.Map
  *  - java.util.Scanner
+ *  - utils.CallMetrics
  *  - utils.CommonPrints
- *  - utils.DBUtils
+ *  - utils.QueryTracer
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - repository.StoreBusyException
  * 
- * Constructor: AdminOperations( Connection, Scanner ):
- *      - Connection to DB
+ * Constructor: AdminOperations( GymStore, Scanner ):
+ *      - Store the gym data is kept in, a repository is opened from it for each operation
  *      - Scanner to read user input
  * 
  * Methods:
@@ -30,6 +34,12 @@
  *      - Will query database on all accounts whose balance is below zero and print them out to the console
  * showTrainerWorkingHours():
  *      - Queries the DB for the total amount of hours that a trainer is working for a month specified by the user
+ * showTrainerWorkingHoursForYear():
+ *      - Queries the DB once for every trainer's hours in each month of the year and prints them as a table
+ * showDatabaseStatistics():
+ *      - Prints the counters kept by the store ( connection pool, statement cache, ID allocator, caches, ... )
+ * showCallMetrics():
+ *      - Prints the latency percentiles, statement, row and error counts of every DB call made so far
  * getInputFromUser():
  *      - Reads input from user through stdin and if they type anyforn of cancel the exit flag is set and thus when returned
  *        back to an operation the operation will terminate itself
@@ -38,18 +48,23 @@
  *  - MAX_INTEGER_OPTION: Maximum valid integer option for user to select
  *  - MIN_INTEGER_OPTION: Minimum valid integer option for the user to select
  *  - EXIT: String that will input will be compared to, in order to set exitSignal flag
+ *  - ALL_MONTHS: String that can be entered instead of a month to see trainer hours for every month
  *  - NEGATIVE_BALANCE_OPTION: Integer selection that will list negative balance accounts
  *  - TRAINER_HOURS_OPTION: Integer selection that will list all trainers working hours for month specified by user
+ *  - DB_STATISTICS_OPTION: Integer selection that will print the statistics of the store
+ *  - CALL_METRICS_OPTION: Integer selection that will print the metrics of every DB call
  *  - RETURN_TO_MAIN_MENU_OPTION: Integer selection that will return control back to the main menu of the program
+ *  - OPTION_NAMES: Names of the options, used to tag the statements each option runs with QueryTracer
  * 
  * Global Variables:
  *  scanner: Scanner to read input from stdin from user
- *  dbConnection: Connection object that is currently connected to Oracle DB
+ *  gymStore: Store the gym data is kept in
+ *  repository: Repository opened from the store for the current operation
  *  exitSignal: boolean that will signal a function to stop what it is doing and return to main menu
  */
 package operations;
 
-import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.Month;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -57,28 +72,44 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 
+import repository.GymRepository;
+import repository.GymStore;
+import repository.StoreBusyException;
+import utils.CallMetrics;
 import utils.CommonPrints;
-import utils.DBUtils;
+import utils.QueryTracer;
 
 public class AdminOperations implements OperationsInterface {
 
-    private static final int MAX_INTEGER_OPTION = 3;
+    private static final int MAX_INTEGER_OPTION = 5;
     private static final int MIN_INTEGER_OPTION = 1;
     private static final String EXIT = "CANCEL";
+    private static final String ALL_MONTHS = "ALL"; // Input to show trainer hours for every month
 
     // Options 
     private static final int NEGATIVE_BALANCE_OPTION = 1;
     private static final int TRAINER_HOURS_OPTION = 2;
-    private static final int RETURN_TO_MAIN_MENU_OPTION = 3;
+    private static final int DB_STATISTICS_OPTION = 3;
+    private static final int CALL_METRICS_OPTION = 4;
+    private static final int RETURN_TO_MAIN_MENU_OPTION = 5;
+
+    // Names of the options above, the statements each option runs are tagged with its name
+    private static final String[] OPTION_NAMES = {
+        "List members who have a negative balance",
+        "List all trainer's working hours",
+        "Show database connection statistics",
+        "Show DB call metrics" };
 
     private Scanner scanner;
 
-    private Connection dbConnection;
+    private GymStore gymStore;
+
+    private GymRepository repository; // Repository opened from the store for the current operation
 
     private boolean exitSignal;
 
-    public AdminOperations( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    public AdminOperations( GymStore gymStore, Scanner scanner ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
     }
 
@@ -113,16 +144,46 @@ public class AdminOperations implements OperationsInterface {
         }
 
         System.out.println();
-        // Open menu that user selected
-        switch ( option ) {
-            case NEGATIVE_BALANCE_OPTION:
-                listNegativeBalanceMembers();
-                break;
-            case TRAINER_HOURS_OPTION:
-                showTrainerWorkingHours();
-                break;
-            case RETURN_TO_MAIN_MENU_OPTION:
-                break;
+        if ( option == RETURN_TO_MAIN_MENU_OPTION ) {
+            System.out.println();
+            return;
+        }
+
+        // Open a repository for this operation, it only holds a connection while it runs a DB call
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return;
+        }
+
+        // Tag the statements run by the option so they can be traced
+        QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Admin: " + OPTION_NAMES[option - 1] );
+        try {
+            // Open menu that user selected
+            switch ( option ) {
+                case NEGATIVE_BALANCE_OPTION:
+                    listNegativeBalanceMembers();
+                    break;
+                case TRAINER_HOURS_OPTION:
+                    showTrainerWorkingHours();
+                    break;
+                case DB_STATISTICS_OPTION:
+                    showDatabaseStatistics();
+                    break;
+                case CALL_METRICS_OPTION:
+                    showCallMetrics();
+                    break;
+            }
+        } catch ( StoreBusyException e ) {
+            // Every connection stayed in use while the option needed one
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+        } finally {
+            repository.close();
+            repository = null;
+            operation.end();
         }
 
         System.out.println();
@@ -135,7 +196,7 @@ public class AdminOperations implements OperationsInterface {
     private void listNegativeBalanceMembers() {
         System.out.println( "Members with negative balances (and their phone number)" );
         System.out.println( "-------------------------------------------------------" );
-        Map<String, String> namesAndNums = DBUtils.getNegativeAccountUsers( dbConnection );
+        Map<String, String> namesAndNums = repository.getNegativeAccountUsers();
         if ( namesAndNums.isEmpty() ) {
             System.out.println( "There are zero negative balance accounts" );
             return;
@@ -149,13 +210,14 @@ public class AdminOperations implements OperationsInterface {
 
     /**
      * Function that will query DB for the amount of hours that each trainer works in a given month specified
-     * through user input. Will validate that the month is 1-12. Also handles case where there are no trainers working
-     * the month given.
+     * through user input. Will validate that the month is 1-12, or 'All' to show every month of the year at once.
+     * Also handles case where there are no trainers working the month given.
      */
     private void showTrainerWorkingHours() {
         System.out.println( "Trainer's working hours" );
         System.out.println( "----------------------------------------" );
         System.out.println( "Enter month to search for ( 1 for January and 12 for December etc. )" );
+        System.out.println( "Or enter 'All' to see every month of the year" );
         System.out.println();
         String userInput = null;
         int month;
@@ -165,6 +227,11 @@ public class AdminOperations implements OperationsInterface {
                 return;
             }
 
+            if ( userInput.equalsIgnoreCase( ALL_MONTHS ) ) {
+                showTrainerWorkingHoursForYear();
+                return;
+            }
+
             try {
                 month = Integer.valueOf( userInput );
             } catch ( NumberFormatException e ) {
@@ -172,14 +239,14 @@ public class AdminOperations implements OperationsInterface {
                 continue;
             }
 
-            if ( month < 0 || month > 12 ) {
+            if ( month < 1 || month > 12 ) {
                 System.out.println( "Enter 1-12 please" );
                 continue;
             }
             break;
         }
         System.out.println();
-        Map<String, Float> trainerHours = DBUtils.getAllTrainersWorkinghours( month, dbConnection );
+        Map<String, Float> trainerHours = repository.getAllTrainersWorkinghours( month );
         String monthString = Month.of( month ).toString();
         if ( trainerHours.isEmpty() ) {
             System.out.println( "There are no trainers working in " + monthString );
@@ -188,11 +255,68 @@ public class AdminOperations implements OperationsInterface {
         System.out.println( "\nTrainer hours for " + monthString );
         System.out.println( "-----------------" );
         for ( String trainerName : trainerHours.keySet() ) {
-            float hours = ( trainerHours.get( trainerName ) / 60 ) * 4;
+            float hours = minutesToMonthlyHours( trainerHours.get( trainerName ) );
             System.out.println( trainerName + " is working " + hours + " hours" );
         }
     }
 
+    /**
+     * Prints a table of every trainer's working hours for each month of the year, all fetched with one query
+     */
+    private void showTrainerWorkingHoursForYear() {
+        System.out.println();
+        Map<String, float[]> trainerHours = repository.getAllTrainersWorkinghoursByMonth();
+        if ( trainerHours.isEmpty() ) {
+            System.out.println( "There are no trainers working this year" );
+            return;
+        }
+
+        int nameWidth = "Trainer".length();
+        for ( String trainerName : trainerHours.keySet() ) {
+            nameWidth = Math.max( nameWidth, trainerName.length() );
+        }
+
+        System.out.println( "\nTrainer hours for every month" );
+        System.out.println( "-----------------------------" );
+        StringBuilder header = new StringBuilder( String.format( "%-" + nameWidth + "s", "Trainer" ) );
+        for ( Month month : Month.values() ) {
+            header.append( String.format( " %6s", month.toString().substring( 0, 3 ) ) );
+        }
+        System.out.println( header );
+        for ( String trainerName : trainerHours.keySet() ) {
+            StringBuilder row = new StringBuilder( String.format( "%-" + nameWidth + "s", trainerName ) );
+            for ( float minutes : trainerHours.get( trainerName ) ) {
+                row.append( String.format( " %6.1f", minutesToMonthlyHours( minutes ) ) );
+            }
+            System.out.println( row );
+        }
+    }
+
+    /**
+     * Classes meet once a week so the minutes for a class are counted 4 times in a month
+     * @param minutes Total minutes of the trainer's classes
+     * @return Hours worked in the month
+     */
+    private float minutesToMonthlyHours( float minutes ) {
+        return ( minutes / 60 ) * 4;
+    }
+
+    /**
+     * Prints the counters kept by the store so that we can see how many connections are being opened, how many
+     * statements are being reused instead of prepared again and how many trips to the DB were saved
+     */
+    private void showDatabaseStatistics() {
+        System.out.println( gymStore.getStatistics() );
+    }
+
+    /**
+     * Prints how long each DB call has been taking ( p50, p90, p99 and max ) along with how many statements it ran,
+     * how many rows it read and how many times it failed, to find which calls make the program slow
+     */
+    private void showCallMetrics() {
+        System.out.println( CallMetrics.getStatistics() );
+    }
+
     /**
      * Reads input in from stdin and sees if the user wants to cancel the current operation.
      * If so it sets the exitSignal flag so the function can exit on return
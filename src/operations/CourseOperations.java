@@ -7,7 +7,7 @@
  * Purpose: Encapsulate operations that are speicific to courses and classes. Such as course creation, course deletion, and course updates.
  * 
  * Utilizes:
- *  - java.sql.Connection
+ *  - java.sql.SQLException
  *  - java.sql.Date
  *  - java.sql.Timestamp
  *  - java.time.LocalDate
@@ -17,9 +17,12 @@
  *  - java.util.Scanner
  *  - java.util.Set
  *  - java.util.stream.Collectors
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - repository.StoreBusyException
  * 
- * Constructor: CourseOperations(Connection, Scanner):
- *      - Connection to DB
+ * Constructor: CourseOperations(GymStore, Scanner):
+ *      - Store the gym data is kept in, a repository is opened from it for each operation
  *      - Scanner to read input from stdin
  * 
  * Methods:
@@ -45,16 +48,18 @@
  *  - ADD_CLASS_OPTION: Integer value to enter the add class wizard
  *  - DELETE_CLASS_OPTION: Integer value to enter the delete class wizard
  *  - RETURN_TO_MAIN_MENU_OPTION: Integer value to return program to the main menu
+ *  - OPTION_NAMES: Names of the options, used to tag the statements each option runs with QueryTracer
  * 
  * Global Variables:
  *  scanner: Scanner object to read input from user through stdin
- *  dbConnection: Connection to the DB
+ *  gymStore: Store the gym data is kept in
+ *  repository: Repository opened from the store for the current operation
  *  exitSignal: Boolean value that tells the program if it should return to main menu or not
  */
 package operations;
 
-import java.sql.Connection;
 import java.sql.Date;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.Calendar;
@@ -67,8 +72,11 @@ import java.util.stream.Collectors;
 import entities.Course;
 import entities.Trainer;
 import entities.Class;
+import repository.GymRepository;
+import repository.GymStore;
+import repository.StoreBusyException;
 import utils.CommonPrints;
-import utils.DBUtils;
+import utils.QueryTracer;
 
 public class CourseOperations implements OperationsInterface {
 
@@ -82,14 +90,19 @@ public class CourseOperations implements OperationsInterface {
     private static final int DELETE_CLASS_OPTION = 3;
     private static final int RETURN_TO_MAIN_MENU_OPTION = 4;
 
-    private Connection dbConnection;
+    // Names of the options above, the statements each option runs are tagged with its name
+    private static final String[] OPTION_NAMES = { "Add a course", "Add a class offering", "Remove a class offering" };
+
+    private GymStore gymStore;
+
+    private GymRepository repository; // Repository opened from the store for the current operation
 
     private Scanner scanner;
 
     private boolean exitSignal;
 
-    public CourseOperations( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    public CourseOperations( GymStore gymStore, Scanner scanner ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
     }
 
@@ -124,19 +137,43 @@ public class CourseOperations implements OperationsInterface {
         }
 
         System.out.println();
-        // Now go through whatever operation was selected
-        switch ( option ) {
-            case ADD_COURSE_OPTION:
-                openAddCourseWizard();
-                break;
-            case ADD_CLASS_OPTION:
-                openAddClassWizard();
-                break;
-            case DELETE_CLASS_OPTION:
-                openRemoveClassWizard();
-                break;
-            case RETURN_TO_MAIN_MENU_OPTION:
-                break;
+        if ( option == RETURN_TO_MAIN_MENU_OPTION ) {
+            System.out.println();
+            return;
+        }
+
+        // Open a repository for this operation, it only holds a connection while it runs a DB call
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return;
+        }
+
+        // Tag the statements run by the option so they can be traced
+        QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Course: " + OPTION_NAMES[option - 1] );
+        try {
+            // Now go through whatever operation was selected
+            switch ( option ) {
+                case ADD_COURSE_OPTION:
+                    openAddCourseWizard();
+                    break;
+                case ADD_CLASS_OPTION:
+                    openAddClassWizard();
+                    break;
+                case DELETE_CLASS_OPTION:
+                    openRemoveClassWizard();
+                    break;
+            }
+        } catch ( StoreBusyException e ) {
+            // Every connection stayed in use while the option needed one
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+        } finally {
+            repository.close();
+            repository = null;
+            operation.end();
         }
 
         System.out.println();
@@ -173,9 +210,9 @@ public class CourseOperations implements OperationsInterface {
         }
 
         // Wait to generate id until we know creation will actually be done
-        int courseID = DBUtils.generateIDNumberFromSequence( dbConnection );
+        int courseID = repository.generateIDNumberFromSequence();
         Course newCourse = new Course( courseID, category, catalogNum );
-        DBUtils.saveNewCourse( newCourse, dbConnection );
+        repository.saveNewCourse( newCourse );
     }
 
     /**
@@ -186,7 +223,7 @@ public class CourseOperations implements OperationsInterface {
         System.out.println( "New Class Wizard ( Type 'Cancel' at anytime to cancel class creation )" );
         System.out.println( "----------------------------------------------------------------------" );
 
-        int classId = DBUtils.generateIDNumberFromSequence( dbConnection );
+        int classId = repository.generateIDNumberFromSequence();
         
         int courseId = getCourseFromUser();
         if ( exitSignal ) {
@@ -221,7 +258,7 @@ public class CourseOperations implements OperationsInterface {
             return;
         }
 
-        int trainerId = getTrainerFromUser( startTime, duration );
+        int trainerId = getTrainerFromUser( startTime, duration, endDate );
         if ( exitSignal ) {
             return;
         }
@@ -230,7 +267,7 @@ public class CourseOperations implements OperationsInterface {
 
         Class newClass = new Class( classId, courseId, trainerId, startTime, duration, 
                 startDate, endDate, 0, capacity );
-        DBUtils.saveNewClass( newClass, dbConnection );
+        repository.saveNewClass( newClass );
     }
 
     /**
@@ -240,7 +277,7 @@ public class CourseOperations implements OperationsInterface {
     private int getCourseFromUser() {
         System.out.println( "Available courses to select from:" );
         System.out.println( "---------------------------------" );
-        List<Course> coursesAvailable = DBUtils.getAllCourses( dbConnection );
+        List<Course> coursesAvailable = repository.getAllCourses();
         for ( Course course : coursesAvailable ) {
             System.out.println( course );
         }
@@ -268,17 +305,17 @@ public class CourseOperations implements OperationsInterface {
             catalogNum = Integer.parseInt( split[1] );
             break;
         }
-        return DBUtils.getCourseId( category, catalogNum, dbConnection );
+        return repository.getCourseId( category, catalogNum );
     }
 
     /**
      * Asks user for the trainer that will teach the class to be created,
      *  dealing with error handling and managing UI
      */
-    private int getTrainerFromUser( Timestamp startTime, int duration ) {
+    private int getTrainerFromUser( Timestamp startTime, int duration, Date endDate ) {
         System.out.println( "\nSelect a trainer to teach this class:" );
         System.out.println( "-------------------------------------" );
-        List<Trainer> allTrainers = DBUtils.listAllTrainers( dbConnection );
+        List<Trainer> allTrainers = repository.listAllTrainers();
         for ( Trainer trainer : allTrainers ) {
             System.out.println( trainer.getFullName() );
         }
@@ -303,8 +340,8 @@ public class CourseOperations implements OperationsInterface {
             String[] split = userInput.split( " " );
             trainerFname = split[0];
             trainerLname = split[1];
-            trainerId = DBUtils.getTrainerId( trainerFname, trainerLname, dbConnection );
-            if ( DBUtils.trainerScheduleConflict( trainerId, startTime, duration, dbConnection ) ) {
+            trainerId = repository.getTrainerId( trainerFname, trainerLname );
+            if ( repository.trainerScheduleConflict( trainerId, startTime, duration, endDate ) ) {
                 System.out.println( "There is a scheduling conflict with this trainer." + 
                     " Select another trainer from the list." );
                 continue;
@@ -8,23 +8,32 @@
  *          member schedules, and purchasing new packages.
  * 
  * Utilizes:
- *  - java.sql.Connection
+ *  - java.sql.SQLException
  *  - java.sql.Date
  *  - java.sql.Timestamp
  *  - java.text.DateFormat
  *  - java.text.SimpleDateFormat
+ *  - java.util.ArrayList
+ *  - java.util.List
  *  - java.util.Map
  *  - java.util.Scanner
  *  - java.util.Timezone
  *  - entities.GymMember
+ *  - entities.ScheduleEntry
  *  - entities.Transaction
- *  - utils.DBUtils
  *  - utils.CommonPrints
+ *  - utils.QueryTracer
+ *  - repository.AsyncGymRepository
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - repository.MemberPrefetcher
+ *  - repository.StoreBusyException
  *  - utils.ValidationUtils
  * 
- * Constructor: MemberOperations( Connection, Scanner ):
- *  - Connection to DB
+ * Constructor: MemberOperations( GymStore, Scanner, MemberPrefetcher ):
+ *  - Store the gym data is kept in, a repository is opened from it for each operation
  *  - Scanner to read input from stdin
+ *  - Cache of the session, what the next screens need for a member is read into it as soon as the member is looked up
  * 
  * Methods:
  *  openMenu():
@@ -36,26 +45,33 @@
  *        package.
  * makePurchaseOrRecharge(float amount):
  *      - Determines if transaction was a purchase or a recharge based on the sign of the amount passed in. Will
- *        then call function to create a Transaction entity within the DB and save it.
- * createTransaction( GymMember member, float amount, Connection dbConnection ):
+ *        then call function to create a Transaction entity within the DB and save it. The balance update, the transaction
+ *        and the class enrollments of a package are saved in one unit of work so they are committed together or not at all.
+ *        The static version takes the repository to use so scripts can make the same changes without the menu.
+ * getPackageCost( float, GymMember ):
+ *      - Price of a package after the member's discount, rounded to the dollar
+ * createTransaction( GymRepository repository, GymMember member, float amount ):
  *      - This function will create a new Transaction entity for the DB to store with relevant information like member id, amount, etc.
  *        Will call database function to save the object into the DB
  * openAddMemberWizard():
  *      - Takes user through the creation of a new member where various information is asked such as name, phone number, email. This is then
- *         placed into a GymMember object where it is sent to DBUtils to be saved into the database.
+ *         placed into a GymMember object where it is sent to the repository to be saved into the database.
  * memberPackagePurchase():
  *      - Goes through the process of a member purchasing a new package where they are asked for their member id
  *        then are prompted with the available packages. This function then calls makePurchaseOrRecharge where it creates
- *        a transaction and subtracts the amount of the package from the member current balance.
+ *        a transaction and subtracts the amount of the package from the member current balance. The packages are read in
+ *        the background while the member id is typed in and looked up, unless the session read them recently.
  * promptUserForPackagePurchase():
  *      - Will prompt user to which package they would like to purchase after listing them all out and their prices. The prices will be
- *        displayed with the member current discount level prices
+ *        displayed with the member current discount level prices. Takes the packages as a read started in the background
  * openRemoveMemberWizard():
  *      - Takes the user through the process of deleting a member, will then unenroll member from all current class if they are at a positive balance
  *        for their account. The class enrollment will be updated.
  * openMemberClassScheduleSearch():
  *      - Will prompt user for a member id and what month to check the schedule for. Will then display the days of the week within that month they are
  *        in a class and from their start time to their end time.
+ * getSchedule( GymMember, int ):
+ *      - The member's classes in a month, this month's are read in the background while the month is typed in
  * getEmailFromUser():
  *      - Will continually prompt user for an email, then it will validate that the email is in a valid form and return the string
  *        back if it is valid
@@ -77,24 +93,34 @@
  *  - ADD_FUNDS_OPTION: Integer option to add funds to member account
  *  - CHECK_MEMBER_SCHEDULE_OPTION: Integer option to search member schedule
  *  - RETURN_TO_MAIN_MENU_OPTION: Integer option to return to main menu
+ *  - OPTION_NAMES: Names of the options, used to tag the statements each option runs with QueryTracer
  *  - EXIT: String that will indicate to cancel the current operation
  */
 
 package operations;
 
-import java.sql.Connection;
 import java.sql.Date;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
 
 import entities.GymMember;
+import entities.ScheduleEntry;
 import entities.Transaction;
+import repository.AsyncGymRepository;
+import repository.GymRepository;
+import repository.GymStore;
+import repository.MemberPrefetcher;
+import repository.StoreBusyException;
 import utils.CommonPrints;
-import utils.DBUtils;
+import utils.QueryTracer;
 import utils.ValidationUtils;
 
 public class MemberOperations implements OperationsInterface {
@@ -110,18 +136,35 @@ public class MemberOperations implements OperationsInterface {
     private static final int ADD_FUNDS_OPTION = 4;
     private static final int CHECK_MEMBER_SCHEDULE_OPTION = 5;
     private static final int RETURN_TO_MAIN_MENU_OPTION = 6;
+
+    // Names of the options above, the statements each option runs are tagged with its name
+    private static final String[] OPTION_NAMES = {
+        "Add a new member",
+        "Delete a member",
+        "Purchase a package",
+        "Add funds to account",
+        "Check member's class schedule" };
+
     private static final String EXIT = "CANCEL";
 
     private Scanner scanner;
 
-    private Connection dbConnection;
+    private GymStore gymStore;
+
+    private GymRepository repository; // Repository opened from the store for the current operation
+
+    private AsyncGymRepository asyncRepository; // Runs reads in the background while the user types
+
+    private MemberPrefetcher prefetcher; // Reads ahead in the background for the member at the desk
 
     private boolean exitSignal;
 
-    // Constructor, uses connection and scanner objects
-    public MemberOperations( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    // Constructor, uses connection pool, scanner and the cache of the session
+    public MemberOperations( GymStore gymStore, Scanner scanner, MemberPrefetcher prefetcher ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
+        this.asyncRepository = new AsyncGymRepository( gymStore );
+        this.prefetcher = prefetcher;
     }
 
     /**
@@ -151,25 +194,49 @@ public class MemberOperations implements OperationsInterface {
         }
 
         System.out.println();
-        // Select which operation to do
-        switch ( option ) {
-            case ADD_MEMBER_OPTION:
-                openAddMemberWizard();
-                break;
-            case REMOVE_MEMBER_OPTION:
-                openRemoveMemberWizard();
-                break;
-            case PURCHASE_PACKAGE_OPTION:
-                memberPackagePurchase();
-                break;
-            case ADD_FUNDS_OPTION:
-                rechargeFunds();
-                break;
-            case CHECK_MEMBER_SCHEDULE_OPTION:
-                openMemberClassScheduleSearch();
-                break;
-            case RETURN_TO_MAIN_MENU_OPTION:
-                break;
+        if ( option == RETURN_TO_MAIN_MENU_OPTION ) {
+            System.out.println();
+            return;
+        }
+
+        // Open a repository for this operation, it only holds a connection while it runs a DB call
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return;
+        }
+
+        // Tag the statements run by the option so they can be traced
+        QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Member: " + OPTION_NAMES[option - 1] );
+        try {
+            // Select which operation to do
+            switch ( option ) {
+                case ADD_MEMBER_OPTION:
+                    openAddMemberWizard();
+                    break;
+                case REMOVE_MEMBER_OPTION:
+                    openRemoveMemberWizard();
+                    break;
+                case PURCHASE_PACKAGE_OPTION:
+                    memberPackagePurchase();
+                    break;
+                case ADD_FUNDS_OPTION:
+                    rechargeFunds();
+                    break;
+                case CHECK_MEMBER_SCHEDULE_OPTION:
+                    openMemberClassScheduleSearch();
+                    break;
+            }
+        } catch ( StoreBusyException e ) {
+            // Every connection stayed in use while the option needed one
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+        } finally {
+            repository.close();
+            repository = null;
+            operation.end();
         }
 
         System.out.println();
@@ -187,7 +254,7 @@ public class MemberOperations implements OperationsInterface {
                 System.out.println( "Cancelling member deletion" );
                 return;
             }
-            member = DBUtils.retrieveMemberFromID( memberID, dbConnection );
+            member = repository.retrieveMemberFromID( memberID );
             if ( member == null ) {
                 System.out.println( "Invalid member id. Verify that id was typed in correctly" );
             }
@@ -221,20 +288,95 @@ public class MemberOperations implements OperationsInterface {
      * Arguments: gym member object and amount to add to account
      */
     private void makePurchaseOrRecharge( GymMember member, float amount ) {
-        // Update member balance and save change
-        member.setBalance( member.getBalance() + amount );
-        DBUtils.saveChangesToMember( member, dbConnection );
-        createTransaction( member, amount, dbConnection );
+        makePurchaseOrRecharge( member, amount, null );
+    }
+
+    /**
+     * This private method sets the account balance for a member, creates the transaction
+     *  tuple and, for a package purchase, enrolls the member in the package's classes, see
+     *  the static makePurchaseOrRecharge()
+     * Arguments: gym member object, amount to add to account, name of package bought ( null
+     *  for a recharge )
+     * Returns: class numbers that were full, or null if nothing was saved
+     */
+    private List<Integer> makePurchaseOrRecharge( GymMember member, float amount, String packageName ) {
+        try {
+            List<Integer> fullClasses = makePurchaseOrRecharge( repository, member, amount, packageName );
+            if ( fullClasses != null ) {
+                return fullClasses;
+            }
+        } catch ( SQLException e ) {
+            System.out.println( e.getMessage() );
+        }
+        System.out.println( "Unable to complete the transaction, no changes were saved" );
+        return null;
+    }
+
+    /**
+     * Sets the account balance for a member, creates the transaction tuple and, for a package
+     *  purchase, enrolls the member in the package's classes. Every step is part of one DB
+     *  transaction, so either all of them are saved or none are. Used by the member menu and by
+     *  scripts ( see gui.ScriptRunner ).
+     * @param repository Repository to save the changes with
+     * @param member Member whose balance changes, gets the balance that was saved, keeps their
+     *  old balance if nothing was saved
+     * @param amount Amount to add to the account, negative for a purchase
+     * @param packageName Name of the package bought, null for a recharge
+     * @return Class numbers that were full, or null if nothing was saved
+     * @throws SQLException if the DB transaction could not be started or committed
+     */
+    public static List<Integer>
+        makePurchaseOrRecharge( GymRepository repository, GymMember member, float amount, String packageName )
+            throws SQLException {
+        float previousBalance = member.getBalance();
+        boolean committed = false;
+        try {
+            repository.beginUnitOfWork();
+            // Change the stored balance by the amount, the member read earlier may be out of date
+            boolean saved = repository.addToMemberBalance( member, amount )
+                && createTransaction( repository, member, amount );
+            List<Integer> fullClasses = new ArrayList<>();
+            if ( saved && packageName != null ) {
+                fullClasses = repository.addMemberToPackageCourses( member, packageName );
+                saved = fullClasses != null;
+            }
+            if ( !saved ) {
+                return null;
+            }
+            repository.commitUnitOfWork();
+            committed = true;
+            return fullClasses;
+        } finally {
+            repository.endUnitOfWork();
+            // Nothing was committed so the member keeps their old balance
+            if ( !committed ) {
+                member.setBalance( previousBalance );
+            }
+        }
+    }
+
+    /**
+     * Works out what a package costs a member after their discount
+     * @param price Price of the package
+     * @param member Member buying it
+     * @return Cost rounded to the dollar
+     */
+    public static float getPackageCost( float price, GymMember member ) {
+        return Math.round( ( price - ( price * member.getDiscount() ) ) );
     }
 
     /**
      * This private method creates the transaction tuple in the transaction relation to
      *  describe either the purchase of a package by a member or the recharge of the
      *  account funds.
-     * Arguments: gym member object, amount to add to account, connection to database
+     * Arguments: repository to save it with, gym member object, amount to add to account
+     * Returns: true if the transaction was saved
      */
-    private void createTransaction( GymMember member, float amount, Connection dbConnection ) {
-        int generatedID = DBUtils.generateIDNumberFromSequence( dbConnection );
+    private static boolean createTransaction( GymRepository repository, GymMember member, float amount ) {
+        int generatedID = repository.generateIDNumberFromSequence();
+        if ( generatedID == 0 ) {
+            return false;
+        }
         String transactionType = null;
         if ( amount < 0 ) {
             transactionType = "PURCHASE";
@@ -249,7 +391,7 @@ public class MemberOperations implements OperationsInterface {
             transactionType,
             new Date( System.currentTimeMillis() ),
             amount );
-        DBUtils.saveNewTransaction( transaction, dbConnection );
+        return repository.saveNewTransaction( transaction );
     }
 
     /**
@@ -280,13 +422,15 @@ public class MemberOperations implements OperationsInterface {
         }
         // Store as object to keep all info in one place for DB insertion
         GymMember newMember = new GymMember( firstName, lastName, phoneNumber, email );
-        boolean returnCode = DBUtils.addNewGymMemberToDB( newMember, dbConnection ); // Add the member to the DB
+        // Read the packages while the member is being added
+        CompletableFuture<Map<String, Float>> packages = asyncRepository.getPackagesAndPrices();
+        boolean returnCode = repository.addNewGymMemberToDB( newMember ); // Add the member to the DB
         if ( !returnCode ) {
             System.out.println( "\nERROR: member creation FAILED" );
             return;
         }
 
-        promptUserForPackagePurchase( newMember );
+        promptUserForPackagePurchase( newMember, packages );
 
         System.out.println( "\nThe new member's ID is: " + newMember.getMemberID() );
     }
@@ -295,6 +439,8 @@ public class MemberOperations implements OperationsInterface {
      * Handles the user interaction with members purchasing a package
      */
     private void memberPackagePurchase() {
+        // Read the packages while the member id is typed in and looked up
+        CompletableFuture<Map<String, Float>> packages = asyncRepository.getPackagesAndPrices();
         GymMember member = null;
         while ( member == null ) {
             int memberID = getMemberIDFromUser();
@@ -302,23 +448,24 @@ public class MemberOperations implements OperationsInterface {
                 System.out.println( "Cancelling member deletion" );
                 return;
             }
-            member = DBUtils.retrieveMemberFromID( memberID, dbConnection );
+            member = repository.retrieveMemberFromID( memberID );
             if ( member == null ) {
                 System.out.println( "Invalid member id. Verify that id was typed in correctly" );
             }
         }
-        promptUserForPackagePurchase( member );
+        promptUserForPackagePurchase( member, packages );
     }
 
     /**
      * Handles the user interaction with members purchasing a package, either at account creation or upon selection
      *  in the member operations menu
      * @param member - member that will be purchasing the course package
+     * @param packagesRead - read of the packages and their prices that was started in the background
      */
-    private void promptUserForPackagePurchase( GymMember member ) {
+    private void promptUserForPackagePurchase( GymMember member, CompletableFuture<Map<String, Float>> packagesRead ) {
         System.out.println( "\nSelect a package for user to purchase ( Type name of package or 'cancel' for none )" );
         System.out.println( "-------------------------------------------------------------------------------------" );
-        Map<String, Float> packages = DBUtils.getPackagesAndPrices( dbConnection );
+        Map<String, Float> packages = AsyncGymRepository.join( packagesRead, repository::getPackagesAndPrices );
         if ( packages.isEmpty() ) {
             System.err.println( "Unable to find any packages. Cancelling purchase." );
             return;
@@ -327,7 +474,7 @@ public class MemberOperations implements OperationsInterface {
         // Print out the options
         for ( String packageName : packages.keySet() ) {
             float cost = packages.get( packageName );
-            System.out.println( packageName + "  $" + Math.round( ( cost - ( cost * member.getDiscount() ) ) ) );
+            System.out.println( packageName + "  $" + Math.round( getPackageCost( cost, member ) ) );
         }
         String userInput = null;
         System.out.println();
@@ -343,11 +490,15 @@ public class MemberOperations implements OperationsInterface {
             }
             break;
         }
-        float cost = Math.round( ( packages.get( userInput ) - ( packages.get( userInput ) * member.getDiscount() ) ) );
-        cost = -cost;
-        makePurchaseOrRecharge( member, (float) cost );
-
-        DBUtils.addMemberToPackageCourses( member, userInput, dbConnection );
+        float cost = -getPackageCost( packages.get( userInput ), member );
+        List<Integer> fullClasses = makePurchaseOrRecharge( member, (float) cost, userInput );
+        if ( fullClasses == null ) {
+            return;
+        }
+        prefetcher.invalidate( member.getMemberID() ); // The member's schedule changed
+        for ( int classNum : fullClasses ) {
+            System.out.println( "Class " + classNum + " is full, member was not enrolled in it" );
+        }
     }
 
     /**
@@ -363,7 +514,7 @@ public class MemberOperations implements OperationsInterface {
                 System.out.println( "Cancelling member deletion" );
                 return;
             }
-            member = DBUtils.retrieveMemberFromID( memberID, dbConnection );
+            member = repository.retrieveMemberFromID( memberID );
             if ( member == null ) {
                 System.out.println( "Invalid member id. Verify that id was typed in correctly" );
             }
@@ -379,10 +530,11 @@ public class MemberOperations implements OperationsInterface {
         // Update rental items ( No need since qty is going to be perma gone and already accounted for)
 
         // Update class tables where this member was a part of
-        DBUtils.removeMemberFromAllTheirClasses( member.getMemberID(), dbConnection );
+        repository.removeMemberFromAllTheirClasses( member.getMemberID() );
 
         // Remove member from member table
-        DBUtils.removeMemberFromDB( member, dbConnection );
+        repository.removeMemberFromDB( member );
+        prefetcher.invalidate( member.getMemberID() );
     }
 
     /**
@@ -410,13 +562,14 @@ public class MemberOperations implements OperationsInterface {
                 continue;
             }
 
-            member = DBUtils.retrieveMemberFromID( memberID, dbConnection );
+            member = repository.retrieveMemberFromID( memberID );
             if ( member == null ) {
                 System.out.println( "Invalid ID please enter again" );
                 continue;
             }
             break;
         }
+        prefetcher.prefetch( member ); // This month's schedule is read while the month is typed in
 
         System.out.println( "Enter month to search for ( 1 for January and 12 for December etc. )" );
         userInput = null;
@@ -442,8 +595,9 @@ public class MemberOperations implements OperationsInterface {
         }
         DateFormat formatter = new SimpleDateFormat( "EEEE" );
         System.out.println( "Schedule for " + member.getFullName() + "\n" );
-        Map<Timestamp, Float> schedule = DBUtils.getMemberScheduleForMonth( member, month, dbConnection );
-        for ( Timestamp startTime : schedule.keySet() ) {
+        List<ScheduleEntry> schedule = getSchedule( member, month );
+        for ( ScheduleEntry entry : schedule ) {
+            Timestamp startTime = entry.getStartTime();
             String startAMPM = "AM";
             String endAMPM = "AM";
             int startHour = startTime.toInstant().atZone( TimeZone.getDefault().toZoneId() ).getHour();
@@ -451,7 +605,7 @@ public class MemberOperations implements OperationsInterface {
                 startHour -= 11;
                 startAMPM = "PM";
             }
-            float duration = schedule.get( startTime ) / 60;
+            float duration = entry.getDuration() / 60;
             int endHour = (int) ( startHour + duration );
             if ( endHour > 12 ) {
                 endHour -= 11;
@@ -463,6 +617,19 @@ public class MemberOperations implements OperationsInterface {
 
     }
 
+    /**
+     * Gets a member's classes in a month, from the session's cache when this month's were read ahead
+     * @param member Member whose schedule is shown
+     * @param month Month of this year ( 1 for January )
+     * @return Classes of the member that meet in the month
+     */
+    private List<ScheduleEntry> getSchedule( GymMember member, int month ) {
+        return AsyncGymRepository
+            .join(
+                prefetcher.getSchedule( member, month ),
+                () -> repository.getMemberScheduleForMonth( member, month ) );
+    }
+
     // Functions to grab input from user
 
     /**
@@ -6,12 +6,16 @@
  * Implements: OperationsInterface
  * 
  * Utilizes:
- *  - java.sql.Connection
+ *  - java.sql.SQLException
  *  - java.util.Scanner
  *  - utils.CommonPrints
+ *  - utils.QueryTracer
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - repository.StoreBusyException
  * 
- * Constructor: PackageOperations( Connection, Scanner ):
- *      - Connection to DB
+ * Constructor: PackageOperations( GymStore, Scanner ):
+ *      - Store the gym data is kept in, a repository is opened from it for each operation
  *      - Scanner to read input from stdin
  * 
  * Methods:
@@ -26,15 +30,17 @@
  *  - UPDATE_PACKAGE_OPTION: Integer option to update a current package
  *  - REMOVE_PACKAGE_OPTION: Integer option to remove an existing package
  *  - RETURN_TO_MAIN_MENU_OPTION: Integer option to return to main menu
+ *  - OPTION_NAMES: Names of the options, used to tag the statements each option runs with QueryTracer
  * 
  * Global Variables
- *  - dbConnection: Connection to the DB
+ *  - gymStore: Store the gym data is kept in
+ *  - repository: Repository opened from the store for the current operation
  *  - exitSignal: Boolean value that will signal to stop the current operation
  *  - scanner: Scanner object used to read from stdin
  */
 package operations;
 
-import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -46,8 +52,11 @@ import java.util.regex.Pattern;
 import entities.Course;
 import entities.CoursePackage;
 import entities.Package;
+import repository.GymRepository;
+import repository.GymStore;
+import repository.StoreBusyException;
 import utils.CommonPrints;
-import utils.DBUtils;
+import utils.QueryTracer;
 
 public class PackageOperations implements OperationsInterface {
 
@@ -61,14 +70,19 @@ public class PackageOperations implements OperationsInterface {
     private static final int REMOVE_PACKAGE_OPTION = 3;
     private static final int RETURN_TO_MAIN_MENU_OPTION = 4;
 
+    // Names of the options above, the statements each option runs are tagged with its name
+    private static final String[] OPTION_NAMES = { "Add package", "Update package", "Remove package" };
+
     private Scanner scanner;
 
-    private Connection dbConnection;
+    private GymStore gymStore;
+
+    private GymRepository repository; // Repository opened from the store for the current operation
 
     private boolean exitSignal;
 
-    public PackageOperations( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    public PackageOperations( GymStore gymStore, Scanner scanner ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
     }
 
@@ -102,18 +116,42 @@ public class PackageOperations implements OperationsInterface {
 
         System.out.println();
 
-        switch ( option ) {
-            case ADD_PACKAGE_OPTION:
-                openNewPackageWizard();
-                break;
-            case UPDATE_PACKAGE_OPTION:
-                openUpdatePackageWizard();
-                break;
-            case REMOVE_PACKAGE_OPTION:
-                openRemovePackageWizard();
-                break;
-            case RETURN_TO_MAIN_MENU_OPTION:
-                break;
+        if ( option == RETURN_TO_MAIN_MENU_OPTION ) {
+            System.out.println();
+            return;
+        }
+
+        // Open a repository for this operation, it only holds a connection while it runs a DB call
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return;
+        }
+
+        // Tag the statements run by the option so they can be traced
+        QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Package: " + OPTION_NAMES[option - 1] );
+        try {
+            switch ( option ) {
+                case ADD_PACKAGE_OPTION:
+                    openNewPackageWizard();
+                    break;
+                case UPDATE_PACKAGE_OPTION:
+                    openUpdatePackageWizard();
+                    break;
+                case REMOVE_PACKAGE_OPTION:
+                    openRemovePackageWizard();
+                    break;
+            }
+        } catch ( StoreBusyException e ) {
+            // Every connection stayed in use while the option needed one
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+        } finally {
+            repository.close();
+            repository = null;
+            operation.end();
         }
 
         System.out.println();
@@ -141,7 +179,7 @@ public class PackageOperations implements OperationsInterface {
         }
 
         entities.Package packageToAdd = new Package( packageName, cost );
-        if ( !DBUtils.saveNewPackage( packageToAdd, dbConnection ) ) {
+        if ( !repository.saveNewPackage( packageToAdd ) ) {
             System.out.println( "Unable to save package to DB, possibly a duplicate package" );
             return;
         }
@@ -179,9 +217,9 @@ public class PackageOperations implements OperationsInterface {
 
         // Save the selections to DB
         for ( String courseSelection : courseSelections ) {
-            int courseID = DBUtils.getCourseIDFromName( courseSelection, dbConnection );
+            int courseID = repository.getCourseIDFromName( courseSelection );
             CoursePackage coursePackage = new CoursePackage( courseID, courseSelection );
-            DBUtils.saveNewCoursePackage( coursePackage, dbConnection );
+            repository.saveNewCoursePackage( coursePackage );
         }
 
     }
@@ -195,7 +233,7 @@ public class PackageOperations implements OperationsInterface {
      */
     private Set<String> getCourseSelections( int numberOfCoursesToSelect ) {
         Set<String> coursesSelected = new HashSet<>();
-        List<Course> allCourses = DBUtils.getAllCourses( dbConnection );
+        List<Course> allCourses = repository.getAllCourses();
         if ( allCourses.size() < numberOfCoursesToSelect ) {
             System.out.println( "Not enough courses to make a package with " + numberOfCoursesToSelect + " courses." );
             exitSignal = true;
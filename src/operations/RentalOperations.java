@@ -10,31 +10,54 @@
  * Utilizes:
  *  - java.sql.*
  *  - java.util.*
+ *  - java.util.concurrent.CompletableFuture
+ *  - repository.AsyncGymRepository
+ *  - repository.GymRepository
+ *  - repository.GymStore
+ *  - repository.MemberPrefetcher
+ *  - repository.StoreBusyException
  * 
- * Constructor: RentalOperations( Connection, Scanner ):
- *  - Connection to DB
+ * Constructor: RentalOperations( GymStore, Scanner, MemberPrefetcher ):
+ *  - Store the gym data is kept in, a repository is opened from it for each operation
  *  - Create scanner to read input from stdin
+ *  - Cache of the session, a member's unreturned items are read into it as soon as the member is looked up
  * 
  * Public Methods:
  *  - openMenu():
  *      - Opens the member operations memu and prints the available options within the displayed menu. Reads input from user
  *        and validates that it was one of the options the user could currently choose from. Then directs control of program
  *        over to coresponding functions of the option chosen.
+ *  - rentOutItems( GymRepository, GymMember, Map<RentalItem, Integer> ):
+ *      - Takes several items out of stock and logs them as rented by a member in one DB transaction, nothing is
+ *        rented if any item does not have enough in stock. Used by the menu and by scripts
+ *  - returnItem( GymRepository, GymMember, String ):
+ *      - Marks the member's oldest rental of an item as returned and puts what they borrowed back in stock in one DB
+ *        transaction, used by the menu and by scripts
+ *  Stock is only ever changed by adding to or taking from the quantity in the DB, never by writing a quantity that
+ *  was read earlier, so any number of terminals can rent out and take back items at the same time.
  */
 
 package operations;
 
-import java.sql.Connection;
 import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
 
 import entities.GymMember;
 import entities.RentalItem;
 import entities.RentalLogEntry;
+import repository.AsyncGymRepository;
+import repository.GymRepository;
+import repository.GymStore;
+import repository.MemberPrefetcher;
+import repository.StoreBusyException;
 import utils.CommonPrints;
-import utils.DBUtils;
+import utils.QueryTracer;
 
 public class RentalOperations implements OperationsInterface {
 
@@ -49,16 +72,31 @@ public class RentalOperations implements OperationsInterface {
     private static final int CHECK_UNRETURNED_ITEMS_OPTION = 4;
     private static final int RETURN_TO_MAIN_MENU_OPTION = 5;
 
-    private Connection dbConnection;
+    // Names of the options above, the statements each option runs are tagged with its name
+    private static final String[] OPTION_NAMES = {
+        "Rent out an item",
+        "Return an item",
+        "Check quantity of items",
+        "List items that member hasn't returned" };
+
+    private GymStore gymStore;
+
+    private GymRepository repository; // Repository opened from the store for the current operation
+
+    private AsyncGymRepository asyncRepository; // Runs reads in the background while the user types
+
+    private MemberPrefetcher prefetcher; // Reads ahead in the background for the member at the desk
 
     private Scanner scanner;
 
     private boolean exitSignal;
 
     // Constructor for rental operations menu
-    public RentalOperations( Connection dbConnection, Scanner scanner ) {
-        this.dbConnection = dbConnection;
+    public RentalOperations( GymStore gymStore, Scanner scanner, MemberPrefetcher prefetcher ) {
+        this.gymStore = gymStore;
         this.scanner = scanner;
+        this.asyncRepository = new AsyncGymRepository( gymStore );
+        this.prefetcher = prefetcher;
     }
 
     /**
@@ -91,22 +129,46 @@ public class RentalOperations implements OperationsInterface {
             break;
         }
 
-        // opens menu corresponding to selected option
-        switch ( option ) {
-            case RENT_OUT_ITEM_OPTION:
-                openRentOutItemMenu();
-                break;
-            case RETURN_RENTAL_OPTION:
-                openReturnItemMenu();
-                break;
-            case CHECK_QUANTIY_OPTION:
-                listRentalItemsAndQuantities();
-                break;
-            case CHECK_UNRETURNED_ITEMS_OPTION:
-                listUnreturnedItems();
-                break;
-            case RETURN_TO_MAIN_MENU_OPTION:
-                break;
+        if ( option == RETURN_TO_MAIN_MENU_OPTION ) {
+            System.out.println();
+            return;
+        }
+
+        // Open a repository for this operation, it only holds a connection while it runs a DB call
+        try {
+            repository = gymStore.openRepository();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+            return;
+        }
+
+        // Tag the statements run by the option so they can be traced
+        QueryTracer.OperationTrace operation = QueryTracer.beginOperation( "Rental: " + OPTION_NAMES[option - 1] );
+        try {
+            // opens menu corresponding to selected option
+            switch ( option ) {
+                case RENT_OUT_ITEM_OPTION:
+                    openRentOutItemMenu();
+                    break;
+                case RETURN_RENTAL_OPTION:
+                    openReturnItemMenu();
+                    break;
+                case CHECK_QUANTIY_OPTION:
+                    listRentalItemsAndQuantities();
+                    break;
+                case CHECK_UNRETURNED_ITEMS_OPTION:
+                    listUnreturnedItems();
+                    break;
+            }
+        } catch ( StoreBusyException e ) {
+            // Every connection stayed in use while the option needed one
+            System.out.println( "Unable to get a connection to the DB, try again shortly" );
+            System.out.println( e.getMessage() );
+        } finally {
+            repository.close();
+            repository = null;
+            operation.end();
         }
         System.out.println();
     }
@@ -134,15 +196,15 @@ public class RentalOperations implements OperationsInterface {
             }
 
             // builds the member object from the database
-            member = DBUtils.retrieveMemberFromID( memberId, dbConnection );
+            member = repository.retrieveMemberFromID( memberId );
             if ( member == null ) {
                 System.out.println( "Invalid ID please enter again" );
                 continue;
             }
             break;
         }
-        // gets the result set from the query
-        Map<String, Integer> checkoutItems = DBUtils.getCheckoutRentalsForMember( member, dbConnection );
+        // gets the result set from the query, read ahead if the member was at the desk moments ago
+        Map<String, Integer> checkoutItems = getCheckoutRentals( member );
         if ( checkoutItems.isEmpty() ) {
             System.out.println( "\n" + member.getFullName() + " has no unreturned items" );
             return;
@@ -179,7 +241,7 @@ public class RentalOperations implements OperationsInterface {
                 continue;
             }
 
-            member = DBUtils.retrieveMemberFromID( memberId, dbConnection );
+            member = repository.retrieveMemberFromID( memberId );
             if ( member == null ) {
                 System.out.println( "Invalid ID please enter again" );
                 continue;
@@ -187,8 +249,8 @@ public class RentalOperations implements OperationsInterface {
             break;
         }
 
-        // Get rental items from db that is in possesion of member
-        Map<String, Integer> checkoutItems = DBUtils.getCheckoutRentalsForMember( member, dbConnection );
+        // Get rental items from db that is in possesion of member, read ahead if the member was at the desk moments ago
+        Map<String, Integer> checkoutItems = getCheckoutRentals( member );
         if ( checkoutItems.isEmpty() ) {
             System.out.println( "\n" + member.getFullName() + " has no unreturned items" );
             return;
@@ -217,8 +279,15 @@ public class RentalOperations implements OperationsInterface {
             break;
         }
         // runs the queries to update the log
-        DBUtils.returnItem( itemBeingReturned, dbConnection );
-        DBUtils.updateRentalLog( member, itemBeingReturned, dbConnection );
+        try {
+            if ( returnItem( repository, member, itemBeingReturned ) ) {
+                prefetcher.invalidate( member.getMemberID() );
+                return;
+            }
+        } catch ( SQLException e ) {
+            System.out.println( e.getMessage() );
+        }
+        System.out.println( "Unable to return " + itemBeingReturned + ", no changes were saved" );
     }
 
     /**
@@ -229,6 +298,10 @@ public class RentalOperations implements OperationsInterface {
         System.out.println( "Rent out item ( Type 'Cancel' to exit )" );
         System.out.println( "---------------------------------------" );
 
+        // Read the rental items while the member id is typed in and looked up
+        CompletableFuture<List<RentalItem>> rentalItemsRead = asyncRepository.getRentalItems();
+        CompletableFuture<Map<String, Integer>> rentalMapRead = asyncRepository.getRentalItemsAndQuantities();
+
         // Get member who is wanting to rent
         GymMember member = null;
         while ( member == null ) {
@@ -237,58 +310,149 @@ public class RentalOperations implements OperationsInterface {
                 System.out.println( "Cancelling item rental" );
                 return;
             }
-            member = DBUtils.retrieveMemberFromID( memberID, dbConnection );
+            member = repository.retrieveMemberFromID( memberID );
             if ( member == null ) {
                 System.out.println( "Invalid member id. Verify that id was typed in correctly" );
             }
         }
+        prefetcher.prefetch( member );
 
-        // Get which item they want to rent
-        System.out.println( "\nWhich item would you like to rent out?" );
+        // Get which items they want to rent
+        System.out.println( "\nWhich items would you like to rent out?" );
         System.out.println( "------------------------------------------" );
-        List<RentalItem> rentalItems = DBUtils.getRentalItems( dbConnection );
-        Map<String, Integer> rentalMap = DBUtils.getRentalItemsAndQuantities( dbConnection );
+        List<RentalItem> rentalItems = AsyncGymRepository.join( rentalItemsRead, repository::getRentalItems );
+        Map<String, Integer> rentalMap = AsyncGymRepository
+            .join( rentalMapRead, repository::getRentalItemsAndQuantities );
         for ( RentalItem item : rentalItems ) {
             System.out.println( item );
         }
-        System.out.println();
-        String item = null;
+        System.out.println( "\nEnter one item per line, an item entered again is rented out again. Enter an empty line"
+            + " when done" );
+        Map<RentalItem, Integer> itemsSelected = new LinkedHashMap<>();
         while ( true ) {
-            item = getInputFromUser();
+            String item = getInputFromUser();
             if ( exitSignal ) {
                 return;
             }
+            if ( item.isEmpty() && !itemsSelected.isEmpty() ) {
+                break;
+            }
             if ( !rentalMap.containsKey( item ) ) {
                 System.out.println( "Please choose from the above options" );
                 continue;
             }
-            break;
+
+            // selects the rental item from the possible list that matches the user input
+            for ( RentalItem rentalItem : rentalItems ) {
+                if ( rentalItem.getItemName().equalsIgnoreCase( item ) ) {
+                    itemsSelected.merge( rentalItem, 1, Integer::sum );
+                    break;
+                }
+            }
         }
 
-        // selects the rental item from the possible list that matches the user input
-        int toRentOut = 1;
-        RentalItem itemSelected = null;
-        for ( RentalItem rentalItem : rentalItems ) {
-            if ( rentalItem.getItemName().equalsIgnoreCase( item ) ) {
-                itemSelected = rentalItem;
-                break;
+        try {
+            List<String> shortItems = rentOutItems( repository, member, itemsSelected );
+            if ( shortItems != null && shortItems.isEmpty() ) {
+                prefetcher.invalidate( member.getMemberID() );
+                return;
+            }
+            if ( shortItems != null ) {
+                System.out.println( "Not enough in stock of " + String.join( ", ", shortItems ) );
+            }
+        } catch ( SQLException e ) {
+            System.out.println( e.getMessage() );
+        }
+        System.out.println( "Unable to rent out the items, no changes were saved" );
+    }
+
+    /**
+     * Rents items out to a member. Every item is taken out of stock with one batch of updates that only succeed
+     *  while there is enough in stock, and one rental log entry per item is saved with one batch of inserts. Both
+     *  are part of one DB transaction, so if any item is short nothing is rented out at all.
+     * @param repository Repository to save the changes with
+     * @param member Member renting the items
+     * @param itemsSelected Items being rented mapped to the quantity of each, their quantities in stock are lowered
+     *  once the rental is saved
+     * @return Names of the items that did not have enough in stock ( nothing was saved ), empty if everything was
+     *  rented out, or null if nothing could be saved
+     * @throws SQLException if the DB transaction could not be started or committed
+     */
+    public static List<String>
+        rentOutItems( GymRepository repository, GymMember member, Map<RentalItem, Integer> itemsSelected )
+            throws SQLException {
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        List<RentalLogEntry> entries = new ArrayList<>();
+        Date outTime = new Date( System.currentTimeMillis() );
+        for ( Map.Entry<RentalItem, Integer> item : itemsSelected.entrySet() ) {
+            quantities.merge( item.getKey().getItemNum(), item.getValue(), Integer::sum );
+            int logID = repository.generateIDNumberFromSequence();
+            if ( logID == 0 ) {
+                return null; // No ID for the log entry, stop before any stock is taken
+            }
+            entries
+                .add(
+                    new RentalLogEntry(
+                        logID,
+                        member.getMemberID(),
+                        item.getKey().getItemNum(),
+                        outTime,
+                        false,
+                        item.getValue() ) );
+        }
+        try {
+            repository.beginUnitOfWork();
+            List<Integer> shortItemNums = repository.takeRentalItemsFromStock( quantities );
+            if ( shortItemNums == null ) {
+                return null;
             }
+            if ( !shortItemNums.isEmpty() ) {
+                List<String> shortItems = new ArrayList<>();
+                for ( RentalItem item : itemsSelected.keySet() ) {
+                    if ( shortItemNums.contains( item.getItemNum() ) ) {
+                        shortItems.add( item.getItemName() );
+                    }
+                }
+                return shortItems;
+            }
+            if ( !repository.saveNewRentalLogEntries( entries ) ) {
+                return null;
+            }
+            repository.commitUnitOfWork();
+        } finally {
+            // Rolls back unless committed above
+            repository.endUnitOfWork();
+        }
+        for ( Map.Entry<RentalItem, Integer> item : itemsSelected.entrySet() ) {
+            item.getKey().setQuantityInStock( item.getKey().getQuantityInStock() - item.getValue() );
         }
+        return new ArrayList<>();
+    }
 
-        // Create the entry for rental log
-        RentalLogEntry entry = new RentalLogEntry(
-            DBUtils.generateIDNumberFromSequence( dbConnection ),
-            member.getMemberID(),
-            itemSelected.getItemNum(),
-            new Date( System.currentTimeMillis() ),
-            false,
-            toRentOut 
-        );
-        DBUtils.saveNewRentalLogEntry( entry, dbConnection );
-
-        // Update the rental item table to account for quantity being taken
-        itemSelected.setQuantityInStock( itemSelected.getQuantityInStock() - toRentOut );
-        DBUtils.saveChangesToRentalItem( itemSelected, dbConnection );
+    /**
+     * Returns an item a member rented: marks the member's oldest open rental of it as returned in
+     *  the rental log and puts the quantity they borrowed back in stock, in one DB transaction
+     * @param repository Repository to save the changes with
+     * @param member Member returning the item
+     * @param itemName Name of the item being returned
+     * @return True if the item was returned, false if the member has none of it out or nothing could be saved
+     * @throws SQLException if the DB transaction could not be started or committed
+     */
+    public static boolean returnItem( GymRepository repository, GymMember member, String itemName )
+        throws SQLException {
+        try {
+            repository.beginUnitOfWork();
+            RentalLogEntry returned = repository.updateRentalLog( member, itemName );
+            if ( returned == null
+                || !repository
+                    .putRentalItemsBackInStock( Map.of( returned.getItemNum(), returned.getQuantityBorrowed() ) ) ) {
+                return false;
+            }
+            repository.commitUnitOfWork();
+            return true;
+        } finally {
+            repository.endUnitOfWork();
+        }
     }
 
     /**
@@ -298,13 +462,25 @@ public class RentalOperations implements OperationsInterface {
         System.out.println();
         System.out.println( "Rental items and their quantites in stock" );
         System.out.println( "-----------------------------------------" );
-        Map<String, Integer> rentalItems = DBUtils.getRentalItemsAndQuantities( dbConnection );
+        Map<String, Integer> rentalItems = repository.getRentalItemsAndQuantities();
         for ( String item : rentalItems.keySet() ) {
             int qty = rentalItems.get( item );
             System.out.println( item + " " + qty );
         }
     }
 
+    /**
+     * Gets the items a member has out, from the session's cache when they were read ahead moments ago. Starts reading
+     *  the rest of what the next screens may need for the member too.
+     * @param member Member who was just looked up
+     * @return Names of the items the member has out mapped to the quantity borrowed
+     */
+    private Map<String, Integer> getCheckoutRentals( GymMember member ) {
+        CompletableFuture<Map<String, Integer>> checkoutRentals = prefetcher.getCheckoutRentals( member );
+        prefetcher.prefetch( member );
+        return AsyncGymRepository.join( checkoutRentals, () -> repository.getCheckoutRentalsForMember( member ) );
+    }
+
     /**
      * Gathers user input with the possibility of cancelling an operation, which
      *  is handled in methods that call this one
@@ -0,0 +1,173 @@
+/**
+ * @version 1.0
+ * Class: AsyncGymRepository.java
+ * Purpose: Runs reads of the gym data in the background and hands back a CompletableFuture, so an operation can start
+ *  the reads it will need before it needs them and have their round trips overlap each other, the user's typing and
+ *  the operation's own calls. Each read opens its own repository from the store ( its own connection from the pool )
+ *  on one of a few shared background threads, so it never sees the changes of a unit of work the operation has not
+ *  committed and should only be used for data the operation does not change. Every read is tagged with the operation
+ *  that started it ( see QueryTracer ) and timed by CallMetrics on the thread that runs it, like any other DB call.
+ *  A read never waits long for a connection: when the pool stays busy for more than 50 ms ( -Dgym.async.borrowMillis )
+ *  the future fails, and join() runs the read on the operation's own repository instead. The number of background
+ *  threads can be changed with -Dgym.async.threads.
+ *
+ * Utilizes:
+ *  - java.sql.SQLException
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - java.util.function.*
+ *  - entities.*
+ *  - utils.QueryTracer
+ *
+ * Constructor: AsyncGymRepository( GymStore ):
+ *  - Store each read opens its repository from
+ *
+ * Methods:
+ *  supply( Function ):
+ *      - Runs any read on a repository of its own in the background
+ *  retrieveMemberFromID( int ), getPackagesAndPrices(), getRentalItems(), getRentalItemsAndQuantities():
+ *      - The reads the operations menus start ahead of time
+ *  join( CompletableFuture, Supplier ):
+ *      - Waits for a read, runs it on the caller's repository instead if it failed
+ *  getStatistics():
+ *      - Printable summary of the reads run in the background
+ */
+
+package repository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import entities.GymMember;
+import entities.RentalItem;
+import utils.QueryTracer;
+
+public class AsyncGymRepository {
+
+    private static final int THREADS = Integer.getInteger( "gym.async.threads", 4 );
+
+    private static final long BORROW_MILLIS = Integer.getInteger( "gym.async.borrowMillis", 50 );
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Background threads shared by every operation, daemon threads so they never keep the program running
+    private static final ExecutorService executor = Executors.newFixedThreadPool( THREADS, runnable -> {
+        Thread thread = new Thread( runnable, "gym-async-" + threadCount.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    // Statistics
+    private static final AtomicLong readCount = new AtomicLong();
+    private static final AtomicLong fallbackCount = new AtomicLong();
+    private static final AtomicLong queueNanos = new AtomicLong();
+    private static final AtomicLong maxQueueNanos = new AtomicLong();
+    private static final AtomicLong joinCount = new AtomicLong();
+    private static final AtomicLong joinWaitNanos = new AtomicLong();
+
+    private final GymStore gymStore;
+
+    /**
+     * Creates a facade over a store, the background threads are shared by every facade
+     * @param gymStore Store each read opens its repository from
+     */
+    public AsyncGymRepository( GymStore gymStore ) {
+        this.gymStore = gymStore;
+    }
+
+    /**
+     * Starts a read in the background on a repository of its own, as part of the operation the calling thread is
+     * running
+     * @param read Read to run, given the repository to run it with
+     * @return Future of what the read returned, fails with a CompletionException if no repository could be opened
+     */
+    public <T> CompletableFuture<T> supply( Function<GymRepository, T> read ) {
+        QueryTracer.OperationTrace operation = QueryTracer.currentOperation();
+        long submitted = System.nanoTime();
+        readCount.incrementAndGet();
+        return CompletableFuture.supplyAsync( () -> {
+            long queued = System.nanoTime() - submitted;
+            queueNanos.addAndGet( queued );
+            maxQueueNanos.accumulateAndGet( queued, Math::max );
+            return QueryTracer.callInOperation( operation, () -> {
+                try ( GymRepository repository = gymStore.openRepository( BORROW_MILLIS ) ) {
+                    return read.apply( repository );
+                } catch ( SQLException e ) {
+                    throw new CompletionException( e );
+                }
+            } );
+        }, executor );
+    }
+
+    public CompletableFuture<GymMember> retrieveMemberFromID( int memberId ) {
+        return supply( repository -> repository.retrieveMemberFromID( memberId ) );
+    }
+
+    public CompletableFuture<Map<String, Float>> getPackagesAndPrices() {
+        return supply( GymRepository::getPackagesAndPrices );
+    }
+
+    public CompletableFuture<List<RentalItem>> getRentalItems() {
+        return supply( GymRepository::getRentalItems );
+    }
+
+    public CompletableFuture<Map<String, Integer>> getRentalItemsAndQuantities() {
+        return supply( GymRepository::getRentalItemsAndQuantities );
+    }
+
+    /**
+     * Waits for a read that was started in the background. If it failed ( the pool stayed busy, ... ) the read is run
+     * again on the calling thread, with the repository the operation already has, so a busy pool only costs the
+     * overlap.
+     * @param read Future of the read
+     * @param fallback Same read on the caller's repository
+     * @return What the read returned
+     */
+    public static <T> T join( CompletableFuture<T> read, Supplier<T> fallback ) {
+        long start = System.nanoTime();
+        try {
+            return read.join();
+        } catch ( CompletionException e ) {
+            fallbackCount.incrementAndGet();
+            return fallback.get();
+        } finally {
+            joinCount.incrementAndGet();
+            joinWaitNanos.addAndGet( System.nanoTime() - start );
+        }
+    }
+
+    /**
+     * Summary of the reads run in the background. The wait for a read is how long an operation still had to wait for
+     * it once it needed it, the rest of the read overlapped something else.
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        long reads = readCount.get();
+        long joins = joinCount.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Background threads: " + THREADS + "\n" );
+        sb.append( "Reads started: " + reads + "\n" );
+        sb.append( "Reads run by the operation instead: " + fallbackCount.get() + "\n" );
+        sb
+            .append(
+                String
+                    .format(
+                        "Avg wait for a thread: %.2f ms ( max %.2f ms )\n",
+                        reads == 0 ? 0 : queueNanos.get() / 1e6 / reads,
+                        maxQueueNanos.get() / 1e6 ) );
+        sb
+            .append(
+                String.format( "Avg wait for a read: %.2f ms", joins == 0 ? 0 : joinWaitNanos.get() / 1e6 / joins ) );
+        return sb.toString();
+    }
+
+}
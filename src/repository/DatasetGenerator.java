@@ -0,0 +1,488 @@
+/**
+ * @version 1.0
+ * Class: DatasetGenerator.java
+ * Purpose: Fills an empty gym schema with made up but believable data, so queries can be profiled at many times the
+ *  size of the real gym. The size is set by the number of members and every other table grows with it:
+ *      - 1 trainer per 200 members, 1 course per 500 members ( at least 10 ), 6 classes per course
+ *      - 1 package per 3 courses with 3 courses each, 50 rental items
+ *      - Each member is in 0 to 4 classes, has 0 to 16 rentals and 0 to 20 transactions
+ *  Rows are consistent with each other the same way the program keeps them: class enrollment matches MEMBERCLASS, a
+ *  member's balance is the sum of their transactions and their membership level comes from what they spent on
+ *  purchases, rentals older than two weeks have been returned, and every class runs during this year.
+ *  The data only depends on the seed. Members are split into blocks that are inserted by several threads at once, each
+ *  on its own connection with batched inserts and one commit per block, and every member's rows come from a random
+ *  generator seeded from the member's id, so the same seed gives the same rows no matter how the blocks are scheduled.
+ *  Ids are laid out in ranges ( members are 1 to the member count, then trainers, courses, classes, rental items,
+ *  rentals and transactions ) and the sequence is restarted past the last range afterwards.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.time.*
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - entities.GymMember
+ *  - utils.ConnectionPool
+ *
+ * Constructor: DatasetGenerator( long, int, int ):
+ *  - Seed, number of members and number of threads to insert with
+ *
+ * Methods:
+ *  generate( ConnectionPool ):
+ *      - Fills the tables through connections borrowed from the pool and returns a summary of what was inserted
+ */
+
+package repository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.GymMember;
+import utils.ConnectionPool;
+
+public class DatasetGenerator {
+
+    // How every table is sized from the number of members
+    private static final int MEMBERS_PER_TRAINER = 200;
+    private static final int MEMBERS_PER_COURSE = 500;
+    private static final int MIN_COURSES = 10;
+    private static final int CLASSES_PER_COURSE = 6;
+    private static final int COURSES_PER_PACKAGE = 3;
+    private static final int MAX_CLASSES_PER_MEMBER = 4;
+    private static final int MAX_RENTALS_PER_MEMBER = 16;
+    private static final int MAX_TRANSACTIONS_PER_MEMBER = 20;
+
+    private static final int MEMBERS_PER_BLOCK = 5000; // Members inserted and committed together by one thread
+    private static final int MEMBERS_PER_BATCH = 200; // Members whose rows are sent to the DB in one batch
+
+    private static final String[] FIRST_NAMES = {
+        "JAMES", "MARY", "JOHN", "PATRICIA", "ROBERT", "JENNIFER", "MICHAEL", "LINDA", "DAVID", "ELIZABETH", "JOSE",
+        "MARIA", "DANIEL", "SUSAN", "CARLOS", "JESSICA", "WEI", "SARAH", "AHMED", "KAREN", "LUIS", "NANCY", "KEVIN",
+        "LISA", "JUAN", "ANA", "BRIAN", "SOFIA", "ANDREW", "EMILY" };
+    private static final String[] LAST_NAMES = {
+        "SMITH", "JOHNSON", "WILLIAMS", "BROWN", "JONES", "GARCIA", "MILLER", "DAVIS", "RODRIGUEZ", "MARTINEZ",
+        "HERNANDEZ", "LOPEZ", "GONZALEZ", "WILSON", "ANDERSON", "THOMAS", "TAYLOR", "MOORE", "JACKSON", "MARTIN",
+        "LEE", "PEREZ", "THOMPSON", "WHITE", "HARRIS", "SANCHEZ", "CLARK", "RAMIREZ", "NGUYEN", "CHEN" };
+    private static final String[] CATEGORIES = {
+        "YOGA", "SPIN", "PILATES", "BOXING", "SWIM", "ZUMBA", "CROSSFIT", "BARRE", "HIIT", "KICKBOX", "TAICHI",
+        "ROWING" };
+    private static final String[] RENTAL_ITEMS = {
+        "TOWEL", "YOGA MAT", "JUMP ROPE", "BOXING GLOVES", "HAND WRAPS", "LOCK", "KETTLEBELL", "RESISTANCE BAND",
+        "FOAM ROLLER", "SWIM CAP", "GOGGLES", "KICKBOARD", "WEIGHT BELT", "LIFTING STRAPS", "MEDICINE BALL",
+        "STABILITY BALL", "HEADPHONES", "WATER BOTTLE", "SHOWER SANDALS", "PADDLE" };
+    private static final int ITEM_COPIES = 3; // Each item name exists in a few sizes so there are 60 items
+    private static final float[] CLASS_DURATIONS = { 30, 45, 60, 75, 90 };
+
+    private final long seed;
+
+    private final int members;
+
+    private final int threads;
+
+    // Sizes of the tables that do not hold a row per member
+    private final int trainers;
+    private final int courses;
+    private final int classes;
+    private final int packages;
+    private final int rentalItems;
+
+    // First id of each range
+    private final int firstTrainerID;
+    private final int firstCourseID;
+    private final int firstClassID;
+    private final int firstItemNum;
+    private final int firstRentalID;
+    private final int firstTransactionID;
+    private final int firstUnusedID;
+
+    private final LocalDate today = LocalDate.now();
+
+    // Rows inserted so far by the member blocks
+    private final AtomicLong memberClassRows = new AtomicLong();
+    private final AtomicLong rentalRows = new AtomicLong();
+    private final AtomicLong transactionRows = new AtomicLong();
+
+    /**
+     * Creates a generator for a data set
+     * @param seed Seed every row is made from
+     * @param members Number of members to create, everything else is sized from it
+     * @param threads Number of threads inserting at the same time, each one holds a connection from the pool
+     */
+    public DatasetGenerator( long seed, int members, int threads ) {
+        if ( members < 1 ) {
+            throw new IllegalArgumentException( "At least one member has to be generated" );
+        }
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "At least one thread is needed to insert the data" );
+        }
+        long idsNeeded = (long) members * ( 1 + MAX_RENTALS_PER_MEMBER + MAX_TRANSACTIONS_PER_MEMBER );
+        if ( idsNeeded > Integer.MAX_VALUE / 2 ) {
+            throw new IllegalArgumentException( "Too many members, the ids would not fit in the id columns" );
+        }
+        this.seed = seed;
+        this.members = members;
+        this.threads = threads;
+
+        trainers = Math.max( 1, members / MEMBERS_PER_TRAINER );
+        courses = Math.max( MIN_COURSES, members / MEMBERS_PER_COURSE );
+        classes = courses * CLASSES_PER_COURSE;
+        packages = Math.max( 1, courses / COURSES_PER_PACKAGE );
+        rentalItems = RENTAL_ITEMS.length * ITEM_COPIES;
+
+        firstTrainerID = members + 1;
+        firstCourseID = firstTrainerID + trainers;
+        firstClassID = firstCourseID + courses;
+        firstItemNum = firstClassID + classes;
+        firstRentalID = firstItemNum + rentalItems;
+        firstTransactionID = firstRentalID + members * MAX_RENTALS_PER_MEMBER;
+        firstUnusedID = firstTransactionID + members * MAX_TRANSACTIONS_PER_MEMBER;
+    }
+
+    /**
+     * Fills every table. The tables have to be empty.
+     * @param connectionPool Pool to borrow the connections from, should allow at least as many connections as threads
+     * @return Summary of the rows inserted and how long it took
+     * @throws SQLException if any insert failed, the blocks that were already committed stay in the DB
+     */
+    public String generate( ConnectionPool connectionPool ) throws SQLException {
+        long startMillis = System.currentTimeMillis();
+
+        // Tables without a row per member are small, so they are inserted first on one connection
+        int[] enrollment = countEnrollment();
+        Connection dbConnection = connectionPool.borrowConnection();
+        try {
+            dbConnection.setAutoCommit( false );
+            insertSharedTables( dbConnection, enrollment );
+            dbConnection.commit();
+        } finally {
+            dbConnection.setAutoCommit( true );
+            connectionPool.returnConnection( dbConnection );
+        }
+
+        // Members and their rows are split into blocks that are inserted at the same time
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            List<Future<Void>> blocks = new ArrayList<>();
+            for ( int first = 1 ; first <= members ; first += MEMBERS_PER_BLOCK ) {
+                int from = first;
+                int to = Math.min( members, first + MEMBERS_PER_BLOCK - 1 );
+                blocks.add( executor.submit( () -> {
+                    insertMemberBlock( connectionPool, from, to );
+                    return null;
+                } ) );
+            }
+            for ( Future<Void> block : blocks ) {
+                block.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new SQLException( "Interrupted while generating data" );
+        } catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof SQLException ) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException( "Unable to generate data", e.getCause() );
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Keep the ids the program generates from colliding with the generated ones
+        dbConnection = connectionPool.borrowConnection();
+        try {
+            Statement stmt = dbConnection.createStatement();
+            stmt.execute( "ALTER SEQUENCE FRANCISCOG852.ALL_SEQ RESTART WITH " + firstUnusedID );
+            stmt.close();
+        } finally {
+            connectionPool.returnConnection( dbConnection );
+        }
+
+        return getSummary( System.currentTimeMillis() - startMillis );
+    }
+
+    /**
+     * Works out how many members end up in each class, so the classes can be inserted with the right enrollment
+     * before the members are
+     * @return Enrollment of each class by index
+     */
+    private int[] countEnrollment() {
+        int[] enrollment = new int[classes];
+        for ( int memberID = 1 ; memberID <= members ; memberID++ ) {
+            for ( int classIndex : pickClasses( memberRandom( memberID ) ) ) {
+                enrollment[classIndex]++;
+            }
+        }
+        return enrollment;
+    }
+
+    /**
+     * Random generator for all of a member's rows
+     * @param memberID Id of the member
+     * @return Generator that gives the same values every time for the same seed and member
+     */
+    private SplittableRandom memberRandom( int memberID ) {
+        return new SplittableRandom( seed ^ ( memberID * 0x9E3779B97F4A7C15L ) );
+    }
+
+    /**
+     * Picks the classes a member is in, always the first values taken from the member's generator
+     * @param random Member's generator
+     * @return Distinct class indexes
+     */
+    private int[] pickClasses( SplittableRandom random ) {
+        int[] picked = new int[Math.min( classes, random.nextInt( MAX_CLASSES_PER_MEMBER + 1 ) )];
+        for ( int i = 0 ; i < picked.length ; i++ ) {
+            int classIndex = random.nextInt( classes );
+            for ( int j = 0 ; j < i ; j++ ) {
+                if ( picked[j] == classIndex ) {
+                    classIndex = ( classIndex + 1 ) % classes;
+                    j = -1; // Check the new pick against every earlier one again
+                }
+            }
+            picked[i] = classIndex;
+        }
+        return picked;
+    }
+
+    /**
+     * Inserts trainers, courses, packages and the courses in them, classes and rental items
+     * @param dbConnection Connection with auto commit off
+     * @param enrollment Enrollment of each class by index
+     * @throws SQLException if an insert failed
+     */
+    private void insertSharedTables( Connection dbConnection, int[] enrollment ) throws SQLException {
+        SplittableRandom random = new SplittableRandom( seed );
+
+        PreparedStatement stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.TRAINER VALUES ( ?, ?, ?, ? )" );
+        for ( int i = 0 ; i < trainers ; i++ ) {
+            stmt.setInt( 1, firstTrainerID + i );
+            stmt.setString( 2, FIRST_NAMES[random.nextInt( FIRST_NAMES.length )] );
+            stmt.setString( 3, LAST_NAMES[random.nextInt( LAST_NAMES.length )] );
+            stmt.setString( 4, phoneNumber( random ) );
+            stmt.addBatch();
+        }
+        finishBatch( stmt );
+
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.COURSE VALUES ( ?, ?, ? )" );
+        for ( int i = 0 ; i < courses ; i++ ) {
+            stmt.setInt( 1, firstCourseID + i );
+            stmt.setString( 2, CATEGORIES[i % CATEGORIES.length] );
+            stmt.setInt( 3, 100 + i / CATEGORIES.length );
+            stmt.addBatch();
+        }
+        finishBatch( stmt );
+
+        // Packages are named after their first course's category
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.PACKAGE VALUES ( ?, ? )" );
+        PreparedStatement coursePackage = dbConnection
+            .prepareStatement( "INSERT INTO BODE1.COURSEPACKAGE VALUES ( ?, ? )" );
+        for ( int i = 0 ; i < packages ; i++ ) {
+            int firstCourse = random.nextInt( courses );
+            String packageName = CATEGORIES[firstCourse % CATEGORIES.length] + " PASS " + ( i + 1 );
+            stmt.setString( 1, packageName );
+            stmt.setFloat( 2, 50 + 25 * random.nextInt( 20 ) );
+            stmt.addBatch();
+            for ( int j = 0 ; j < COURSES_PER_PACKAGE && j < courses ; j++ ) {
+                coursePackage.setInt( 1, firstCourseID + ( firstCourse + j ) % courses );
+                coursePackage.setString( 2, packageName );
+                coursePackage.addBatch();
+            }
+        }
+        finishBatch( stmt );
+        finishBatch( coursePackage );
+
+        // Classes run for 4 to 12 weeks, all during this year
+        int year = Year.now().getValue();
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.CLASS VALUES ( ?, ?, ?, ?, ?, ?, ?, ?, ? )" );
+        for ( int i = 0 ; i < classes ; i++ ) {
+            LocalDate startDate = LocalDate.of( year, 1, 1 ).plusDays( random.nextInt( 365 - 12 * 7 ) );
+            LocalDate endDate = startDate.plusWeeks( 4 + random.nextInt( 9 ) );
+            stmt.setInt( 1, firstClassID + i );
+            stmt.setInt( 2, firstCourseID + i / CLASSES_PER_COURSE );
+            stmt.setInt( 3, firstTrainerID + random.nextInt( trainers ) );
+            stmt.setTimestamp( 4, Timestamp.valueOf( startDate.atTime( 6 + random.nextInt( 15 ), 0 ) ) );
+            stmt.setFloat( 5, CLASS_DURATIONS[random.nextInt( CLASS_DURATIONS.length )] );
+            stmt.setDate( 6, Date.valueOf( startDate ) );
+            stmt.setDate( 7, Date.valueOf( endDate ) );
+            stmt.setInt( 8, enrollment[i] );
+            stmt.setInt( 9, enrollment[i] + random.nextInt( 10 ) );
+            addBatch( stmt, i + 1 );
+        }
+        finishBatch( stmt );
+
+        stmt = dbConnection.prepareStatement( "INSERT INTO BODE1.RENTALITEM VALUES ( ?, ?, ? )" );
+        for ( int i = 0 ; i < rentalItems ; i++ ) {
+            String size = i < RENTAL_ITEMS.length ? "" : i < 2 * RENTAL_ITEMS.length ? " SMALL" : " LARGE";
+            stmt.setInt( 1, firstItemNum + i );
+            stmt.setString( 2, RENTAL_ITEMS[i % RENTAL_ITEMS.length] + size );
+            stmt.setInt( 3, Math.max( 10, members / 100 ) + random.nextInt( 50 ) );
+            stmt.addBatch();
+        }
+        finishBatch( stmt );
+    }
+
+    /**
+     * Inserts a block of members along with their classes, rentals and transactions, then commits the block
+     * @param connectionPool Pool to borrow a connection from
+     * @param from Id of the first member of the block
+     * @param to Id of the last member of the block
+     * @throws SQLException if an insert failed, nothing of the block is saved
+     */
+    private void insertMemberBlock( ConnectionPool connectionPool, int from, int to ) throws SQLException {
+        Connection dbConnection = connectionPool.borrowConnection();
+        try {
+            dbConnection.setAutoCommit( false );
+            PreparedStatement member = dbConnection
+                .prepareStatement( "INSERT INTO BODE1.MEMBER VALUES ( ?, ?, ?, ?, ?, ?, ? )" );
+            PreparedStatement memberClass = dbConnection
+                .prepareStatement( "INSERT INTO BODE1.MEMBERCLASS VALUES ( ?, ? )" );
+            PreparedStatement rental = dbConnection
+                .prepareStatement( "INSERT INTO BODE1.RENTALLOG VALUES ( ?, ?, ?, ?, ?, ? )" );
+            PreparedStatement transaction = dbConnection
+                .prepareStatement( "INSERT INTO BODE1.TRANSACTION VALUES ( ?, ?, ?, ?, ? )" );
+
+            for ( int memberID = from ; memberID <= to ; memberID++ ) {
+                SplittableRandom random = memberRandom( memberID );
+
+                for ( int classIndex : pickClasses( random ) ) {
+                    memberClass.setInt( 1, memberID );
+                    memberClass.setInt( 2, firstClassID + classIndex );
+                    memberClass.addBatch();
+                    memberClassRows.incrementAndGet();
+                }
+
+                // Rentals, the ones taken out in the last two weeks may still be out
+                int rentals = random.nextInt( MAX_RENTALS_PER_MEMBER + 1 );
+                for ( int i = 0 ; i < rentals ; i++ ) {
+                    int daysAgo = random.nextInt( 365 );
+                    rental.setInt( 1, firstRentalID + ( memberID - 1 ) * MAX_RENTALS_PER_MEMBER + i );
+                    rental.setInt( 2, memberID );
+                    rental.setInt( 3, firstItemNum + random.nextInt( rentalItems ) );
+                    rental.setDate( 4, Date.valueOf( today.minusDays( daysAgo ) ) );
+                    rental.setInt( 5, 1 + random.nextInt( 3 ) );
+                    rental.setInt( 6, daysAgo < 14 && random.nextBoolean() ? 0 : 1 );
+                    rental.addBatch();
+                }
+                rentalRows.addAndGet( rentals );
+
+                // Transactions, purchases are negative like MemberOperations saves them
+                float balance = 0;
+                float spent = 0;
+                int transactions = random.nextInt( MAX_TRANSACTIONS_PER_MEMBER + 1 );
+                for ( int i = 0 ; i < transactions ; i++ ) {
+                    boolean purchase = random.nextInt( 5 ) < 2;
+                    float amount = purchase ? -( 20 + 5 * random.nextInt( 77 ) ) : 20 + 5 * random.nextInt( 97 );
+                    balance += amount;
+                    if ( purchase ) {
+                        spent -= amount;
+                    }
+                    transaction.setInt( 1, firstTransactionID + ( memberID - 1 ) * MAX_TRANSACTIONS_PER_MEMBER + i );
+                    transaction.setInt( 2, memberID );
+                    transaction.setString( 3, purchase ? "PURCHASE" : "RECHARGE" );
+                    transaction.setDate( 4, Date.valueOf( today.minusDays( random.nextInt( 365 ) ) ) );
+                    transaction.setFloat( 5, amount );
+                    transaction.addBatch();
+                }
+                transactionRows.addAndGet( transactions );
+
+                String firstName = FIRST_NAMES[random.nextInt( FIRST_NAMES.length )];
+                String lastName = LAST_NAMES[random.nextInt( LAST_NAMES.length )];
+                member.setInt( 1, memberID );
+                member.setString( 2, firstName );
+                member.setString( 3, lastName );
+                member.setString( 4, phoneNumber( random ) );
+                member.setString( 5, ( firstName + "." + lastName + memberID + "@example.com" ).toLowerCase() );
+                member.setString( 6, GymMember.determineLevel( spent ).getLevel() );
+                member.setFloat( 7, balance );
+                member.addBatch();
+
+                // Members go first in case the DB checks the other tables' references to them
+                if ( ( memberID - from + 1 ) % MEMBERS_PER_BATCH == 0 || memberID == to ) {
+                    member.executeBatch();
+                    memberClass.executeBatch();
+                    rental.executeBatch();
+                    transaction.executeBatch();
+                }
+            }
+            member.close();
+            memberClass.close();
+            rental.close();
+            transaction.close();
+            dbConnection.commit();
+        } catch ( SQLException e ) {
+            dbConnection.rollback();
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit( true );
+            connectionPool.returnConnection( dbConnection );
+        }
+    }
+
+    /**
+     * Makes up a Tucson phone number
+     * @param random Generator to use
+     * @return Phone number with only digits
+     */
+    private static String phoneNumber( SplittableRandom random ) {
+        return "520" + ( 2000000 + random.nextInt( 8000000 ) );
+    }
+
+    /**
+     * Adds a row to a batch, sending the batch every thousand rows
+     * @param stmt Statement with the row's values set
+     * @param rows Number of rows added so far, including this one
+     * @throws SQLException if the batch failed
+     */
+    private static void addBatch( PreparedStatement stmt, int rows ) throws SQLException {
+        stmt.addBatch();
+        if ( rows % 1000 == 0 ) {
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Sends what is left of a batch and closes the statement
+     * @param stmt Statement to finish
+     * @throws SQLException if the batch failed
+     */
+    private static void finishBatch( PreparedStatement stmt ) throws SQLException {
+        stmt.executeBatch();
+        stmt.close();
+    }
+
+    /**
+     * Lists the rows inserted into each table
+     * @param elapsedMillis How long the generation took
+     * @return String that can be printed to the console
+     */
+    private String getSummary( long elapsedMillis ) {
+        long rows = members + trainers + courses + classes + rentalItems + packages * ( 1 + COURSES_PER_PACKAGE )
+            + memberClassRows.get() + rentalRows.get() + transactionRows.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Seed: " + seed + "\n" );
+        sb.append( "Members: " + members + "\n" );
+        sb.append( "Trainers: " + trainers + "\n" );
+        sb.append( "Courses: " + courses + "\n" );
+        sb.append( "Classes: " + classes + "\n" );
+        sb.append( "Packages: " + packages + "\n" );
+        sb.append( "Rental items: " + rentalItems + "\n" );
+        sb.append( "Class enrollments: " + memberClassRows.get() + "\n" );
+        sb.append( "Rental log entries: " + rentalRows.get() + "\n" );
+        sb.append( "Transactions: " + transactionRows.get() + "\n" );
+        sb.append( "Generated " + rows + " rows in " + elapsedMillis + " ms with " + threads + " threads" );
+        return sb.toString();
+    }
+
+}
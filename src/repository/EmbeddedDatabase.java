@@ -0,0 +1,198 @@
+/**
+ * @version 1.0
+ * Class: EmbeddedDatabase.java
+ * Purpose: Starts an H2 database inside the program's own JVM and creates the gym schema in it, so the program can
+ *  be run, load tested and benchmarked with no network and no Oracle account. H2 is run in its Oracle mode and the
+ *  tables are created under the same BODE1 schema ( and the sequence under FRANCISCOG852 ) that the Oracle DB uses,
+ *  so the SQL in DBUtils runs on it unchanged and the results can be compared with the Oracle DB.
+ *  The H2 jar has to be on the classpath, the same way the Oracle JDBC driver is for the Oracle DB.
+ *  Since the DB is in the same JVM it answers with no network delay, -Dgym.latency.millis ( see LatencyInjector )
+ *  makes every round trip to it wait as long as one to a remote DB would.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - utils.ConnectionPool
+ *  - utils.LatencyInjector
+ *
+ * Methods:
+ *  createStore( String ):
+ *      - Starts ( or reuses ) the in memory database with the given name, creates the schema and returns a store for it
+ *  getLatencyInjector():
+ *      - Injector that delays the round trips to the embedded DB, null if no latency was asked for
+ *  getURL( String ):
+ *      - JDBC URL of the in memory database with the given name
+ */
+
+package repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import utils.ConnectionPool;
+import utils.LatencyInjector;
+
+public class EmbeddedDatabase {
+
+    public static final String DEFAULT_NAME = "gym";
+
+    private static final String DRIVER = "org.h2.Driver";
+    private static final String USERNAME = "sa";
+    private static final String PASSWORD = "";
+
+    // Delays the round trips of every store, set from the system properties when the class is loaded
+    private static final LatencyInjector latencyInjector = LatencyInjector.fromSystemProperties();
+
+    // Tables of the gym schema in the order they have to be created, see design.pdf
+    private static final String[] SCHEMA = {
+        "CREATE SCHEMA IF NOT EXISTS BODE1",
+        "CREATE SCHEMA IF NOT EXISTS FRANCISCOG852",
+        // Every ID is taken through IdAllocator, which turns each value of the sequence into a block of 50 IDs
+        // ( value * 50 up to value * 50 + 49 ). Starting at 1 keeps 0, which means no ID could be generated, out of
+        // every block
+        "CREATE SEQUENCE IF NOT EXISTS FRANCISCOG852.ALL_SEQ START WITH 1 INCREMENT BY 1",
+        "CREATE TABLE IF NOT EXISTS BODE1.MEMBERSHIPLEVEL (\n"
+            + "LEVELNAME VARCHAR2(20) PRIMARY KEY,\n"
+            + "MINSPENDING NUMBER(10,2) NOT NULL,\n"
+            + "DISCOUNTRATE NUMBER(3,2) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.MEMBER (\n"
+            + "MEMBERID INTEGER PRIMARY KEY,\n"
+            + "FNAME VARCHAR2(50) NOT NULL,\n"
+            + "LNAME VARCHAR2(50) NOT NULL,\n"
+            + "PHONENUM VARCHAR2(20),\n"
+            + "EMAIL VARCHAR2(100),\n"
+            + "MEMBERSHIPLEVEL VARCHAR2(20) NOT NULL,\n"
+            + "ACCOUNTBALANCE NUMBER(10,2) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.TRAINER (\n"
+            + "TRAINERID INTEGER PRIMARY KEY,\n"
+            + "FNAME VARCHAR2(50) NOT NULL,\n"
+            + "LNAME VARCHAR2(50) NOT NULL,\n"
+            + "PHONENUM VARCHAR2(20))",
+        "CREATE TABLE IF NOT EXISTS BODE1.COURSE (\n"
+            + "COURSEID INTEGER PRIMARY KEY,\n"
+            + "CATEGORY VARCHAR2(50) NOT NULL,\n"
+            + "CATALOGNUM INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.PACKAGE (\n"
+            + "PACKAGENAME VARCHAR2(50) PRIMARY KEY,\n"
+            + "COST NUMBER(10,2) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.COURSEPACKAGE (\n"
+            + "COURSEID INTEGER NOT NULL REFERENCES BODE1.COURSE(COURSEID),\n"
+            + "PACKAGENAME VARCHAR2(50) NOT NULL REFERENCES BODE1.PACKAGE(PACKAGENAME),\n"
+            + "PRIMARY KEY (COURSEID, PACKAGENAME))",
+        "CREATE TABLE IF NOT EXISTS BODE1.CLASS (\n"
+            + "CLASSNUM INTEGER PRIMARY KEY,\n"
+            + "COURSEID INTEGER NOT NULL REFERENCES BODE1.COURSE(COURSEID),\n"
+            + "TRAINERID INTEGER NOT NULL REFERENCES BODE1.TRAINER(TRAINERID),\n"
+            + "STARTTIME TIMESTAMP NOT NULL,\n"
+            + "DURATION NUMBER(6,2) NOT NULL,\n"
+            + "STARTDATE DATE NOT NULL,\n"
+            + "ENDDATE DATE NOT NULL,\n"
+            + "ENROLLMENT INTEGER NOT NULL,\n"
+            + "CAPACITY INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.MEMBERCLASS (\n"
+            + "MEMBERID INTEGER NOT NULL,\n"
+            + "CLASSNUM INTEGER NOT NULL,\n"
+            + "PRIMARY KEY (MEMBERID, CLASSNUM))",
+        "CREATE TABLE IF NOT EXISTS BODE1.TRANSACTION (\n"
+            + "TRANSACTIONID INTEGER PRIMARY KEY,\n"
+            + "MEMBERID INTEGER NOT NULL,\n"
+            + "XACTTYPE VARCHAR2(20) NOT NULL,\n"
+            + "XACTDATE DATE NOT NULL,\n"
+            + "AMOUNT NUMBER(10,2) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.MEMBERPACKAGE (\n"
+            + "MEMBERID INTEGER NOT NULL,\n"
+            + "PACKAGENAME VARCHAR2(50) NOT NULL,\n"
+            + "TRANSACTIONID INTEGER NOT NULL,\n"
+            + "PRIMARY KEY (MEMBERID, PACKAGENAME, TRANSACTIONID))",
+        "CREATE TABLE IF NOT EXISTS BODE1.RENTALITEM (\n"
+            + "ITEMNUM INTEGER PRIMARY KEY,\n"
+            + "ITEMNAME VARCHAR2(50) NOT NULL UNIQUE,\n"
+            + "QTYINSTOCK INTEGER NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS BODE1.RENTALLOG (\n"
+            + "RENTALID INTEGER PRIMARY KEY,\n"
+            + "MEMBERID INTEGER NOT NULL,\n"
+            + "ITEMNUM INTEGER NOT NULL REFERENCES BODE1.RENTALITEM(ITEMNUM),\n"
+            + "OUTTIME DATE NOT NULL,\n"
+            + "QUANTITY INTEGER NOT NULL,\n"
+            + "RETURNED NUMBER(1) NOT NULL)",
+        // Indexes for the lookups DBUtils makes by something other than the primary key
+        "CREATE INDEX IF NOT EXISTS BODE1.MEMBERCLASS_CLASSNUM ON BODE1.MEMBERCLASS(CLASSNUM)",
+        "CREATE INDEX IF NOT EXISTS BODE1.CLASS_TRAINER ON BODE1.CLASS(TRAINERID, ENDDATE)",
+        "CREATE INDEX IF NOT EXISTS BODE1.TRANSACTION_MEMBER ON BODE1.TRANSACTION(MEMBERID)",
+        "CREATE INDEX IF NOT EXISTS BODE1.RENTALLOG_MEMBER ON BODE1.RENTALLOG(MEMBERID, RETURNED)",
+        "MERGE INTO BODE1.MEMBERSHIPLEVEL KEY (LEVELNAME) VALUES ('BASIC', 0, 0)",
+        "MERGE INTO BODE1.MEMBERSHIPLEVEL KEY (LEVELNAME) VALUES ('GOLD', 1000, 0.2)",
+        "MERGE INTO BODE1.MEMBERSHIPLEVEL KEY (LEVELNAME) VALUES ('DIAMOND', 1500, 0.3)"
+    };
+
+    /**
+     * Keeps from creating a new instance of this class
+     */
+    private EmbeddedDatabase() {
+    }
+
+    /**
+     * Gets the injector that delays the round trips to the embedded DB, its latency can be changed while the program
+     * runs
+     * @return Injector, null if -Dgym.latency.millis was not set
+     */
+    public static LatencyInjector getLatencyInjector() {
+        return latencyInjector;
+    }
+
+    /**
+     * Gets the JDBC URL of an in memory database. The database lives until the program exits, even when no
+     * connection to it is open.
+     * @param name Name of the database
+     * @return JDBC URL
+     */
+    public static String getURL( String name ) {
+        return "jdbc:h2:mem:" + name + ";MODE=Oracle;DB_CLOSE_DELAY=-1;DEFAULT_NULL_ORDERING=HIGH";
+    }
+
+    /**
+     * Starts the in memory database, creates the gym schema if it does not exist yet and returns a store for it
+     * @param name Name of the database, stores created with the same name share the same data
+     * @return Store over a pool of connections to the database
+     * @throws SQLException if the driver is not on the classpath or the schema could not be created
+     */
+    public static JdbcGymStore createStore( String name ) throws SQLException {
+        try {
+            Class.forName( DRIVER );
+        } catch ( ClassNotFoundException e ) {
+            throw new SQLException( "Unable to load the H2 JDBC Driver. Ensure that the H2 jar is on the classpath" );
+        }
+
+        ConnectionPool connectionPool = new ConnectionPool( getURL( name ), USERNAME, PASSWORD );
+        if ( latencyInjector != null ) {
+            connectionPool.setConnectionWrapper( latencyInjector::wrap );
+        }
+        Connection dbConnection = connectionPool.borrowConnection();
+        try {
+            createSchema( dbConnection );
+        } catch ( SQLException e ) {
+            connectionPool.returnConnection( dbConnection );
+            connectionPool.close();
+            throw e;
+        }
+        connectionPool.returnConnection( dbConnection );
+        return new JdbcGymStore( connectionPool );
+    }
+
+    /**
+     * Runs every statement of the schema
+     * @param dbConnection Connection to the database
+     * @throws SQLException if a statement fails
+     */
+    private static void createSchema( Connection dbConnection ) throws SQLException {
+        Statement stmt = dbConnection.createStatement();
+        try {
+            for ( String sql : SCHEMA ) {
+                stmt.execute( sql );
+            }
+        } finally {
+            stmt.close();
+        }
+    }
+
+}
@@ -0,0 +1,364 @@
+/**
+ * @version 1.0
+ * Class: GymRepository.java
+ * Purpose: Every read and write the operations menus make against the gym data, without saying where the data is
+ *  kept. A repository is opened from a GymStore for the length of one menu operation and closed at the end of it.
+ *  The JDBC backends only hold a pooled connection while a call or a unit of work runs, since an operation spends most
+ *  of its time waiting for the user to type.
+ *  The methods are named after the DBUtils functions they replace and keep the same return values, so an empty map
+ *  or list means nothing was found ( or the read failed ) and a false return means nothing was saved. A call that
+ *  could not get a connection at all throws a StoreBusyException.
+ *  Several calls can be grouped into one unit of work with beginUnitOfWork(), commitUnitOfWork() and
+ *  endUnitOfWork(), in which case either all of them are saved or none are.
+ *
+ * Methods:
+ *  Members:
+ *      - addNewGymMemberToDB, addNewGymMembersToDB, retrieveMemberFromID, saveChangesToMember, addToMemberBalance,
+ *        removeMemberFromDB, removeMemberFromAllTheirClasses, getNegativeAccountUsers, getMemberScheduleForMonth
+ *  Classes, courses and trainers:
+ *      - getCourseId, getCourseIDFromName, getAllCourses, saveNewCourse, saveNewClass, saveClassInfo,
+ *        addToMemberClassTable, addMemberToPackageCourses, getTrainerId, listAllTrainers, trainerScheduleConflict,
+ *        getAllTrainersWorkinghours, getAllTrainersWorkinghoursByMonth
+ *  Packages:
+ *      - getPackagesAndPrices, saveNewPackage, saveNewCoursePackage
+ *  Rentals:
+ *      - getRentalItems, getRentalItemsAndQuantities, getCheckoutRentalsForMember, saveNewRentalLogEntry,
+ *        saveNewRentalLogEntries, takeRentalItemsFromStock, putRentalItemsBackInStock, updateRentalLog
+ *  Transactions:
+ *      - generateIDNumberFromSequence, saveNewTransaction
+ *  History:
+ *      - forEachTransaction, forEachRentalLogEntry
+ *  Units of work:
+ *      - beginUnitOfWork, commitUnitOfWork, endUnitOfWork
+ */
+
+package repository;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import entities.Class;
+import entities.Course;
+import entities.CoursePackage;
+import entities.GymMember;
+import entities.Package;
+import entities.RentalItem;
+import entities.RentalLogEntry;
+import entities.ScheduleEntry;
+import entities.Trainer;
+import entities.Transaction;
+import utils.RowHandler;
+
+public interface GymRepository extends AutoCloseable {
+
+    // Members
+
+    /**
+     * Inserts a new gym member, setting the member's id
+     * @param member Member to add
+     * @return True if the member was saved
+     */
+    public boolean addNewGymMemberToDB( GymMember member );
+
+    /**
+     * Inserts many new gym members at once, setting their ids. Inside a unit of work either all of them are saved or
+     * none are.
+     * @param members Members to add
+     * @return True if every member was saved
+     */
+    public boolean addNewGymMembersToDB( List<GymMember> members );
+
+    /**
+     * Looks up a member
+     * @param memberId Id of member to search for
+     * @return Member with that id or null if there is none
+     */
+    public GymMember retrieveMemberFromID( int memberId );
+
+    /**
+     * Saves changes to a member, updating their membership level from what they have spent
+     * @param member Member to update
+     * @return True if the member was saved
+     */
+    public boolean saveChangesToMember( GymMember member );
+
+    /**
+     * Adds an amount to a member's balance as a change to the stored balance, so changes made since the member was
+     * read are kept, and updates their membership level from what they have spent
+     * @param member Member whose balance changes, gets the balance and level that were saved
+     * @param amount Amount to add, negative for a purchase
+     * @return True if the balance was saved
+     */
+    public boolean addToMemberBalance( GymMember member, float amount );
+
+    /**
+     * Deletes a member
+     * @param member Member to delete
+     */
+    public void removeMemberFromDB( GymMember member );
+
+    /**
+     * Takes a member out of every class they are enrolled in
+     * @param memberID Id of the member
+     */
+    public void removeMemberFromAllTheirClasses( int memberID );
+
+    /**
+     * Gets the members with a negative balance
+     * @return Member names mapped to their phone numbers
+     */
+    public Map<String, String> getNegativeAccountUsers();
+
+    /**
+     * Gets every class a member is enrolled in that runs during a month of this year
+     * @param member Member to get the schedule of
+     * @param month Month number, 1 to 12
+     * @return Classes ordered by start time
+     */
+    public List<ScheduleEntry> getMemberScheduleForMonth( GymMember member, int month );
+
+    // Classes, courses and trainers
+
+    /**
+     * Finds the id of a course
+     * @param category Category of the course
+     * @param catalogNum Catalog number of the course
+     * @return Course id or 0 if there is no such course
+     */
+    public int getCourseId( String category, int catalogNum );
+
+    /**
+     * Finds the id of a course from its name ( category and catalog number separated by a space )
+     * @param name Name of the course
+     * @return Course id or 0 if there is no such course
+     */
+    public int getCourseIDFromName( String name );
+
+    /**
+     * Gets every course
+     * @return List of courses
+     */
+    public List<Course> getAllCourses();
+
+    /**
+     * Saves a new course
+     * @param course Course to save
+     */
+    public void saveNewCourse( Course course );
+
+    /**
+     * Saves a new class
+     * @param newClass Class to save
+     */
+    public void saveNewClass( Class newClass );
+
+    /**
+     * Saves changes to an existing class, except its enrollment which only changes as members are enrolled
+     * @param gymClass Class to update
+     */
+    public void saveClassInfo( Class gymClass );
+
+    /**
+     * Enrolls a member in one class if it still has room
+     * @param member Member to enroll
+     * @param gymClass Class to enroll them in, its enrollment is updated to the saved one
+     * @return True if the member is in the class, false if it was full or the enrollment could not be saved
+     */
+    public boolean addToMemberClassTable( GymMember member, Class gymClass );
+
+    /**
+     * Enrolls a member in every class of every course in a package that still has room
+     * @param member Member who bought the package
+     * @param packageName Name of the package
+     * @return Class numbers that were full, null if the enrollment could not be saved
+     */
+    public List<Integer> addMemberToPackageCourses( GymMember member, String packageName );
+
+    /**
+     * Finds the id of a trainer from their name
+     * @param fName First name
+     * @param lName Last name
+     * @return Trainer id
+     */
+    public int getTrainerId( String fName, String lName );
+
+    /**
+     * Gets every trainer
+     * @return List of trainers
+     */
+    public List<Trainer> listAllTrainers();
+
+    /**
+     * Checks if a trainer already teaches at the time a new class would run in any week it runs
+     * @param trainerId Id of the trainer
+     * @param startTime When the first meeting of the new class starts
+     * @param duration Length of the new class in minutes
+     * @param endDate Last day of the new class
+     * @return True if the times overlap
+     */
+    public boolean trainerScheduleConflict( int trainerId, Timestamp startTime, int duration, Date endDate );
+
+    /**
+     * Gets the minutes each trainer taught in classes that ended in a month of this year
+     * @param month Month number, 1 to 12
+     * @return Trainer names mapped to minutes taught
+     */
+    public Map<String, Float> getAllTrainersWorkinghours( int month );
+
+    /**
+     * Gets the minutes each trainer taught in every month of this year
+     * @return Trainer names mapped to 12 monthly minute totals
+     */
+    public Map<String, float[]> getAllTrainersWorkinghoursByMonth();
+
+    // Packages
+
+    /**
+     * Gets every package
+     * @return Package names mapped to their cost
+     */
+    public Map<String, Float> getPackagesAndPrices();
+
+    /**
+     * Saves a new package
+     * @param packageToAdd Package to save
+     * @return True if the package was saved
+     */
+    public boolean saveNewPackage( Package packageToAdd );
+
+    /**
+     * Adds a course to a package
+     * @param coursePackage Course and package pair to save
+     */
+    public void saveNewCoursePackage( CoursePackage coursePackage );
+
+    // Rentals
+
+    /**
+     * Gets every rental item
+     * @return List of rental items
+     */
+    public List<RentalItem> getRentalItems();
+
+    /**
+     * Gets every rental item name and how many are in stock
+     * @return Item names mapped to quantity in stock
+     */
+    public Map<String, Integer> getRentalItemsAndQuantities();
+
+    /**
+     * Gets the items a member has rented and not returned yet
+     * @param member Member to check
+     * @return Item names mapped to the quantity the member has out
+     */
+    public Map<String, Integer> getCheckoutRentalsForMember( GymMember member );
+
+    /**
+     * Saves a new rental log entry
+     * @param entry Entry to save
+     */
+    public void saveNewRentalLogEntry( RentalLogEntry entry );
+
+    /**
+     * Saves the rental log entries of one checkout together
+     * @param entries Entries to save
+     * @return True if every entry was saved
+     */
+    public boolean saveNewRentalLogEntries( List<RentalLogEntry> entries );
+
+    /**
+     * Takes quantities of items out of stock, an item is only changed if it has enough in stock
+     * @param quantities Item numbers mapped to the quantity to take out
+     * @return Item numbers that did not have enough in stock, null if the stock could not be updated
+     */
+    public List<Integer> takeRentalItemsFromStock( Map<Integer, Integer> quantities );
+
+    /**
+     * Puts quantities of items back in stock
+     * @param quantities Item numbers mapped to the quantity to put back
+     * @return True if every item was updated
+     */
+    public boolean putRentalItemsBackInStock( Map<Integer, Integer> quantities );
+
+    /**
+     * Marks the oldest open rental of an item by a member as returned
+     * @param member Member returning the item
+     * @param itemName Name of the item
+     * @return The rental marked returned, null if there was none open or it could not be saved
+     */
+    public RentalLogEntry updateRentalLog( GymMember member, String itemName );
+
+    // Transactions
+
+    /**
+     * Gets a new unique id for a transaction, rental log entry, course or class
+     * @return Unique id or 0 if one could not be generated
+     */
+    public int generateIDNumberFromSequence();
+
+    /**
+     * Saves a new transaction
+     * @param transaction Transaction to save
+     * @return True if the transaction was saved
+     */
+    public boolean saveNewTransaction( Transaction transaction );
+
+    // History
+
+    /**
+     * Reads transactions in the order of their ids, passing each one to the handler as it is read so any number of
+     * them can be read in the same memory
+     * @param from First day to read, null to read from the first transaction
+     * @param to Last day to read, null to read up to the last transaction
+     * @param memberID Member whose transactions are read, 0 to read every member's
+     * @param handler Gets every transaction, the same object may be filled in again for the next one
+     * @return Number of transactions read
+     * @throws SQLException if the transactions could not be read
+     * @throws IOException if the handler failed, which stops the read
+     */
+    public long forEachTransaction( Date from, Date to, int memberID, RowHandler<Transaction> handler )
+        throws SQLException, IOException;
+
+    /**
+     * Reads rental log entries in the order of their ids, passing each one to the handler as it is read
+     * @param from First day to read, null to read from the first rental
+     * @param to Last day to read, null to read up to the last rental
+     * @param memberID Member whose rentals are read, 0 to read every member's
+     * @param handler Gets every entry, the same object may be filled in again for the next one
+     * @return Number of entries read
+     * @throws SQLException if the entries could not be read
+     * @throws IOException if the handler failed, which stops the read
+     */
+    public long forEachRentalLogEntry( Date from, Date to, int memberID, RowHandler<RentalLogEntry> handler )
+        throws SQLException, IOException;
+
+    // Units of work
+
+    /**
+     * Starts grouping the following calls into one unit of work
+     * @throws SQLException if the unit of work could not be started
+     */
+    public void beginUnitOfWork() throws SQLException;
+
+    /**
+     * Saves everything done since beginUnitOfWork()
+     * @throws SQLException if the changes could not be saved, in which case none of them were
+     */
+    public void commitUnitOfWork() throws SQLException;
+
+    /**
+     * Ends the current unit of work, undoing it if it was not committed. Does nothing if there is none.
+     */
+    public void endUnitOfWork();
+
+    /**
+     * Releases what the repository holds for the current operation
+     */
+    @Override
+    public void close();
+
+}
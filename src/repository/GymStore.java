@@ -0,0 +1,54 @@
+/**
+ * @version 1.0
+ * Class: GymStore.java
+ * Purpose: A place the gym data is kept ( the Oracle DB, an embedded DB, ... ). One store is created when the program
+ *  starts and shared by every operations menu, each menu operation opens its own GymRepository from it.
+ *
+ * Methods:
+ *  openRepository():
+ *      - Opens a repository for one operation, it must be closed when the operation is done
+ *  openRepository( long ):
+ *      - Same but its calls give up after a given time if the store is busy ( every connection is in use )
+ *  getStatistics():
+ *      - Printable summary of the counters the store keeps ( connections, caches, ... )
+ *  close():
+ *      - Frees everything the store holds, called when the program exits
+ */
+
+package repository;
+
+import java.sql.SQLException;
+
+public interface GymStore extends AutoCloseable {
+
+    /**
+     * Opens a repository for the length of one operation
+     * @return Repository that must be closed at the end of the operation
+     * @throws SQLException if the store could not be reached
+     */
+    public GymRepository openRepository() throws SQLException;
+
+    /**
+     * Opens a repository whose calls wait at most a given time for the store to have room for them, and throw a
+     * StoreBusyException after. Stores that are never busy ignore the time.
+     * @param maxWaitMillis Longest time a call waits
+     * @return Repository that must be closed at the end of the operation
+     * @throws SQLException if the store could not be reached
+     */
+    public default GymRepository openRepository( long maxWaitMillis ) throws SQLException {
+        return openRepository();
+    }
+
+    /**
+     * Summary of the counters kept by the store
+     * @return String that can be printed to the console
+     */
+    public String getStatistics();
+
+    /**
+     * Frees everything the store holds
+     */
+    @Override
+    public void close();
+
+}
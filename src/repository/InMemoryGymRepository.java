@@ -0,0 +1,856 @@
+/**
+ * @version 1.0
+ * Class: InMemoryGymRepository.java
+ * Implements: GymRepository
+ * Purpose: Repository over an InMemoryGymStore. Every call gives the same answers DBUtils gives for the same data
+ *  ( same ordering, same keys in the returned maps, same messages when something cannot be saved ) but is answered
+ *  from the store's tables and indexes instead of the DB.
+ *  A unit of work holds the store's write lock from beginUnitOfWork() until endUnitOfWork(), and every change made in
+ *  it adds the change that undoes it to an undo log, which is run backwards if the unit of work is not committed.
+ *
+ * Utilizes:
+ *  - java.io.IOException
+ *  - java.sql.*
+ *  - java.time.*
+ *  - java.util.*
+ *  - utils.IntList
+ *  - utils.RowHandler
+ *
+ * Constructor: InMemoryGymRepository( InMemoryGymStore ):
+ *  - Store to read and write
+ *
+ * Methods:
+ *  - Every method of GymRepository, see DBUtils for what each one does
+ */
+
+package repository;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import entities.Class;
+import entities.Course;
+import entities.CoursePackage;
+import entities.GymMember;
+import entities.Package;
+import entities.RentalItem;
+import entities.RentalLogEntry;
+import entities.ScheduleEntry;
+import entities.Trainer;
+import entities.Transaction;
+import enums.MembershipLevelEnum;
+import utils.IntList;
+import utils.RowHandler;
+
+public class InMemoryGymRepository implements GymRepository {
+
+    private static final String PURCHASE = "PURCHASE";
+
+    private final InMemoryGymStore store;
+
+    private boolean inUnitOfWork = false;
+
+    private List<Runnable> undoLog; // Changes made in the running unit of work, null if there is none or it committed
+
+    /**
+     * Opens a repository over a store
+     * @param store Store to read and write
+     */
+    public InMemoryGymRepository( InMemoryGymStore store ) {
+        this.store = store;
+    }
+
+    // Members
+
+    @Override
+    public boolean addNewGymMemberToDB( GymMember member ) {
+        lockForWrite();
+        try {
+            member.setMemberID( store.nextID() );
+            store.putMember( InMemoryGymStore.copyOf( member ), undoLog );
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public boolean addNewGymMembersToDB( List<GymMember> members ) {
+        lockForWrite();
+        try {
+            for ( GymMember member : members ) {
+                member.setMemberID( store.nextID() );
+                store.putMember( InMemoryGymStore.copyOf( member ), undoLog );
+            }
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public GymMember retrieveMemberFromID( int memberId ) {
+        lockForRead();
+        try {
+            GymMember member = store.members.get( memberId );
+            return member == null ? null : InMemoryGymStore.copyOf( member );
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    @Override
+    public boolean saveChangesToMember( GymMember member ) {
+        lockForWrite();
+        try {
+            member.setMembershipLevel( GymMember.determineLevel( getAmountSpentByMember( member.getMemberID() ) ) );
+            if ( store.members.containsKey( member.getMemberID() ) ) {
+                store.putMember( InMemoryGymStore.copyOf( member ), undoLog );
+            }
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public boolean addToMemberBalance( GymMember member, float amount ) {
+        lockForWrite();
+        try {
+            // Start from the stored member, the caller's copy may be older than another session's change
+            GymMember stored = store.members.get( member.getMemberID() );
+            if ( stored == null ) {
+                return false;
+            }
+            MembershipLevelEnum membershipLevel = GymMember
+                .determineLevel( getAmountSpentByMember( member.getMemberID() ) );
+            GymMember updated = InMemoryGymStore.copyOf( stored );
+            updated.setBalance( stored.getBalance() + amount );
+            updated.setMembershipLevel( membershipLevel );
+            store.putMember( updated, undoLog );
+            member.setBalance( updated.getBalance() );
+            member.setMembershipLevel( membershipLevel );
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public void removeMemberFromDB( GymMember member ) {
+        lockForWrite();
+        try {
+            store.removeMember( member.getMemberID(), undoLog );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public void removeMemberFromAllTheirClasses( int memberID ) {
+        lockForWrite();
+        try {
+            IntList classNums = store.classesByMember.get( memberID );
+            if ( classNums == null ) {
+                return;
+            }
+            for ( int classNum : classNums.toArray() ) {
+                Class gymClass = store.classes.get( classNum );
+                if ( gymClass != null ) {
+                    Class updated = InMemoryGymStore.copyOf( gymClass );
+                    updated.setCurrentEnrollment( updated.getCurrentEnrollment() - 1 );
+                    store.putClass( updated, undoLog );
+                }
+                store.unenroll( memberID, classNum, undoLog );
+            }
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public Map<String, String> getNegativeAccountUsers() {
+        Map<String, String> namesAndNums = new HashMap<>();
+        lockForRead();
+        try {
+            int i = 1;
+            for ( GymMember member : store.members.values() ) {
+                if ( member.getBalance() < 0 ) {
+                    namesAndNums.put( i + ")" + member.getFullName(), member.getPhoneNumber() );
+                    i++;
+                }
+            }
+        } finally {
+            unlockForRead();
+        }
+        return namesAndNums;
+    }
+
+    @Override
+    public List<ScheduleEntry> getMemberScheduleForMonth( GymMember member, int month ) {
+        LocalDate firstDay = Year.now().atMonth( month ).atDay( 1 );
+        LocalDate lastDay = firstDay.with( TemporalAdjusters.lastDayOfMonth() );
+        List<Class> classes = new ArrayList<>();
+        lockForRead();
+        try {
+            IntList classNums = store.classesByMember.get( member.getMemberID() );
+            for ( int i = 0 ; classNums != null && i < classNums.size() ; i++ ) {
+                Class gymClass = store.classes.get( classNums.get( i ) );
+                if ( gymClass != null
+                    && !gymClass.getStartDate().toLocalDate().isAfter( lastDay )
+                    && !gymClass.getEndDate().toLocalDate().isBefore( firstDay ) ) {
+                    classes.add( gymClass );
+                }
+            }
+        } finally {
+            unlockForRead();
+        }
+
+        classes.sort( Comparator.comparing( Class::getStartTime ).thenComparingInt( Class::getClassNum ) );
+        List<ScheduleEntry> schedule = new ArrayList<>( classes.size() );
+        for ( Class gymClass : classes ) {
+            schedule
+                .add( new ScheduleEntry( gymClass.getClassNum(), gymClass.getStartTime(), gymClass.getClassDuration() ) );
+        }
+        return schedule;
+    }
+
+    // Classes, courses and trainers
+
+    @Override
+    public int getCourseId( String category, int catalogNum ) {
+        lockForRead();
+        try {
+            Course course = store.coursesByName.get( InMemoryGymStore.courseName( category, catalogNum ) );
+            if ( course == null ) {
+                System.out.println( "Unable to add new class with this course" );
+                return 0;
+            }
+            return course.getCourseID();
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    @Override
+    public int getCourseIDFromName( String name ) {
+        String[] categoryNum = name.split( " " );
+        lockForRead();
+        try {
+            Course course = store.coursesByName
+                .get( InMemoryGymStore.courseName( categoryNum[0], Integer.parseInt( categoryNum[1] ) ) );
+            if ( course == null ) {
+                System.out.println( "Unable to find ID from package name" );
+                return 0;
+            }
+            return course.getCourseID();
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    @Override
+    public List<Course> getAllCourses() {
+        List<Course> courses = new ArrayList<>();
+        lockForRead();
+        try {
+            for ( Course course : store.courses.values() ) {
+                courses.add( InMemoryGymStore.copyOf( course ) );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return courses;
+    }
+
+    @Override
+    public void saveNewCourse( Course course ) {
+        lockForWrite();
+        try {
+            if ( store.courses.containsKey( course.getCourseID() ) ) {
+                System.out.println( "Unable to save the new course" );
+                return;
+            }
+            store.putCourse( InMemoryGymStore.copyOf( course ), undoLog );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public void saveNewClass( Class newClass ) {
+        lockForWrite();
+        try {
+            if ( store.classes.containsKey( newClass.getClassNum() ) ) {
+                System.out.println( "Unable to add new class" );
+                return;
+            }
+            store.putClass( InMemoryGymStore.copyOf( newClass ), undoLog );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public void saveClassInfo( Class gymClass ) {
+        lockForWrite();
+        try {
+            // Same as DBUtils, the enrollment is kept and the capacity can not go below it
+            Class old = store.classes.get( gymClass.getClassNum() );
+            if ( old != null && gymClass.getCapacity() >= old.getCurrentEnrollment() ) {
+                Class updated = InMemoryGymStore.copyOf( gymClass );
+                updated.setCurrentEnrollment( old.getCurrentEnrollment() );
+                store.putClass( updated, undoLog );
+            }
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public boolean addToMemberClassTable( GymMember member, Class gymClass ) {
+        lockForWrite();
+        try {
+            IntList classNums = store.classesByMember.get( member.getMemberID() );
+            if ( classNums != null && classNums.contains( gymClass.getClassNum() ) ) {
+                return true;
+            }
+            // The write lock makes the capacity check and the increment one step, so no retries are needed
+            Class stored = store.classes.get( gymClass.getClassNum() );
+            if ( stored == null || stored.getCurrentEnrollment() >= stored.getCapacity() ) {
+                return false;
+            }
+            Class updated = InMemoryGymStore.copyOf( stored );
+            updated.setCurrentEnrollment( stored.getCurrentEnrollment() + 1 );
+            store.putClass( updated, undoLog );
+            store.enroll( member.getMemberID(), gymClass.getClassNum(), undoLog );
+            gymClass.setCurrentEnrollment( updated.getCurrentEnrollment() );
+            gymClass.setCapacity( updated.getCapacity() );
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public List<Integer> addMemberToPackageCourses( GymMember member, String packageName ) {
+        List<Integer> fullClasses = new ArrayList<>();
+        int memberID = member.getMemberID();
+        lockForWrite();
+        try {
+            // Grab all the classes of the package's courses that the member is not already in
+            IntList courseIDs = store.coursesByPackage.get( packageName );
+            if ( courseIDs == null ) {
+                return fullClasses;
+            }
+            IntList enrolled = store.classesByMember.get( memberID );
+            IntList classNums = new IntList();
+            for ( int i = 0 ; i < courseIDs.size() ; i++ ) {
+                IntList courseClasses = store.classesByCourse.get( courseIDs.get( i ) );
+                for ( int j = 0 ; courseClasses != null && j < courseClasses.size() ; j++ ) {
+                    int classNum = courseClasses.get( j );
+                    if ( enrolled == null || !enrolled.contains( classNum ) ) {
+                        classNums.add( classNum );
+                    }
+                }
+            }
+            int[] sorted = classNums.toArray();
+            Arrays.sort( sorted );
+
+            // Take a seat in every class that still has room
+            for ( int classNum : sorted ) {
+                Class gymClass = store.classes.get( classNum );
+                if ( gymClass.getCurrentEnrollment() >= gymClass.getCapacity() ) {
+                    fullClasses.add( classNum );
+                    continue;
+                }
+                Class updated = InMemoryGymStore.copyOf( gymClass );
+                updated.setCurrentEnrollment( updated.getCurrentEnrollment() + 1 );
+                store.putClass( updated, undoLog );
+                store.enroll( memberID, classNum, undoLog );
+            }
+        } finally {
+            unlockForWrite();
+        }
+        return fullClasses;
+    }
+
+    @Override
+    public int getTrainerId( String fName, String lName ) {
+        lockForRead();
+        try {
+            for ( Trainer trainer : store.trainers.values() ) {
+                if ( trainer.getFirstName().equals( fName ) && trainer.getLastName().equals( lName ) ) {
+                    return trainer.getTrainerID();
+                }
+            }
+        } finally {
+            unlockForRead();
+        }
+        return 0;
+    }
+
+    @Override
+    public List<Trainer> listAllTrainers() {
+        List<Trainer> trainers = new ArrayList<>();
+        lockForRead();
+        try {
+            for ( Trainer trainer : store.trainers.values() ) {
+                trainers.add( InMemoryGymStore.copyOf( trainer ) );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return trainers;
+    }
+
+    @Override
+    public boolean trainerScheduleConflict( int trainerId, Timestamp startTime, int duration, Date endDate ) {
+        lockForRead();
+        try {
+            return store.trainerSchedule.findConflict( trainerId, startTime, duration, endDate ) >= 0;
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    @Override
+    public Map<String, Float> getAllTrainersWorkinghours( int month ) {
+        Map<String, Float> trainerHours = new LinkedHashMap<>();
+        LocalDate firstDay = Year.now().atMonth( month ).atDay( 1 );
+        LocalDate lastDay = firstDay.with( TemporalAdjusters.lastDayOfMonth() );
+        lockForRead();
+        try {
+            for ( Trainer trainer : sortedTrainers() ) {
+                float minutes = 0;
+                IntList classNums = store.classesByTrainer.get( trainer.getTrainerID() );
+                for ( int i = 0 ; classNums != null && i < classNums.size() ; i++ ) {
+                    Class gymClass = store.classes.get( classNums.get( i ) );
+                    LocalDate endDate = gymClass.getEndDate().toLocalDate();
+                    if ( !endDate.isBefore( firstDay ) && !endDate.isAfter( lastDay ) ) {
+                        minutes += gymClass.getClassDuration();
+                    }
+                }
+                trainerHours.put( trainer.getFullName(), minutes );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return trainerHours;
+    }
+
+    @Override
+    public Map<String, float[]> getAllTrainersWorkinghoursByMonth() {
+        Map<String, float[]> trainerHours = new LinkedHashMap<>();
+        int year = Year.now().getValue();
+        lockForRead();
+        try {
+            for ( Trainer trainer : sortedTrainers() ) {
+                float[] months = trainerHours.get( trainer.getFullName() );
+                if ( months == null ) {
+                    months = new float[12];
+                    trainerHours.put( trainer.getFullName(), months );
+                }
+                IntList classNums = store.classesByTrainer.get( trainer.getTrainerID() );
+                for ( int i = 0 ; classNums != null && i < classNums.size() ; i++ ) {
+                    Class gymClass = store.classes.get( classNums.get( i ) );
+                    LocalDate endDate = gymClass.getEndDate().toLocalDate();
+                    if ( endDate.getYear() == year ) {
+                        months[endDate.getMonthValue() - 1] += gymClass.getClassDuration();
+                    }
+                }
+            }
+        } finally {
+            unlockForRead();
+        }
+        return trainerHours;
+    }
+
+    /**
+     * Gets every trainer in the order DBUtils lists them in, the read lock must be held
+     * @return Trainers ordered by first name, last name and id
+     */
+    private List<Trainer> sortedTrainers() {
+        List<Trainer> trainers = store.trainers.values();
+        trainers
+            .sort(
+                Comparator
+                    .comparing( Trainer::getFirstName )
+                    .thenComparing( Trainer::getLastName )
+                    .thenComparingInt( Trainer::getTrainerID ) );
+        return trainers;
+    }
+
+    // Packages
+
+    @Override
+    public Map<String, Float> getPackagesAndPrices() {
+        Map<String, Float> packages = new HashMap<>();
+        lockForRead();
+        try {
+            for ( Package gymPackage : store.packages.values() ) {
+                packages.put( gymPackage.getPackageName(), gymPackage.getCost() );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return packages;
+    }
+
+    @Override
+    public boolean saveNewPackage( Package packageToAdd ) {
+        lockForWrite();
+        try {
+            if ( store.packages.containsKey( packageToAdd.getPackageName() ) ) {
+                return false;
+            }
+            store.putPackage( new Package( packageToAdd.getPackageName(), packageToAdd.getCost() ), undoLog );
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public void saveNewCoursePackage( CoursePackage coursePackage ) {
+        lockForWrite();
+        try {
+            String packageName = coursePackage.getPackageName();
+            IntList packageCourses = store.coursesByPackage.get( packageName );
+            if ( !store.courses.containsKey( coursePackage.getCourseID() )
+                || !store.packages.containsKey( packageName )
+                || ( packageCourses != null && packageCourses.contains( coursePackage.getCourseID() ) ) ) {
+                System.out.println( "Unable to save course package" );
+                return;
+            }
+            store.addCourseToPackage( coursePackage.getCourseID(), packageName, undoLog );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    // Rentals
+
+    @Override
+    public List<RentalItem> getRentalItems() {
+        List<RentalItem> items = new ArrayList<>();
+        lockForRead();
+        try {
+            for ( RentalItem item : store.rentalItems.values() ) {
+                items.add( InMemoryGymStore.copyOf( item ) );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return items;
+    }
+
+    @Override
+    public Map<String, Integer> getRentalItemsAndQuantities() {
+        Map<String, Integer> itemAndQuantity = new HashMap<>();
+        lockForRead();
+        try {
+            for ( RentalItem item : store.rentalItems.values() ) {
+                itemAndQuantity.put( item.getItemName(), item.getQuantityInStock() );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return itemAndQuantity;
+    }
+
+    @Override
+    public Map<String, Integer> getCheckoutRentalsForMember( GymMember member ) {
+        Map<String, Integer> rentals = new HashMap<>();
+        lockForRead();
+        try {
+            IntList rentalIDs = store.openRentalsByMember.get( member.getMemberID() );
+            for ( int i = 0 ; rentalIDs != null && i < rentalIDs.size() ; i++ ) {
+                RentalLogEntry entry = store.rentalLog.get( rentalIDs.get( i ) );
+                RentalItem item = store.rentalItems.get( entry.getItemNum() );
+                String itemName = item == null ? "" : item.getItemName();
+                rentals.merge( itemName, entry.getQuantityBorrowed(), Integer::sum );
+            }
+        } finally {
+            unlockForRead();
+        }
+        return rentals;
+    }
+
+    @Override
+    public void saveNewRentalLogEntry( RentalLogEntry entry ) {
+        lockForWrite();
+        try {
+            if ( store.rentalLog.containsKey( entry.getRentalID() )
+                || !store.rentalItems.containsKey( entry.getItemNum() ) ) {
+                System.out.println( "Unable to save new rental log entry" );
+                return;
+            }
+            store.putRentalLogEntry( InMemoryGymStore.copyOf( entry ), undoLog );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public boolean saveNewRentalLogEntries( List<RentalLogEntry> entries ) {
+        lockForWrite();
+        try {
+            for ( RentalLogEntry entry : entries ) {
+                if ( store.rentalLog.containsKey( entry.getRentalID() )
+                    || !store.rentalItems.containsKey( entry.getItemNum() ) ) {
+                    System.out.println( "Unable to save new rental log entries" );
+                    return false;
+                }
+                store.putRentalLogEntry( InMemoryGymStore.copyOf( entry ), undoLog );
+            }
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    @Override
+    public List<Integer> takeRentalItemsFromStock( Map<Integer, Integer> quantities ) {
+        return changeStock( quantities, -1 );
+    }
+
+    @Override
+    public boolean putRentalItemsBackInStock( Map<Integer, Integer> quantities ) {
+        return changeStock( quantities, 1 ).isEmpty();
+    }
+
+    /**
+     * Same as DBUtils, adds to the quantity in stock of every item unless it would go below zero
+     * @param quantities Item numbers mapped to quantities
+     * @param sign 1 to add the quantities to the stock, -1 to take them out
+     * @return Item numbers that were not changed
+     */
+    private List<Integer> changeStock( Map<Integer, Integer> quantities, int sign ) {
+        List<Integer> unchanged = new ArrayList<>();
+        lockForWrite();
+        try {
+            for ( Map.Entry<Integer, Integer> quantity : quantities.entrySet() ) {
+                RentalItem stored = store.rentalItems.get( quantity.getKey() );
+                int inStock = stored == null ? -1 : stored.getQuantityInStock() + sign * quantity.getValue();
+                if ( inStock < 0 ) {
+                    unchanged.add( quantity.getKey() );
+                    continue;
+                }
+                store.putRentalItem( new RentalItem( stored.getItemNum(), stored.getItemName(), inStock ), undoLog );
+            }
+        } finally {
+            unlockForWrite();
+        }
+        Collections.sort( unchanged );
+        return unchanged;
+    }
+
+    @Override
+    public RentalLogEntry updateRentalLog( GymMember member, String itemName ) {
+        lockForWrite();
+        try {
+            RentalItem item = store.rentalItemsByName.get( itemName );
+            IntList rentalIDs = store.openRentalsByMember.get( member.getMemberID() );
+            RentalLogEntry oldest = null;
+            for ( int i = 0 ; item != null && rentalIDs != null && i < rentalIDs.size() ; i++ ) {
+                RentalLogEntry entry = store.rentalLog.get( rentalIDs.get( i ) );
+                if ( entry.getItemNum() == item.getItemNum()
+                    && ( oldest == null || entry.getOutTime().before( oldest.getOutTime() ) ) ) {
+                    oldest = entry;
+                }
+            }
+            if ( oldest == null ) {
+                return null;
+            }
+            RentalLogEntry returned = InMemoryGymStore.copyOf( oldest );
+            returned.setReturnStatus( true );
+            store.putRentalLogEntry( returned, undoLog );
+            return InMemoryGymStore.copyOf( returned );
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    // Transactions
+
+    @Override
+    public int generateIDNumberFromSequence() {
+        return store.nextID();
+    }
+
+    @Override
+    public boolean saveNewTransaction( Transaction transaction ) {
+        lockForWrite();
+        try {
+            if ( store.transactions.containsKey( transaction.getTransactionID() ) ) {
+                System.out.println( "Unable to persist transaction" );
+                return false;
+            }
+            Transaction saved = InMemoryGymStore.copyOf( transaction );
+            saved.setXactDate( Date.valueOf( LocalDate.now() ) ); // Same as SYSDATE in the DB insert
+            store.putTransaction( saved, undoLog );
+            return true;
+        } finally {
+            unlockForWrite();
+        }
+    }
+
+    // History
+
+    @Override
+    public long forEachTransaction( Date from, Date to, int memberID, RowHandler<Transaction> handler )
+        throws IOException {
+        lockForRead();
+        try {
+            IntList memberTransactions = store.transactionsByMember.get( memberID );
+            int[] transactionIDs = memberID == 0
+                ? store.transactions.keys()
+                : memberTransactions == null ? new int[0] : memberTransactions.toArray();
+            Arrays.sort( transactionIDs );
+            long count = 0;
+            for ( int transactionID : transactionIDs ) {
+                Transaction transaction = store.transactions.get( transactionID );
+                if ( inDateRange( transaction.getXactDate(), from, to ) ) {
+                    handler.handle( InMemoryGymStore.copyOf( transaction ) );
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    @Override
+    public long forEachRentalLogEntry( Date from, Date to, int memberID, RowHandler<RentalLogEntry> handler )
+        throws IOException {
+        lockForRead();
+        try {
+            int[] rentalIDs = store.rentalLog.keys();
+            Arrays.sort( rentalIDs );
+            long count = 0;
+            for ( int rentalID : rentalIDs ) {
+                RentalLogEntry entry = store.rentalLog.get( rentalID );
+                if ( ( memberID == 0 || entry.getMemberID() == memberID )
+                    && inDateRange( entry.getOutTime(), from, to ) ) {
+                    handler.handle( InMemoryGymStore.copyOf( entry ) );
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            unlockForRead();
+        }
+    }
+
+    /**
+     * Checks a date against the optional bounds of a history read
+     * @param date Date of the row
+     * @param from First day to read, null for none
+     * @param to Last day to read, null for none
+     * @return True if the row is in the range
+     */
+    private static boolean inDateRange( Date date, Date from, Date to ) {
+        LocalDate day = date.toLocalDate();
+        return ( from == null || !day.isBefore( from.toLocalDate() ) )
+            && ( to == null || !day.isAfter( to.toLocalDate() ) );
+    }
+
+    /**
+     * Totals the purchases a member has made, the write lock must be held
+     * @param memberID Id of the member
+     * @return Amount the member has spent
+     */
+    private float getAmountSpentByMember( int memberID ) {
+        float amount = 0;
+        IntList transactionIDs = store.transactionsByMember.get( memberID );
+        for ( int i = 0 ; transactionIDs != null && i < transactionIDs.size() ; i++ ) {
+            Transaction transaction = store.transactions.get( transactionIDs.get( i ) );
+            if ( PURCHASE.equals( transaction.getXactType() ) ) {
+                amount += transaction.getAmount();
+            }
+        }
+        return Math.abs( amount );
+    }
+
+    // Units of work
+
+    @Override
+    public void beginUnitOfWork() throws SQLException {
+        if ( inUnitOfWork ) {
+            throw new IllegalStateException( "A unit of work is already running" );
+        }
+        store.lock.writeLock().lock();
+        inUnitOfWork = true;
+        undoLog = new ArrayList<>();
+    }
+
+    @Override
+    public void commitUnitOfWork() throws SQLException {
+        if ( !inUnitOfWork ) {
+            throw new IllegalStateException( "No unit of work is running" );
+        }
+        undoLog = null;
+        store.commitCount.incrementAndGet();
+    }
+
+    @Override
+    public void endUnitOfWork() {
+        if ( !inUnitOfWork ) {
+            return;
+        }
+        try {
+            if ( undoLog != null ) {
+                for ( int i = undoLog.size() - 1 ; i >= 0 ; i-- ) {
+                    undoLog.get( i ).run();
+                }
+                store.rollbackCount.incrementAndGet();
+            }
+        } finally {
+            undoLog = null;
+            inUnitOfWork = false;
+            store.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ends any unit of work that was left running
+     */
+    @Override
+    public void close() {
+        endUnitOfWork();
+    }
+
+    // Locking, reentrant so calls made inside a unit of work simply nest in its write lock
+
+    private void lockForRead() {
+        store.lock.readLock().lock();
+    }
+
+    private void unlockForRead() {
+        store.lock.readLock().unlock();
+    }
+
+    private void lockForWrite() {
+        store.lock.writeLock().lock();
+    }
+
+    private void unlockForWrite() {
+        store.lock.writeLock().unlock();
+    }
+
+}
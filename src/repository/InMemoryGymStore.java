@@ -0,0 +1,429 @@
+/**
+ * @version 1.0
+ * Class: InMemoryGymStore.java
+ * Implements: GymStore
+ * Purpose: Keeps all of the gym data in the JVM's memory with no database at all, for simulations, demo kiosks and as
+ *  the reference backend when measuring how fast the operations menus themselves are. Every table is an IntObjectMap
+ *  keyed by its int id, and the lookups DBUtils makes by something other than the id have secondary indexes of their
+ *  own ( member -> classes, trainer -> classes, course -> classes, member -> open rentals, member -> transactions,
+ *  package -> courses ) so no operation has to scan a whole table.
+ *  All data is guarded by one read/write lock: reads share it, writes take it alone, and a repository holds the write
+ *  lock for the whole length of a unit of work. Rows are copied going in and coming out so changing an entity that
+ *  was handed out never changes the stored one.
+ *
+ * Utilizes:
+ *  - java.util.*
+ *  - java.util.concurrent.locks.ReentrantReadWriteLock
+ *  - utils.IntList
+ *  - utils.IntObjectMap
+ *  - utils.TrainerSchedule
+ *
+ * Constructor: InMemoryGymStore():
+ *  - Empty store, every id handed out starts at 1
+ *
+ * Methods:
+ *  openRepository():
+ *      - Returns a repository over this store
+ *  addTrainer( Trainer ), addRentalItem( RentalItem ):
+ *      - Loads rows that the operations menus have no way of adding themselves
+ *  getStatistics():
+ *      - Row counts of every table and how many units of work were committed and rolled back
+ *  Package private put/remove methods:
+ *      - Change one row and the indexes that go with it, adding the change that undoes it to an undo log
+ */
+
+package repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import entities.Class;
+import entities.Course;
+import entities.GymMember;
+import entities.Package;
+import entities.RentalItem;
+import entities.RentalLogEntry;
+import entities.Trainer;
+import entities.Transaction;
+import enums.MembershipLevelEnum;
+import utils.IntList;
+import utils.IntObjectMap;
+import utils.TrainerSchedule;
+
+public class InMemoryGymStore implements GymStore {
+
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Tables
+    final IntObjectMap<GymMember> members = new IntObjectMap<>();
+    final IntObjectMap<Trainer> trainers = new IntObjectMap<>();
+    final IntObjectMap<Course> courses = new IntObjectMap<>();
+    final IntObjectMap<Class> classes = new IntObjectMap<>();
+    final IntObjectMap<RentalItem> rentalItems = new IntObjectMap<>();
+    final IntObjectMap<RentalLogEntry> rentalLog = new IntObjectMap<>();
+    final IntObjectMap<Transaction> transactions = new IntObjectMap<>();
+    final Map<String, Package> packages = new HashMap<>();
+
+    // Secondary indexes
+    final IntObjectMap<IntList> classesByMember = new IntObjectMap<>();
+    final IntObjectMap<IntList> classesByTrainer = new IntObjectMap<>();
+    final IntObjectMap<IntList> classesByCourse = new IntObjectMap<>();
+    final IntObjectMap<IntList> openRentalsByMember = new IntObjectMap<>();
+    final IntObjectMap<IntList> transactionsByMember = new IntObjectMap<>();
+    final Map<String, IntList> coursesByPackage = new HashMap<>();
+    final Map<String, Course> coursesByName = new HashMap<>(); // Key is "CATEGORY CATALOGNUM"
+    final Map<String, RentalItem> rentalItemsByName = new HashMap<>();
+    final TrainerSchedule trainerSchedule = new TrainerSchedule(); // Meetings of every class per trainer
+
+    private final AtomicInteger sequence = new AtomicInteger( 1 ); // Next id, shared by every table like ALL_SEQ
+
+    // Statistics
+    final AtomicLong commitCount = new AtomicLong();
+    final AtomicLong rollbackCount = new AtomicLong();
+
+    @Override
+    public GymRepository openRepository() {
+        return new InMemoryGymRepository( this );
+    }
+
+    /**
+     * Adds a trainer
+     * @param trainer Trainer to add, replaces any trainer with the same id
+     */
+    public void addTrainer( Trainer trainer ) {
+        lock.writeLock().lock();
+        try {
+            trainers.put( trainer.getTrainerID(), copyOf( trainer ) );
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a rental item
+     * @param item Item to add, replaces any item with the same number
+     */
+    public void addRentalItem( RentalItem item ) {
+        lock.writeLock().lock();
+        try {
+            putRentalItem( copyOf( item ), null );
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "In memory store\n" );
+        sb.append( "---------------\n" );
+        lock.readLock().lock();
+        try {
+            sb.append( "Members: " + members.size() + "\n" );
+            sb.append( "Trainers: " + trainers.size() + "\n" );
+            sb.append( "Courses: " + courses.size() + "\n" );
+            sb.append( "Classes: " + classes.size() + "\n" );
+            sb.append( "Packages: " + packages.size() + "\n" );
+            sb.append( "Rental items: " + rentalItems.size() + "\n" );
+            sb.append( "Rental log entries: " + rentalLog.size() + "\n" );
+            sb.append( "Transactions: " + transactions.size() + "\n" );
+        } finally {
+            lock.readLock().unlock();
+        }
+        sb.append( "Units of work committed: " + commitCount.get() + "\n" );
+        sb.append( "Units of work rolled back: " + rollbackCount.get() );
+        return sb.toString();
+    }
+
+    /**
+     * Nothing to free, the data goes away with the store
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Hands out the next id
+     * @return Unique id
+     */
+    int nextID() {
+        return sequence.getAndIncrement();
+    }
+
+    // Changes to single rows, the write lock must be held. The undo log may be null when nothing has to be undone.
+
+    void putMember( GymMember member, List<Runnable> undoLog ) {
+        int memberID = member.getMemberID();
+        GymMember old = members.put( memberID, member );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    removeMember( memberID, null );
+                } else {
+                    putMember( old, null );
+                }
+            } );
+        }
+    }
+
+    void removeMember( int memberID, List<Runnable> undoLog ) {
+        GymMember old = members.remove( memberID );
+        if ( undoLog != null && old != null ) {
+            undoLog.add( () -> putMember( old, null ) );
+        }
+    }
+
+    void putClass( Class gymClass, List<Runnable> undoLog ) {
+        int classNum = gymClass.getClassNum();
+        Class old = classes.put( classNum, gymClass );
+        if ( old != null ) {
+            removeFromIndex( classesByTrainer, old.getTrainerID(), classNum );
+            removeFromIndex( classesByCourse, old.getCourseID(), classNum );
+        }
+        addToIndex( classesByTrainer, gymClass.getTrainerID(), classNum );
+        addToIndex( classesByCourse, gymClass.getCourseID(), classNum );
+        trainerSchedule.put( gymClass );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    removeClass( classNum, null );
+                } else {
+                    putClass( old, null );
+                }
+            } );
+        }
+    }
+
+    void removeClass( int classNum, List<Runnable> undoLog ) {
+        Class old = classes.remove( classNum );
+        if ( old == null ) {
+            return;
+        }
+        removeFromIndex( classesByTrainer, old.getTrainerID(), classNum );
+        removeFromIndex( classesByCourse, old.getCourseID(), classNum );
+        trainerSchedule.remove( classNum );
+        if ( undoLog != null ) {
+            undoLog.add( () -> putClass( old, null ) );
+        }
+    }
+
+    void enroll( int memberID, int classNum, List<Runnable> undoLog ) {
+        addToIndex( classesByMember, memberID, classNum );
+        if ( undoLog != null ) {
+            undoLog.add( () -> unenroll( memberID, classNum, null ) );
+        }
+    }
+
+    void unenroll( int memberID, int classNum, List<Runnable> undoLog ) {
+        if ( removeFromIndex( classesByMember, memberID, classNum ) && undoLog != null ) {
+            undoLog.add( () -> enroll( memberID, classNum, null ) );
+        }
+    }
+
+    void putCourse( Course course, List<Runnable> undoLog ) {
+        Course old = courses.put( course.getCourseID(), course );
+        if ( old != null ) {
+            coursesByName.remove( courseName( old.getCategory(), old.getCatalogNum() ) );
+        }
+        coursesByName.put( courseName( course.getCategory(), course.getCatalogNum() ), course );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    courses.remove( course.getCourseID() );
+                    coursesByName.remove( courseName( course.getCategory(), course.getCatalogNum() ) );
+                } else {
+                    putCourse( old, null );
+                }
+            } );
+        }
+    }
+
+    void putPackage( Package packageToAdd, List<Runnable> undoLog ) {
+        String name = packageToAdd.getPackageName();
+        Package old = packages.put( name, packageToAdd );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    packages.remove( name );
+                } else {
+                    packages.put( name, old );
+                }
+            } );
+        }
+    }
+
+    void addCourseToPackage( int courseID, String packageName, List<Runnable> undoLog ) {
+        IntList packageCourses = coursesByPackage.get( packageName );
+        if ( packageCourses == null ) {
+            packageCourses = new IntList();
+            coursesByPackage.put( packageName, packageCourses );
+        }
+        packageCourses.add( courseID );
+        if ( undoLog != null ) {
+            IntList added = packageCourses;
+            undoLog.add( () -> added.removeValue( courseID ) );
+        }
+    }
+
+    void putRentalItem( RentalItem item, List<Runnable> undoLog ) {
+        RentalItem old = rentalItems.put( item.getItemNum(), item );
+        if ( old != null ) {
+            rentalItemsByName.remove( old.getItemName() );
+        }
+        rentalItemsByName.put( item.getItemName(), item );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    rentalItems.remove( item.getItemNum() );
+                    rentalItemsByName.remove( item.getItemName() );
+                } else {
+                    putRentalItem( old, null );
+                }
+            } );
+        }
+    }
+
+    void putRentalLogEntry( RentalLogEntry entry, List<Runnable> undoLog ) {
+        int rentalID = entry.getRentalID();
+        RentalLogEntry old = rentalLog.put( rentalID, entry );
+        if ( old != null && !old.isReturned() ) {
+            removeFromIndex( openRentalsByMember, old.getMemberID(), rentalID );
+        }
+        if ( !entry.isReturned() ) {
+            addToIndex( openRentalsByMember, entry.getMemberID(), rentalID );
+        }
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                if ( old == null ) {
+                    rentalLog.remove( rentalID );
+                    removeFromIndex( openRentalsByMember, entry.getMemberID(), rentalID );
+                } else {
+                    putRentalLogEntry( old, null );
+                }
+            } );
+        }
+    }
+
+    void putTransaction( Transaction transaction, List<Runnable> undoLog ) {
+        int transactionID = transaction.getTransactionID();
+        transactions.put( transactionID, transaction );
+        addToIndex( transactionsByMember, transaction.getMemberID(), transactionID );
+        if ( undoLog != null ) {
+            undoLog.add( () -> {
+                transactions.remove( transactionID );
+                removeFromIndex( transactionsByMember, transaction.getMemberID(), transactionID );
+            } );
+        }
+    }
+
+    /**
+     * Key of the course name index
+     * @param category Category of the course
+     * @param catalogNum Catalog number of the course
+     * @return Name of the course
+     */
+    static String courseName( String category, int catalogNum ) {
+        return category + " " + catalogNum;
+    }
+
+    // Copies so stored rows are never shared with callers
+
+    static GymMember copyOf( GymMember member ) {
+        return new GymMember(
+            member.getMemberID(),
+            member.getFirstName(),
+            member.getLastName(),
+            member.getPhoneNumber(),
+            member.getEmail(),
+            MembershipLevelEnum.valueOf( member.getMembershipLevel() ),
+            member.getBalance() );
+    }
+
+    static Class copyOf( Class gymClass ) {
+        return new Class(
+            gymClass.getClassNum(),
+            gymClass.getCourseID(),
+            gymClass.getTrainerID(),
+            gymClass.getStartTime(),
+            gymClass.getClassDuration(),
+            gymClass.getStartDate(),
+            gymClass.getEndDate(),
+            gymClass.getCurrentEnrollment(),
+            gymClass.getCapacity() );
+    }
+
+    static Trainer copyOf( Trainer trainer ) {
+        return new Trainer(
+            trainer.getTrainerID(),
+            trainer.getFirstName(),
+            trainer.getLastName(),
+            trainer.getPhoneNum() );
+    }
+
+    static Course copyOf( Course course ) {
+        return new Course( course.getCourseID(), course.getCategory(), course.getCatalogNum() );
+    }
+
+    static RentalItem copyOf( RentalItem item ) {
+        return new RentalItem( item.getItemNum(), item.getItemName(), item.getQuantityInStock() );
+    }
+
+    static RentalLogEntry copyOf( RentalLogEntry entry ) {
+        return new RentalLogEntry(
+            entry.getRentalID(),
+            entry.getMemberID(),
+            entry.getItemNum(),
+            entry.getOutTime(),
+            entry.isReturned(),
+            entry.getQuantityBorrowed() );
+    }
+
+    static Transaction copyOf( Transaction transaction ) {
+        return new Transaction(
+            transaction.getTransactionID(),
+            transaction.getMemberID(),
+            transaction.getXactType(),
+            transaction.getXactDate(),
+            transaction.getAmount() );
+    }
+
+    /**
+     * Adds an id to the list an index keeps for a key
+     * @param index Index to add to
+     * @param key Key of the list
+     * @param id Id to add
+     */
+    private static void addToIndex( IntObjectMap<IntList> index, int key, int id ) {
+        IntList ids = index.get( key );
+        if ( ids == null ) {
+            ids = new IntList();
+            index.put( key, ids );
+        }
+        if ( !ids.contains( id ) ) {
+            ids.add( id );
+        }
+    }
+
+    /**
+     * Removes an id from the list an index keeps for a key, dropping the list once it is empty
+     * @param index Index to remove from
+     * @param key Key of the list
+     * @param id Id to remove
+     * @return True if the id was in the list
+     */
+    private static boolean removeFromIndex( IntObjectMap<IntList> index, int key, int id ) {
+        IntList ids = index.get( key );
+        if ( ids == null || !ids.removeValue( id ) ) {
+            return false;
+        }
+        if ( ids.isEmpty() ) {
+            index.remove( key );
+        }
+        return true;
+    }
+
+}
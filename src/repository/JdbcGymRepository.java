@@ -0,0 +1,458 @@
+/**
+ * @version 1.0
+ * Class: JdbcGymRepository.java
+ * Implements: GymRepository
+ * Purpose: Repository backed by a SQL database reached through JDBC. Every call borrows a connection from the pool,
+ *  runs through DBUtils on it and gives it back right away, and a unit of work keeps one connection from
+ *  beginUnitOfWork() until endUnitOfWork(). So a menu that keeps its repository open while the user types holds no
+ *  connection in the meantime, and many terminals can share a small pool. A call that gets no connection in time
+ *  throws a StoreBusyException. Every call is timed by CallMetrics under the name of the DBUtils method.
+ *  The same class is used for the Oracle DB and for the embedded DB since both use the SQL in DBUtils.
+ *
+ * Utilizes:
+ *  - java.io.IOException
+ *  - java.sql.*
+ *  - utils.CallMetrics
+ *  - utils.ConnectionPool
+ *  - utils.DBUtils
+ *  - utils.RowHandler
+ *  - utils.UnitOfWork
+ *
+ * Constructor: JdbcGymRepository( ConnectionPool ):
+ *  - Pool to borrow the connections from
+ * Constructor: JdbcGymRepository( ConnectionPool, long ):
+ *  - Same but each call waits at most the given milliseconds for a connection
+ *
+ * Methods:
+ *  - Every method of GymRepository, see DBUtils for how each one is done
+ */
+
+package repository;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import entities.Class;
+import entities.Course;
+import entities.CoursePackage;
+import entities.GymMember;
+import entities.Package;
+import entities.RentalItem;
+import entities.RentalLogEntry;
+import entities.ScheduleEntry;
+import entities.Trainer;
+import entities.Transaction;
+import utils.CallMetrics;
+import utils.ConnectionPool;
+import utils.DBUtils;
+import utils.RowHandler;
+import utils.UnitOfWork;
+
+public class JdbcGymRepository implements GymRepository {
+
+    private static final long POOL_TIMEOUT = -1; // Wait as long as the pool's own borrow timeout
+
+    private final ConnectionPool connectionPool;
+
+    private final long borrowTimeoutMillis; // Longest wait for a connection, or POOL_TIMEOUT
+
+    private Connection unitOfWorkConnection; // Connection kept while a unit of work runs, null if there is none
+
+    private UnitOfWork unitOfWork; // Unit of work that is running, null if there is none
+
+    private boolean closed;
+
+    /**
+     * Opens a repository over a pool, connections are only borrowed while a call or a unit of work runs
+     * @param connectionPool Pool to borrow the connections from
+     */
+    public JdbcGymRepository( ConnectionPool connectionPool ) {
+        this( connectionPool, POOL_TIMEOUT );
+    }
+
+    /**
+     * Opens a repository over a pool whose calls wait at most a given time for a connection
+     * @param connectionPool Pool to borrow the connections from
+     * @param borrowTimeoutMillis Longest time each call waits for a connection
+     */
+    public JdbcGymRepository( ConnectionPool connectionPool, long borrowTimeoutMillis ) {
+        this.connectionPool = connectionPool;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    @Override
+    public boolean addNewGymMemberToDB( GymMember member ) {
+        return time( "addNewGymMemberToDB", connection -> DBUtils.addNewGymMemberToDB( member, connection ) );
+    }
+
+    @Override
+    public boolean addNewGymMembersToDB( List<GymMember> members ) {
+        return time( "addNewGymMembersToDB", connection -> DBUtils.addNewGymMembersToDB( members, connection ) );
+    }
+
+    @Override
+    public GymMember retrieveMemberFromID( int memberId ) {
+        return time( "retrieveMemberFromID", connection -> DBUtils.retrieveMemberFromID( memberId, connection ) );
+    }
+
+    @Override
+    public boolean saveChangesToMember( GymMember member ) {
+        return time( "saveChangesToMember", connection -> DBUtils.saveChangesToMember( member, connection ) );
+    }
+
+    @Override
+    public boolean addToMemberBalance( GymMember member, float amount ) {
+        return time( "addToMemberBalance", connection -> DBUtils.addToMemberBalance( member, amount, connection ) );
+    }
+
+    @Override
+    public void removeMemberFromDB( GymMember member ) {
+        run( "removeMemberFromDB", connection -> DBUtils.removeMemberFromDB( member, connection ) );
+    }
+
+    @Override
+    public void removeMemberFromAllTheirClasses( int memberID ) {
+        run(
+            "removeMemberFromAllTheirClasses",
+            connection -> DBUtils.removeMemberFromAllTheirClasses( memberID, connection ) );
+    }
+
+    @Override
+    public Map<String, String> getNegativeAccountUsers() {
+        return time( "getNegativeAccountUsers", connection -> DBUtils.getNegativeAccountUsers( connection ) );
+    }
+
+    @Override
+    public List<ScheduleEntry> getMemberScheduleForMonth( GymMember member, int month ) {
+        return time(
+            "getMemberScheduleForMonth",
+            connection -> DBUtils.getMemberScheduleForMonth( member, month, connection ) );
+    }
+
+    @Override
+    public int getCourseId( String category, int catalogNum ) {
+        return time( "getCourseId", connection -> DBUtils.getCourseId( category, catalogNum, connection ) );
+    }
+
+    @Override
+    public int getCourseIDFromName( String name ) {
+        return time( "getCourseIDFromName", connection -> DBUtils.getCourseIDFromName( name, connection ) );
+    }
+
+    @Override
+    public List<Course> getAllCourses() {
+        return time( "getAllCourses", connection -> DBUtils.getAllCourses( connection ) );
+    }
+
+    @Override
+    public void saveNewCourse( Course course ) {
+        run( "saveNewCourse", connection -> DBUtils.saveNewCourse( course, connection ) );
+    }
+
+    @Override
+    public void saveNewClass( Class newClass ) {
+        run( "saveNewClass", connection -> DBUtils.saveNewClass( newClass, connection ) );
+    }
+
+    @Override
+    public void saveClassInfo( Class gymClass ) {
+        run( "saveClassInfo", connection -> DBUtils.saveClassInfo( gymClass, connection ) );
+    }
+
+    @Override
+    public boolean addToMemberClassTable( GymMember member, Class gymClass ) {
+        return time(
+            "addToMemberClassTable",
+            connection -> DBUtils.addToMemberClassTable( member, gymClass, connection ) );
+    }
+
+    @Override
+    public List<Integer> addMemberToPackageCourses( GymMember member, String packageName ) {
+        return time(
+            "addMemberToPackageCourses",
+            connection -> DBUtils.addMemberToPackageCourses( member, packageName, connection ) );
+    }
+
+    @Override
+    public int getTrainerId( String fName, String lName ) {
+        return time( "getTrainerId", connection -> DBUtils.getTrainerId( fName, lName, connection ) );
+    }
+
+    @Override
+    public List<Trainer> listAllTrainers() {
+        return time( "listAllTrainers", connection -> DBUtils.listAllTrainers( connection ) );
+    }
+
+    @Override
+    public boolean trainerScheduleConflict( int trainerId, Timestamp startTime, int duration, Date endDate ) {
+        return time(
+            "trainerScheduleConflict",
+            connection -> DBUtils.trainerScheduleConflict( trainerId, startTime, duration, endDate, connection ) );
+    }
+
+    @Override
+    public Map<String, Float> getAllTrainersWorkinghours( int month ) {
+        return time(
+            "getAllTrainersWorkinghours",
+            connection -> DBUtils.getAllTrainersWorkinghours( month, connection ) );
+    }
+
+    @Override
+    public Map<String, float[]> getAllTrainersWorkinghoursByMonth() {
+        return time(
+            "getAllTrainersWorkinghoursByMonth",
+            connection -> DBUtils.getAllTrainersWorkinghoursByMonth( connection ) );
+    }
+
+    @Override
+    public Map<String, Float> getPackagesAndPrices() {
+        return time( "getPackagesAndPrices", connection -> DBUtils.getPackagesAndPrices( connection ) );
+    }
+
+    @Override
+    public boolean saveNewPackage( Package packageToAdd ) {
+        return time( "saveNewPackage", connection -> DBUtils.saveNewPackage( packageToAdd, connection ) );
+    }
+
+    @Override
+    public void saveNewCoursePackage( CoursePackage coursePackage ) {
+        run( "saveNewCoursePackage", connection -> DBUtils.saveNewCoursePackage( coursePackage, connection ) );
+    }
+
+    @Override
+    public List<RentalItem> getRentalItems() {
+        return time( "getRentalItems", connection -> DBUtils.getRentalItems( connection ) );
+    }
+
+    @Override
+    public Map<String, Integer> getRentalItemsAndQuantities() {
+        return time( "getRentalItemsAndQuantities", connection -> DBUtils.getRentalItemsAndQuantities( connection ) );
+    }
+
+    @Override
+    public Map<String, Integer> getCheckoutRentalsForMember( GymMember member ) {
+        return time(
+            "getCheckoutRentalsForMember",
+            connection -> DBUtils.getCheckoutRentalsForMember( member, connection ) );
+    }
+
+    @Override
+    public void saveNewRentalLogEntry( RentalLogEntry entry ) {
+        run( "saveNewRentalLogEntry", connection -> DBUtils.saveNewRentalLogEntry( entry, connection ) );
+    }
+
+    @Override
+    public boolean saveNewRentalLogEntries( List<RentalLogEntry> entries ) {
+        return time( "saveNewRentalLogEntries", connection -> DBUtils.saveNewRentalLogEntries( entries, connection ) );
+    }
+
+    @Override
+    public List<Integer> takeRentalItemsFromStock( Map<Integer, Integer> quantities ) {
+        return time(
+            "takeRentalItemsFromStock",
+            connection -> DBUtils.takeRentalItemsFromStock( quantities, connection ) );
+    }
+
+    @Override
+    public boolean putRentalItemsBackInStock( Map<Integer, Integer> quantities ) {
+        return time(
+            "putRentalItemsBackInStock",
+            connection -> DBUtils.putRentalItemsBackInStock( quantities, connection ) );
+    }
+
+    @Override
+    public RentalLogEntry updateRentalLog( GymMember member, String itemName ) {
+        return time( "updateRentalLog", connection -> DBUtils.updateRentalLog( member, itemName, connection ) );
+    }
+
+    @Override
+    public int generateIDNumberFromSequence() {
+        return time( "generateIDNumberFromSequence", connection -> DBUtils.generateIDNumberFromSequence( connection ) );
+    }
+
+    @Override
+    public boolean saveNewTransaction( Transaction transaction ) {
+        return time( "saveNewTransaction", connection -> DBUtils.saveNewTransaction( transaction, connection ) );
+    }
+
+    @Override
+    public long forEachTransaction( Date from, Date to, int memberID, RowHandler<Transaction> handler )
+        throws SQLException, IOException {
+        return timeHistoryRead(
+            "forEachTransaction",
+            connection -> DBUtils.forEachTransaction( from, to, memberID, handler, connection ) );
+    }
+
+    @Override
+    public long forEachRentalLogEntry( Date from, Date to, int memberID, RowHandler<RentalLogEntry> handler )
+        throws SQLException, IOException {
+        return timeHistoryRead(
+            "forEachRentalLogEntry",
+            connection -> DBUtils.forEachRentalLogEntry( from, to, memberID, handler, connection ) );
+    }
+
+    @Override
+    public void beginUnitOfWork() throws SQLException {
+        if ( unitOfWork != null ) {
+            throw new IllegalStateException( "A unit of work is already running" );
+        }
+        Connection connection = borrow();
+        try {
+            unitOfWork = UnitOfWork.begin( connection );
+        } catch ( SQLException | RuntimeException e ) {
+            connectionPool.returnConnection( connection );
+            throw e;
+        }
+        unitOfWorkConnection = connection;
+    }
+
+    @Override
+    public void commitUnitOfWork() throws SQLException {
+        if ( unitOfWork == null ) {
+            throw new IllegalStateException( "No unit of work is running" );
+        }
+        unitOfWork.commit();
+    }
+
+    /**
+     * Rolls back the unit of work unless it was committed and gives its connection back to the pool
+     */
+    @Override
+    public void endUnitOfWork() {
+        if ( unitOfWork != null ) {
+            unitOfWork.close();
+            unitOfWork = null;
+            connectionPool.returnConnection( unitOfWorkConnection );
+            unitOfWorkConnection = null;
+        }
+    }
+
+    /**
+     * Ends any unit of work that was left running, the repository can not be used after
+     */
+    @Override
+    public void close() {
+        endUnitOfWork();
+        closed = true;
+    }
+
+    /**
+     * Times a call with CallMetrics and runs it on the unit of work's connection, or on one borrowed for the call
+     * @param method Name of the method being called
+     * @param call The call, given the connection to run on
+     * @return What the call returned
+     * @throws StoreBusyException if no connection could be borrowed
+     */
+    private <T> T time( String method, Function<Connection, T> call ) {
+        return CallMetrics.time( method, () -> {
+            Connection connection = borrowForCall();
+            try {
+                return call.apply( connection );
+            } finally {
+                returnAfterCall( connection );
+            }
+        } );
+    }
+
+    /**
+     * Same as time() for calls that return nothing
+     */
+    private void run( String method, Consumer<Connection> call ) {
+        time( method, connection -> {
+            call.accept( connection );
+            return null;
+        } );
+    }
+
+    /**
+     * Times a read of a history table with CallMetrics, which only takes calls that throw no checked exceptions, so
+     * they are carried through it wrapped and thrown again as they were
+     * @param method Name of the method being called
+     * @param read The read, given the connection to run on
+     * @return Number of rows read
+     * @throws SQLException if the rows could not be read or no connection could be borrowed
+     * @throws IOException if the handler of the rows failed
+     */
+    private long timeHistoryRead( String method, HistoryRead read ) throws SQLException, IOException {
+        Connection connection = unitOfWork != null ? unitOfWorkConnection : borrow();
+        try {
+            return CallMetrics.time( method, () -> {
+                try {
+                    return read.read( connection );
+                } catch ( SQLException | IOException e ) {
+                    throw new WrappedException( e );
+                }
+            } );
+        } catch ( WrappedException e ) {
+            if ( e.getCause() instanceof SQLException ) {
+                throw (SQLException) e.getCause();
+            }
+            throw (IOException) e.getCause();
+        } finally {
+            returnAfterCall( connection );
+        }
+    }
+
+    /**
+     * Connection a call runs on: the unit of work's if one is running, otherwise one borrowed for the call
+     * @throws StoreBusyException if no connection could be borrowed
+     */
+    private Connection borrowForCall() {
+        if ( unitOfWork != null ) {
+            return unitOfWorkConnection;
+        }
+        try {
+            return borrow();
+        } catch ( SQLException e ) {
+            throw new StoreBusyException( e );
+        }
+    }
+
+    /**
+     * Gives a connection borrowed for one call back to the pool, the unit of work's is kept until it ends
+     */
+    private void returnAfterCall( Connection connection ) {
+        if ( connection != unitOfWorkConnection ) {
+            connectionPool.returnConnection( connection );
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if ( closed ) {
+            throw new IllegalStateException( "The repository has been closed" );
+        }
+        return borrowTimeoutMillis == POOL_TIMEOUT
+            ? connectionPool.borrowConnection()
+            : connectionPool.borrowConnection( borrowTimeoutMillis );
+    }
+
+    /**
+     * Read of a history table
+     */
+    private interface HistoryRead {
+
+        long read( Connection connection ) throws SQLException, IOException;
+
+    }
+
+    /**
+     * Carries a checked exception through CallMetrics
+     */
+    private static class WrappedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private WrappedException( Exception cause ) {
+            super( cause );
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * @version 1.0
+ * Class: JdbcGymStore.java
+ * Implements: GymStore
+ * Purpose: Store for a SQL database reached through JDBC ( the Oracle DB or the embedded DB ). Holds the pool of
+ *  connections, a repository opened from it borrows a connection for each call or unit of work and gives it back
+ *  right after, so an operation waiting on the user holds none.
+ *
+ * Utilizes:
+ *  - java.sql.SQLException
+ *  - utils.ConnectionPool
+ *  - utils.DBUtils
+ *  - utils.QueryTracer
+ *  - utils.StatementCache
+ *  - utils.UnitOfWork
+ *
+ * Constructor: JdbcGymStore( ConnectionPool ):
+ *  - Pool of connections to the DB
+ *
+ * Methods:
+ *  openRepository(), openRepository( long ):
+ *      - Returns a repository over the pool, the calls of the second wait at most the given time for a connection
+ *  getStatistics():
+ *      - Counters of the pool, the statement cache, the ID allocator, the caches in DBUtils, the units of work, the
+ *        reads run in the background or prefetched for members and the statements run by each operation
+ *  close():
+ *      - Closes every connection in the pool
+ */
+
+package repository;
+
+import java.sql.SQLException;
+
+import utils.ConnectionPool;
+import utils.DBUtils;
+import utils.QueryTracer;
+import utils.StatementCache;
+import utils.UnitOfWork;
+
+public class JdbcGymStore implements GymStore {
+
+    private final ConnectionPool connectionPool;
+
+    /**
+     * Creates a store over a pool of connections
+     * @param connectionPool Pool of connections to the DB
+     */
+    public JdbcGymStore( ConnectionPool connectionPool ) {
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public GymRepository openRepository() throws SQLException {
+        return new JdbcGymRepository( connectionPool );
+    }
+
+    @Override
+    public GymRepository openRepository( long maxWaitMillis ) throws SQLException {
+        return new JdbcGymRepository( connectionPool, maxWaitMillis );
+    }
+
+    /**
+     * Prints the counters kept by the connection pool, the statement cache, the ID allocator, the member and rental
+     * caches, the trainer schedule, class enrollment, the units of work, the reads run in the background and the
+     * reads prefetched for members
+     */
+    @Override
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        appendSection( sb, "Connection pool", connectionPool.getStatistics() );
+        appendSection( sb, "Statement cache", StatementCache.getStatistics() );
+        appendSection( sb, "ID allocator", DBUtils.getIdAllocatorStatistics() );
+        appendSection( sb, "Rental catalog", DBUtils.getRentalCatalogStatistics() );
+        appendSection( sb, "Trainer schedule", DBUtils.getTrainerScheduleStatistics() );
+        appendSection( sb, "Class enrollment", DBUtils.getEnrollmentStatistics() );
+        appendSection( sb, "Member cache", DBUtils.getMemberCacheStatistics() );
+        appendSection( sb, "Units of work", UnitOfWork.getStatistics() );
+        appendSection( sb, "Background reads", AsyncGymRepository.getStatistics() );
+        appendSection( sb, "Member prefetch", MemberPrefetcher.getStatistics() );
+        appendSection( sb, "Statements per operation", QueryTracer.getStatistics() );
+        return sb.toString().trim();
+    }
+
+    @Override
+    public void close() {
+        connectionPool.close();
+    }
+
+    /**
+     * Gets the pool the store borrows connections from
+     * @return Pool of connections
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Adds a titled block of statistics
+     * @param sb Builder to add to
+     * @param title Title of the block
+     * @param statistics Statistics to print under the title
+     */
+    private static void appendSection( StringBuilder sb, String title, String statistics ) {
+        sb.append( title + "\n" );
+        sb.append( "-".repeat( title.length() ) + "\n" );
+        sb.append( statistics + "\n\n" );
+    }
+
+}
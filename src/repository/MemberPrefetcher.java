@@ -0,0 +1,216 @@
+/**
+ * @version 1.0
+ * Class: MemberPrefetcher.java
+ * Purpose: Short lived cache of one terminal session, filled in the background as soon as the member at the desk is
+ *  known. Once a member id has been looked up to rent, return or check a schedule the next screens almost always show
+ *  that member's unreturned rentals or their schedule for this month, so prefetch() starts reading both right away
+ *  ( see AsyncGymRepository ) while the user is still reading the screen or typing. Each read is kept for 30 seconds
+ *  ( -Dgym.prefetch.ttlSeconds ), so a member who does several things in a row at the desk is only read for once.
+ *  Data another terminal changes can be shown up to that long after it changed, every change is still made in the DB
+ *  with statements that check the rows they change. The session drops what it read for a member with invalidate()
+ *  as soon as it changes their rentals or classes itself. Packages and their prices are not kept, a purchase reads
+ *  them each time so it never charges a price that was changed since. Used by one session, so not thread safe.
+ *
+ * Utilizes:
+ *  - java.time.LocalDate
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - java.util.function.Supplier
+ *  - entities.GymMember
+ *  - entities.ScheduleEntry
+ *
+ * Constructor: MemberPrefetcher( GymStore ):
+ *  - Store the reads are run against
+ *
+ * Methods:
+ *  prefetch( GymMember ):
+ *      - Starts reading what the next screens will likely need for a member
+ *  getCheckoutRentals( GymMember ), getSchedule( GymMember, int ):
+ *      - A read that was started earlier and is still fresh, or a new one
+ *  invalidate( int ):
+ *      - Drops everything read for a member
+ *  getStatistics():
+ *      - Printable summary of how many reads were served from the cache
+ */
+
+package repository;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import entities.GymMember;
+import entities.ScheduleEntry;
+
+public class MemberPrefetcher {
+
+    private static final long TTL_MILLIS = Integer.getInteger( "gym.prefetch.ttlSeconds", 30 ) * 1000L;
+
+    // Statistics of every session
+    private static final AtomicLong prefetchCount = new AtomicLong();
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong invalidatedCount = new AtomicLong();
+
+    private final AsyncGymRepository asyncRepository;
+
+    private final Map<Integer, MemberReads> readsByMember = new HashMap<>();
+
+    /**
+     * Creates an empty cache for one session
+     * @param gymStore Store the reads are run against
+     */
+    public MemberPrefetcher( GymStore gymStore ) {
+        this.asyncRepository = new AsyncGymRepository( gymStore );
+    }
+
+    /**
+     * Starts reading the member's unreturned rentals and their schedule for this month, skipping any that were read
+     * recently enough. Reads that expired for other members are dropped.
+     * @param member Member who was just looked up
+     */
+    public void prefetch( GymMember member ) {
+        prefetchCount.incrementAndGet();
+        dropExpired();
+        getCheckoutRentals( member, false );
+        getSchedule( member, LocalDate.now().getMonthValue(), false );
+    }
+
+    /**
+     * Items a member has out and how many of each
+     * @param member Member renting the items
+     * @return Read that was prefetched and is still fresh, or one that was just started
+     */
+    public CompletableFuture<Map<String, Integer>> getCheckoutRentals( GymMember member ) {
+        return getCheckoutRentals( member, true );
+    }
+
+    /**
+     * Classes a member has in a month, only this month's are prefetched
+     * @param member Member whose schedule is read
+     * @param month Month of this year ( 1 for January )
+     * @return Read that was prefetched and is still fresh, or one that was just started
+     */
+    public CompletableFuture<List<ScheduleEntry>> getSchedule( GymMember member, int month ) {
+        return getSchedule( member, month, true );
+    }
+
+    /**
+     * Drops everything read for a member, called once the session changed their rentals or classes
+     * @param memberID Member that changed
+     */
+    public void invalidate( int memberID ) {
+        if ( readsByMember.remove( memberID ) != null ) {
+            invalidatedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Summary of the reads of every session. A hit is a read a screen needed that had already been started.
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        long hits = hitCount.get();
+        long needed = hits + missCount.get();
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Members prefetched: " + prefetchCount.get() + "\n" );
+        sb
+            .append(
+                String.format( "Hits: %d of %d ( %.1f%% )\n", hits, needed, needed == 0 ? 0 : 100.0 * hits / needed ) );
+        sb.append( "Invalidated: " + invalidatedCount.get() + "\n" );
+        sb.append( "Time to live: " + TTL_MILLIS / 1000 + " s" );
+        return sb.toString();
+    }
+
+    private CompletableFuture<Map<String, Integer>> getCheckoutRentals( GymMember member, boolean needed ) {
+        MemberReads reads = readsFor( member.getMemberID() );
+        reads.checkoutRentals = fresh(
+            reads.checkoutRentals,
+            needed,
+            () -> asyncRepository.supply( repository -> repository.getCheckoutRentalsForMember( member ) ) );
+        return reads.checkoutRentals.future;
+    }
+
+    private CompletableFuture<List<ScheduleEntry>> getSchedule( GymMember member, int month, boolean needed ) {
+        if ( month != LocalDate.now().getMonthValue() ) {
+            if ( needed ) {
+                missCount.incrementAndGet();
+            }
+            return asyncRepository.supply( repository -> repository.getMemberScheduleForMonth( member, month ) );
+        }
+        MemberReads reads = readsFor( member.getMemberID() );
+        reads.schedule = fresh(
+            reads.schedule,
+            needed,
+            () -> asyncRepository.supply( repository -> repository.getMemberScheduleForMonth( member, month ) ) );
+        return reads.schedule.future;
+    }
+
+    private MemberReads readsFor( int memberID ) {
+        return readsByMember.computeIfAbsent( memberID, key -> new MemberReads() );
+    }
+
+    /**
+     * Keeps a read if it is still fresh and did not fail, or starts it again
+     * @param read Read started earlier, null if there was none
+     * @param needed True if a screen needs the read now, false if it is only being prefetched
+     * @param start Starts the read
+     * @return Read to use
+     */
+    private static <T> Read<T> fresh( Read<T> read, boolean needed, Supplier<CompletableFuture<T>> start ) {
+        boolean usable = read != null && !read.isExpired() && !read.future.isCompletedExceptionally();
+        if ( needed ) {
+            ( usable ? hitCount : missCount ).incrementAndGet();
+        }
+        return usable ? read : new Read<>( start.get() );
+    }
+
+    /**
+     * Drops the members whose reads have all expired so a long session does not keep every member it saw
+     */
+    private void dropExpired() {
+        Iterator<MemberReads> iterator = readsByMember.values().iterator();
+        while ( iterator.hasNext() ) {
+            MemberReads reads = iterator.next();
+            if ( ( reads.checkoutRentals == null || reads.checkoutRentals.isExpired() )
+                && ( reads.schedule == null || reads.schedule.isExpired() ) ) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A read and when it was started
+     */
+    private static class Read<T> {
+
+        private final CompletableFuture<T> future;
+
+        private final long startMillis = System.currentTimeMillis();
+
+        private Read( CompletableFuture<T> future ) {
+            this.future = future;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - startMillis > TTL_MILLIS;
+        }
+    }
+
+    /**
+     * Reads kept for one member
+     */
+    private static class MemberReads {
+
+        private Read<Map<String, Integer>> checkoutRentals;
+
+        private Read<List<ScheduleEntry>> schedule;
+
+    }
+
+}
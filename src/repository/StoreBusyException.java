@@ -0,0 +1,31 @@
+/**
+ * @version 1.0
+ * Class: StoreBusyException.java
+ * Purpose: Thrown by a repository call that could not get a connection to the DB in time, because every connection
+ *  of the pool stayed in use or the DB could not be reached. The calls of GymRepository return what they read or
+ *  whether they saved, so this is the one failure they can not report through their result. The menus catch it and
+ *  tell the user to try again.
+ *
+ * Extends the RuntimeException class
+ *
+ * Constructor: StoreBusyException( SQLException ):
+ *  - Error the pool gave when the connection was asked for
+ */
+
+package repository;
+
+import java.sql.SQLException;
+
+public class StoreBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates the exception with the pool's error as the cause
+     * @param cause Error the pool gave
+     */
+    public StoreBusyException( SQLException cause ) {
+        super( cause.getMessage(), cause );
+    }
+
+}
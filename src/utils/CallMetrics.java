@@ -0,0 +1,246 @@
+/**
+ * @version 1.0
+ * Class: CallMetrics.java
+ * Purpose: Keeps metrics for every DB call the program makes, per method: a latency histogram, the number of calls,
+ *  the number of SQL statements the calls executed ( round trips to the DB ), the rows they fetched and how many
+ *  statements failed. The repository runs each call through time() or run(), which makes the call the current one
+ *  of the thread, and the statements of the connections the pool hands out ( see QueryTracer ) count their
+ *  executions and rows against the current call. Statements executed outside of a timed call are not counted.
+ *  The metrics can be printed from the admin menu and written to a file every so often, the file and how often
+ *  can be set with -Dgym.metrics.file and -Dgym.metrics.dumpSeconds ( 0 turns the file off ).
+ *
+ * Utilizes:
+ *  - java.io.IOException
+ *  - java.nio.file.*
+ *  - java.time.LocalDateTime
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - java.util.function.Supplier
+ *
+ * Methods:
+ *  time( String, Supplier ), run( String, Runnable ):
+ *      - Runs a DB call and records its latency under the method name, exceptions it throws are counted as errors
+ *  statementExecuted(), rowFetched(), errorRaised():
+ *      - Counted against the call the thread is running, used by the statements traced by QueryTracer
+ *  getStatistics():
+ *      - Printable table of the metrics of every method that has been called
+ *  startPeriodicDump(), stopPeriodicDump():
+ *      - Start and stop writing the table to the metrics file, stopping writes it one last time
+ */
+
+package utils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class CallMetrics {
+
+    private static final String DEFAULT_FILE = "gym-metrics.txt";
+    private static final int DEFAULT_DUMP_SECONDS = 60;
+
+    // Metrics of every method that has been called, by method name
+    private static final Map<String, MethodMetrics> metrics = new ConcurrentHashMap<>();
+
+    // Metrics of the call each thread is running, null when it is not running one
+    private static final ThreadLocal<MethodMetrics> currentCall = new ThreadLocal<>();
+
+    private static ScheduledExecutorService dumper; // Writes the metrics file, null when it is not being written
+
+    private static Path dumpFile;
+
+    /**
+     * Metrics kept for one method
+     */
+    private static class MethodMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong statementCount = new AtomicLong();
+        private final AtomicLong rowCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+
+    }
+
+    private CallMetrics() {
+    }
+
+    /**
+     * Runs a DB call that returns a value and records it under the method name
+     * @param method Name of the method being called
+     * @param call The call
+     * @return What the call returned
+     */
+    public static <T> T time( String method, Supplier<T> call ) {
+        MethodMetrics methodMetrics = metrics.computeIfAbsent( method, name -> new MethodMetrics() );
+        MethodMetrics outerCall = currentCall.get();
+        currentCall.set( methodMetrics );
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } catch ( RuntimeException e ) {
+            methodMetrics.errorCount.incrementAndGet();
+            throw e;
+        } finally {
+            methodMetrics.latency.record( System.nanoTime() - start );
+            currentCall.set( outerCall );
+        }
+    }
+
+    /**
+     * Runs a DB call that does not return anything and records it under the method name
+     * @param method Name of the method being called
+     * @param call The call
+     */
+    public static void run( String method, Runnable call ) {
+        time( method, () -> {
+            call.run();
+            return null;
+        } );
+    }
+
+    /**
+     * Counts a statement executed by the call the thread is running
+     */
+    static void statementExecuted() {
+        MethodMetrics methodMetrics = currentCall.get();
+        if ( methodMetrics != null ) {
+            methodMetrics.statementCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a row fetched by the call the thread is running
+     */
+    static void rowFetched() {
+        MethodMetrics methodMetrics = currentCall.get();
+        if ( methodMetrics != null ) {
+            methodMetrics.rowCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a statement of the call the thread is running that failed
+     */
+    static void errorRaised() {
+        MethodMetrics methodMetrics = currentCall.get();
+        if ( methodMetrics != null ) {
+            methodMetrics.errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Table of the metrics of every method that has been called, latencies are in microseconds
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        if ( metrics.isEmpty() ) {
+            return "No DB calls have been made yet";
+        }
+        String rowFormat = "%-36s %8s %8s %8s %6s %10s %10s %10s %10s\n";
+        StringBuilder sb = new StringBuilder();
+        sb.append(
+            String.format( rowFormat, "Method", "Calls", "Stmts", "Rows", "Errors", "p50 us", "p90 us", "p99 us",
+                "Max us" ) );
+        long totalCalls = 0;
+        long totalStatements = 0;
+        for ( Map.Entry<String, MethodMetrics> entry : new TreeMap<>( metrics ).entrySet() ) {
+            MethodMetrics methodMetrics = entry.getValue();
+            LatencyHistogram latency = methodMetrics.latency;
+            totalCalls += latency.getCount();
+            totalStatements += methodMetrics.statementCount.get();
+            sb.append(
+                String.format(
+                    rowFormat,
+                    entry.getKey(),
+                    latency.getCount(),
+                    methodMetrics.statementCount.get(),
+                    methodMetrics.rowCount.get(),
+                    methodMetrics.errorCount.get(),
+                    micros( latency.getPercentileNanos( 50 ) ),
+                    micros( latency.getPercentileNanos( 90 ) ),
+                    micros( latency.getPercentileNanos( 99 ) ),
+                    micros( latency.getMaxNanos() ) ) );
+        }
+        double statementsPerCall = totalCalls == 0 ? 0 : (double) totalStatements / totalCalls;
+        sb.append( String.format( "Statements per call: %.2f", statementsPerCall ) );
+        return sb.toString();
+    }
+
+    /**
+     * Starts writing the metrics to the metrics file every so often, does nothing if it was turned off or is already
+     * being written
+     */
+    public static synchronized void startPeriodicDump() {
+        int dumpSeconds = Integer.getInteger( "gym.metrics.dumpSeconds", DEFAULT_DUMP_SECONDS );
+        if ( dumper != null || dumpSeconds <= 0 ) {
+            return;
+        }
+        dumpFile = Paths.get( System.getProperty( "gym.metrics.file", DEFAULT_FILE ) );
+        dumper = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "call-metrics-dump" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        dumper.scheduleAtFixedRate( CallMetrics::dumpToFile, dumpSeconds, dumpSeconds, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Stops writing the metrics file and writes it one last time so it has every call the program made
+     */
+    public static synchronized void stopPeriodicDump() {
+        if ( dumper == null ) {
+            return;
+        }
+        dumper.shutdownNow();
+        dumper = null;
+        dumpToFile();
+    }
+
+    /**
+     * Writes the metrics to a temporary file and moves it over the metrics file, so the file is never seen half
+     * written. Stops the periodic writes if the file cannot be written.
+     */
+    private static synchronized void dumpToFile() {
+        if ( dumpFile == null ) {
+            return;
+        }
+        Path tempFile = dumpFile.resolveSibling( dumpFile.getFileName() + ".tmp" );
+        try {
+            Files.writeString( tempFile, "DB call metrics at " + LocalDateTime.now() + "\n\n" + getStatistics() + "\n" );
+            try {
+                Files.move( tempFile, dumpFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( AtomicMoveNotSupportedException e ) {
+                Files.move( tempFile, dumpFile, StandardCopyOption.REPLACE_EXISTING );
+            }
+        } catch ( IOException e ) {
+            System.out.println( "Unable to write the DB call metrics to " + dumpFile + ": " + e.getMessage() );
+            if ( dumper != null ) {
+                dumper.shutdown();
+                dumper = null;
+            }
+            dumpFile = null;
+        }
+    }
+
+    /**
+     * Converts nanoseconds to microseconds for printing
+     * @param nanos Nanoseconds
+     * @return Microseconds with one decimal
+     */
+    private static String micros( long nanos ) {
+        return String.format( "%.1f", nanos / 1000.0 );
+    }
+
+}
@@ -11,6 +11,22 @@ public class CommandLineArgumentsUtils {
 
     private static final String PASSWORD_FLAG = "-p"; // Flag that marks password will follow this flag
 
+    private static final String EMBEDDED_FLAG = "-e"; // Flag that says to use the embedded DB instead of Oracle
+
+    private static final String IN_MEMORY_FLAG = "-m"; // Flag that says to keep the data in memory with no DB at all
+
+    private static final String GENERATE_FLAG = "-g"; // Flag that marks the number of members to generate follows
+
+    private static final String SEED_FLAG = "-s"; // Flag that marks the seed of the generated data follows
+
+    private static final long DEFAULT_SEED = 460; // Seed of the generated data when none is given
+
+    private static final String SCRIPT_FLAG = "-b"; // Flag that marks the script to run in batch mode follows
+
+    private static final String IMPORT_FLAG = "-i"; // Flag that marks the CSV file of members to import follows
+
+    private static final String LISTEN_FLAG = "-l"; // Flag that marks the port or socket to serve terminals on follows
+
     /**
      * Keeps from creating a new instance of this class
      */
@@ -48,4 +64,114 @@ public class CommandLineArgumentsUtils {
         }
         return null;
     }
+
+    /**
+     * Searches for the embedded flag
+     * @param commandLineArguments String array of cli arguments
+     * @return True if the program should run against the embedded DB instead of the Oracle DB
+     */
+    public static boolean useEmbeddedDatabase( String[] commandLineArguments ) {
+        return hasFlag( commandLineArguments, EMBEDDED_FLAG );
+    }
+
+    /**
+     * Searches for the in memory flag
+     * @param commandLineArguments String array of cli arguments
+     * @return True if the program should keep the gym data in memory instead of in a DB
+     */
+    public static boolean useInMemoryStore( String[] commandLineArguments ) {
+        return hasFlag( commandLineArguments, IN_MEMORY_FLAG );
+    }
+
+    /**
+     * Searches for the generate flag and returns the number of members after it
+     * @param commandLineArguments String array of cli arguments
+     * @return Number of members to generate, 0 if the flag was not given and -1 if the number is not valid
+     */
+    public static int getGeneratedMemberCount( String[] commandLineArguments ) {
+        String members = getFlagValue( commandLineArguments, GENERATE_FLAG );
+        if ( members == null ) {
+            return 0;
+        }
+        try {
+            int count = Integer.parseInt( members );
+            return count > 0 ? count : -1;
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Searches for the seed flag and returns the seed after it
+     * @param commandLineArguments String array of cli arguments
+     * @return Seed for the generated data, the default seed if none was given or it is not a number
+     */
+    public static long getSeed( String[] commandLineArguments ) {
+        String seed = getFlagValue( commandLineArguments, SEED_FLAG );
+        if ( seed == null ) {
+            return DEFAULT_SEED;
+        }
+        try {
+            return Long.parseLong( seed );
+        } catch ( NumberFormatException e ) {
+            return DEFAULT_SEED;
+        }
+    }
+
+    /**
+     * Searches for the script flag and returns the script file after it
+     * @param commandLineArguments String array of cli arguments
+     * @return Path of the script to run, "-" to read it from stdin, null if the flag was not given
+     */
+    public static String getScriptFile( String[] commandLineArguments ) {
+        return getFlagValue( commandLineArguments, SCRIPT_FLAG );
+    }
+
+    /**
+     * Searches for the import flag and returns the CSV file after it
+     * @param commandLineArguments String array of cli arguments
+     * @return Path of the CSV file of members to import, null if the flag was not given
+     */
+    public static String getImportFile( String[] commandLineArguments ) {
+        return getFlagValue( commandLineArguments, IMPORT_FLAG );
+    }
+
+    /**
+     * Searches for the listen flag and returns the port or Unix domain socket after it
+     * @param commandLineArguments String array of cli arguments
+     * @return Port number or socket path to serve terminal sessions on, null if the flag was not given
+     */
+    public static String getListenAddress( String[] commandLineArguments ) {
+        return getFlagValue( commandLineArguments, LISTEN_FLAG );
+    }
+
+    /**
+     * Searches for a flag and returns the argument directly after it
+     * @param commandLineArguments String array of cli arguments
+     * @param flag Flag to search for
+     * @return Argument after the flag, null if the flag was not given
+     */
+    private static String getFlagValue( String[] commandLineArguments, String flag ) {
+        for ( int i = 0 ; i < commandLineArguments.length - 1 ; i++ ) {
+            if ( commandLineArguments[i].equals( flag ) ) {
+                return commandLineArguments[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches for a flag that takes no argument
+     * @param commandLineArguments String array of cli arguments
+     * @param flag Flag to search for
+     * @return True if the flag was given
+     */
+    private static boolean hasFlag( String[] commandLineArguments, String flag ) {
+        for ( String argument : commandLineArguments ) {
+            if ( argument.equals( flag ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -111,7 +111,9 @@ public class CommonPrints {
         System.out.println( "----------------" );
         System.out.println( "1) List members who have a negative balance" );
         System.out.println( "2) List all trainer's working hours" );
-        System.out.println( "3) Return to previous menu" );
+        System.out.println( "3) Show database connection statistics" );
+        System.out.println( "4) Show DB call metrics" );
+        System.out.println( "5) Return to previous menu" );
     }
 
     /**
@@ -0,0 +1,489 @@
+/**
+ * @version 1.0
+ * Class: ConnectionPool.java
+ * Purpose: Keeps a bounded set of open connections to the database so that operations can borrow a connection for
+ *  as long as they need it and hand it back when they are done, instead of every part of the program sharing one
+ *  Connection. Connections are validated before they are handed out, idle connections are closed after a while, and
+ *  callers that cannot get a connection in time are given an SQLException instead of waiting forever.
+ *  New connections are wrapped by QueryTracer so every statement run on them is traced, after the connection wrapper
+ *  the pool was given ( if any, for example a LatencyInjector ).
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *
+ * Constructor: ConnectionPool( String, String, String ):
+ *  - JDBC url, username and password used to open new connections with the default pool settings ( 4 connections,
+ *    or -Dgym.pool.maxSize )
+ * Constructor: ConnectionPool( String, String, String, int, long, long ):
+ *  - Same as above but also sets the max pool size, borrow timeout and idle timeout ( in milliseconds )
+ *
+ * Methods:
+ *  borrowConnection():
+ *      - Hands out an idle connection ( validating it first ) or opens a new one if the pool is not full. Waits up to
+ *        the borrow timeout for a connection to be returned when the pool is full
+ *  borrowConnection( long ):
+ *      - Same as above but waits at most the given time, for callers that would rather do without a connection
+ *  returnConnection( Connection ):
+ *      - Gives a borrowed connection back to the pool so that it can be reused
+ *  setConnectionWrapper( UnaryOperator ):
+ *      - Wraps every connection the pool opens from then on
+ *  evictIdleConnections():
+ *      - Closes connections that have been sitting in the pool longer than the idle timeout
+ *  getStatistics():
+ *      - Summary of the pool counters as a printable string
+ *  close():
+ *      - Closes every idle connection and any borrowed connection once it is returned
+ */
+
+package utils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+public class ConnectionPool {
+
+    // Default pool settings, the size can be changed with -Dgym.pool.maxSize
+    private static final int DEFAULT_MAX_POOL_SIZE = Integer.getInteger( "gym.pool.maxSize", 4 );
+    private static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 10_000;
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2; // How long isValid() may take before giving up
+    private static final long VALIDATION_BYPASS_MILLIS = 500; // Connections returned this recently are not re-validated
+
+    private final String jdbcURL;
+    private final String username;
+    private final String password;
+
+    private final int maxPoolSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+
+    // Applied to every connection the pool opens, before it is wrapped by QueryTracer
+    private volatile UnaryOperator<Connection> connectionWrapper = UnaryOperator.identity();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    private final Deque<PooledConnection> idleConnections = new ArrayDeque<>(); // Most recently returned first
+    private final Set<Connection> borrowedConnections = Collections.newSetFromMap( new IdentityHashMap<>() );
+    private int openConnections; // Idle + borrowed + connections currently being opened
+    private boolean closed;
+
+    private final ScheduledExecutorService evictor;
+
+    // Pool statistics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a pool with the default size and timeouts
+     * @param jdbcURL URL of the database
+     * @param username Username to log in with
+     * @param password Password to log in with
+     */
+    public ConnectionPool( String jdbcURL, String username, String password ) {
+        this(
+            jdbcURL,
+            username,
+            password,
+            DEFAULT_MAX_POOL_SIZE,
+            DEFAULT_BORROW_TIMEOUT_MILLIS,
+            DEFAULT_IDLE_TIMEOUT_MILLIS );
+    }
+
+    /**
+     * Creates a pool, no connections are opened until the first one is borrowed
+     * @param jdbcURL URL of the database
+     * @param username Username to log in with
+     * @param password Password to log in with
+     * @param maxPoolSize Max number of connections open at once
+     * @param borrowTimeoutMillis How long borrowConnection() waits for a free connection
+     * @param idleTimeoutMillis How long a connection can sit unused before it is closed
+     */
+    public ConnectionPool(
+        String jdbcURL,
+        String username,
+        String password,
+        int maxPoolSize,
+        long borrowTimeoutMillis,
+        long idleTimeoutMillis ) {
+        if ( maxPoolSize < 1 ) {
+            throw new IllegalArgumentException( "Pool size must be at least 1" );
+        }
+        this.jdbcURL = jdbcURL;
+        this.username = username;
+        this.password = password;
+        this.maxPoolSize = maxPoolSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        // Background thread so connections nobody is borrowing still get closed eventually
+        evictor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+            Thread thread = new Thread( runnable, "connection-pool-evictor" );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        long evictionPeriod = Math.max( idleTimeoutMillis / 2, 1000 );
+        evictor
+            .scheduleAtFixedRate( this::evictIdleConnections, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Borrows a connection from the pool. The connection must be given back with returnConnection() once the caller
+     * is done with it.
+     * @return Open connection in autocommit mode
+     * @throws SQLException if the pool is closed, a connection could not be opened, or none was free before the
+     *  borrow timeout
+     */
+    public Connection borrowConnection() throws SQLException {
+        return borrowConnection( borrowTimeoutMillis );
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting at most a given time for one to be returned when the pool is full
+     * @param timeoutMillis Longest time to wait, 0 to only take a connection that is free right away
+     * @return Open connection in autocommit mode
+     * @throws SQLException if the pool is closed, a connection could not be opened, or none was free in time
+     */
+    public Connection borrowConnection( long timeoutMillis ) throws SQLException {
+        long startTime = System.nanoTime();
+        long deadline = startTime + TimeUnit.MILLISECONDS.toNanos( timeoutMillis );
+        while ( true ) {
+            PooledConnection pooled = takeIdleConnectionOrReserveSlot( deadline, timeoutMillis );
+            Connection connection;
+            if ( pooled == null ) {
+                // A slot was reserved for us so open a brand new connection
+                Connection rawConnection = null;
+                try {
+                    rawConnection = DriverManager.getConnection( jdbcURL, username, password );
+                    connection = QueryTracer.wrap( connectionWrapper.apply( rawConnection ) );
+                    connection.setAutoCommit( true );
+                } catch ( SQLException | RuntimeException e ) {
+                    // The wrappers only hold on to the raw connection so closing it is enough
+                    if ( rawConnection != null ) {
+                        closeQuietly( rawConnection );
+                    }
+                    releaseSlot();
+                    throw e;
+                }
+                createdCount.incrementAndGet();
+            } else if ( isUsable( pooled ) ) {
+                connection = pooled.connection;
+            } else {
+                validationFailureCount.incrementAndGet();
+                closeQuietly( pooled.connection );
+                releaseSlot();
+                continue;
+            }
+
+            lock.lock();
+            try {
+                borrowedConnections.add( connection );
+            } finally {
+                lock.unlock();
+            }
+            borrowCount.incrementAndGet();
+            totalWaitNanos.addAndGet( System.nanoTime() - startTime );
+            return connection;
+        }
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool. Passing null or a connection that did not come from this pool
+     * does nothing.
+     * @param connection Connection that was given out by borrowConnection()
+     */
+    public void returnConnection( Connection connection ) {
+        if ( connection == null ) {
+            return;
+        }
+        lock.lock();
+        try {
+            if ( !borrowedConnections.remove( connection ) ) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Make sure the next borrower gets the connection back in a clean state
+        boolean reusable;
+        try {
+            reusable = !connection.isClosed();
+            if ( reusable && !connection.getAutoCommit() ) {
+                connection.rollback();
+                connection.setAutoCommit( true );
+            }
+        } catch ( SQLException e ) {
+            reusable = false;
+        }
+
+        lock.lock();
+        try {
+            if ( reusable && !closed ) {
+                idleConnections.addFirst( new PooledConnection( connection ) );
+                connectionReturned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly( connection );
+        releaseSlot();
+    }
+
+    /**
+     * Closes any connection that has been idle in the pool longer than the idle timeout
+     */
+    public void evictIdleConnections() {
+        List<Connection> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> iterator = idleConnections.iterator();
+            while ( iterator.hasNext() ) {
+                PooledConnection pooled = iterator.next();
+                if ( now - pooled.lastReturnedMillis >= idleTimeoutMillis ) {
+                    iterator.remove();
+                    openConnections--;
+                    toClose.add( pooled.connection );
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // Close outside of the lock since closing can take a round trip to the DB
+        for ( Connection connection : toClose ) {
+            evictedCount.incrementAndGet();
+            closeQuietly( connection );
+        }
+    }
+
+    /**
+     * Sets a wrapper for every connection the pool opens from now on, connections that are already open are not
+     * wrapped so this should be called before the first borrow
+     * @param connectionWrapper Wraps a connection that was just opened
+     */
+    public void setConnectionWrapper( UnaryOperator<Connection> connectionWrapper ) {
+        this.connectionWrapper = connectionWrapper;
+    }
+
+    /**
+     * Closes the pool. Idle connections are closed right away, borrowed ones are closed when they are returned.
+     */
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>( idleConnections );
+            openConnections -= idleConnections.size();
+            idleConnections.clear();
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictor.shutdownNow();
+        for ( PooledConnection pooled : toClose ) {
+            closeQuietly( pooled.connection );
+        }
+    }
+
+    /**
+     * Summary of the pool's state and counters
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        long borrows = borrowCount.get();
+        double averageWaitMillis = borrows == 0 ? 0 : totalWaitNanos.get() / (double) borrows / 1_000_000;
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Open connections: " + getOpenConnections() + " (max " + maxPoolSize + ")\n" );
+        sb.append( "Idle connections: " + getIdleConnections() + "\n" );
+        sb.append( "Borrowed connections: " + getBorrowedConnections() + "\n" );
+        sb.append( "Total borrows: " + borrows + "\n" );
+        sb.append( "Connections opened: " + createdCount.get() + "\n" );
+        sb.append( "Idle connections evicted: " + evictedCount.get() + "\n" );
+        sb.append( "Failed validations: " + validationFailureCount.get() + "\n" );
+        sb.append( "Borrow timeouts: " + timeoutCount.get() + "\n" );
+        sb.append( String.format( "Average wait to borrow: %.3f ms", averageWaitMillis ) );
+        return sb.toString();
+    }
+
+    // Getters for the pool statistics
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getOpenConnections() {
+        lock.lock();
+        try {
+            return openConnections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleConnections() {
+        lock.lock();
+        try {
+            return idleConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getBorrowedConnections() {
+        lock.lock();
+        try {
+            return borrowedConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Takes the most recently returned idle connection, or reserves room for a new connection if the pool is not
+     * full. Waits for a connection to be returned otherwise.
+     * @param deadline System.nanoTime() value to stop waiting at
+     * @param timeoutMillis Time the deadline is from the start of the borrow, for the error message
+     * @return Idle connection or null if a slot was reserved to open a new connection
+     * @throws SQLException if the pool is closed or the deadline passes
+     */
+    private PooledConnection takeIdleConnectionOrReserveSlot( long deadline, long timeoutMillis )
+        throws SQLException {
+        lock.lock();
+        try {
+            while ( true ) {
+                if ( closed ) {
+                    throw new SQLException( "Connection pool is closed" );
+                }
+                PooledConnection pooled = idleConnections.pollFirst();
+                if ( pooled != null ) {
+                    return pooled;
+                }
+                if ( openConnections < maxPoolSize ) {
+                    openConnections++;
+                    return null;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if ( remaining <= 0 ) {
+                    timeoutCount.incrementAndGet();
+                    throw new SQLException(
+                        "Timed out after " + timeoutMillis + "ms waiting for a connection to the DB" );
+                }
+                try {
+                    connectionReturned.awaitNanos( remaining );
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException( "Interrupted while waiting for a connection to the DB" );
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back a reserved slot when a connection was closed or could not be opened
+     */
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            openConnections--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Validates an idle connection before it is handed out. Connections that were just returned are trusted to save
+     * a round trip to the DB.
+     * @param pooled Idle connection
+     * @return True if the connection can be used
+     */
+    private boolean isUsable( PooledConnection pooled ) {
+        if ( System.currentTimeMillis() - pooled.lastReturnedMillis < VALIDATION_BYPASS_MILLIS ) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid( VALIDATION_TIMEOUT_SECONDS );
+        } catch ( SQLException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a connection ignoring any errors since it is being thrown away anyway. Any statements cached for the
+     * connection are closed first.
+     * @param connection Connection to close
+     */
+    private static void closeQuietly( Connection connection ) {
+        StatementCache.release( connection );
+        try {
+            connection.close();
+        } catch ( SQLException e ) {
+            // Nothing left to do with a connection that will not close
+        }
+    }
+
+    /**
+     * Idle connection and when it was given back to the pool
+     */
+    private static class PooledConnection {
+
+        private final Connection connection;
+
+        private final long lastReturnedMillis;
+
+        private PooledConnection( Connection connection ) {
+            this.connection = connection;
+            this.lastReturnedMillis = System.currentTimeMillis();
+        }
+    }
+
+}
@@ -5,8 +5,11 @@
  * Class: DBUtils.java
  * Purpose: Contains a variety of methods that let the program interface interact with the
  *  Oracle database connection (see method comments for details).
+ *  Statements are taken from the StatementCache so that each query is only prepared once per connection,
+ *  those statements must not be closed here, only the result sets they return.
  * 
  * Utilizes:
+ *  - java.io.IOException
  *  - java.sql.*
  *  - java.time.*
  *  - java.util.*
@@ -18,6 +21,8 @@
 
 package utils;
 
+import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -25,10 +30,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.Year;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +46,7 @@ import entities.CoursePackage;
 import entities.GymMember;
 import entities.RentalItem;
 import entities.RentalLogEntry;
+import entities.ScheduleEntry;
 import entities.Trainer;
 import entities.Transaction;
 import enums.MembershipLevelEnum;
@@ -50,6 +59,7 @@ public class DBUtils {
     private static final String PERIOD = ".";
     private static final String ALL_SEQ = "ALL_SEQ";
     private static final String SEQUENCE = FRANCISCOG852 + PERIOD + ALL_SEQ;
+    private static final String DUAL = "DUAL";
 
     // Table names
     private static final String MEMBER_TABLE = "MEMBER";
@@ -65,30 +75,60 @@ public class DBUtils {
     private static final String RENTAL_ITEM_TABLE = "RENTALITEM";
     private static final String RENTAL_LOG_TABLE = "RENTALLOG";
 
+    // Hands out IDs for new transactions, rental log entries, courses, classes and imported members in blocks from
+    // the sequence
+    private static final IdAllocator idAllocator = new IdAllocator(
+        "SELECT " + SEQUENCE + PERIOD + "NEXTVAL FROM " + DUAL );
+
+    // ITEMNUM <-> ITEMNAME pairs of the rental items, reloaded every 10 minutes or when an unknown item is asked for
+    private static final RentalCatalog rentalCatalog = new RentalCatalog(
+        "SELECT ITEMNUM, ITEMNAME FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE,
+        10 * 60 * 1000L );
+
+    // Recently looked up members, size and time to live can be set with -Dgym.memberCache.size and
+    // -Dgym.memberCache.ttlMillis
+    private static final MemberCache memberCache = new MemberCache(
+        Integer.getInteger( "gym.memberCache.size", 256 ),
+        Long.getLong( "gym.memberCache.ttlMillis", 5 * 60 * 1000L ) );
+
+    // When every trainer teaches, kept up to date as classes are saved and reloaded every 10 minutes in case another
+    // program changed the classes
+    private static final TrainerSchedule trainerSchedule = new TrainerSchedule();
+    private static final long TRAINER_SCHEDULE_MAX_AGE_MILLIS = 10 * 60 * 1000L;
+
+    // Retries and per class counters for taking seats when several terminals enroll at once, the attempts made and
+    // the first pause can be set with -Dgym.enroll.maxAttempts and -Dgym.enroll.backoffMillis
+    private static final EnrollmentContention enrollmentContention = new EnrollmentContention(
+        Integer.getInteger( "gym.enroll.maxAttempts", 5 ),
+        Integer.getInteger( "gym.enroll.backoffMillis", 5 ),
+        200 );
+
+    // Rows fetched per round trip when reading a whole history table, can be set with -Dgym.export.fetchSize
+    private static final int EXPORT_FETCH_SIZE = Integer.getInteger( "gym.export.fetchSize", 1000 );
+
     private DBUtils() {
     }
 
     /**
-     * Inserts a new gym member into the DB 
-     * @param member Member to add
+     * Inserts a new gym member into the DB. The ID comes from the ID allocator like every other ID taken from the
+     * sequence, so it can never be one the allocator already handed out ( to a batch of imported members, ... )
+     * @param member Member to add, its ID is set
      * @param dbConnection Connection to the DB
      */
     public static boolean addNewGymMemberToDB( GymMember member, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet numberGen = null;
-            int memberID;
-            if ( !isTableEmpty( BODE1 + PERIOD + MEMBER_TABLE, dbConnection ) ) {
-                memberID = 1;
-            } else {
-                numberGen = stmt
-                    .executeQuery( "SELECT " + SEQUENCE + PERIOD + "NEXTVAL FROM " + BODE1 + PERIOD + MEMBER_TABLE );
-                numberGen.next();
-                memberID = numberGen.getInt( "NEXTVAL" );
-            }
+            int memberID = idAllocator.nextID( dbConnection );
             member.setMemberID( memberID );
-            int result = stmt.executeUpdate( createInsertMemberQuery( member ) );
-            stmt.close(); // Fun fact this will close the result sets too!
+            PreparedStatement stmt = StatementCache.prepare( createInsertMemberQuery(), dbConnection );
+            stmt.setInt( 1, member.getMemberID() );
+            stmt.setString( 2, member.getFirstName() );
+            stmt.setString( 3, member.getLastName() );
+            stmt.setString( 4, member.getPhoneNumber() );
+            stmt.setString( 5, member.getEmail() );
+            stmt.setString( 6, member.getMembershipLevel() );
+            stmt.setFloat( 7, member.getBalance() );
+            stmt.executeUpdate();
+            invalidateCachedMember( memberID, dbConnection );
             return true;
         } catch ( SQLException e ) {
             return false;
@@ -96,36 +136,51 @@ public class DBUtils {
     }
 
     /**
-     * @param tableName
-     * @param dbConnection
-     * @return True if table is not empty and false if it is
+     * Inserts many new gym members with one batch of inserts. IDs come from the ID allocator, so only one trip to the
+     * sequence is made per block of IDs instead of one per member.
+     * Inside a unit of work either every member is saved or none are, otherwise each insert is committed on its own.
+     * @param members Members to add, their IDs are set
+     * @param dbConnection Connection to the DB
+     * @return True if every member was saved
      */
-    private static boolean isTableEmpty( String tableName, Connection dbConnection ) {
-        boolean bool = false;
+    public static boolean addNewGymMembersToDB( List<GymMember> members, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt.executeQuery( "SELECT * FROM " + tableName );
-            bool = result.next();
+            PreparedStatement stmt = StatementCache.prepare( createInsertMemberQuery(), dbConnection );
+            stmt.clearBatch(); // The statement is cached, drop any rows left by a batch that failed part way
+            for ( GymMember member : members ) {
+                member.setMemberID( idAllocator.nextID( dbConnection ) );
+                stmt.setInt( 1, member.getMemberID() );
+                stmt.setString( 2, member.getFirstName() );
+                stmt.setString( 3, member.getLastName() );
+                stmt.setString( 4, member.getPhoneNumber() );
+                stmt.setString( 5, member.getEmail() );
+                stmt.setString( 6, member.getMembershipLevel() );
+                stmt.setFloat( 7, member.getBalance() );
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            for ( GymMember member : members ) {
+                invalidateCachedMember( member.getMemberID(), dbConnection );
+            }
+            return true;
         } catch ( SQLException e ) {
-            System.out.println( "Something went wrong!" );
+            return false;
         }
-        return bool;
     }
 
     /**
-     * Creates a query to insert a member into the db using attributes from the GymMember object
-     * @param member GymMember object to insert into the DB
-     * @return The dynamic query to insert into a db
+     * Creates a query to insert a member into the db, values are filled in from the GymMember object
+     * @return String query with place holders
      */
-    private static String createInsertMemberQuery( GymMember member ) {
+    private static String createInsertMemberQuery() {
         StringBuilder sqlBuilder = new StringBuilder( "INSERT INTO " + BODE1 + PERIOD + MEMBER_TABLE + " VALUES(\n" );
-        sqlBuilder.append( member.getMemberID() + ",\n" );
-        sqlBuilder.append( "'" + member.getFirstName() + "',\n" );
-        sqlBuilder.append( "'" + member.getLastName() + "',\n" );
-        sqlBuilder.append( "'" + member.getPhoneNumber() + "',\n" );
-        sqlBuilder.append( "'" + member.getEmail() + "',\n" );
-        sqlBuilder.append( "'" + member.getMembershipLevel() + "',\n" );
-        sqlBuilder.append( member.getBalance() + "\n" );
+        sqlBuilder.append( "?,\n" ); // MEMBERID
+        sqlBuilder.append( "?,\n" ); // FNAME
+        sqlBuilder.append( "?,\n" ); // LNAME
+        sqlBuilder.append( "?,\n" ); // PHONENUM
+        sqlBuilder.append( "?,\n" ); // EMAIL
+        sqlBuilder.append( "?,\n" ); // MEMBERSHIPLEVEL
+        sqlBuilder.append( "?\n" ); // ACCOUNTBALANCE
         sqlBuilder.append( ")" );
         return sqlBuilder.toString();
     }
@@ -137,11 +192,16 @@ public class DBUtils {
      * @return GymMember object that is associated with the given memberID
      */
     public static GymMember retrieveMemberFromID( int memberId, Connection dbConnection ) {
-        GymMember member = null;
+        GymMember member = memberCache.get( memberId );
+        if ( member != null ) {
+            return member;
+        }
+        long loadStamp = memberCache.startLoad();
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt
-                .executeQuery( "SELECT * FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE MEMBERID = " + memberId );
+            PreparedStatement stmt = StatementCache
+                .prepare( "SELECT * FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE MEMBERID = ?", dbConnection );
+            stmt.setInt( 1, memberId );
+            ResultSet result = stmt.executeQuery();
             if ( result.next() ) {
                 String firstName = result.getString( "FNAME" );
                 String lastname = result.getString( "LNAME" );
@@ -158,8 +218,9 @@ public class DBUtils {
                     email,
                     membershipLevel,
                     accountBalance );
+                memberCache.put( member, loadStamp );
             }
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve member details" );
             return null;
@@ -175,14 +236,15 @@ public class DBUtils {
     public static Map<String, Float> getPackagesAndPrices( Connection dbConnection ) {
         Map<String, Float> packages = new HashMap<>();
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt.executeQuery( "SELECT * FROM " + BODE1 + PERIOD + PACKAGE_TABLE );
+            PreparedStatement stmt = StatementCache
+                .prepare( "SELECT * FROM " + BODE1 + PERIOD + PACKAGE_TABLE, dbConnection );
+            ResultSet result = stmt.executeQuery();
             while ( result.next() ) {
                 String packageName = result.getString( "PACKAGENAME" );
                 Float cost = result.getFloat( "COST" );
                 packages.put( packageName, cost );
             }
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve all packages" );
             return null;
@@ -201,10 +263,11 @@ public class DBUtils {
     public static Map<String, Integer> getCheckoutRentalsForMember( GymMember member, Connection dbConnection ) {
         Map<String, Integer> rentals = new HashMap<>();
         try {
-            PreparedStatement getLogInfo = dbConnection
-                .prepareStatement(
+            PreparedStatement getLogInfo = StatementCache
+                .prepare(
                     "SELECT ITEMNUM, QUANTITY, RETURNED FROM " + BODE1 + PERIOD + RENTAL_LOG_TABLE
-                        + " WHERE MEMBERID = ? AND RETURNED = 0" );
+                        + " WHERE MEMBERID = ? AND RETURNED = 0",
+                    dbConnection );
             getLogInfo.setInt( 1, member.getMemberID() );
             ResultSet logInfo = getLogInfo.executeQuery();
             while ( logInfo.next() ) {
@@ -220,7 +283,7 @@ public class DBUtils {
                 }
 
             }
-            getLogInfo.close();
+            logInfo.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve member's rental items" );
             System.out.println( e.getMessage() );
@@ -229,7 +292,7 @@ public class DBUtils {
     }
 
     /**
-     * Get item name from the item num
+     * Get item name from the item num, looked up in the rental catalog
      * @param itemNum
      * @param dbConnection
      * @return
@@ -237,13 +300,11 @@ public class DBUtils {
     private static String getItemName( int itemNum, Connection dbConnection ) {
         String name = "";
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "SELECT ITEMNAME FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE + " WHERE ITEMNUM = ?" );
-            stmt.setInt( 1, itemNum );
-            ResultSet result = stmt.executeQuery();
-            result.next();
-            name = result.getString( "ITEMNAME" );
+            name = rentalCatalog.getItemName( itemNum, dbConnection );
+            if ( name == null ) {
+                System.out.println( "Unable to find item name" );
+                name = "";
+            }
         } catch ( SQLException e ) {
             System.out.println( "Unable to find item name" );
         }
@@ -268,25 +329,6 @@ public class DBUtils {
         return sqlBuilder.toString();
     }
 
-    /**
-     * Removes a quantity of an item 
-     * @param itemName Name of item
-     * @param quantityToRemove Quantity to remove
-     * @param dbConnection Connection to DB
-     */
-    public static void removeQuantityFromRentalItems( String itemName, int quantityToRemove, Connection dbConnection ) {
-        try {
-            Statement stmt = dbConnection.createStatement();
-            int result = stmt
-                .executeUpdate(
-                    "UPDATE " + BODE1 + PERIOD + RENTAL_ITEM_TABLE + " SET QUANTITY = QUANTITY - " + quantityToRemove
-                        + " WHERE ITEMNAME = '" + itemName.toUpperCase() + "'" );
-            stmt.close();
-        } catch ( SQLException e ) {
-            System.out.println( "Unable to update rental item quantity" );
-        }
-    }
-
     /**
      * Searches DB for all classes that the member is currently enrolled in and decrements the enrollment number by one.
      * Also removes their entries in MEMBERCLASS table after
@@ -295,26 +337,20 @@ public class DBUtils {
      */
     public static void removeMemberFromAllTheirClasses( int memberID, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt
-                .executeQuery(
-                    "SELECT CLASSNUM FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = " + memberID );
-            // Grab all the class numbers and update the enrollment numbers of them
-            Statement updateStatement = dbConnection.createStatement();
-            while ( result.next() ) {
-                int classnum = result.getInt( "CLASSNUM" );
-                // Decrement the enrollment numbers
-                updateStatement
-                    .executeUpdate(
-                        "UPDATE " + BODE1 + PERIOD + CLASS_TABLE + " SET ENROLLMENT = ENROLLMENT - 1 WHERE CLASSNUM = "
-                            + classnum );
-                // Remove from member class table
-                updateStatement
-                    .executeUpdate(
-                        "DELETE FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = " + memberID );
-            }
-            updateStatement.close();
-            stmt.close();
+            // Decrement the enrollment numbers of every class the member is in
+            PreparedStatement updateStatement = StatementCache
+                .prepare(
+                    "UPDATE " + BODE1 + PERIOD + CLASS_TABLE + " SET ENROLLMENT = ENROLLMENT - 1 WHERE CLASSNUM IN "
+                        + "(SELECT CLASSNUM FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = ?)",
+                    dbConnection );
+            updateStatement.setInt( 1, memberID );
+            updateStatement.executeUpdate();
+
+            // Remove from member class table
+            PreparedStatement deleteStatement = StatementCache
+                .prepare( "DELETE FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = ?", dbConnection );
+            deleteStatement.setInt( 1, memberID );
+            deleteStatement.executeUpdate();
         } catch ( SQLException e ) {
             System.out.println( "Unable to remove member from their classes" );
             System.out.println( e.getMessage() );
@@ -325,34 +361,97 @@ public class DBUtils {
      * Updates a member information in the DB
      * @param member Member to update
      * @param dbConnection Connection to DB
+     * @return True if the member was saved
      */
-    public static void saveChangesToMember( GymMember member, Connection dbConnection ) {
+    public static boolean saveChangesToMember( GymMember member, Connection dbConnection ) {
         float amountSpent = getAmountSpentByMember( member, dbConnection );
+        if ( amountSpent < 0 ) {
+            return false;
+        }
         member.setMembershipLevel( GymMember.determineLevel( amountSpent ) );
         try {
-            Statement stmt = dbConnection.createStatement();
-            stmt.executeUpdate( generateMemberUpdate( member ) );
-            stmt.close();
+            PreparedStatement stmt = StatementCache.prepare( generateMemberUpdate(), dbConnection );
+            stmt.setInt( 1, member.getMemberID() );
+            stmt.setString( 2, member.getFirstName() );
+            stmt.setString( 3, member.getLastName() );
+            stmt.setString( 4, member.getPhoneNumber() );
+            stmt.setString( 5, member.getEmail() );
+            stmt.setString( 6, member.getMembershipLevel() );
+            stmt.setFloat( 7, member.getBalance() );
+            stmt.setInt( 8, member.getMemberID() );
+            stmt.executeUpdate();
+            return true;
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to update record for member" );
+            return false;
+        } finally {
+            invalidateCachedMember( member.getMemberID(), dbConnection );
+        }
+    }
+
+    /**
+     * Adds an amount to a member's balance and updates their membership level from what they have spent. The balance
+     * is changed in the DB with ACCOUNTBALANCE = ACCOUNTBALANCE + ?, not written from the member that was read, so a
+     * change another terminal or program made since then ( or while the member sat in the member cache ) is kept. The
+     * new balance is read back into the member afterwards, on the same connection so it sees the change even before a
+     * unit of work commits.
+     * @param member Member whose balance changes, gets the balance and level that were saved
+     * @param amount Amount to add, negative for a purchase
+     * @param dbConnection Connection to DB
+     * @return True if the balance was saved, false if it could not be or the member is gone
+     */
+    public static boolean addToMemberBalance( GymMember member, float amount, Connection dbConnection ) {
+        float amountSpent = getAmountSpentByMember( member, dbConnection );
+        if ( amountSpent < 0 ) {
+            return false;
+        }
+        MembershipLevelEnum membershipLevel = GymMember.determineLevel( amountSpent );
+        try {
+            PreparedStatement update = StatementCache
+                .prepare(
+                    "UPDATE " + BODE1 + PERIOD + MEMBER_TABLE
+                        + " SET ACCOUNTBALANCE = ACCOUNTBALANCE + ?, MEMBERSHIPLEVEL = ? WHERE MEMBERID = ?",
+                    dbConnection );
+            update.setFloat( 1, amount );
+            update.setString( 2, membershipLevel.getLevel() );
+            update.setInt( 3, member.getMemberID() );
+            if ( update.executeUpdate() == 0 ) {
+                return false;
+            }
+
+            PreparedStatement read = StatementCache
+                .prepare(
+                    "SELECT ACCOUNTBALANCE FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE MEMBERID = ?",
+                    dbConnection );
+            read.setInt( 1, member.getMemberID() );
+            ResultSet result = read.executeQuery();
+            result.next();
+            member.setBalance( result.getFloat( "ACCOUNTBALANCE" ) );
+            result.close();
+            member.setMembershipLevel( membershipLevel );
+            return true;
         } catch ( SQLException e ) {
             System.out.println( "Unable to update record for member" );
+            return false;
+        } finally {
+            invalidateCachedMember( member.getMemberID(), dbConnection );
         }
     }
 
     /**
      * Updates a member information Query
-     * @param member Member to update
-     * @return
+     * @return String query with place holders
      */
-    private static String generateMemberUpdate( GymMember member ) {
+    private static String generateMemberUpdate() {
         StringBuilder sqlBuilder = new StringBuilder( "UPDATE " + BODE1 + PERIOD + MEMBER_TABLE + " SET\n" );
-        sqlBuilder.append( "MEMBERID = " + member.getMemberID() + ",\n" );
-        sqlBuilder.append( "FNAME = '" + member.getFirstName() + "',\n" );
-        sqlBuilder.append( "LNAME = '" + member.getLastName() + "',\n" );
-        sqlBuilder.append( "PHONENUM = '" + member.getPhoneNumber() + "',\n" );
-        sqlBuilder.append( "EMAIL = '" + member.getEmail() + "',\n" );
-        sqlBuilder.append( "MEMBERSHIPLEVEL = '" + member.getMembershipLevel() + "',\n" );
-        sqlBuilder.append( "ACCOUNTBALANCE = " + member.getBalance() + "\n" );
-        sqlBuilder.append( "WHERE MEMBERID = " + member.getMemberID() );
+        sqlBuilder.append( "MEMBERID = ?,\n" );
+        sqlBuilder.append( "FNAME = ?,\n" );
+        sqlBuilder.append( "LNAME = ?,\n" );
+        sqlBuilder.append( "PHONENUM = ?,\n" );
+        sqlBuilder.append( "EMAIL = ?,\n" );
+        sqlBuilder.append( "MEMBERSHIPLEVEL = ?,\n" );
+        sqlBuilder.append( "ACCOUNTBALANCE = ?\n" );
+        sqlBuilder.append( "WHERE MEMBERID = ?" );
         return sqlBuilder.toString();
     }
 
@@ -363,68 +462,234 @@ public class DBUtils {
      */
     public static void removeMemberFromDB( GymMember member, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            int returnCode = stmt
-                .executeUpdate(
-                    "DELETE FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE MEMBERID = " + member.getMemberID() );
-            stmt.close();
+            PreparedStatement stmt = StatementCache
+                .prepare( "DELETE FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE MEMBERID = ?", dbConnection );
+            stmt.setInt( 1, member.getMemberID() );
+            stmt.executeUpdate();
         } catch ( SQLException e ) {
             System.out.println( "Unable to remove member from db" );
+        } finally {
+            invalidateCachedMember( member.getMemberID(), dbConnection );
         }
     }
 
     /**
-     * Generates 'Unique' id from db using the sequence
-     * @param dbConnection
-     * @return
+     * Generates unique id using the sequence. IDs are reserved from the sequence in blocks so most calls do not
+     * need to go to the DB at all
+     * @param dbConnection Connection to DB, only used when a new block of IDs is needed
+     * @return Unique ID or 0 if one could not be generated
      */
     public static int generateIDNumberFromSequence( Connection dbConnection ) {
         int generatedID = 0;
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt
-                .executeQuery( "SELECT " + SEQUENCE + PERIOD + "NEXTVAL FROM " + BODE1 + PERIOD + MEMBER_TABLE );
-            result.next();
-            generatedID = result.getInt( "NEXTVAL" );
-            stmt.close();
+            generatedID = idAllocator.nextID( dbConnection );
         } catch ( SQLException e ) {
             System.out.println( "Unable to generate an ID from sequence" );
         }
         return generatedID;
     }
 
+    /**
+     * Summary of how many IDs have been handed out and how many trips to the sequence that took
+     * @return String that can be printed to the console
+     */
+    public static String getIdAllocatorStatistics() {
+        return idAllocator.getStatistics();
+    }
+
     /**
      * Saves a new transaction log entry into the DB
      * @param transaction
      * @param dbConnection
+     * @return True if the transaction was saved
      */
-    public static void saveNewTransaction( Transaction transaction, Connection dbConnection ) {
+    public static boolean saveNewTransaction( Transaction transaction, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            stmt.executeUpdate( generateInsertTransaction( transaction ) );
-            stmt.close();
+            PreparedStatement stmt = StatementCache.prepare( generateInsertTransaction(), dbConnection );
+            stmt.setInt( 1, transaction.getTransactionID() );
+            stmt.setInt( 2, transaction.getMemberID() );
+            stmt.setString( 3, transaction.getXactType() );
+            stmt.setFloat( 4, transaction.getAmount() );
+            stmt.executeUpdate();
+            return true;
         } catch ( SQLException e ) {
             System.out.println( "Unable to persist transaction" );
+            return false;
         }
     }
 
     /**
      * Creates query to add transaction to the DB
-     * @param transaction
-     * @return
+     * @return String query with place holders
      */
-    private static String generateInsertTransaction( Transaction transaction ) {
+    private static String generateInsertTransaction() {
         StringBuilder sqlBuilder = new StringBuilder(
             "INSERT INTO " + BODE1 + PERIOD + TRANSACTION_TABLE + " VALUES (\n" );
-        sqlBuilder.append( transaction.getTransactionID() + ",\n" );
-        sqlBuilder.append( transaction.getMemberID() + ",\n" );
-        sqlBuilder.append( "'" + transaction.getXactType() + "',\n" );
+        sqlBuilder.append( "?,\n" ); // TRANSACTIONID
+        sqlBuilder.append( "?,\n" ); // MEMBERID
+        sqlBuilder.append( "?,\n" ); // XACTTYPE
         sqlBuilder.append( "SYSDATE,\n" );
-        sqlBuilder.append( transaction.getAmount() );
+        sqlBuilder.append( "?" ); // AMOUNT
         sqlBuilder.append( ")" );
         return sqlBuilder.toString();
     }
 
+    /**
+     * Reads transactions in the order of their ids and passes each one to the handler as soon as it is fetched, so
+     * any number of them can be read without holding them in memory. Rows are fetched from the DB in blocks of
+     * EXPORT_FETCH_SIZE through a forward only cursor.
+     * @param from First day to read, null to read from the first transaction
+     * @param to Last day to read, null to read up to the last transaction
+     * @param memberID Member whose transactions are read, 0 to read every member's
+     * @param handler Gets every transaction, the same Transaction object is filled in again for each one
+     * @param dbConnection Connection to DB
+     * @return Number of transactions read
+     * @throws SQLException if the transactions could not be read
+     * @throws IOException if the handler failed, which stops the read
+     */
+    public static long forEachTransaction(
+        Date from,
+        Date to,
+        int memberID,
+        RowHandler<Transaction> handler,
+        Connection dbConnection ) throws SQLException, IOException {
+        PreparedStatement stmt = StatementCache
+            .prepare(
+                generateHistoryQuery(
+                    "TRANSACTIONID, MEMBERID, XACTTYPE, XACTDATE, AMOUNT",
+                    TRANSACTION_TABLE,
+                    "XACTDATE",
+                    "TRANSACTIONID",
+                    from,
+                    to,
+                    memberID ),
+                dbConnection );
+        setHistoryParameters( stmt, from, to, memberID );
+        Transaction transaction = new Transaction( 0, 0, null, null, 0 );
+        long count = 0;
+        try ( ResultSet result = stmt.executeQuery() ) {
+            while ( result.next() ) {
+                transaction.setTransactionID( result.getInt( 1 ) );
+                transaction.setMemberID( result.getInt( 2 ) );
+                transaction.setXactType( result.getString( 3 ) );
+                transaction.setXactDate( result.getDate( 4 ) );
+                transaction.setAmount( result.getFloat( 5 ) );
+                handler.handle( transaction );
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads rental log entries in the order of their ids and passes each one to the handler as soon as it is fetched,
+     * the same way forEachTransaction() does
+     * @param from First day to read, null to read from the first rental
+     * @param to Last day to read, null to read up to the last rental
+     * @param memberID Member whose rentals are read, 0 to read every member's
+     * @param handler Gets every entry, the same RentalLogEntry object is filled in again for each one
+     * @param dbConnection Connection to DB
+     * @return Number of entries read
+     * @throws SQLException if the entries could not be read
+     * @throws IOException if the handler failed, which stops the read
+     */
+    public static long forEachRentalLogEntry(
+        Date from,
+        Date to,
+        int memberID,
+        RowHandler<RentalLogEntry> handler,
+        Connection dbConnection ) throws SQLException, IOException {
+        PreparedStatement stmt = StatementCache
+            .prepare(
+                generateHistoryQuery(
+                    "RENTALID, MEMBERID, ITEMNUM, OUTTIME, RETURNED, QUANTITY",
+                    RENTAL_LOG_TABLE,
+                    "OUTTIME",
+                    "RENTALID",
+                    from,
+                    to,
+                    memberID ),
+                dbConnection );
+        setHistoryParameters( stmt, from, to, memberID );
+        RentalLogEntry entry = new RentalLogEntry( 0, 0, 0, null, false, 0 );
+        long count = 0;
+        try ( ResultSet result = stmt.executeQuery() ) {
+            while ( result.next() ) {
+                entry.setRentalID( result.getInt( 1 ) );
+                entry.setMemberID( result.getInt( 2 ) );
+                entry.setItemNum( result.getInt( 3 ) );
+                entry.setOutTime( result.getDate( 4 ) );
+                entry.setReturnStatus( result.getInt( 5 ) == 1 );
+                entry.setQuantityBorrowed( result.getInt( 6 ) );
+                handler.handle( entry );
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a query for the rows of a history table, with only the filters that were asked for so each one can use
+     * the table's indexes
+     * @param columns Columns to select
+     * @param table History table
+     * @param dateColumn Column the date filter applies to
+     * @param idColumn Primary key the rows are ordered by
+     * @param from First day to read, null for none
+     * @param to Last day to read, null for none
+     * @param memberID Member to read, 0 for every member
+     * @return String query with place holders in the order setHistoryParameters() fills them
+     */
+    private static String generateHistoryQuery(
+        String columns,
+        String table,
+        String dateColumn,
+        String idColumn,
+        Date from,
+        Date to,
+        int memberID ) {
+        StringBuilder sqlBuilder = new StringBuilder( "SELECT " + columns + "\n" );
+        sqlBuilder.append( "FROM " + BODE1 + PERIOD + table + "\n" );
+        String keyword = "WHERE ";
+        if ( from != null ) {
+            sqlBuilder.append( keyword + dateColumn + " >= ?\n" );
+            keyword = "AND ";
+        }
+        if ( to != null ) {
+            sqlBuilder.append( keyword + dateColumn + " < ?\n" ); // Before the day after, DATE columns have a time
+            keyword = "AND ";
+        }
+        if ( memberID != 0 ) {
+            sqlBuilder.append( keyword + "MEMBERID = ?\n" );
+        }
+        sqlBuilder.append( "ORDER BY " + idColumn );
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * Fills in the place holders of a query made by generateHistoryQuery() and sets it up to stream its rows
+     * @param stmt Statement of the query
+     * @param from First day to read, null for none
+     * @param to Last day to read, null for none
+     * @param memberID Member to read, 0 for every member
+     * @throws SQLException if the statement could not be set up
+     */
+    private static void setHistoryParameters( PreparedStatement stmt, Date from, Date to, int memberID )
+        throws SQLException {
+        int index = 1;
+        if ( from != null ) {
+            stmt.setDate( index++, from );
+        }
+        if ( to != null ) {
+            stmt.setDate( index++, Date.valueOf( to.toLocalDate().plusDays( 1 ) ) );
+        }
+        if ( memberID != 0 ) {
+            stmt.setInt( index++, memberID );
+        }
+        stmt.setFetchSize( EXPORT_FETCH_SIZE );
+        stmt.setFetchDirection( ResultSet.FETCH_FORWARD );
+    }
+
     /**
      * Fetches the course id associated with a category and catalog number
      *  from the Course table within the database.
@@ -432,14 +697,16 @@ public class DBUtils {
     public static int getCourseId( String category, int catalogNum, Connection dbConnection ) {
         int courseId = 0;
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet courseIdResult = stmt
-                .executeQuery(
-                    "SELECT COURSEID FROM " + BODE1 + PERIOD + COURSE_TABLE + " WHERE CATEGORY='" + category
-                        + "' AND CATALOGNUM=" + catalogNum );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT COURSEID FROM " + BODE1 + PERIOD + COURSE_TABLE + " WHERE CATEGORY = ? AND CATALOGNUM = ?",
+                    dbConnection );
+            stmt.setString( 1, category );
+            stmt.setInt( 2, catalogNum );
+            ResultSet courseIdResult = stmt.executeQuery();
             courseIdResult.next();
             courseId = courseIdResult.getInt( "COURSEID" );
-            stmt.close();
+            courseIdResult.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to add new class with this course" );
         }
@@ -453,9 +720,18 @@ public class DBUtils {
      */
     public static void saveNewClass( Class newClass, Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            stmt.executeUpdate( generateInsertClassQuery( newClass ) );
-            stmt.close();
+            PreparedStatement stmt = StatementCache.prepare( generateInsertClassQuery(), dbConnection );
+            stmt.setInt( 1, newClass.getClassNum() );
+            stmt.setInt( 2, newClass.getCourseID() );
+            stmt.setInt( 3, newClass.getTrainerID() );
+            stmt.setTimestamp( 4, newClass.getStartTime() );
+            stmt.setFloat( 5, newClass.getClassDuration() );
+            stmt.setDate( 6, newClass.getStartDate() );
+            stmt.setDate( 7, newClass.getEndDate() );
+            stmt.setInt( 8, newClass.getCurrentEnrollment() );
+            stmt.setInt( 9, newClass.getCapacity() );
+            stmt.executeUpdate();
+            scheduleClass( newClass, dbConnection );
         } catch ( SQLException e ) {
             System.out.println( "Unable to add new class" );
         }
@@ -463,100 +739,309 @@ public class DBUtils {
 
     /**
      * Generate a query to save a new class to the DB
-     * @param newClass
-     * @return
+     * @return String query with place holders
      */
-    private static String generateInsertClassQuery( Class newClass ) {
+    private static String generateInsertClassQuery() {
         StringBuilder sqlBuilder = new StringBuilder( "INSERT INTO " + BODE1 + PERIOD + CLASS_TABLE + " VALUES (" );
-        sqlBuilder.append( newClass.getClassNum() + ",\n" );
-        sqlBuilder.append( newClass.getCourseID() + ",\n" );
-        sqlBuilder.append( newClass.getTrainerID() + ",\n" );
-        sqlBuilder.append( "TO_TIMESTAMP('" + newClass.getStartTime() );
-        sqlBuilder.deleteCharAt( sqlBuilder.length() - 1 );
-        sqlBuilder.deleteCharAt( sqlBuilder.length() - 1 );
-        sqlBuilder.append( "', 'YYYY-MM-DD HH24:MI:SS'),\n" );
-        sqlBuilder.append( newClass.getClassDuration() + ",\n" );
-        sqlBuilder.append( "TO_DATE('" + newClass.getStartDate() + "', 'YYYY-MM-DD'),\n" );
-        sqlBuilder.append( "TO_DATE('" + newClass.getEndDate() + "', 'YYYY-MM-DD'),\n" );
-        sqlBuilder.append( newClass.getCurrentEnrollment() + ",\n" );
-        sqlBuilder.append( newClass.getCapacity() );
+        sqlBuilder.append( "?,\n" ); // CLASSNUM
+        sqlBuilder.append( "?,\n" ); // COURSEID
+        sqlBuilder.append( "?,\n" ); // TRAINERID
+        sqlBuilder.append( "?,\n" ); // STARTTIME
+        sqlBuilder.append( "?,\n" ); // DURATION
+        sqlBuilder.append( "?,\n" ); // STARTDATE
+        sqlBuilder.append( "?,\n" ); // ENDDATE
+        sqlBuilder.append( "?,\n" ); // ENROLLMENT
+        sqlBuilder.append( "?" ); // CAPACITY
         sqlBuilder.append( ")" );
         return sqlBuilder.toString();
     }
 
     /**
-     * Adds a member to every course in a given package
-     * @param member
-     * @param packageName
-     * @param dbConnection
+     * Adds a member to every class of every course in a given package. Takes three round trips to the DB no matter
+     * how many classes are in the package: one query for the classes the member is not in yet, one batch of
+     * enrollment increments that only succeed while a class is below capacity, and one batch of MEMBERCLASS inserts
+     * for the classes that had room. Increments that timed out waiting for another terminal's lock are sent again
+     * in a smaller batch, see takeSeats().
+     * @param member Member who bought the package
+     * @param packageName Name of package bought
+     * @param dbConnection Connection to DB
+     * @return Class numbers that were full so the member could not be enrolled in them, null if the enrollment
+     *  could not be saved
      */
-    public static void addMemberToPackageCourses( GymMember member, String packageName, Connection dbConnection ) {
+    public static
+        List<Integer>
+        addMemberToPackageCourses( GymMember member, String packageName, Connection dbConnection ) {
+        List<Integer> fullClasses = new ArrayList<>();
         try {
-            // Grab all the courses that are in the package the member bought
-            PreparedStatement preparedStatement = dbConnection
-                .prepareStatement(
-                    "SELECT COURSEID FROM " + BODE1 + PERIOD + COURSE_PACKAGE_TABLE + " WHERE PACKAGENAME = ?" );
-            preparedStatement.setString( 1, packageName );
-            ResultSet courseIDs = preparedStatement.executeQuery();
-            while ( courseIDs.next() ) {
-                int courseID = courseIDs.getInt( "COURSEID" );
-                PreparedStatement getClasses = dbConnection
-                    .prepareStatement( "SELECT * FROM " + BODE1 + PERIOD + CLASS_TABLE + " WHERE COURSEID = ?" );
-                getClasses.setInt( 1, courseID );
-                ResultSet classSet = getClasses.executeQuery(); // This contains the classes that the member should be enrolled in
-                List<Class> classes = formClassList( classSet );
-                for ( Class gymClass : classes ) {
-                    gymClass.addStudent(); // Update enrollment
-                    saveClassInfo( gymClass, dbConnection ); // save changes
-                    addToMemberClassTable( member, gymClass, dbConnection ); // Add record to memberclass table
+            // Grab all the classes of the package's courses that the member is not already in
+            PreparedStatement getClasses = StatementCache.prepare( generatePackageClassesQuery(), dbConnection );
+            getClasses.setString( 1, packageName );
+            getClasses.setInt( 2, member.getMemberID() );
+            ResultSet classSet = getClasses.executeQuery();
+            List<Integer> classNums = new ArrayList<>();
+            while ( classSet.next() ) {
+                classNums.add( classSet.getInt( "CLASSNUM" ) );
+            }
+            classSet.close();
+            if ( classNums.isEmpty() ) {
+                return fullClasses;
+            }
+
+            // Take a seat in every class that still has room
+            int[] updateCounts = takeSeats( classNums, dbConnection );
+
+            // Record the member in the classes they got a seat in
+            PreparedStatement addMemberClass = StatementCache
+                .prepare( "INSERT INTO " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " VALUES (?, ?)", dbConnection );
+            boolean anyEnrolled = false;
+            for ( int i = 0 ; i < classNums.size() ; i++ ) {
+                int classNum = classNums.get( i );
+                if ( updateCounts[i] == 0 ) {
+                    fullClasses.add( classNum );
+                    continue;
                 }
-                getClasses.close();
+                addMemberClass.setInt( 1, member.getMemberID() );
+                addMemberClass.setInt( 2, classNum );
+                addMemberClass.addBatch();
+                anyEnrolled = true;
+            }
+            if ( anyEnrolled ) {
+                addMemberClass.executeBatch();
             }
-            preparedStatement.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to add member to all courses necessary" );
             System.out.println( e.getMessage() );
+            return null;
         }
+        return fullClasses;
     }
 
     /**
-     * Add a tuple in member class table
-     * @param member
-     * @param gymClass
-     * @param dbConnection
+     * Takes a seat in each of a list of classes with one batch of increments that only succeed while a class is below
+     * capacity. The increment is atomic so two terminals can never both take the last seat, but one of them has to
+     * wait for the other's lock. The increments that time out waiting are sent again after a pause, up to
+     * gym.enroll.maxAttempts times.
+     * @param classNums Classes to take a seat in
+     * @param dbConnection Connection to DB
+     * @return For every class 1 if a seat was taken and 0 if it was full
+     * @throws SQLException if a class could not be updated, or stayed locked after every attempt
+     */
+    private static int[] takeSeats( List<Integer> classNums, Connection dbConnection ) throws SQLException {
+        PreparedStatement enroll = StatementCache
+            .prepare(
+                "UPDATE " + BODE1 + PERIOD + CLASS_TABLE
+                    + " SET ENROLLMENT = ENROLLMENT + 1 WHERE CLASSNUM = ? AND ENROLLMENT < CAPACITY",
+                dbConnection );
+        int[] updateCounts = new int[classNums.size()];
+        List<Integer> pending = new ArrayList<>(); // Indexes in classNums of the classes still to update
+        for ( int i = 0 ; i < classNums.size() ; i++ ) {
+            pending.add( i );
+        }
+        for ( int attempt = 1 ; ; attempt++ ) {
+            for ( int i : pending ) {
+                enroll.setInt( 1, classNums.get( i ) );
+                enroll.addBatch();
+            }
+            int[] counts;
+            try {
+                counts = enroll.executeBatch();
+            } catch ( BatchUpdateException e ) {
+                if ( !isLockTimeout( e ) ) {
+                    throw e;
+                }
+                // Some drivers stop at the first failure and others run the rest, either way the classes without a
+                // count were not updated
+                counts = e.getUpdateCounts();
+                enroll.clearBatch();
+            }
+            List<Integer> locked = new ArrayList<>();
+            for ( int j = 0 ; j < pending.size() ; j++ ) {
+                int i = pending.get( j );
+                if ( j >= counts.length || counts[j] == Statement.EXECUTE_FAILED ) {
+                    enrollmentContention.lockTimeout( classNums.get( i ) );
+                    locked.add( i );
+                    continue;
+                }
+                updateCounts[i] = counts[j];
+                if ( counts[j] == 0 ) {
+                    enrollmentContention.classFull( classNums.get( i ) );
+                } else {
+                    enrollmentContention.seatTaken( classNums.get( i ) );
+                }
+            }
+            if ( locked.isEmpty() ) {
+                return updateCounts;
+            }
+            if ( attempt >= enrollmentContention.getMaxAttempts() ) {
+                for ( int i : locked ) {
+                    enrollmentContention.gaveUp( classNums.get( i ) );
+                }
+                throw new SQLException( "Other terminals kept " + locked.size() + " of the classes locked" );
+            }
+            pending = locked;
+            enrollmentContention.backoff( attempt );
+        }
+    }
+
+    /**
+     * Checks if a statement failed because it waited too long for a row another connection has locked: H2 reports
+     * SQL state HYT00, Oracle ORA-00054 ( NOWAIT ) or ORA-30006 ( WAIT timeout )
+     * @param e Error thrown by the statement
+     * @return True if running the statement again could succeed
+     */
+    private static boolean isLockTimeout( SQLException e ) {
+        for ( SQLException cause = e ; cause != null ; cause = cause.getNextException() ) {
+            int errorCode = cause.getErrorCode();
+            if ( "HYT00".equals( cause.getSQLState() ) || errorCode == 54 || errorCode == 30006 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates query for the classes of every course in a package that a member is not enrolled in yet
+     * @return String query with place holders for the package name and member id
      */
-    public static void addToMemberClassTable( GymMember member, Class gymClass, Connection dbConnection ) {
+    private static String generatePackageClassesQuery() {
+        StringBuilder sqlBuilder = new StringBuilder( "SELECT C.CLASSNUM\n" );
+        sqlBuilder.append( "FROM " + BODE1 + PERIOD + CLASS_TABLE + " C\n" );
+        sqlBuilder.append( "JOIN " + BODE1 + PERIOD + COURSE_PACKAGE_TABLE + " CP ON CP.COURSEID = C.COURSEID\n" );
+        sqlBuilder.append( "WHERE CP.PACKAGENAME = ?\n" );
+        sqlBuilder.append( "AND NOT EXISTS (SELECT 1 FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " MC\n" );
+        sqlBuilder.append( "    WHERE MC.MEMBERID = ? AND MC.CLASSNUM = C.CLASSNUM)\n" );
+        sqlBuilder.append( "ORDER BY C.CLASSNUM" );
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * Enrolls a member in a class: takes a seat if the class still has room and adds the member to the MEMBERCLASS
+     * table. Nothing happens if the member is already in the class.
+     * @param member Member to enroll
+     * @param gymClass Class to enroll in, its enrollment is counted up when a seat is taken
+     * @param dbConnection Connection to DB
+     * @return True if the member is in the class, false if it was full or the enrollment could not be saved
+     */
+    public static boolean addToMemberClassTable( GymMember member, Class gymClass, Connection dbConnection ) {
         try {
-            PreparedStatement testStmt = dbConnection
-                .prepareStatement(
-                    "SELECT CLASSNUM FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = ?" );
+            PreparedStatement testStmt = StatementCache
+                .prepare(
+                    "SELECT 1 FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = ? AND CLASSNUM = ?",
+                    dbConnection );
             testStmt.setInt( 1, member.getMemberID() );
-            ResultSet classNumSet = testStmt.executeQuery();
-            while ( classNumSet.next() ) {
-                if ( classNumSet.getInt( 1 ) == gymClass.getClassNum() ) {
-                    return;
-                }
+            testStmt.setInt( 2, gymClass.getClassNum() );
+            ResultSet enrolledSet = testStmt.executeQuery();
+            boolean enrolled = enrolledSet.next();
+            enrolledSet.close();
+            if ( enrolled ) {
+                return true;
+            }
+            if ( !takeSeat( gymClass, dbConnection ) ) {
+                return false;
             }
 
-            PreparedStatement stmt = dbConnection
-                .prepareStatement( "INSERT INTO " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " VALUES (?, ?)" );
+            PreparedStatement stmt = StatementCache
+                .prepare( "INSERT INTO " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " VALUES (?, ?)", dbConnection );
             stmt.setInt( 1, member.getMemberID() );
             stmt.setInt( 2, gymClass.getClassNum() );
             stmt.executeUpdate();
+            return true;
         } catch ( SQLException e ) {
             System.out.println( "Unable to update memberclass table" );
             System.out.println( e.getMessage() );
+            return false;
         }
     }
 
     /**
-    * Updates an existing class information
+     * Takes a seat in one class with an increment that only succeeds while ENROLLMENT is below CAPACITY. The check and
+     * the increment are one atomic statement, so it can not overbook or lose another terminal's seat whatever the
+     * enrollment was when the class was read. Increments that time out waiting for another terminal's lock are retried
+     * after a pause, up to gym.enroll.maxAttempts times.
+     * @param gymClass Class to take a seat in, its enrollment is counted up when a seat is taken and read from the DB
+     *  when the class is full
+     * @param dbConnection Connection to DB
+     * @return True if a seat was taken, false if the class is full, gone, or stayed locked
+     * @throws SQLException if the class could not be read or updated
+     */
+    private static boolean takeSeat( Class gymClass, Connection dbConnection ) throws SQLException {
+        int classNum = gymClass.getClassNum();
+        PreparedStatement enroll = StatementCache
+            .prepare(
+                "UPDATE " + BODE1 + PERIOD + CLASS_TABLE
+                    + " SET ENROLLMENT = ENROLLMENT + 1 WHERE CLASSNUM = ? AND ENROLLMENT < CAPACITY",
+                dbConnection );
+        enroll.setInt( 1, classNum );
+        for ( int attempt = 1 ; ; attempt++ ) {
+            long start = System.nanoTime();
+            int updated = 0;
+            try {
+                updated = enroll.executeUpdate();
+            } catch ( SQLException e ) {
+                if ( !isLockTimeout( e ) ) {
+                    throw e;
+                }
+                updated = -1;
+            } finally {
+                enrollmentContention.waited( classNum, System.nanoTime() - start );
+            }
+
+            if ( updated == 1 ) {
+                enrollmentContention.seatTaken( classNum );
+                gymClass.setCurrentEnrollment( gymClass.getCurrentEnrollment() + 1 );
+                return true;
+            }
+            if ( updated == -1 ) {
+                enrollmentContention.lockTimeout( classNum );
+                if ( attempt >= enrollmentContention.getMaxAttempts() ) {
+                    enrollmentContention.gaveUp( classNum );
+                    System.out
+                        .println( "Unable to enroll in class " + classNum + ", other terminals kept it locked" );
+                    return false;
+                }
+                enrollmentContention.backoff( attempt );
+            } else {
+                // Only a full ( or deleted ) class has no row to increment
+                readEnrollment( gymClass, dbConnection );
+                enrollmentContention.classFull( classNum );
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the current enrollment and capacity of a class into it
+     * @param gymClass Class to refresh
+     * @param dbConnection Connection to DB
+     * @return False if the class is no longer in the DB
+     * @throws SQLException if the class could not be read
+     */
+    private static boolean readEnrollment( Class gymClass, Connection dbConnection ) throws SQLException {
+        PreparedStatement stmt = StatementCache
+            .prepare(
+                "SELECT ENROLLMENT, CAPACITY FROM " + BODE1 + PERIOD + CLASS_TABLE + " WHERE CLASSNUM = ?",
+                dbConnection );
+        stmt.setInt( 1, gymClass.getClassNum() );
+        ResultSet result = stmt.executeQuery();
+        boolean found = result.next();
+        if ( found ) {
+            gymClass.setCurrentEnrollment( result.getInt( "ENROLLMENT" ) );
+            gymClass.setCapacity( result.getInt( "CAPACITY" ) );
+        }
+        result.close();
+        return found;
+    }
+
+    /**
+    * Updates an existing class information. The enrollment is not written, since another terminal may have enrolled
+    * someone since the class was read, it only changes when members are enrolled or removed. The capacity can not be
+    * made smaller than the enrollment.
     * @param gymClass Class to update
     * @param dbConnection Connection to DB
     */
     public static void saveClassInfo( Class gymClass, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection.prepareStatement( generateSaveClassQuery() );
+            PreparedStatement stmt = StatementCache.prepare( generateSaveClassQuery(), dbConnection );
             stmt.setInt( 1, gymClass.getClassNum() );
             stmt.setInt( 2, gymClass.getCourseID() );
             stmt.setInt( 3, gymClass.getTrainerID() );
@@ -564,16 +1049,34 @@ public class DBUtils {
             stmt.setFloat( 5, gymClass.getClassDuration() );
             stmt.setDate( 6, gymClass.getStartDate() );
             stmt.setDate( 7, gymClass.getEndDate() );
-            stmt.setInt( 8, gymClass.getCurrentEnrollment() );
-            stmt.setInt( 9, gymClass.getCapacity() );
-            stmt.setInt( 10, gymClass.getClassNum() );
-            stmt.executeUpdate();
-            stmt.close();
+            stmt.setInt( 8, gymClass.getCapacity() );
+            stmt.setInt( 9, gymClass.getClassNum() );
+            stmt.setInt( 10, gymClass.getCapacity() );
+            if ( stmt.executeUpdate() == 0 ) {
+                System.out
+                    .println( "Unable to save class info, the class is gone or its capacity is below its enrollment" );
+                return;
+            }
+            scheduleClass( gymClass, dbConnection );
         } catch ( SQLException e ) {
             System.out.println( "Unable to save class info" );
         }
     }
 
+    /**
+     * Puts a class that was just saved in the trainer schedule. If it was saved in a unit of work the schedule is
+     * reloaded once the unit of work ends, since it may have been rolled back.
+     * @param gymClass Class that was saved
+     * @param dbConnection Connection the class was saved on
+     */
+    private static void scheduleClass( Class gymClass, Connection dbConnection ) {
+        trainerSchedule.put( gymClass );
+        UnitOfWork unitOfWork = UnitOfWork.activeOn( dbConnection );
+        if ( unitOfWork != null ) {
+            unitOfWork.afterCompletion( trainerSchedule::invalidate );
+        }
+    }
+
     /**
      * Creates query to save an existing class
      * @return String query with place holders
@@ -587,18 +1090,34 @@ public class DBUtils {
         sqlBuilder.append( "DURATION = ?, " );
         sqlBuilder.append( "STARTDATE = ?, " );
         sqlBuilder.append( "ENDDATE = ?, " );
-        sqlBuilder.append( "ENROLLMENT = ?, " );
         sqlBuilder.append( "CAPACITY = ? " );
-        sqlBuilder.append( "WHERE CLASSNUM = ?" );
+        sqlBuilder.append( "WHERE CLASSNUM = ? AND ENROLLMENT <= ?" );
         return sqlBuilder.toString();
     }
 
     /**
      * Gets the trainer Id associated with the trainer selected by the user by first
      *  and last name.
+     * @return Id of the trainer, 0 if there is no trainer with that name
      */
     public static int getTrainerId( String fName, String lName, Connection dbConnection ) {
-        return 0;
+        int trainerID = 0;
+        try {
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT TRAINERID FROM " + BODE1 + PERIOD + TRAINER_TABLE + " WHERE FNAME = ? AND LNAME = ?",
+                    dbConnection );
+            stmt.setString( 1, fName );
+            stmt.setString( 2, lName );
+            ResultSet result = stmt.executeQuery();
+            if ( result.next() ) {
+                trainerID = result.getInt( "TRAINERID" );
+            }
+            result.close();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to find trainer " + fName + " " + lName );
+        }
+        return trainerID;
     }
 
     /**
@@ -656,10 +1175,10 @@ public class DBUtils {
     public static Map<String, String> getNegativeAccountUsers( Connection dbConnection ) {
         Map<String, String> namesAndNums = new HashMap<>();
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "SELECT FNAME, LNAME, PHONENUM FROM " + BODE1 + PERIOD + MEMBER_TABLE
-                        + " WHERE ACCOUNTBALANCE < 0" );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT FNAME, LNAME, PHONENUM FROM " + BODE1 + PERIOD + MEMBER_TABLE + " WHERE ACCOUNTBALANCE < 0",
+                    dbConnection );
             ResultSet result = stmt.executeQuery();
             int i = 1;
             while ( result.next() ) {
@@ -671,7 +1190,7 @@ public class DBUtils {
                 namesAndNums.put( number + fullName, phoneNum );
                 i++;
             }
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve negative balance accounts" );
         }
@@ -679,140 +1198,214 @@ public class DBUtils {
     }
 
     /**
-     * Get a member's schedule for a given month
+     * Get a member's schedule for a given month. Classes are found with one query that joins MEMBERCLASS with CLASS
+     * and only keeps the classes that run at some point during the month.
      * @param member Member to check schedule for
-     * @param month Month for schedule check
+     * @param month Month for schedule check ( 1 for January )
      * @param dbConnection Connection to DB
-     * @return Member's class times for that month
+     * @return Member's classes that meet in that month ordered by start time
      */
     public static
-        Map<Timestamp, Float>
+        List<ScheduleEntry>
         getMemberScheduleForMonth( GymMember member, int month, Connection dbConnection ) {
-        Map<Timestamp, Float> startTimeAndDuration = new HashMap<>();
-        Calendar maxCalendar = Calendar.getInstance();
-        maxCalendar.clear();
-        maxCalendar.set( Calendar.MONTH, month - 1 );
-        maxCalendar.set( Calendar.YEAR, Year.now().getValue() );
-        maxCalendar.set( Calendar.DAY_OF_MONTH, maxCalendar.getActualMaximum( Calendar.DAY_OF_MONTH ) );
-
-        Calendar minCalendar = Calendar.getInstance();
-        minCalendar.clear();
-        minCalendar.set( Calendar.MONTH, month - 1 );
-        minCalendar.set( Calendar.YEAR, Year.now().getValue() );
-        minCalendar.set( Calendar.DAY_OF_MONTH, 1 );
-
-        Date maxDate = new Date( maxCalendar.getTime().getTime() );
-        Date minDate = new Date( minCalendar.getTime().getTime() );
+        List<ScheduleEntry> schedule = new ArrayList<>();
+        LocalDate firstDay = Year.now().atMonth( month ).atDay( 1 );
+        LocalDate lastDay = firstDay.with( TemporalAdjusters.lastDayOfMonth() );
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "SELECT CLASSNUM FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " WHERE MEMBERID = ?" );
-            PreparedStatement getClassInfo = dbConnection
-                .prepareStatement( "SELECT * FROM " + BODE1 + PERIOD + CLASS_TABLE + " WHERE CLASSNUM = ?" );
+            PreparedStatement stmt = StatementCache.prepare( generateMemberScheduleQuery(), dbConnection );
             stmt.setInt( 1, member.getMemberID() );
-            ResultSet classNums = stmt.executeQuery();
-            while ( classNums.next() ) {
-                int classNum = classNums.getInt( "CLASSNUM" );
-                getClassInfo.setInt( 1, classNum );
-                ResultSet classInfo = getClassInfo.executeQuery();
-                while ( classInfo.next() ) {
-                    Date startDate = classInfo.getDate( "STARTDATE" );
-                    Date endDate = classInfo.getDate( "ENDDATE" );
-                    if ( ( startDate.after( minDate ) && startDate.before( maxDate ) )
-                        || ( endDate.after( minDate ) && endDate.before( maxDate ) ) ) {
-                        startTimeAndDuration
-                            .put( classInfo.getTimestamp( "STARTTIME" ), classInfo.getFloat( "DURATION" ) );
-                    }
-                }
+            stmt.setDate( 2, Date.valueOf( lastDay ) );
+            stmt.setDate( 3, Date.valueOf( firstDay ) );
+            ResultSet result = stmt.executeQuery();
+            while ( result.next() ) {
+                int classNum = result.getInt( "CLASSNUM" );
+                Timestamp startTime = result.getTimestamp( "STARTTIME" );
+                float duration = result.getFloat( "DURATION" );
+                schedule.add( new ScheduleEntry( classNum, startTime, duration ) );
             }
-            getClassInfo.close();
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve schedule" );
             System.out.println( e.getMessage() );
         }
 
-        return startTimeAndDuration;
+        return schedule;
     }
 
     /**
-     * Get the amount of hours a trainer works in a given month
-     * @param month month to look for
+     * Creates query for the classes a member is in that overlap a date range ( the class starts before the range ends
+     * and ends after the range starts )
+     * @return String query with place holders for member id, last day and first day of the range
+     */
+    private static String generateMemberScheduleQuery() {
+        StringBuilder sqlBuilder = new StringBuilder( "SELECT C.CLASSNUM, C.STARTTIME, C.DURATION\n" );
+        sqlBuilder.append( "FROM " + BODE1 + PERIOD + MEMBER_CLASS_TABLE + " MC\n" );
+        sqlBuilder.append( "JOIN " + BODE1 + PERIOD + CLASS_TABLE + " C ON C.CLASSNUM = MC.CLASSNUM\n" );
+        sqlBuilder.append( "WHERE MC.MEMBERID = ?\n" );
+        sqlBuilder.append( "AND C.STARTDATE <= ?\n" );
+        sqlBuilder.append( "AND C.ENDDATE >= ?\n" );
+        sqlBuilder.append( "ORDER BY C.STARTTIME, C.CLASSNUM" );
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * Get the amount of minutes each trainer teaches in a given month of this year. Worked out by the DB with one
+     * grouped query, trainers with no classes that month are listed with 0.
+     * @param month month to look for ( 1 for January )
      * @param dbcConnection Connection to db
-     * @return Trainers and their working hours
+     * @return Trainers and their working minutes ordered by trainer name
      */
     public static Map<String, Float> getAllTrainersWorkinghours( int month, Connection dbcConnection ) {
-        Map<String, Float> trainerHours = new HashMap<>();
-        Calendar maxCalendar = Calendar.getInstance();
-        maxCalendar.clear();
-        maxCalendar.set( Calendar.MONTH, month );
-        maxCalendar.set( Calendar.YEAR, Year.now().getValue() );
-        maxCalendar.set( Calendar.DAY_OF_MONTH, maxCalendar.getActualMaximum( Calendar.DAY_OF_MONTH ) );
-        Calendar minCalendar = Calendar.getInstance();
-        minCalendar.clear();
-        minCalendar.set( Calendar.MONTH, month );
-        minCalendar.set( Calendar.YEAR, Year.now().getValue() );
-        minCalendar.set( Calendar.DAY_OF_MONTH, minCalendar.getActualMinimum( Calendar.DAY_OF_MONTH ) );
-        Date maxDate = new Date( maxCalendar.getTime().getTime() );
-        Date minDate = new Date( minCalendar.getTime().getTime() );
+        Map<String, Float> trainerHours = new LinkedHashMap<>();
+        LocalDate firstDay = Year.now().atMonth( month ).atDay( 1 );
+        LocalDate lastDay = firstDay.with( TemporalAdjusters.lastDayOfMonth() );
         try {
-            List<Trainer> allTrainers = listAllTrainers( dbcConnection );
-            PreparedStatement stmt = dbcConnection
-                .prepareStatement(
-                    "SELECT DURATION, ENDDATE FROM " + BODE1 + PERIOD + CLASS_TABLE + " WHERE TRAINERID = ?" );
-            for ( Trainer trainer : allTrainers ) {
-                float hours = 0;
-                stmt.setInt( 1, trainer.getTrainerID() );
-                ResultSet classDurationInfo = stmt.executeQuery();
-                while ( classDurationInfo.next() ) {
-                    Date endDate = classDurationInfo.getDate( "ENDDATE" );
-                    if ( endDate.before( maxDate ) && endDate.after( minDate ) ) {
-                        hours += classDurationInfo.getFloat( "DURATION" );
-                    }
+            PreparedStatement stmt = StatementCache.prepare( generateTrainerHoursQuery( false ), dbcConnection );
+            stmt.setDate( 1, Date.valueOf( firstDay ) );
+            stmt.setDate( 2, Date.valueOf( lastDay ) );
+            ResultSet result = stmt.executeQuery();
+            while ( result.next() ) {
+                String fullName = result.getString( "FNAME" ) + " " + result.getString( "LNAME" );
+                trainerHours.put( fullName, result.getFloat( "MINUTES" ) );
+            }
+            result.close();
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to retrieve all trainers working hours" );
+        }
+        return trainerHours;
+    }
+
+    /**
+     * Get the amount of minutes each trainer teaches in every month of this year in a single query
+     * @param dbConnection Connection to db
+     * @return Trainers ordered by name and an array of 12 minute totals ( index 0 is January )
+     */
+    public static Map<String, float[]> getAllTrainersWorkinghoursByMonth( Connection dbConnection ) {
+        Map<String, float[]> trainerHours = new LinkedHashMap<>();
+        LocalDate firstDay = Year.now().atDay( 1 );
+        LocalDate lastDay = firstDay.with( TemporalAdjusters.lastDayOfYear() );
+        try {
+            PreparedStatement stmt = StatementCache.prepare( generateTrainerHoursQuery( true ), dbConnection );
+            stmt.setDate( 1, Date.valueOf( firstDay ) );
+            stmt.setDate( 2, Date.valueOf( lastDay ) );
+            ResultSet result = stmt.executeQuery();
+            while ( result.next() ) {
+                String fullName = result.getString( "FNAME" ) + " " + result.getString( "LNAME" );
+                float[] months = trainerHours.get( fullName );
+                if ( months == null ) {
+                    months = new float[12];
+                    trainerHours.put( fullName, months );
+                }
+                int monthNum = result.getInt( "MONTHNUM" );
+                if ( !result.wasNull() ) {
+                    months[monthNum - 1] += result.getFloat( "MINUTES" );
                 }
-                trainerHours.put( trainer.getFullName(), hours );
             }
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve all trainers working hours" );
         }
         return trainerHours;
     }
 
+    /**
+     * Creates the query that totals the class minutes of every trainer for classes ending inside a date range. The
+     * date range is in the join so trainers without classes in the range still get a row.
+     * @param byMonth True to group the totals by the month the class ends in
+     * @return String query with place holders for the first and last day of the range
+     */
+    private static String generateTrainerHoursQuery( boolean byMonth ) {
+        StringBuilder sqlBuilder = new StringBuilder( "SELECT T.TRAINERID, T.FNAME, T.LNAME, " );
+        if ( byMonth ) {
+            sqlBuilder.append( "EXTRACT(MONTH FROM C.ENDDATE) AS MONTHNUM, " );
+        }
+        sqlBuilder.append( "COALESCE(SUM(C.DURATION), 0) AS MINUTES\n" );
+        sqlBuilder.append( "FROM " + BODE1 + PERIOD + TRAINER_TABLE + " T\n" );
+        sqlBuilder.append( "LEFT JOIN " + BODE1 + PERIOD + CLASS_TABLE + " C ON C.TRAINERID = T.TRAINERID\n" );
+        sqlBuilder.append( "AND C.ENDDATE >= ? AND C.ENDDATE <= ?\n" );
+        sqlBuilder.append( "GROUP BY T.TRAINERID, T.FNAME, T.LNAME" );
+        if ( byMonth ) {
+            sqlBuilder.append( ", EXTRACT(MONTH FROM C.ENDDATE)" );
+        }
+        sqlBuilder.append( "\nORDER BY T.FNAME, T.LNAME, T.TRAINERID" );
+        return sqlBuilder.toString();
+    }
+
     /**
      * This method determines whether the trainer given has a scheduling conflict with the class
-     *  they are proposed to teach.
+     *  they are proposed to teach. Classes meet every week from their start date to their end date, so the proposed
+     *  class conflicts if any of its meetings overlaps a meeting of one of the trainer's classes. The check is made
+     *  against the in memory trainer schedule, which is only read from the DB when it is first used or too old.
      * @param trainerId trainer in question, checking for scheduling conflict
      * @param startTime time and date when proposed class starts
      * @param duration length, in minutes, of the proposed class
+     * @param endDate last day of the proposed class
      * @param dbConnection connection to the Oracle database
      * @return boolean, whether there is a scheduling overlap with the trainer and the proposed
      *  new class
      */
-    public static
-        boolean
-        trainerScheduleConflict( int trainerId, Timestamp startTime, int duration, Connection dbConnection ) {
-        //Timestamp proposedStart =
+    public static boolean trainerScheduleConflict(
+        int trainerId,
+        Timestamp startTime,
+        int duration,
+        Date endDate,
+        Connection dbConnection ) {
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet classes = stmt
-                .executeQuery(
-                    "SELECT STARTTIME, DURATION FROM " + BODE1 + PERIOD + CLASS_TABLE + " WHERE TRAINERID="
-                        + trainerId );
-            while ( classes.next() ) {
-                Timestamp classTime = classes.getTimestamp( "STARTTIME" );
-                int classDur = classes.getInt( "DURATION" );
-                int millis = classDur * 60000;
-                if ( false ) {
-                    return true;
-                }
+            if ( trainerSchedule.isOlderThan( TRAINER_SCHEDULE_MAX_AGE_MILLIS ) ) {
+                loadTrainerSchedule( dbConnection );
             }
-            stmt.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to find trainer's current schedule" );
             return true;
         }
-        return false;
+        return trainerSchedule.findConflict( trainerId, startTime, duration, endDate ) >= 0;
+    }
+
+    /**
+     * Reads every class into the trainer schedule with one query
+     * @param dbConnection Connection to DB
+     * @throws SQLException if the classes could not be read
+     */
+    private static void loadTrainerSchedule( Connection dbConnection ) throws SQLException {
+        List<Class> classes = new ArrayList<>();
+        PreparedStatement stmt = StatementCache
+            .prepare(
+                "SELECT CLASSNUM, COURSEID, TRAINERID, STARTTIME, DURATION, STARTDATE, ENDDATE, ENROLLMENT, CAPACITY"
+                    + " FROM " + BODE1 + PERIOD + CLASS_TABLE,
+                dbConnection );
+        ResultSet result = stmt.executeQuery();
+        while ( result.next() ) {
+            classes
+                .add(
+                    new Class(
+                        result.getInt( "CLASSNUM" ),
+                        result.getInt( "COURSEID" ),
+                        result.getInt( "TRAINERID" ),
+                        result.getTimestamp( "STARTTIME" ),
+                        result.getFloat( "DURATION" ),
+                        result.getDate( "STARTDATE" ),
+                        result.getDate( "ENDDATE" ),
+                        result.getInt( "ENROLLMENT" ),
+                        result.getInt( "CAPACITY" ) ) );
+        }
+        result.close();
+        trainerSchedule.reload( classes );
+    }
+
+    /**
+     * Summary of the trainer schedule counters
+     * @return String that can be printed to the console
+     */
+    public static String getTrainerScheduleStatistics() {
+        return trainerSchedule.getStatistics();
+    }
+
+    /**
+     * Summary of the seats taken in classes and how often terminals had to retry
+     * @return String that can be printed to the console
+     */
+    public static String getEnrollmentStatistics() {
+        return enrollmentContention.getStatistics();
     }
 
     /**
@@ -824,8 +1417,11 @@ public class DBUtils {
         List<Trainer> trainers = new ArrayList<>();
 
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet trainerInfo = stmt.executeQuery( "SELECT * FROM " + BODE1 + PERIOD + TRAINER_TABLE );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT * FROM " + BODE1 + PERIOD + TRAINER_TABLE,
+                    dbConnection );
+            ResultSet trainerInfo = stmt.executeQuery();
             while ( trainerInfo.next() ) {
                 int trainerID = trainerInfo.getInt( "TRAINERID" );
                 String firstName = trainerInfo.getString( "FNAME" );
@@ -834,7 +1430,7 @@ public class DBUtils {
                 Trainer trainer = new Trainer( trainerID, firstName, lastName, phoneNum );
                 trainers.add( trainer );
             }
-            stmt.close();
+            trainerInfo.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to create trainer list" );
         }
@@ -851,12 +1447,13 @@ public class DBUtils {
         Map<String, Integer> itemAndQunatity = new HashMap<>();
 
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet rentalInfo = stmt.executeQuery( "SELECT * FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE );
+            PreparedStatement stmt = StatementCache
+                .prepare( "SELECT * FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE, dbConnection );
+            ResultSet rentalInfo = stmt.executeQuery();
             while ( rentalInfo.next() ) {
                 itemAndQunatity.put( rentalInfo.getString( "ITEMNAME" ), rentalInfo.getInt( "QTYINSTOCK" ) );
             }
-            stmt.close();
+            rentalInfo.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to retrieve all rental items and their qunatites" );
         }
@@ -872,8 +1469,8 @@ public class DBUtils {
     public static List<RentalItem> getRentalItems( Connection dbConnection ) {
         List<RentalItem> items = new ArrayList<>();
         try {
-            ResultSet itemInfo = dbConnection
-                .prepareStatement( "SELECT * FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE )
+            ResultSet itemInfo = StatementCache
+                .prepare( "SELECT * FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE, dbConnection )
                 .executeQuery();
             while ( itemInfo.next() ) {
                 int itemNum = itemInfo.getInt( "ITEMNUM" );
@@ -883,6 +1480,7 @@ public class DBUtils {
                 items.add( item );
             }
             itemInfo.close();
+            rentalCatalog.refresh( items ); // Whole table was just read so the catalog gets it for free
         } catch ( SQLException e ) {
             System.out.println( "Unable to get all items" );
         }
@@ -896,8 +1494,10 @@ public class DBUtils {
      */
     public static void saveNewRentalLogEntry( RentalLogEntry entry, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement( "INSERT INTO " + BODE1 + PERIOD + RENTAL_LOG_TABLE + " VALUES (?, ?, ?, ?, ?, ?)" );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "INSERT INTO " + BODE1 + PERIOD + RENTAL_LOG_TABLE + " VALUES (?, ?, ?, ?, ?, ?)",
+                    dbConnection );
             stmt.setInt( 1, entry.getRentalID() );
             stmt.setInt( 2, entry.getMemberID() );
             stmt.setInt( 3, entry.getItemNum() );
@@ -905,111 +1505,222 @@ public class DBUtils {
             stmt.setInt( 5, entry.getQuantityBorrowed() );
             stmt.setBoolean( 6, entry.isReturned() );
             stmt.executeUpdate();
-            stmt.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to save new rental log entry" );
         }
     }
 
     /**
-     * Updates a rental item in the db
-     * @param item Item to update
+     * Saves the rental log entries of one checkout with a single batch of inserts
+     * @param entries Entries to save
      * @param dbConnection Connection to DB
+     * @return True if every entry was saved
      */
-    public static void saveChangesToRentalItem( RentalItem item, Connection dbConnection ) {
+    public static boolean saveNewRentalLogEntries( List<RentalLogEntry> entries, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection.prepareStatement( generateSaveRentalItemQuery() );
-            stmt.setInt( 1, item.getQuantityInStock() );
-            stmt.setInt( 2, item.getItemNum() );
-            stmt.executeUpdate();
-            stmt.close();
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "INSERT INTO " + BODE1 + PERIOD + RENTAL_LOG_TABLE + " VALUES (?, ?, ?, ?, ?, ?)",
+                    dbConnection );
+            stmt.clearBatch();
+            for ( RentalLogEntry entry : entries ) {
+                stmt.setInt( 1, entry.getRentalID() );
+                stmt.setInt( 2, entry.getMemberID() );
+                stmt.setInt( 3, entry.getItemNum() );
+                stmt.setDate( 4, entry.getOutTime() );
+                stmt.setInt( 5, entry.getQuantityBorrowed() );
+                stmt.setBoolean( 6, entry.isReturned() );
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            return true;
         } catch ( SQLException e ) {
-            System.out.println( "Unable to update item: " + item.getItemName() );
+            System.out.println( "Unable to save new rental log entries" );
+            System.out.println( e.getMessage() );
+            return false;
         }
     }
 
     /**
-     * Generates a query to save a new rental item
-     * @return String with a query to save a rental item
+     * Takes quantities of rental items out of stock with one batch of updates. Each update subtracts from the
+     * quantity in the DB ( never writes a quantity read earlier ) and only while there is enough in stock, so two
+     * terminals can not both take the last one and the stock never goes below zero. Items are updated in order of
+     * their number so two checkouts of the same items lock them in the same order. Meant to run in a unit of work that
+     * is rolled back if any item was short.
+     * @param quantities Item numbers mapped to the quantity to take out
+     * @param dbConnection Connection to DB
+     * @return Item numbers that did not have enough in stock and were left as they were, null if the stock could not
+     *  be updated
      */
-    private static String generateSaveRentalItemQuery() {
-        StringBuilder sqlBuilder = new StringBuilder( "UPDATE " + BODE1 + PERIOD + RENTAL_ITEM_TABLE + " SET \n" );
-        sqlBuilder.append( "QTYINSTOCK = ?\n" );
-        sqlBuilder.append( "WHERE ITEMNUM = ?" );
-        return sqlBuilder.toString();
+    public static List<Integer> takeRentalItemsFromStock( Map<Integer, Integer> quantities, Connection dbConnection ) {
+        try {
+            return changeStock( quantities, -1, dbConnection );
+        } catch ( SQLException e ) {
+            System.out.println( "Unable to take items out of stock" );
+            System.out.println( e.getMessage() );
+            return null;
+        }
     }
 
     /**
-     * Updates the RentalItem table to up quantity after something has been returned
-     * @param itemName rental item that is being returned
-     * @param dbConnection Connection to db
+     * Puts quantities of rental items back in stock with one batch of updates that add to the quantity in the DB
+     * @param quantities Item numbers mapped to the quantity to put back
+     * @param dbConnection Connection to DB
+     * @return True if every item was updated
      */
-    public static void returnItem( String itemName, Connection dbConnection ) {
+    public static boolean putRentalItemsBackInStock( Map<Integer, Integer> quantities, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "UPDATE " + BODE1 + PERIOD + RENTAL_ITEM_TABLE
-                        + " SET QTYINSTOCK = QTYINSTOCK + 1 WHERE ITEMNAME = ?" );
-            stmt.setString( 1, itemName );
-            stmt.executeUpdate();
-            stmt.close();
+            List<Integer> missing = changeStock( quantities, 1, dbConnection );
+            if ( !missing.isEmpty() ) {
+                System.out.println( "Unable to find rental items " + missing );
+            }
+            return missing.isEmpty();
         } catch ( SQLException e ) {
-            System.out.println( "Unable to return item" );
+            System.out.println( "Unable to put items back in stock" );
             System.out.println( e.getMessage() );
+            return false;
         }
     }
 
     /**
-     * Updates the oldest rental log for the item the member is returning
+     * Runs one batch of stock updates in order of item number. Every update adds a delta to QTYINSTOCK only if the
+     * result is not below zero.
+     * @param quantities Item numbers mapped to quantities
+     * @param sign 1 to add the quantities to the stock, -1 to take them out
+     * @param dbConnection Connection to DB
+     * @return Item numbers whose update changed no row ( not enough in stock, or no such item )
+     * @throws SQLException if the batch failed
+     */
+    private static List<Integer> changeStock( Map<Integer, Integer> quantities, int sign, Connection dbConnection )
+        throws SQLException {
+        List<Integer> unchanged = new ArrayList<>();
+        if ( quantities.isEmpty() ) {
+            return unchanged;
+        }
+        List<Integer> itemNums = new ArrayList<>( quantities.keySet() );
+        Collections.sort( itemNums );
+        PreparedStatement stmt = StatementCache
+            .prepare(
+                "UPDATE " + BODE1 + PERIOD + RENTAL_ITEM_TABLE
+                    + " SET QTYINSTOCK = QTYINSTOCK + ? WHERE ITEMNUM = ? AND QTYINSTOCK + ? >= 0",
+                dbConnection );
+        stmt.clearBatch();
+        for ( int itemNum : itemNums ) {
+            int delta = sign * quantities.get( itemNum );
+            stmt.setInt( 1, delta );
+            stmt.setInt( 2, itemNum );
+            stmt.setInt( 3, delta );
+            stmt.addBatch();
+        }
+        int[] updateCounts = stmt.executeBatch();
+        for ( int i = 0 ; i < itemNums.size() ; i++ ) {
+            if ( updateCounts[i] == 0 ) {
+                unchanged.add( itemNums.get( i ) );
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * Marks the oldest rental of an item by a member that is not returned yet as returned. The update only succeeds
+     * while the rental is still open, so if another terminal returned it first the next oldest one is tried and a
+     * rental is never returned ( and put back in stock ) twice.
      * @param member Member who is returning item
      * @param itemName Name of item being returned
      * @param dbConnection Connection to DB
+     * @return The rental that was marked returned, null if the member has none open for the item or it could not be
+     *  saved
      */
-    public static void updateRentalLog( GymMember member, String itemName, Connection dbConnection ) {
+    public static RentalLogEntry updateRentalLog( GymMember member, String itemName, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
+            PreparedStatement stmt = StatementCache
+                .prepare(
                     "SELECT * FROM " + BODE1 + PERIOD + RENTAL_LOG_TABLE
-                        + " WHERE MEMBERID = ? AND RETURNED = 0  AND ITEMNUM = ? ORDER BY OUTTIME ASC" );
+                        + " WHERE MEMBERID = ? AND RETURNED = 0  AND ITEMNUM = ? ORDER BY OUTTIME ASC",
+                    dbConnection );
             stmt.setInt( 1, member.getMemberID() );
             stmt.setInt( 2, getItemIDFromName( itemName, dbConnection ) );
             ResultSet result = stmt.executeQuery();
-            result.next();
-            int rentalID = result.getInt( "RENTALID" ); // Rental ID to update...oldest first
-            Statement saveReturn = dbConnection.createStatement();
-            saveReturn
-                .executeUpdate(
-                    "UPDATE " + BODE1 + PERIOD + RENTAL_LOG_TABLE + " SET RETURNED = 1 WHERE RENTALID = " + rentalID );
-            stmt.close();
-            saveReturn.close();
+            List<RentalLogEntry> openRentals = new ArrayList<>();
+            while ( result.next() ) {
+                openRentals
+                    .add(
+                        new RentalLogEntry(
+                            result.getInt( "RENTALID" ),
+                            result.getInt( "MEMBERID" ),
+                            result.getInt( "ITEMNUM" ),
+                            result.getDate( "OUTTIME" ),
+                            true,
+                            result.getInt( "QUANTITY" ) ) );
+            }
+            result.close();
+            PreparedStatement saveReturn = StatementCache
+                .prepare(
+                    "UPDATE " + BODE1 + PERIOD + RENTAL_LOG_TABLE
+                        + " SET RETURNED = 1 WHERE RENTALID = ? AND RETURNED = 0",
+                    dbConnection );
+            for ( RentalLogEntry rental : openRentals ) { // Oldest first
+                saveReturn.setInt( 1, rental.getRentalID() );
+                if ( saveReturn.executeUpdate() == 1 ) {
+                    return rental;
+                }
+            }
         } catch ( SQLException e ) {
             System.out.println( "Issue with updating rental log" );
         }
+        return null;
     }
 
     /**
-     * Get Item ID from the DB based on the name
-     * @param item Item name to search DB for
+     * Get Item ID based on the name, looked up in the rental catalog
+     * @param item Item name to search for
      * @param dbConnection Connection to DB
      * @return Item ID of the item
      */
     private static int getItemIDFromName( String item, Connection dbConnection ) {
         int id = -1;
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "SELECT ITEMNUM FROM " + BODE1 + PERIOD + RENTAL_ITEM_TABLE + " WHERE ITEMNAME = ?" );
-            stmt.setString( 1, item );
-            ResultSet result = stmt.executeQuery();
-            result.next();
-            id = result.getInt( "ITEMNUM" );
-            stmt.close();
+            id = rentalCatalog.getItemNum( item, dbConnection );
+            if ( id == -1 ) {
+                System.out.println( "Unable to determine itemnum" );
+            }
         } catch ( SQLException e ) {
             System.out.println( "Unable to determine itemnum" );
         }
         return id;
     }
 
+    /**
+     * Summary of the rental catalog counters
+     * @return String that can be printed to the console
+     */
+    public static String getRentalCatalogStatistics() {
+        return rentalCatalog.getStatistics();
+    }
+
+    /**
+     * Drops a member from the member cache after their row was written. When the write is part of a unit of work the
+     * member is dropped again once it finishes, since other connections can still read ( and cache ) the old row
+     * until the commit.
+     * @param memberID ID of the member that was written
+     * @param dbConnection Connection the write was made on
+     */
+    private static void invalidateCachedMember( int memberID, Connection dbConnection ) {
+        memberCache.invalidate( memberID );
+        UnitOfWork unitOfWork = UnitOfWork.activeOn( dbConnection );
+        if ( unitOfWork != null ) {
+            unitOfWork.afterCompletion( () -> memberCache.invalidate( memberID ) );
+        }
+    }
+
+    /**
+     * Summary of the member cache counters
+     * @return String that can be printed to the console
+     */
+    public static String getMemberCacheStatistics() {
+        return memberCache.getStatistics();
+    }
+
     /**
      * Saves a new course to the DB
      * @param course Course to save
@@ -1017,13 +1728,12 @@ public class DBUtils {
      */
     public static void saveNewCourse( Course course, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement( "INSERT INTO " + BODE1 + PERIOD + COURSE_TABLE + " VALUES ( ?, ?, ? )" );
+            PreparedStatement stmt = StatementCache
+                .prepare( "INSERT INTO " + BODE1 + PERIOD + COURSE_TABLE + " VALUES ( ?, ?, ? )", dbConnection );
             stmt.setInt( 1, course.getCourseID() );
             stmt.setString( 2, course.getCategory() );
             stmt.setInt( 3, course.getCatalogNum() );
             stmt.executeUpdate();
-            stmt.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to save the new course" );
         }
@@ -1037,8 +1747,11 @@ public class DBUtils {
     public static List<Course> getAllCourses( Connection dbConnection ) {
         List<Course> courses = new ArrayList<>();
         try {
-            Statement stmt = dbConnection.createStatement();
-            ResultSet result = stmt.executeQuery( "SELECT * FROM " + BODE1 + PERIOD + COURSE_TABLE );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT * FROM " + BODE1 + PERIOD + COURSE_TABLE,
+                    dbConnection );
+            ResultSet result = stmt.executeQuery();
             while ( result.next() ) {
                 int id = result.getInt( "COURSEID" );
                 String category = result.getString( "CATEGORY" );
@@ -1046,7 +1759,7 @@ public class DBUtils {
                 Course course = new Course( id, category, catNum );
                 courses.add( course );
             }
-            stmt.close();
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unabale to " );
         }
@@ -1057,22 +1770,25 @@ public class DBUtils {
      * Gets the amount that user has spent throughout their purchase transactions
      * @param member Me
         * @param dbConnection Connection to DB
-     * @return amount member has spent up to now
+     * @return amount member has spent up to now or -1 if it could not be determined
      */
     private static float getAmountSpentByMember( GymMember member, Connection dbConnection ) {
         float amount = 0;
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
+            PreparedStatement stmt = StatementCache
+                .prepare(
                     "SELECT SUM(AMOUNT) FROM " + BODE1 + PERIOD + TRANSACTION_TABLE
-                        + " WHERE MEMBERID = ? AND XACTTYPE = 'PURCHASE'" );
+                        + " WHERE MEMBERID = ? AND XACTTYPE = 'PURCHASE'",
+                    dbConnection );
             stmt.setInt( 1, member.getMemberID() );
             ResultSet result = stmt.executeQuery();
             result.next();
             amount = result.getFloat( "SUM(AMOUNT)" );
+            result.close();
             amount = Math.abs( amount );
         } catch ( SQLException e ) {
             System.out.println( "Unable to get money member spent" );
+            amount = -1;
         }
         return amount;
     }
@@ -1089,15 +1805,16 @@ public class DBUtils {
         String category = categoryNum[0];
         int catNum = Integer.parseInt( categoryNum[1] );
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement(
-                    "SELECT COURSEID FROM " + BODE1 + PERIOD + COURSE_TABLE
-                        + " WHERE CATEGORY = ? AND CATALOGNUM = ?" );
+            PreparedStatement stmt = StatementCache
+                .prepare(
+                    "SELECT COURSEID FROM " + BODE1 + PERIOD + COURSE_TABLE + " WHERE CATEGORY = ? AND CATALOGNUM = ?",
+                    dbConnection );
             stmt.setString( 1, category );
             stmt.setInt( 2, catNum );
             ResultSet result = stmt.executeQuery();
             result.next();
             id = result.getInt( "COURSEID" );
+            result.close();
         } catch ( SQLException e ) {
             System.out.println( "Unable to find ID from package name" );
         }
@@ -1112,8 +1829,8 @@ public class DBUtils {
      */
     public static void saveNewCoursePackage( CoursePackage coursePackage, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement( "INSERT INTO " + BODE1 + PERIOD + COURSE_PACKAGE_TABLE + " VALUES ( ?, ? )" );
+            PreparedStatement stmt = StatementCache
+                .prepare( "INSERT INTO " + BODE1 + PERIOD + COURSE_PACKAGE_TABLE + " VALUES ( ?, ? )", dbConnection );
             stmt.setInt( 1, coursePackage.getCourseID() );
             stmt.setString( 2, coursePackage.getPackageName() );
             stmt.executeUpdate();
@@ -1130,8 +1847,8 @@ public class DBUtils {
      */
     public static boolean saveNewPackage( entities.Package packageToAdd, Connection dbConnection ) {
         try {
-            PreparedStatement stmt = dbConnection
-                .prepareStatement( "INSERT INTO " + BODE1 + PERIOD + PACKAGE_TABLE + " VALUES ( ?, ? )" );
+            PreparedStatement stmt = StatementCache
+                .prepare( "INSERT INTO " + BODE1 + PERIOD + PACKAGE_TABLE + " VALUES ( ?, ? )", dbConnection );
             stmt.setString( 1, packageToAdd.getPackageName() );
             stmt.setFloat( 2, packageToAdd.getCost() );
             stmt.executeUpdate();
@@ -0,0 +1,178 @@
+/**
+ * @version 1.0
+ * Class: EnrollmentContention.java
+ * Purpose: Retry policy and per class counters for taking seats in classes when several terminals enroll members at
+ *  once. A seat is taken with an update that only succeeds while the class has room, which is atomic so it never needs
+ *  to know the enrollment another terminal left the class at. A terminal that waits too long for another terminal's
+ *  lock retries after a short pause that doubles every time, up to a fixed number of attempts. The counters show which
+ *  classes terminals fight over so their capacity or schedule can be looked at.
+ *
+ * Utilizes:
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *
+ * Constructor: EnrollmentContention( int, long, long ):
+ *  - Attempts made before giving up, first pause and longest pause in milliseconds
+ *
+ * Methods:
+ *  getMaxAttempts():
+ *      - Attempts made to take a seat before giving up
+ *  backoff( int ):
+ *      - Pauses the thread before the next attempt
+ *  seatTaken( int ), classFull( int ), lockTimeout( int ), gaveUp( int ):
+ *      - Count what happened to one attempt to take a seat in a class
+ *  waited( int, long ):
+ *      - Adds the time one attempt spent in the DB
+ *  getStatistics():
+ *      - Printable summary of the counters and the most contended classes
+ */
+
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EnrollmentContention {
+
+    private static final int CLASSES_LISTED = 5; // Most contended classes printed by getStatistics()
+
+    private final int maxAttempts;
+
+    private final long backoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final Map<Integer, ClassCounters> countersByClass = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the policy with every counter at 0
+     * @param maxAttempts Attempts made to take a seat before giving up, at least 1
+     * @param backoffMillis Pause before the second attempt
+     * @param maxBackoffMillis Longest pause between two attempts
+     */
+    public EnrollmentContention( int maxAttempts, long backoffMillis, long maxBackoffMillis ) {
+        this.maxAttempts = Math.max( 1, maxAttempts );
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Pauses before another attempt. The pause doubles with every failed attempt and is picked at random up to that
+     * so terminals that collided do not all try again at the same moment.
+     * @param failedAttempts Attempts that failed so far
+     */
+    public void backoff( int failedAttempts ) {
+        long limit = Math.min( maxBackoffMillis, backoffMillis << Math.min( failedAttempts - 1, 20 ) );
+        if ( limit <= 0 ) {
+            return;
+        }
+        try {
+            Thread.sleep( ThreadLocalRandom.current().nextLong( limit / 2, limit + 1 ) );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void seatTaken( int classNum ) {
+        counters( classNum ).seats.incrementAndGet();
+    }
+
+    public void classFull( int classNum ) {
+        counters( classNum ).full.incrementAndGet();
+    }
+
+    /**
+     * Counts an attempt that gave up waiting for another terminal's lock on the class
+     */
+    public void lockTimeout( int classNum ) {
+        counters( classNum ).lockTimeouts.incrementAndGet();
+    }
+
+    /**
+     * Counts an enrollment that failed after every attempt
+     */
+    public void gaveUp( int classNum ) {
+        counters( classNum ).gaveUp.incrementAndGet();
+    }
+
+    /**
+     * Adds the time one attempt took, most of which is spent waiting for other terminals' locks when there is
+     * contention
+     * @param classNum Class the attempt was for
+     * @param nanos Time taken
+     */
+    public void waited( int classNum, long nanos ) {
+        ClassCounters counters = counters( classNum );
+        counters.waitNanos.addAndGet( nanos );
+        counters.maxWaitNanos.accumulateAndGet( nanos, Math::max );
+    }
+
+    /**
+     * Summary of the counters, with the classes that had the most failed attempts
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        long seats = 0, full = 0, lockTimeouts = 0, gaveUp = 0;
+        List<Map.Entry<Integer, ClassCounters>> contended = new ArrayList<>();
+        for ( Map.Entry<Integer, ClassCounters> entry : countersByClass.entrySet() ) {
+            ClassCounters counters = entry.getValue();
+            seats += counters.seats.get();
+            full += counters.full.get();
+            lockTimeouts += counters.lockTimeouts.get();
+            gaveUp += counters.gaveUp.get();
+            if ( counters.failedAttempts() > 0 ) {
+                contended.add( entry );
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Seats taken: " + seats + "\n" );
+        sb.append( "Classes full: " + full + "\n" );
+        sb.append( "Lock timeouts: " + lockTimeouts + "\n" );
+        sb.append( "Enrollments given up: " + gaveUp );
+        contended.sort( ( a, b ) -> Long.compare( b.getValue().failedAttempts(), a.getValue().failedAttempts() ) );
+        for ( int i = 0 ; i < Math.min( CLASSES_LISTED, contended.size() ) ; i++ ) {
+            ClassCounters counters = contended.get( i ).getValue();
+            sb
+                .append(
+                    String
+                        .format(
+                            "\nClass %d: %d lock timeouts, %d given up, waited %.1f ms ( max %.1f ms )",
+                            contended.get( i ).getKey(),
+                            counters.lockTimeouts.get(),
+                            counters.gaveUp.get(),
+                            counters.waitNanos.get() / 1e6,
+                            counters.maxWaitNanos.get() / 1e6 ) );
+        }
+        return sb.toString();
+    }
+
+    private ClassCounters counters( int classNum ) {
+        return countersByClass.computeIfAbsent( classNum, key -> new ClassCounters() );
+    }
+
+    /**
+     * Counters of one class
+     */
+    private static class ClassCounters {
+
+        private final AtomicLong seats = new AtomicLong();
+        private final AtomicLong full = new AtomicLong();
+        private final AtomicLong lockTimeouts = new AtomicLong();
+        private final AtomicLong gaveUp = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private long failedAttempts() {
+            return lockTimeouts.get();
+        }
+    }
+
+}
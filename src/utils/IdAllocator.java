@@ -0,0 +1,175 @@
+/**
+ * @version 1.0
+ * Class: IdAllocator.java
+ * Purpose: Hands out unique IDs for new rows without going to the DB for every one. Each trip to the sequence
+ *  reserves a whole block of IDs ( hi/lo style ): the sequence value is the "hi" part and the block covers
+ *  hi * blockSize up to hi * blockSize + blockSize - 1. IDs in the current block are handed out from memory with an
+ *  atomic counter so many threads can take IDs at the same time, and only the thread that finds the block used up
+ *  goes back to the sequence for a new one.
+ *  Since a sequence value is never given out twice, blocks reserved through an IdAllocator never overlap, even between
+ *  different programs using the same sequence. Every block also starts above any value the sequence handed out
+ *  before, so IDs that were taken straight from the sequence in the past cannot collide with allocated ones. The
+ *  other way around is not true: a value taken straight from the sequence later on ( SELECT NEXTVAL by an older
+ *  version of the program, by hand, ... ) will sooner or later fall inside a block that was already handed out. So
+ *  every program or statement that takes IDs from the sequence must take them through an IdAllocator with the same
+ *  block size.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.concurrent.atomic.AtomicLong
+ *
+ * Constructor: IdAllocator( String ):
+ *  - Query that returns the next value of the sequence, uses the default block size
+ * Constructor: IdAllocator( String, int ):
+ *  - Same as above with the number of IDs to reserve per trip to the sequence
+ *
+ * Methods:
+ *  nextID( Connection ):
+ *      - Returns the next unused ID, only using the connection when a new block has to be reserved
+ *  getStatistics():
+ *      - Printable summary of how many IDs were handed out and how many trips to the sequence it took
+ */
+
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdAllocator {
+
+    private static final int DEFAULT_BLOCK_SIZE = 50;
+
+    private final String sequenceQuery;
+
+    private final int blockSize;
+
+    private volatile IdBlock currentBlock = new IdBlock( 0, 0 ); // Empty so the first call reserves a block
+
+    // Statistics
+    private final AtomicLong idsAllocated = new AtomicLong();
+    private final AtomicLong blocksReserved = new AtomicLong();
+
+    /**
+     * Creates an allocator that reserves the default number of IDs per trip to the sequence
+     * @param sequenceQuery Query that returns one row with the next value of the sequence
+     */
+    public IdAllocator( String sequenceQuery ) {
+        this( sequenceQuery, DEFAULT_BLOCK_SIZE );
+    }
+
+    /**
+     * Creates an allocator
+     * @param sequenceQuery Query that returns one row with the next value of the sequence
+     * @param blockSize Number of IDs reserved per trip to the sequence
+     */
+    public IdAllocator( String sequenceQuery, int blockSize ) {
+        if ( blockSize < 1 ) {
+            throw new IllegalArgumentException( "Block size must be at least 1" );
+        }
+        this.sequenceQuery = sequenceQuery;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Gets the next unused ID. Safe to call from many threads at once.
+     * @param dbConnection Connection used only if a new block of IDs has to be reserved
+     * @return Unique ID
+     * @throws SQLException if a new block could not be reserved from the sequence
+     */
+    public int nextID( Connection dbConnection ) throws SQLException {
+        while ( true ) {
+            IdBlock block = currentBlock;
+            long id = block.take();
+            if ( id >= 0 ) {
+                idsAllocated.incrementAndGet();
+                return (int) id;
+            }
+
+            // Block is used up, only one thread reserves the next one while the others wait and then retry
+            synchronized ( this ) {
+                if ( currentBlock == block ) {
+                    currentBlock = reserveBlock( dbConnection );
+                }
+            }
+        }
+    }
+
+    /**
+     * Summary of the allocator counters
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "IDs handed out: " + idsAllocated.get() + "\n" );
+        sb.append( "Trips to the sequence: " + blocksReserved.get() + "\n" );
+        sb.append( "IDs reserved per trip: " + blockSize );
+        return sb.toString();
+    }
+
+    // Getters for the counters
+
+    public long getIdsAllocated() {
+        return idsAllocated.get();
+    }
+
+    public long getBlocksReserved() {
+        return blocksReserved.get();
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Gets the next value from the sequence and turns it into a block of IDs
+     * @param dbConnection Connection to DB
+     * @return New block of IDs
+     * @throws SQLException if the sequence could not be read or the IDs would not fit in an int
+     */
+    private IdBlock reserveBlock( Connection dbConnection ) throws SQLException {
+        PreparedStatement stmt = StatementCache.prepare( sequenceQuery, dbConnection );
+        ResultSet result = stmt.executeQuery();
+        if ( !result.next() ) {
+            result.close();
+            throw new SQLException( "Sequence query returned no rows" );
+        }
+        long hi = result.getLong( 1 );
+        result.close();
+
+        long first = hi * blockSize;
+        long limit = first + blockSize;
+        if ( hi < 0 || limit - 1 > Integer.MAX_VALUE ) {
+            throw new SQLException( "Sequence value " + hi + " is too large to make IDs from" );
+        }
+        blocksReserved.incrementAndGet();
+        return new IdBlock( first, limit );
+    }
+
+    /**
+     * Range of IDs reserved from one trip to the sequence
+     */
+    private static class IdBlock {
+
+        private final AtomicLong next;
+
+        private final long limit;
+
+        private IdBlock( long first, long limit ) {
+            this.next = new AtomicLong( first );
+            this.limit = limit;
+        }
+
+        /**
+         * Takes the next ID in the block
+         * @return ID or -1 if the block is used up
+         */
+        private long take() {
+            long id = next.getAndIncrement();
+            return id < limit ? id : -1;
+        }
+    }
+
+}
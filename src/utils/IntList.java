@@ -0,0 +1,113 @@
+/**
+ * @version 1.0
+ * Class: IntList.java
+ * Purpose: Growable list of ints kept in a plain int array, used for the lists of ids that indexes keep ( the
+ *  classes of a member, the classes of a trainer, ... ) without boxing every id into an Integer.
+ *  Not thread safe, callers have to lock around it.
+ *
+ * Utilizes:
+ *  - java.util.Arrays
+ *
+ * Constructor: IntList():
+ *  - Empty list
+ *
+ * Methods:
+ *  add( int ), get( int ), size(), isEmpty(), contains( int ), removeValue( int ), toArray():
+ *      - Same as the java.util.List methods of the same names, removeValue removes the first match
+ */
+
+package utils;
+
+import java.util.Arrays;
+
+public class IntList {
+
+    private int[] elements;
+
+    private int size = 0;
+
+    /**
+     * Creates an empty list
+     */
+    public IntList() {
+        elements = new int[4];
+    }
+
+    /**
+     * Adds a value to the end of the list
+     * @param value Value to add
+     */
+    public void add( int value ) {
+        if ( size == elements.length ) {
+            elements = Arrays.copyOf( elements, size * 2 );
+        }
+        elements[size++] = value;
+    }
+
+    /**
+     * Gets a value
+     * @param index Position in the list
+     * @return Value at that position
+     */
+    public int get( int index ) {
+        if ( index >= size ) {
+            throw new IndexOutOfBoundsException( "Index " + index + " out of bounds for size " + size );
+        }
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if a value is in the list
+     * @param value Value to look for
+     * @return True if it is in the list
+     */
+    public boolean contains( int value ) {
+        return indexOf( value ) >= 0;
+    }
+
+    /**
+     * Removes the first occurrence of a value, keeping the order of the rest
+     * @param value Value to remove
+     * @return True if the value was in the list
+     */
+    public boolean removeValue( int value ) {
+        int index = indexOf( value );
+        if ( index < 0 ) {
+            return false;
+        }
+        System.arraycopy( elements, index + 1, elements, index, size - index - 1 );
+        size--;
+        return true;
+    }
+
+    /**
+     * Copies the values into a new array
+     * @return Array with every value in list order
+     */
+    public int[] toArray() {
+        return Arrays.copyOf( elements, size );
+    }
+
+    /**
+     * Finds a value
+     * @param value Value to look for
+     * @return Position of the first occurrence or -1 if it is not in the list
+     */
+    private int indexOf( int value ) {
+        for ( int i = 0 ; i < size ; i++ ) {
+            if ( elements[i] == value ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
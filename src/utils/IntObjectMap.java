@@ -0,0 +1,245 @@
+/**
+ * @version 1.0
+ * Class: IntObjectMap.java
+ * Purpose: Hash map from int keys to objects that keeps the keys in a plain int array, so looking up a member, class
+ *  or rental by its id never boxes the id into an Integer or creates an entry object. Uses open addressing with
+ *  linear probing, removed slots are filled by shifting later entries back so lookups never have to skip tombstones.
+ *  Not thread safe, callers have to lock around it.
+ *
+ * Utilizes:
+ *  - java.util.*
+ *
+ * Constructor: IntObjectMap():
+ *  - Empty map with room for 16 entries before it grows
+ * Constructor: IntObjectMap( int ):
+ *  - Empty map with room for the given number of entries before it grows
+ *
+ * Methods:
+ *  get( int ), put( int, V ), remove( int ), containsKey( int ), size(), isEmpty(), clear():
+ *      - Same as the java.util.Map methods of the same names
+ *  keys():
+ *      - Copy of every key in the map
+ *  values():
+ *      - Copy of every value in the map
+ */
+
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class IntObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+
+    private Object[] values; // null marks an empty slot, so null values cannot be stored
+
+    private int size = 0;
+
+    private int resizeAt;
+
+    /**
+     * Creates an empty map
+     */
+    public IntObjectMap() {
+        this( 16 );
+    }
+
+    /**
+     * Creates an empty map that can hold the given number of entries before it has to grow
+     * @param expectedSize Number of entries expected
+     */
+    public IntObjectMap( int expectedSize ) {
+        int capacity = Integer.highestOneBit( Math.max( 4, (int) ( expectedSize / LOAD_FACTOR ) + 1 ) * 2 - 1 );
+        allocate( capacity );
+    }
+
+    /**
+     * Gets the value stored for a key
+     * @param key Key to look up
+     * @return Value or null if the key is not in the map
+     */
+    @SuppressWarnings( "unchecked" )
+    public V get( int key ) {
+        int slot = findSlot( key );
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * Checks if a key is in the map
+     * @param key Key to look up
+     * @return True if the map has a value for the key
+     */
+    public boolean containsKey( int key ) {
+        return findSlot( key ) >= 0;
+    }
+
+    /**
+     * Stores a value for a key, replacing any value that was stored for it
+     * @param key Key
+     * @param value Value, must not be null
+     * @return Value that was replaced or null if the key was not in the map
+     */
+    @SuppressWarnings( "unchecked" )
+    public V put( int key, V value ) {
+        if ( value == null ) {
+            throw new IllegalArgumentException( "IntObjectMap cannot store null values" );
+        }
+        int mask = keys.length - 1;
+        int slot = hash( key ) & mask;
+        while ( values[slot] != null ) {
+            if ( keys[slot] == key ) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if ( size > resizeAt ) {
+            rehash( keys.length * 2 );
+        }
+        return null;
+    }
+
+    /**
+     * Removes a key from the map
+     * @param key Key to remove
+     * @return Value that was stored for the key or null if the key was not in the map
+     */
+    @SuppressWarnings( "unchecked" )
+    public V remove( int key ) {
+        int slot = findSlot( key );
+        if ( slot < 0 ) {
+            return null;
+        }
+        V old = (V) values[slot];
+        size--;
+
+        // Shift back any entries after the removed one that would no longer be found past the gap
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = ( gap + 1 ) & mask;
+        while ( values[next] != null ) {
+            int home = hash( keys[next] ) & mask;
+            if ( ( ( next - home ) & mask ) >= ( ( next - gap ) & mask ) ) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = ( next + 1 ) & mask;
+        }
+        values[gap] = null;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        Arrays.fill( values, null );
+        size = 0;
+    }
+
+    /**
+     * Gets every key in the map, in no particular order
+     * @return Array of keys
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for ( int slot = 0 ; slot < values.length ; slot++ ) {
+            if ( values[slot] != null ) {
+                result[i++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets every value in the map, in no particular order
+     * @return List of values
+     */
+    @SuppressWarnings( "unchecked" )
+    public List<V> values() {
+        List<V> result = new ArrayList<>( size );
+        for ( Object value : values ) {
+            if ( value != null ) {
+                result.add( (V) value );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the slot a key is stored in
+     * @param key Key to look for
+     * @return Slot index or -1 if the key is not in the map
+     */
+    private int findSlot( int key ) {
+        int mask = keys.length - 1;
+        int slot = hash( key ) & mask;
+        while ( values[slot] != null ) {
+            if ( keys[slot] == key ) {
+                return slot;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Moves every entry into new arrays of the given size
+     * @param capacity New number of slots, a power of two
+     */
+    private void rehash( int capacity ) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate( capacity );
+        int mask = capacity - 1;
+        for ( int i = 0 ; i < oldValues.length ; i++ ) {
+            if ( oldValues[i] != null ) {
+                int slot = hash( oldKeys[i] ) & mask;
+                while ( values[slot] != null ) {
+                    slot = ( slot + 1 ) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Creates empty arrays
+     * @param capacity Number of slots, a power of two
+     */
+    private void allocate( int capacity ) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        resizeAt = (int) ( capacity * LOAD_FACTOR );
+    }
+
+    /**
+     * Spreads the bits of the key so ids that count up do not all land next to each other
+     * @param key Key to hash
+     * @return Hash of the key
+     */
+    private static int hash( int key ) {
+        int h = key * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+}
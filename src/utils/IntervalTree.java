@@ -0,0 +1,239 @@
+/**
+ * @version 1.0
+ * Class: IntervalTree.java
+ * Purpose: Set of half open intervals [start, end) that can answer "does anything overlap this interval?" in
+ *  O(log n). It is a balanced ( AVL ) binary search tree ordered by the start of the intervals, where every node also
+ *  keeps the largest end in its subtree so a search can skip every subtree that ends before the interval it looks for.
+ *  Each interval carries an int id ( like the class it came from ) so the interval that overlaps can be named, and
+ *  the same interval can be in the tree once per id. Not thread safe.
+ *
+ * Methods:
+ *  add( long, long, int ):
+ *      - Adds an interval with its id
+ *  remove( long, long, int ):
+ *      - Removes an interval that was added with that id
+ *  findOverlap( long, long ):
+ *      - Id of an interval that overlaps the given one, -1 if none do
+ *  size():
+ *      - Number of intervals in the tree
+ */
+
+package utils;
+
+public class IntervalTree {
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * Adds an interval
+     * @param start Start of the interval
+     * @param end End of the interval, not part of it
+     * @param id Id the interval belongs to
+     */
+    public void add( long start, long end, int id ) {
+        if ( end <= start ) {
+            throw new IllegalArgumentException( "An interval must end after it starts" );
+        }
+        root = add( root, new Node( start, end, id ) );
+    }
+
+    /**
+     * Removes an interval
+     * @param start Start of the interval
+     * @param end End of the interval
+     * @param id Id it was added with
+     * @return True if the interval was in the tree
+     */
+    public boolean remove( long start, long end, int id ) {
+        int sizeBefore = size;
+        root = remove( root, start, end, id );
+        return size < sizeBefore;
+    }
+
+    /**
+     * Finds an interval that overlaps [start, end). Intervals that only touch it ( one ends where the other starts )
+     * do not overlap.
+     * @param start Start of the interval to check
+     * @param end End of the interval to check, not part of it
+     * @return Id of an interval that overlaps, -1 if none do
+     */
+    public int findOverlap( long start, long end ) {
+        Node node = root;
+        while ( node != null ) {
+            if ( node.start < end && start < node.end ) {
+                return node.id;
+            }
+            // If anything on the left ends after start, either it overlaps or everything from there on starts too
+            // late to overlap, so the right side never has to be searched as well
+            if ( node.left != null && node.left.maxEnd > start ) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a node below another one and rebalances on the way back up
+     * @param node Root of the subtree
+     * @param added Node to add
+     * @return New root of the subtree
+     */
+    private Node add( Node node, Node added ) {
+        if ( node == null ) {
+            size++;
+            return added;
+        }
+        int order = compare( added.start, added.end, added.id, node );
+        if ( order == 0 ) {
+            return node; // Already there
+        }
+        if ( order < 0 ) {
+            node.left = add( node.left, added );
+        } else {
+            node.right = add( node.right, added );
+        }
+        return rebalance( node );
+    }
+
+    /**
+     * Removes an interval from a subtree and rebalances on the way back up
+     * @param node Root of the subtree
+     * @param start Start of the interval
+     * @param end End of the interval
+     * @param id Id of the interval
+     * @return New root of the subtree
+     */
+    private Node remove( Node node, long start, long end, int id ) {
+        if ( node == null ) {
+            return null;
+        }
+        int order = compare( start, end, id, node );
+        if ( order < 0 ) {
+            node.left = remove( node.left, start, end, id );
+        } else if ( order > 0 ) {
+            node.right = remove( node.right, start, end, id );
+        } else {
+            size--;
+            if ( node.left == null ) {
+                return node.right;
+            }
+            if ( node.right == null ) {
+                return node.left;
+            }
+            // Replace the node with the first node on its right
+            Node successor = node.right;
+            while ( successor.left != null ) {
+                successor = successor.left;
+            }
+            size++; // Removing the successor below counts it again
+            successor.right = remove( node.right, successor.start, successor.end, successor.id );
+            successor.left = node.left;
+            node = successor;
+        }
+        return rebalance( node );
+    }
+
+    /**
+     * Orders intervals by start, then id, then end
+     */
+    private static int compare( long start, long end, int id, Node node ) {
+        if ( start != node.start ) {
+            return start < node.start ? -1 : 1;
+        }
+        if ( id != node.id ) {
+            return id < node.id ? -1 : 1;
+        }
+        return Long.compare( end, node.end );
+    }
+
+    /**
+     * Rotates a node whose subtrees differ in height by more than one and updates its height and largest end
+     * @param node Node whose subtrees just changed
+     * @return New root of the subtree
+     */
+    private static Node rebalance( Node node ) {
+        update( node );
+        int balance = height( node.left ) - height( node.right );
+        if ( balance > 1 ) {
+            if ( height( node.left.left ) < height( node.left.right ) ) {
+                node.left = rotateLeft( node.left );
+            }
+            return rotateRight( node );
+        }
+        if ( balance < -1 ) {
+            if ( height( node.right.right ) < height( node.right.left ) ) {
+                node.right = rotateRight( node.right );
+            }
+            return rotateLeft( node );
+        }
+        return node;
+    }
+
+    private static Node rotateLeft( Node node ) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update( node );
+        update( right );
+        return right;
+    }
+
+    private static Node rotateRight( Node node ) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update( node );
+        update( left );
+        return left;
+    }
+
+    /**
+     * Recomputes the height and largest end of a node from its children
+     */
+    private static void update( Node node ) {
+        node.height = 1 + Math.max( height( node.left ), height( node.right ) );
+        node.maxEnd = node.end;
+        if ( node.left != null ) {
+            node.maxEnd = Math.max( node.maxEnd, node.left.maxEnd );
+        }
+        if ( node.right != null ) {
+            node.maxEnd = Math.max( node.maxEnd, node.right.maxEnd );
+        }
+    }
+
+    private static int height( Node node ) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * One interval in the tree
+     */
+    private static class Node {
+
+        private final long start;
+        private final long end;
+        private final int id;
+
+        private long maxEnd; // Largest end in the subtree under this node, this node included
+        private int height = 1;
+
+        private Node left;
+        private Node right;
+
+        private Node( long start, long end, int id ) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.maxEnd = end;
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * @version 1.0
+ * Class: LatencyHistogram.java
+ * Purpose: Histogram of latencies in nanoseconds, kept the same way as an HDR histogram. Values below 64 each have
+ *  their own bucket, above that every power of two is split into 32 buckets, so any value is off by at most about 3%
+ *  and the whole range of a long fits in under 2,000 counters. Recording is lock free ( one atomic increment per
+ *  counter ) so many threads can record into the same histogram without waiting on each other. Percentiles are read
+ *  from a copy of the counters and may be missing values that are being recorded at the same time.
+ *
+ * Utilizes:
+ *  - java.util.concurrent.atomic.AtomicLong
+ *  - java.util.concurrent.atomic.AtomicLongArray
+ *
+ * Constructor: LatencyHistogram():
+ *  - Empty histogram
+ *
+ * Methods:
+ *  record( long ):
+ *      - Adds a latency to the histogram, negative values are counted as 0
+ *  getCount(), getTotalNanos(), getMaxNanos():
+ *      - Number of latencies recorded, their sum and the largest one
+ *  getPercentileNanos( double ):
+ *      - Latency that the given percent of the recorded latencies are at or below
+ */
+
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5; // Each power of two is split into 2^5 buckets
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = ( 64 - SUB_BUCKET_BITS ) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKET_COUNT );
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Adds a latency to the histogram
+     * @param nanos Latency in nanoseconds
+     */
+    public void record( long nanos ) {
+        if ( nanos < 0 ) {
+            nanos = 0;
+        }
+        counts.incrementAndGet( bucketOf( nanos ) );
+        count.incrementAndGet();
+        totalNanos.addAndGet( nanos );
+        if ( nanos > maxNanos.get() ) {
+            maxNanos.accumulateAndGet( nanos, Math::max );
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Finds the latency that the given percent of the recorded latencies are at or below. The answer is the highest
+     * value of the bucket the latency is in, but never more than the largest latency recorded.
+     * @param percentile Percent between 0 and 100
+     * @return Latency in nanoseconds, 0 if nothing was recorded
+     */
+    public long getPercentileNanos( double percentile ) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            snapshot[i] = counts.get( i );
+            total += snapshot[i];
+        }
+        if ( total == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long) Math.ceil( percentile / 100.0 * total ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= rank ) {
+                return Math.min( highestValueOf( i ), maxNanos.get() );
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Finds the bucket a value is counted in
+     * @param value Value that is 0 or more
+     * @return Index into counts
+     */
+    private static int bucketOf( long value ) {
+        if ( value < 2 * SUB_BUCKET_COUNT ) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS + 1 bits of the value, the shift tells which power of two it is in
+        int shift = 63 - Long.numberOfLeadingZeros( value ) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) ( value >>> shift );
+    }
+
+    /**
+     * Finds the highest value that is counted in a bucket
+     * @param bucket Index into counts
+     * @return Highest value of the bucket
+     */
+    private static long highestValueOf( int bucket ) {
+        if ( bucket < 2 * SUB_BUCKET_COUNT ) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKET_COUNT - 1;
+        long top = bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ( ( top + 1 ) << shift ) - 1;
+    }
+
+}
@@ -0,0 +1,316 @@
+/**
+ * @version 1.0
+ * Class: LatencyInjector.java
+ * Purpose: Makes a connection to a local DB behave like one to a remote DB by waiting a round trip time ( plus or
+ *  minus some random jitter ) on every call that would have to go over the network to the DB: executing a statement,
+ *  fetching the next block of rows of a ResultSet, commit, rollback, savepoints and validating the connection. The
+ *  embedded DB answers in microseconds, so with this the program can be run locally under the round trip times of the
+ *  Oracle DB ( or a slower network ) to see how each operation scales with them.
+ *  Every round trip is also reported to the operation that is running ( see QueryTracer ), which counts how many of
+ *  them had to wait on each other, the round trips on the critical path of the operation.
+ *  Turned on with -Dgym.latency.millis=<round trip time>, with -Dgym.latency.jitterMillis for the jitter and
+ *  -Dgym.latency.fetchSize for the rows fetched per round trip ( 10 by default, the same as the Oracle driver ).
+ *
+ * Utilizes:
+ *  - java.lang.reflect.*
+ *  - java.sql.*
+ *  - java.util.concurrent.ThreadLocalRandom
+ *  - java.util.concurrent.atomic.AtomicLong
+ *  - java.util.concurrent.locks.LockSupport
+ *
+ * Constructor: LatencyInjector( double, double, int ):
+ *  - Round trip time and jitter in milliseconds, and the rows fetched per round trip
+ *
+ * Methods:
+ *  fromSystemProperties():
+ *      - Injector set up from the system properties, null if no latency was asked for
+ *  wrap( Connection ):
+ *      - Wraps a newly opened connection so its round trips wait
+ *  setLatency( double, double ):
+ *      - Changes the round trip time and jitter of every connection wrapped by this injector
+ *  getStatistics():
+ *      - Printable summary of the round trips and how long they waited
+ */
+
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class LatencyInjector {
+
+    private static final int DEFAULT_FETCH_SIZE = 10; // Rows the Oracle driver fetches per round trip by default
+
+    // Calls of a connection that go to the DB
+    private static final Set<String> CONNECTION_ROUND_TRIPS = Set
+        .of( "commit", "rollback", "setSavepoint", "releaseSavepoint", "isValid" );
+
+    private volatile long roundTripNanos;
+    private volatile long jitterNanos;
+
+    private final int fetchSize;
+
+    private final AtomicLong roundTripCount = new AtomicLong();
+    private final AtomicLong injectedNanos = new AtomicLong();
+
+    /**
+     * Creates an injector
+     * @param roundTripMillis Time every round trip waits
+     * @param jitterMillis Most a round trip may wait more or less than the round trip time
+     * @param fetchSize Rows of a ResultSet fetched per round trip when the statement did not set its own fetch size
+     */
+    public LatencyInjector( double roundTripMillis, double jitterMillis, int fetchSize ) {
+        if ( fetchSize < 1 ) {
+            throw new IllegalArgumentException( "Fetch size must be at least 1" );
+        }
+        this.fetchSize = fetchSize;
+        setLatency( roundTripMillis, jitterMillis );
+    }
+
+    /**
+     * Creates an injector from -Dgym.latency.millis, -Dgym.latency.jitterMillis and -Dgym.latency.fetchSize
+     * @return Injector, null if gym.latency.millis was not set
+     */
+    public static LatencyInjector fromSystemProperties() {
+        String roundTripMillis = System.getProperty( "gym.latency.millis" );
+        if ( roundTripMillis == null ) {
+            return null;
+        }
+        return new LatencyInjector(
+            Double.parseDouble( roundTripMillis ),
+            Double.parseDouble( System.getProperty( "gym.latency.jitterMillis", "0" ) ),
+            Integer.getInteger( "gym.latency.fetchSize", DEFAULT_FETCH_SIZE ) );
+    }
+
+    /**
+     * Changes the round trip time and jitter, connections that are already wrapped use the new values right away
+     * @param roundTripMillis Time every round trip waits
+     * @param jitterMillis Most a round trip may wait more or less than the round trip time
+     */
+    public void setLatency( double roundTripMillis, double jitterMillis ) {
+        if ( roundTripMillis < 0 || jitterMillis < 0 ) {
+            throw new IllegalArgumentException( "Latency and jitter can not be negative" );
+        }
+        this.roundTripNanos = (long) ( roundTripMillis * TimeUnit.MILLISECONDS.toNanos( 1 ) );
+        this.jitterNanos = (long) ( jitterMillis * TimeUnit.MILLISECONDS.toNanos( 1 ) );
+    }
+
+    /**
+     * Wraps a connection so its round trips wait. The wrapper is used in place of the connection everywhere, so it
+     * must be wrapped once, right after it is opened.
+     * @param connection Connection that was just opened
+     * @return Connection that passes every call on to connection
+     */
+    public Connection wrap( Connection connection ) {
+        return (Connection) Proxy
+            .newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new ConnectionHandler( connection ) );
+    }
+
+    /**
+     * Summary of the round trips made by the wrapped connections
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        long roundTrips = roundTripCount.get();
+        long injected = injectedNanos.get();
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append(
+                String.format( "Round trip time: %.1f ms +/- %.1f ms\n", roundTripNanos / 1e6, jitterNanos / 1e6 ) );
+        sb.append( "Rows fetched per round trip: " + fetchSize + "\n" );
+        sb.append( "Round trips: " + roundTrips + "\n" );
+        sb.append( String.format( "Time waited on round trips: %.1f ms", injected / 1e6 ) );
+        return sb.toString();
+    }
+
+    /**
+     * Waits one round trip time, give or take the jitter, and reports the round trip to the running operation
+     * @param call Call that makes the round trip
+     * @return What the call returned
+     * @throws Throwable whatever the call threw
+     */
+    private Object roundTrip( Call call ) throws Throwable {
+        long delay = roundTripNanos;
+        long jitter = jitterNanos;
+        if ( jitter > 0 ) {
+            delay += ThreadLocalRandom.current().nextLong( -jitter, jitter + 1 );
+        }
+        delay = Math.max( delay, 0 );
+
+        QueryTracer.OperationTrace operation = QueryTracer.currentOperation();
+        if ( operation != null ) {
+            operation.roundTripStarted();
+        }
+        try {
+            // Parks can wake up early, so keep parking until the whole delay has passed
+            long deadline = System.nanoTime() + delay;
+            for ( long left = delay; left > 0; left = deadline - System.nanoTime() ) {
+                LockSupport.parkNanos( left );
+            }
+            roundTripCount.incrementAndGet();
+            injectedNanos.addAndGet( delay );
+            return call.call();
+        } finally {
+            if ( operation != null ) {
+                operation.roundTripEnded();
+            }
+        }
+    }
+
+    /**
+     * Calls a method of a wrapped object
+     * @param target Object that was wrapped
+     * @param method Method to call
+     * @param args Arguments of the call
+     * @return What the method returned
+     * @throws Throwable whatever the method threw
+     */
+    private static Object invoke( Object target, Method method, Object[] args ) throws Throwable {
+        try {
+            return method.invoke( target, args );
+        } catch ( InvocationTargetException e ) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Call of a wrapped object made after waiting the round trip
+     */
+    private interface Call {
+
+        Object call() throws Throwable;
+
+    }
+
+    /**
+     * Makes the round trips of a connection wait and wraps the statements made from it
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler( Connection connection ) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            if ( CONNECTION_ROUND_TRIPS.contains( method.getName() ) ) {
+                return roundTrip( () -> LatencyInjector.invoke( connection, method, args ) );
+            }
+            Object result = LatencyInjector.invoke( connection, method, args );
+            if ( result instanceof Statement ) {
+                return Proxy
+                    .newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[] { method.getReturnType() },
+                        new StatementHandler( (Statement) result, (Connection) proxy ) );
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Makes the executions of a statement wait and wraps the ResultSets it returns
+     */
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final Connection connection; // Wrapper of the connection the statement was made from
+
+        private int statementFetchSize; // Set by setFetchSize(), 0 to use the injector's fetch size
+
+        private StatementHandler( Statement statement, Connection connection ) {
+            this.statement = statement;
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            String name = method.getName();
+            if ( name.equals( "getConnection" ) ) {
+                return connection;
+            }
+            if ( name.equals( "setFetchSize" ) ) {
+                statementFetchSize = (Integer) args[0];
+            }
+            Object result;
+            if ( name.startsWith( "execute" ) ) {
+                result = roundTrip( () -> LatencyInjector.invoke( statement, method, args ) );
+            } else {
+                result = LatencyInjector.invoke( statement, method, args );
+            }
+            if ( result instanceof ResultSet ) {
+                int rowsPerFetch = statementFetchSize > 0 ? statementFetchSize : fetchSize;
+                return Proxy
+                    .newProxyInstance(
+                        ResultSet.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class },
+                        new ResultSetHandler( (ResultSet) result, (Statement) proxy, rowsPerFetch ) );
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Makes a ResultSet wait a round trip every time it runs out of fetched rows. The first block of rows comes back
+     * with the execution of the query.
+     */
+    private class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final Statement statement; // Wrapper of the statement the ResultSet came from
+
+        private final int rowsPerFetch;
+
+        private int nextCount; // Times next() has been called
+
+        private ResultSetHandler( ResultSet resultSet, Statement statement, int rowsPerFetch ) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+            this.rowsPerFetch = rowsPerFetch;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            if ( method.getName().equals( "getStatement" ) ) {
+                return statement;
+            }
+            if ( method.getName().equals( "next" ) && nextCount++ > 0 && ( nextCount - 1 ) % rowsPerFetch == 0 ) {
+                return roundTrip( () -> LatencyInjector.invoke( resultSet, method, args ) );
+            }
+            return LatencyInjector.invoke( resultSet, method, args );
+        }
+
+    }
+
+}
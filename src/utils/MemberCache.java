@@ -0,0 +1,205 @@
+/**
+ * @version 1.0
+ * Class: MemberCache.java
+ * Purpose: Keeps recently looked up gym members in memory, keyed by MEMBERID, so that a visit that looks the same
+ *  member up several times ( purchase, then schedule, then rentals ) only reads the MEMBER row once. The cache holds
+ *  at most maxSize members, when it is full the member that was used least recently is dropped. Entries also expire
+ *  after a time to live so changes made by other programs are eventually seen.
+ *  Callers get their own copy of the member, so changing a member that has not been saved yet never changes what is
+ *  cached. Any write to a MEMBER row must call invalidate() for that member.
+ *
+ * Utilizes:
+ *  - java.util.LinkedHashMap
+ *  - java.util.concurrent.atomic.AtomicLong
+ *
+ * Constructor: MemberCache( int, long ):
+ *  - Max number of members to keep and how long ( in milliseconds ) a member is kept before it has to be read again
+ *
+ * Methods:
+ *  get( int ):
+ *      - Copy of the cached member or null if it is not cached or has expired
+ *  startLoad():
+ *      - Must be called before reading a member from the DB, the value returned is passed to put()
+ *  put( GymMember, long ):
+ *      - Caches a member that was read from the DB, unless a member was invalidated while it was being read
+ *  invalidate( int ):
+ *      - Drops a member from the cache after its row was changed
+ *  getStatistics():
+ *      - Printable summary of the hit/miss counters
+ */
+
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.GymMember;
+import enums.MembershipLevelEnum;
+
+public class MemberCache {
+
+    private final int maxSize;
+
+    private final long timeToLiveMillis;
+
+    // Access ordered so the eldest entry is always the least recently used member
+    private final LinkedHashMap<Integer, CachedMember> members;
+
+    // Bumped on every invalidation so a read that raced with a write does not cache the old row
+    private long invalidationCount = 0;
+
+    // Statistics
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * Creates an empty member cache
+     * @param maxSize Max number of members to keep
+     * @param timeToLiveMillis How long a member is kept before it has to be read from the DB again
+     */
+    public MemberCache( int maxSize, long timeToLiveMillis ) {
+        if ( maxSize < 1 ) {
+            throw new IllegalArgumentException( "Member cache size must be at least 1" );
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.members = new LinkedHashMap<>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Integer, CachedMember> eldest ) {
+                if ( size() > MemberCache.this.maxSize ) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks a member up in the cache
+     * @param memberID ID of the member
+     * @return Copy of the cached member or null if the member has to be read from the DB
+     */
+    public synchronized GymMember get( int memberID ) {
+        CachedMember cached = members.get( memberID );
+        if ( cached == null ) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        if ( System.currentTimeMillis() - cached.cachedMillis > timeToLiveMillis ) {
+            members.remove( memberID );
+            expiredCount.incrementAndGet();
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return copyOf( cached.member );
+    }
+
+    /**
+     * Marks the start of reading a member from the DB
+     * @return Value to pass to put() once the member has been read
+     */
+    public synchronized long startLoad() {
+        return invalidationCount;
+    }
+
+    /**
+     * Caches a member that was just read from the DB. If any member was invalidated since startLoad() was called the
+     * member is not cached, since the row that was read could already be out of date.
+     * @param member Member read from the DB
+     * @param loadStamp Value returned by startLoad() before the member was read
+     */
+    public synchronized void put( GymMember member, long loadStamp ) {
+        if ( loadStamp != invalidationCount ) {
+            return;
+        }
+        members.put( member.getMemberID(), new CachedMember( copyOf( member ), System.currentTimeMillis() ) );
+    }
+
+    /**
+     * Drops a member from the cache, must be called whenever the member's row is inserted, updated or deleted
+     * @param memberID ID of the member
+     */
+    public synchronized void invalidate( int memberID ) {
+        invalidationCount++;
+        members.remove( memberID );
+    }
+
+    /**
+     * Summary of the member cache counters
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        int cachedMembers;
+        synchronized ( this ) {
+            cachedMembers = members.size();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Member cache hits: " + hits + "\n" );
+        sb.append( "Member cache misses: " + misses + "\n" );
+        sb.append( "Members evicted: " + evictionCount.get() + "\n" );
+        sb.append( "Members expired: " + expiredCount.get() + "\n" );
+        sb.append( "Members cached: " + cachedMembers + " of " + maxSize + "\n" );
+        sb.append( String.format( "Hit rate: %.1f%%", hitRate ) );
+        return sb.toString();
+    }
+
+    // Getters for the counters
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRate() {
+        long lookups = hitCount.get() + missCount.get();
+        return lookups == 0 ? 0 : (double) hitCount.get() / lookups;
+    }
+
+    /**
+     * Makes a separate copy of a member so the cached one cannot be changed by the caller
+     * @param member Member to copy
+     * @return New GymMember with the same values
+     */
+    private static GymMember copyOf( GymMember member ) {
+        return new GymMember(
+            member.getMemberID(),
+            member.getFirstName(),
+            member.getLastName(),
+            member.getPhoneNumber(),
+            member.getEmail(),
+            MembershipLevelEnum.valueOf( member.getMembershipLevel() ),
+            member.getBalance() );
+    }
+
+    /**
+     * Member along with when it was cached
+     */
+    private static class CachedMember {
+
+        private final GymMember member;
+
+        private final long cachedMillis;
+
+        private CachedMember( GymMember member, long cachedMillis ) {
+            this.member = member;
+            this.cachedMillis = cachedMillis;
+        }
+    }
+
+}
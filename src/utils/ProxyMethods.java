@@ -0,0 +1,43 @@
+/**
+ * @version 1.0
+ * Class: ProxyMethods.java
+ * Purpose: Calls every JDBC wrapper made with java.lang.reflect.Proxy ( QueryTracer, LatencyInjector ) has to answer
+ *  itself instead of passing them on to the object it wraps. Kept in one place so the wrappers answer them the same
+ *  way.
+ *
+ * Utilizes:
+ *  - java.lang.reflect.Method
+ *
+ * Methods:
+ *  identityMethod( Object, Method, Object[] ):
+ *      - Answers equals() and hashCode() by identity
+ */
+
+package utils;
+
+import java.lang.reflect.Method;
+
+final class ProxyMethods {
+
+    private ProxyMethods() {
+    }
+
+    /**
+     * Answers equals() and hashCode() by identity so a wrapper can be used as a key the same way the object it wraps
+     * could be
+     * @param proxy The wrapper
+     * @param method Method that was called
+     * @param args Arguments of the call
+     * @return Answer to the call, null if it is not equals() or hashCode()
+     */
+    static Object identityMethod( Object proxy, Method method, Object[] args ) {
+        if ( method.getName().equals( "equals" ) && args != null && args.length == 1 ) {
+            return proxy == args[0];
+        }
+        if ( method.getName().equals( "hashCode" ) && args == null ) {
+            return System.identityHashCode( proxy );
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,521 @@
+/**
+ * @version 1.0
+ * Class: QueryTracer.java
+ * Purpose: Traces the SQL statements the program sends to the DB. Every connection the pool opens is wrapped by
+ *  wrap(), and the statements made from it report each execution. Executions are counted for the DB call that is
+ *  running ( see CallMetrics ) and tagged with the user operation that is running, which the operations menus start
+ *  with beginOperation() for the option the user picked.
+ *  For each operation the tracer counts its statements by shape ( the SQL text with ? place holders ) and warns as
+ *  soon as one shape runs more times than the repeat threshold, which usually means a query is being run once per
+ *  row ( an N+1 query ) instead of once for all of them. The threshold can be set with -Dgym.trace.repeatThreshold.
+ *  A round trip budget can be set for an operation name, operations that run more statements than their budget are
+ *  counted and warned about, and tests can check the trace of the last run of an operation against a budget with
+ *  OperationTrace.assertRoundTripsAtMost().
+ *  When latency is injected ( see LatencyInjector ) each operation also counts its round trips to the DB and how
+ *  many of them sit on its critical path, a round trip started while another one of the operation is still waiting
+ *  overlaps it and does not add to the critical path.
+ *
+ * Utilizes:
+ *  - java.lang.reflect.*
+ *  - java.sql.*
+ *  - java.util.*
+ *  - java.util.concurrent.*
+ *  - java.util.function.Supplier
+ *
+ * Methods:
+ *  wrap( Connection ):
+ *      - Wraps a newly opened connection so its statements are traced
+ *  beginOperation( String ):
+ *      - Starts tagging the statements of the thread with an operation, end() on the returned trace stops it
+ *  currentOperation():
+ *      - Trace of the operation the thread is running
+ *  callInOperation( OperationTrace, Supplier ):
+ *      - Runs a call for an operation that another thread started, tagging its statements with that operation
+ *  setRoundTripBudget( String, int ):
+ *      - Max statements an operation should need
+ *  getLastTrace( String ):
+ *      - Trace of the last run of an operation that has ended
+ *  getStatistics():
+ *      - Printable table of the statements run by each operation
+ */
+
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class QueryTracer {
+
+    private static final int DEFAULT_REPEAT_THRESHOLD = 10;
+
+    // Statements of the same shape an operation may run before it is warned about
+    private static final int repeatThreshold = Integer
+        .getInteger( "gym.trace.repeatThreshold", DEFAULT_REPEAT_THRESHOLD );
+
+    // Operation each thread is running, null when it is not running one
+    private static final ThreadLocal<OperationTrace> currentOperation = new ThreadLocal<>();
+
+    // Totals of every operation that has ended, by operation name
+    private static final Map<String, OperationTotals> totals = new ConcurrentHashMap<>();
+
+    // Last trace of every operation that has ended, by operation name
+    private static final Map<String, OperationTrace> lastTraces = new ConcurrentHashMap<>();
+
+    // Max statements each operation should need, by operation name
+    private static final Map<String, Integer> budgets = new ConcurrentHashMap<>();
+
+    /**
+     * Statements run by one run of an operation
+     */
+    public static class OperationTrace {
+
+        private final String name;
+
+        private final AtomicInteger statementCount = new AtomicInteger();
+
+        private final Map<String, AtomicInteger> statementsByShape = new ConcurrentHashMap<>();
+
+        private final AtomicInteger repeatWarningCount = new AtomicInteger();
+
+        private final AtomicInteger roundTripCount = new AtomicInteger();
+        private final AtomicInteger criticalPathCount = new AtomicInteger();
+        private final AtomicInteger roundTripsInFlight = new AtomicInteger();
+
+        private boolean ended;
+
+        private OperationTrace( String name ) {
+            this.name = name;
+        }
+
+        /**
+         * Counts a statement of the operation and warns the first time its shape runs more than the repeat threshold
+         * @param shape SQL text of the statement
+         */
+        private void statementExecuted( String shape ) {
+            statementCount.incrementAndGet();
+            int count = statementsByShape.computeIfAbsent( shape, key -> new AtomicInteger() ).incrementAndGet();
+            if ( count == repeatThreshold + 1 ) {
+                repeatWarningCount.incrementAndGet();
+                System.err
+                    .println(
+                        "Warning: " + name + " ran the same statement more than " + repeatThreshold
+                            + " times, it may be running a query per row: " + shape );
+            }
+        }
+
+        /**
+         * Counts a round trip of the operation to the DB, it is on the critical path unless another round trip of
+         * the operation is already waiting
+         */
+        void roundTripStarted() {
+            roundTripCount.incrementAndGet();
+            if ( roundTripsInFlight.getAndIncrement() == 0 ) {
+                criticalPathCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Counts a round trip of the operation as done
+         */
+        void roundTripEnded() {
+            roundTripsInFlight.decrementAndGet();
+        }
+
+        /**
+         * Stops tagging the statements of the thread with this operation and adds it to the totals
+         */
+        public void end() {
+            if ( ended ) {
+                return;
+            }
+            ended = true;
+            if ( currentOperation.get() == this ) {
+                currentOperation.remove();
+            }
+            lastTraces.put( name, this );
+            OperationTotals operationTotals = totals.computeIfAbsent( name, key -> new OperationTotals() );
+            operationTotals.add( this );
+
+            Integer budget = budgets.get( name );
+            if ( budget != null && getStatementCount() > budget ) {
+                operationTotals.overBudgetCount.incrementAndGet();
+                System.err
+                    .println(
+                        "Warning: " + name + " ran " + getStatementCount() + " statements, its budget is " + budget );
+            }
+        }
+
+        /**
+         * Checks that the operation did not run more statements than a budget
+         * @param budget Max statements the operation should need
+         * @throws AssertionError if it ran more, with every statement shape and how many times it ran
+         */
+        public void assertRoundTripsAtMost( int budget ) {
+            if ( getStatementCount() <= budget ) {
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append( name + " ran " + getStatementCount() + " statements, expected at most " + budget + ":" );
+            for ( Map.Entry<String, Integer> entry : getStatementsByShape().entrySet() ) {
+                sb.append( "\n" + entry.getValue() + " x " + entry.getKey() );
+            }
+            throw new AssertionError( sb.toString() );
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getStatementCount() {
+            return statementCount.get();
+        }
+
+        public int getRepeatWarningCount() {
+            return repeatWarningCount.get();
+        }
+
+        public int getRoundTripCount() {
+            return roundTripCount.get();
+        }
+
+        public int getCriticalPathCount() {
+            return criticalPathCount.get();
+        }
+
+        /**
+         * How many times each statement shape ran
+         * @return Counts by SQL text, most run first
+         */
+        public Map<String, Integer> getStatementsByShape() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            statementsByShape
+                .entrySet()
+                .stream()
+                .sorted( ( a, b ) -> Integer.compare( b.getValue().get(), a.getValue().get() ) )
+                .forEach( entry -> counts.put( entry.getKey(), entry.getValue().get() ) );
+            return Collections.unmodifiableMap( counts );
+        }
+
+    }
+
+    /**
+     * Totals of every run of an operation
+     */
+    private static class OperationTotals {
+
+        private final AtomicLong runCount = new AtomicLong();
+        private final AtomicLong statementCount = new AtomicLong();
+        private final AtomicLong maxStatements = new AtomicLong();
+        private final AtomicLong repeatWarningCount = new AtomicLong();
+        private final AtomicLong overBudgetCount = new AtomicLong();
+        private final AtomicLong roundTripCount = new AtomicLong();
+        private final AtomicLong criticalPathCount = new AtomicLong();
+
+        private void add( OperationTrace trace ) {
+            runCount.incrementAndGet();
+            statementCount.addAndGet( trace.getStatementCount() );
+            maxStatements.accumulateAndGet( trace.getStatementCount(), Math::max );
+            repeatWarningCount.addAndGet( trace.getRepeatWarningCount() );
+            roundTripCount.addAndGet( trace.getRoundTripCount() );
+            criticalPathCount.addAndGet( trace.getCriticalPathCount() );
+        }
+
+    }
+
+    private QueryTracer() {
+    }
+
+    /**
+     * Starts tagging the statements run by this thread with an operation. Any operation the thread was running is
+     * replaced.
+     * @param name Name of the operation, for example the menu option the user picked
+     * @return Trace of the operation, end() must be called on it once the operation is done
+     */
+    public static OperationTrace beginOperation( String name ) {
+        OperationTrace trace = new OperationTrace( name );
+        currentOperation.set( trace );
+        return trace;
+    }
+
+    /**
+     * Gets the operation this thread is running
+     * @return Trace of the operation, null if the thread is not running one
+     */
+    public static OperationTrace currentOperation() {
+        return currentOperation.get();
+    }
+
+    /**
+     * Runs a call on this thread as part of an operation another thread is running, so the statements the call runs
+     * here are tagged with that operation and its round trips overlap the ones of the other thread. The operation
+     * this thread was running before is restored afterwards.
+     * @param trace Operation the call is part of, null to run the call outside of any operation
+     * @param call The call
+     * @return What the call returned
+     */
+    public static <T> T callInOperation( OperationTrace trace, Supplier<T> call ) {
+        OperationTrace outerOperation = currentOperation.get();
+        setCurrentOperation( trace );
+        try {
+            return call.get();
+        } finally {
+            setCurrentOperation( outerOperation );
+        }
+    }
+
+    private static void setCurrentOperation( OperationTrace trace ) {
+        if ( trace == null ) {
+            currentOperation.remove();
+        } else {
+            currentOperation.set( trace );
+        }
+    }
+
+    /**
+     * Sets the max statements an operation should need, every run that needs more is counted and warned about
+     * @param name Name of the operation
+     * @param maxStatements Max statements, less than 0 removes the budget
+     */
+    public static void setRoundTripBudget( String name, int maxStatements ) {
+        if ( maxStatements < 0 ) {
+            budgets.remove( name );
+        } else {
+            budgets.put( name, maxStatements );
+        }
+    }
+
+    /**
+     * Gets the trace of the last run of an operation
+     * @param name Name of the operation
+     * @return Trace of its last run that has ended, null if it never ran
+     */
+    public static OperationTrace getLastTrace( String name ) {
+        return lastTraces.get( name );
+    }
+
+    /**
+     * Table of the statements run by each operation that has ended. Avg and Max are statements per run, Trips and
+     * Critical are the round trips per run and how many of them were on the critical path.
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        if ( totals.isEmpty() ) {
+            return "No operations have run yet";
+        }
+        String rowFormat = "%-44s %6s %8s %8s %8s %8s %8s %9s\n";
+        StringBuilder sb = new StringBuilder();
+        sb
+            .append(
+                String.format( rowFormat, "Operation", "Runs", "Stmts", "Avg", "Max", "Trips", "Critical",
+                    "Warnings" ) );
+        for ( Map.Entry<String, OperationTotals> entry : new TreeMap<>( totals ).entrySet() ) {
+            OperationTotals operationTotals = entry.getValue();
+            long runs = operationTotals.runCount.get();
+            sb.append(
+                String.format(
+                    rowFormat,
+                    entry.getKey(),
+                    runs,
+                    operationTotals.statementCount.get(),
+                    perRun( operationTotals.statementCount.get(), runs ),
+                    operationTotals.maxStatements.get(),
+                    perRun( operationTotals.roundTripCount.get(), runs ),
+                    perRun( operationTotals.criticalPathCount.get(), runs ),
+                    operationTotals.repeatWarningCount.get() + operationTotals.overBudgetCount.get() ) );
+        }
+        sb.append( "Repeat threshold: " + repeatThreshold + "\n" );
+        sb.append( "Round trips are only counted when latency is injected ( -Dgym.latency.millis )" );
+        return sb.toString();
+    }
+
+    /**
+     * Average of a total over the runs of an operation, for printing
+     * @param total Total of every run
+     * @param runs Number of runs
+     * @return Average with one decimal
+     */
+    private static String perRun( long total, long runs ) {
+        return String.format( "%.1f", runs == 0 ? 0 : (double) total / runs );
+    }
+
+    /**
+     * Wraps a connection so the statements made from it are traced. The wrapper is used in place of the connection
+     * everywhere, so it must be wrapped once, right after it is opened.
+     * @param connection Connection that was just opened
+     * @return Connection that passes every call on to connection
+     */
+    public static Connection wrap( Connection connection ) {
+        return (Connection) Proxy
+            .newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new ConnectionHandler( connection ) );
+    }
+
+    /**
+     * Counts a statement executed on a traced connection
+     * @param shape SQL text of the statement
+     */
+    private static void statementExecuted( String shape ) {
+        CallMetrics.statementExecuted();
+        OperationTrace trace = currentOperation.get();
+        if ( trace != null ) {
+            trace.statementExecuted( shape );
+        }
+    }
+
+    /**
+     * Turns SQL text that was not prepared into a shape by putting ? in place of its string and number literals
+     * @param sql SQL text
+     * @return SQL text without literals
+     */
+    private static String shapeOf( String sql ) {
+        return sql
+            .replaceAll( "'([^']|'')*'", "?" )
+            .replaceAll( "\\b\\d+(\\.\\d+)?\\b", "?" )
+            .replaceAll( "\\s+", " " )
+            .trim();
+    }
+
+    /**
+     * Calls a method of a wrapped object, counting any SQLException it throws as an error of the current DB call
+     * @param target Object that was wrapped
+     * @param method Method to call
+     * @param args Arguments of the call
+     * @return What the method returned
+     * @throws Throwable whatever the method threw
+     */
+    private static Object invoke( Object target, Method method, Object[] args ) throws Throwable {
+        try {
+            return method.invoke( target, args );
+        } catch ( InvocationTargetException e ) {
+            if ( e.getCause() instanceof SQLException ) {
+                CallMetrics.errorRaised();
+            }
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Wraps the statements made from a connection
+     */
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+
+        private ConnectionHandler( Connection connection ) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            Object result = QueryTracer.invoke( connection, method, args );
+            if ( result instanceof Statement ) {
+                // prepareStatement() and prepareCall() know their SQL now, createStatement() gets it on execute
+                String sql = method.getName().startsWith( "prepare" ) ? (String) args[0] : null;
+                return Proxy
+                    .newProxyInstance(
+                        Connection.class.getClassLoader(),
+                        new Class<?>[] { method.getReturnType() },
+                        new StatementHandler( (Statement) result, (Connection) proxy, sql ) );
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Counts the executions of a statement and wraps the ResultSets it returns
+     */
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private final Connection connection; // Wrapper of the connection the statement was made from
+
+        private final String shape; // Null for a statement that is not prepared
+
+        private StatementHandler( Statement statement, Connection connection, String sql ) {
+            this.statement = statement;
+            this.connection = connection;
+            this.shape = sql == null ? null : sql.replaceAll( "\\s+", " " ).trim();
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            String name = method.getName();
+            if ( name.equals( "getConnection" ) ) {
+                return connection;
+            }
+            if ( name.startsWith( "execute" ) ) {
+                boolean hasSQL = args != null && args.length > 0 && args[0] instanceof String;
+                statementExecuted( hasSQL ? shapeOf( (String) args[0] ) : shape );
+            }
+            Object result = QueryTracer.invoke( statement, method, args );
+            if ( result instanceof ResultSet ) {
+                return Proxy
+                    .newProxyInstance(
+                        ResultSet.class.getClassLoader(),
+                        new Class<?>[] { ResultSet.class },
+                        new ResultSetHandler( (ResultSet) result, (Statement) proxy ) );
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Counts the rows read from a ResultSet
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet resultSet;
+
+        private final Statement statement; // Wrapper of the statement the ResultSet came from
+
+        private ResultSetHandler( ResultSet resultSet, Statement statement ) {
+            this.resultSet = resultSet;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+            Object identity = ProxyMethods.identityMethod( proxy, method, args );
+            if ( identity != null ) {
+                return identity;
+            }
+            if ( method.getName().equals( "getStatement" ) ) {
+                return statement;
+            }
+            Object result = QueryTracer.invoke( resultSet, method, args );
+            if ( Boolean.TRUE.equals( result ) && method.getName().equals( "next" ) ) {
+                CallMetrics.rowFetched();
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ * @version 1.0
+ * Class: RentalCatalog.java
+ * Purpose: In memory copy of the ITEMNUM <-> ITEMNAME pairs of the RENTALITEM table so that rental screens can turn
+ *  item numbers into names ( and back ) without a query for every row. The whole catalog is loaded with one query
+ *  and kept until it is invalidated, it gets too old, or an item is asked for that is not in it ( which happens when
+ *  an item was added by someone else ). Quantities in stock are NOT kept here since they change all the time.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.*
+ *
+ * Constructor: RentalCatalog( String, long ):
+ *  - Query that selects ITEMNUM and ITEMNAME from the rental item table and how long a loaded catalog is trusted
+ *
+ * Methods:
+ *  getItemName( int, Connection ):
+ *      - Name of the item with the given number, null if there is no such item
+ *  getItemNum( String, Connection ):
+ *      - Number of the item with the given name, -1 if there is no such item
+ *  refresh( List<RentalItem> ):
+ *      - Replaces the catalog with items that were just read from the DB anyway
+ *  invalidate():
+ *      - Forgets the catalog so it is loaded again on next use, called whenever RENTALITEM rows are changed
+ */
+
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.RentalItem;
+
+public class RentalCatalog {
+
+    private final String catalogQuery;
+
+    private final long maxAgeMillis;
+
+    private volatile Snapshot snapshot; // null until loaded or after being invalidated
+
+    // Statistics
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+
+    /**
+     * Creates an empty catalog, it is loaded on first use
+     * @param catalogQuery Query that returns the ITEMNUM and ITEMNAME columns of every rental item
+     * @param maxAgeMillis How long a loaded catalog is used before it is loaded again
+     */
+    public RentalCatalog( String catalogQuery, long maxAgeMillis ) {
+        this.catalogQuery = catalogQuery;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Gets the name of a rental item
+     * @param itemNum Item number
+     * @param dbConnection Connection used if the catalog has to be loaded
+     * @return Name of the item or null if there is no item with that number
+     * @throws SQLException if the catalog could not be loaded
+     */
+    public String getItemName( int itemNum, Connection dbConnection ) throws SQLException {
+        lookupCount.incrementAndGet();
+        Snapshot current = getSnapshot( dbConnection );
+        String name = current.namesByNum.get( itemNum );
+        if ( name == null && !current.freshlyLoaded ) {
+            // Could be an item added since the catalog was loaded
+            name = load( dbConnection ).namesByNum.get( itemNum );
+        }
+        return name;
+    }
+
+    /**
+     * Gets the number of a rental item
+     * @param itemName Name of the item
+     * @param dbConnection Connection used if the catalog has to be loaded
+     * @return Number of the item or -1 if there is no item with that name
+     * @throws SQLException if the catalog could not be loaded
+     */
+    public int getItemNum( String itemName, Connection dbConnection ) throws SQLException {
+        lookupCount.incrementAndGet();
+        Snapshot current = getSnapshot( dbConnection );
+        Integer itemNum = current.numsByName.get( itemName );
+        if ( itemNum == null && !current.freshlyLoaded ) {
+            itemNum = load( dbConnection ).numsByName.get( itemName );
+        }
+        return itemNum == null ? -1 : itemNum;
+    }
+
+    /**
+     * Replaces the catalog with a list of items that was just read from the DB
+     * @param items Every rental item
+     */
+    public void refresh( List<RentalItem> items ) {
+        Map<Integer, String> namesByNum = new HashMap<>();
+        Map<String, Integer> numsByName = new HashMap<>();
+        for ( RentalItem item : items ) {
+            namesByNum.put( item.getItemNum(), item.getItemName() );
+            numsByName.put( item.getItemName(), item.getItemNum() );
+        }
+        snapshot = new Snapshot( namesByNum, numsByName );
+    }
+
+    /**
+     * Forgets the catalog so the next lookup loads it again
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Summary of the catalog counters
+     * @return String that can be printed to the console
+     */
+    public String getStatistics() {
+        Snapshot current = snapshot;
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Item lookups: " + lookupCount.get() + "\n" );
+        sb.append( "Catalog loads: " + loadCount.get() + "\n" );
+        sb.append( "Items in catalog: " + ( current == null ? 0 : current.namesByNum.size() ) );
+        return sb.toString();
+    }
+
+    /**
+     * Gets the current catalog, loading it if there is none or it is too old
+     * @param dbConnection Connection to DB
+     * @return Catalog to look items up in
+     * @throws SQLException if the catalog could not be loaded
+     */
+    private Snapshot getSnapshot( Connection dbConnection ) throws SQLException {
+        Snapshot current = snapshot;
+        if ( current == null || System.currentTimeMillis() - current.loadedMillis > maxAgeMillis ) {
+            current = load( dbConnection );
+        }
+        return current;
+    }
+
+    /**
+     * Loads every item number and name with one query
+     * @param dbConnection Connection to DB
+     * @return Newly loaded catalog
+     * @throws SQLException if the query fails
+     */
+    private Snapshot load( Connection dbConnection ) throws SQLException {
+        Map<Integer, String> namesByNum = new HashMap<>();
+        Map<String, Integer> numsByName = new HashMap<>();
+        PreparedStatement stmt = StatementCache.prepare( catalogQuery, dbConnection );
+        ResultSet result = stmt.executeQuery();
+        while ( result.next() ) {
+            int itemNum = result.getInt( "ITEMNUM" );
+            String itemName = result.getString( "ITEMNAME" );
+            namesByNum.put( itemNum, itemName );
+            numsByName.put( itemName, itemNum );
+        }
+        result.close();
+        loadCount.incrementAndGet();
+
+        Snapshot loaded = new Snapshot( namesByNum, numsByName );
+        snapshot = loaded;
+        return new Snapshot( loaded, true );
+    }
+
+    /**
+     * One loaded copy of the catalog, never changed once created
+     */
+    private static class Snapshot {
+
+        private final Map<Integer, String> namesByNum;
+
+        private final Map<String, Integer> numsByName;
+
+        private final long loadedMillis;
+
+        private final boolean freshlyLoaded; // True when it was just loaded so a miss is not worth another load
+
+        private Snapshot( Map<Integer, String> namesByNum, Map<String, Integer> numsByName ) {
+            this.namesByNum = Collections.unmodifiableMap( namesByNum );
+            this.numsByName = Collections.unmodifiableMap( numsByName );
+            this.loadedMillis = System.currentTimeMillis();
+            this.freshlyLoaded = false;
+        }
+
+        private Snapshot( Snapshot other, boolean freshlyLoaded ) {
+            this.namesByNum = other.namesByNum;
+            this.numsByName = other.numsByName;
+            this.loadedMillis = other.loadedMillis;
+            this.freshlyLoaded = freshlyLoaded;
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+/**
+ * @version 1.0
+ * Class: RowHandler.java
+ * Purpose: Receives the rows of a query one at a time as they are fetched, so a query over a whole table can be
+ *  handled without holding all of its rows in memory.
+ *
+ * Methods:
+ *  handle( T ):
+ *      - Called once for every row in the order they are read
+ */
+
+package utils;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface RowHandler<T> {
+
+    /**
+     * Handles one row
+     * @param row The row. The same object may be filled in again for the next row, so it must not be kept.
+     * @throws IOException if the row could not be written out, which stops the query
+     */
+    public void handle( T row ) throws IOException;
+
+}
@@ -0,0 +1,202 @@
+/**
+ * @version 1.0
+ * Class: StatementCache.java
+ * Purpose: Keeps the PreparedStatements that have been used on a connection so that the same SQL text is only
+ *  prepared ( parsed by the DB ) once per connection. Each connection has its own cache with a max size, when it is
+ *  full the statement that was used least recently is closed to make room.
+ *  Statements handed out by the cache belong to the cache and must NOT be closed by the caller, only their
+ *  ResultSets should be closed.
+ *  Statements are prepared on the connection the pool handed out, so their executions are traced by QueryTracer.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.*
+ *  - java.util.concurrent.atomic.AtomicLong
+ *
+ * Constructor: StatementCache( Connection, int ):
+ *  - Private, caches are created the first time prepare() is called with a connection
+ *
+ * Methods:
+ *  prepare( String, Connection ):
+ *      - Returns the cached statement for the SQL text on that connection, preparing it if it is not cached yet
+ *  release( Connection ):
+ *      - Closes every statement cached for the connection, must be called before the connection is closed
+ *  getStatistics():
+ *      - Printable summary of the hit/miss counters
+ */
+
+package utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StatementCache {
+
+    private static final int DEFAULT_MAX_STATEMENTS = 32; // Max statements kept open per connection
+
+    // One cache per connection, connections are compared by identity
+    private static final Map<Connection, StatementCache> caches = new IdentityHashMap<>();
+
+    // Counters across all connections
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong evictionCount = new AtomicLong();
+
+    private static int maxStatements = DEFAULT_MAX_STATEMENTS;
+
+    private final Connection connection;
+
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * Creates an empty cache for a connection
+     * @param connection Connection the statements are prepared on
+     * @param maxSize Max number of statements to keep open
+     */
+    private StatementCache( Connection connection, int maxSize ) {
+        this.connection = connection;
+        // Access ordered so the eldest entry is always the least recently used statement
+        this.statements = new LinkedHashMap<>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, PreparedStatement> eldest ) {
+                if ( size() > maxSize ) {
+                    evictionCount.incrementAndGet();
+                    closeQuietly( eldest.getValue() );
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets a prepared statement for the SQL text on the given connection. The statement is reused on later calls
+     * with the same SQL and connection so the caller must not close it.
+     * @param sql SQL text with ? place holders
+     * @param dbConnection Connection to prepare the statement on
+     * @return PreparedStatement ready to have its parameters set
+     * @throws SQLException if the statement could not be prepared
+     */
+    public static PreparedStatement prepare( String sql, Connection dbConnection ) throws SQLException {
+        StatementCache cache;
+        synchronized ( caches ) {
+            cache = caches.get( dbConnection );
+            if ( cache == null ) {
+                cache = new StatementCache( dbConnection, maxStatements );
+                caches.put( dbConnection, cache );
+            }
+        }
+        return cache.getStatement( sql );
+    }
+
+    /**
+     * Closes and forgets every statement cached for a connection
+     * @param dbConnection Connection that is about to be closed
+     */
+    public static void release( Connection dbConnection ) {
+        StatementCache cache;
+        synchronized ( caches ) {
+            cache = caches.remove( dbConnection );
+        }
+        if ( cache != null ) {
+            cache.closeAll();
+        }
+    }
+
+    /**
+     * Sets the max number of statements kept per connection. Only affects connections that have not been used yet.
+     * @param size Max statements per connection
+     */
+    public static void setMaxStatementsPerConnection( int size ) {
+        if ( size < 1 ) {
+            throw new IllegalArgumentException( "Statement cache size must be at least 1" );
+        }
+        maxStatements = size;
+    }
+
+    /**
+     * Summary of the statement cache counters
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long lookups = hits + misses;
+        double hitRate = lookups == 0 ? 0 : 100.0 * hits / lookups;
+        int cachedConnections;
+        synchronized ( caches ) {
+            cachedConnections = caches.size();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Statement cache hits: " + hits + "\n" );
+        sb.append( "Statement cache misses ( statements prepared ): " + misses + "\n" );
+        sb.append( "Statements evicted: " + evictionCount.get() + "\n" );
+        sb.append( "Connections with cached statements: " + cachedConnections + "\n" );
+        sb.append( String.format( "Hit rate: %.1f%%", hitRate ) );
+        return sb.toString();
+    }
+
+    // Getters for the counters
+
+    public static long getHitCount() {
+        return hitCount.get();
+    }
+
+    public static long getMissCount() {
+        return missCount.get();
+    }
+
+    public static long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Looks up the statement in this connection's cache and prepares it on a miss
+     * @param sql SQL text
+     * @return Cached or newly prepared statement
+     * @throws SQLException if the statement could not be prepared
+     */
+    private synchronized PreparedStatement getStatement( String sql ) throws SQLException {
+        PreparedStatement stmt = statements.get( sql );
+        if ( stmt != null && !stmt.isClosed() ) {
+            hitCount.incrementAndGet();
+            stmt.clearParameters();
+            return stmt;
+        }
+        missCount.incrementAndGet();
+        stmt = connection.prepareStatement( sql );
+        statements.put( sql, stmt );
+        return stmt;
+    }
+
+    /**
+     * Closes all the statements in this cache
+     */
+    private synchronized void closeAll() {
+        List<PreparedStatement> toClose = new ArrayList<>( statements.values() );
+        statements.clear();
+        for ( PreparedStatement stmt : toClose ) {
+            closeQuietly( stmt );
+        }
+    }
+
+    /**
+     * Closes a statement ignoring errors since it is being thrown away
+     * @param stmt Statement to close
+     */
+    private static void closeQuietly( PreparedStatement stmt ) {
+        try {
+            stmt.close();
+        } catch ( SQLException e ) {
+            // Statement is no longer used so there is nothing else to do
+        }
+    }
+
+}
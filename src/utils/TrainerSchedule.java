@@ -0,0 +1,215 @@
+/**
+ * @version 1.0
+ * Class: TrainerSchedule.java
+ * Purpose: In memory index of when every trainer teaches, used to stop a trainer from being booked for two classes
+ *  at the same time. A class meets every week on the day of its start date, at its start time for its duration, up
+ *  to its end date, so each class is expanded into one time interval per meeting and the intervals are kept in an
+ *  IntervalTree per trainer. Checking a new class then costs one O(log n) search per meeting instead of a query.
+ *  Times are compared as wall clock minutes so a class keeps its time across daylight saving changes.
+ *  The index must be told about every class that is saved ( put() ), it can be cleared and reloaded from the whole
+ *  CLASS table with reload(). Safe to use from many threads.
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.time.*
+ *  - java.util.*
+ *  - java.util.concurrent.atomic.AtomicLong
+ *  - entities.Class
+ *
+ * Methods:
+ *  findConflict( int, Timestamp, float, Date ):
+ *      - Class of the trainer that meets at the same time as a proposed class, -1 if there is none
+ *  put( Class ), remove( int ):
+ *      - Adds or replaces a class, and removes one
+ *  reload( List<Class> ), invalidate():
+ *      - Replaces the whole index with every class there is, and marks it as needing that
+ *  isOlderThan( long ):
+ *      - Whether the index was last reloaded longer ago than the given time ( or never was )
+ *  getStatistics():
+ *      - Printable summary of the checks made and the classes indexed
+ */
+
+package utils;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entities.Class;
+
+public class TrainerSchedule {
+
+    private static final long MINUTES_PER_WEEK = 7 * 24 * 60;
+
+    private static final int MAX_MEETINGS = 520; // A class is only indexed for its first 10 years of meetings
+
+    private final IntObjectMap<IntervalTree> meetingsByTrainer = new IntObjectMap<>();
+
+    private final IntObjectMap<IndexedClass> classesByNum = new IntObjectMap<>();
+
+    private long loadedMillis; // When reload() was last called, 0 if never
+
+    // Statistics
+    private final AtomicLong checkCount = new AtomicLong();
+    private final AtomicLong conflictCount = new AtomicLong();
+
+    /**
+     * Finds a class of a trainer that meets at the same time as a proposed class in any week they both run
+     * @param trainerID Trainer of the proposed class
+     * @param startTime Date and time of the first meeting of the proposed class
+     * @param duration Length of each meeting in minutes
+     * @param endDate Last day the proposed class can meet, null if it only meets once
+     * @return Class number of a class that overlaps, -1 if there is none
+     */
+    public synchronized int findConflict( int trainerID, Timestamp startTime, float duration, Date endDate ) {
+        checkCount.incrementAndGet();
+        IntervalTree meetings = meetingsByTrainer.get( trainerID );
+        if ( meetings == null ) {
+            return -1;
+        }
+        for ( long start : meetingStarts( startTime, endDate ) ) {
+            int classNum = meetings.findOverlap( start, start + durationMinutes( duration ) );
+            if ( classNum >= 0 ) {
+                conflictCount.incrementAndGet();
+                return classNum;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a class, or replaces it if it was added before ( its trainer or times may have changed )
+     * @param gymClass Class that was saved
+     */
+    public synchronized void put( Class gymClass ) {
+        remove( gymClass.getClassNum() );
+        long[] starts = meetingStarts( gymClass.getStartTime(), gymClass.getEndDate() );
+        long duration = durationMinutes( gymClass.getClassDuration() );
+        IntervalTree meetings = meetingsByTrainer.get( gymClass.getTrainerID() );
+        if ( meetings == null ) {
+            meetings = new IntervalTree();
+            meetingsByTrainer.put( gymClass.getTrainerID(), meetings );
+        }
+        for ( long start : starts ) {
+            meetings.add( start, start + duration, gymClass.getClassNum() );
+        }
+        classesByNum.put( gymClass.getClassNum(), new IndexedClass( gymClass.getTrainerID(), starts, duration ) );
+    }
+
+    /**
+     * Removes a class
+     * @param classNum Number of the class, nothing happens if it was never added
+     */
+    public synchronized void remove( int classNum ) {
+        IndexedClass indexed = classesByNum.remove( classNum );
+        if ( indexed == null ) {
+            return;
+        }
+        IntervalTree meetings = meetingsByTrainer.get( indexed.trainerID );
+        for ( long start : indexed.starts ) {
+            meetings.remove( start, start + indexed.duration, classNum );
+        }
+        if ( meetings.size() == 0 ) {
+            meetingsByTrainer.remove( indexed.trainerID );
+        }
+    }
+
+    /**
+     * Replaces the index with a list of every class, read from the DB
+     * @param classes Every class there is
+     */
+    public synchronized void reload( List<Class> classes ) {
+        meetingsByTrainer.clear();
+        classesByNum.clear();
+        for ( Class gymClass : classes ) {
+            put( gymClass );
+        }
+        loadedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the index as out of date so isOlderThan() is true until the next reload(), used when classes may have
+     * changed without put() being told ( like a unit of work that was rolled back )
+     */
+    public synchronized void invalidate() {
+        loadedMillis = 0;
+    }
+
+    /**
+     * Checks whether the index should be reloaded
+     * @param maxAgeMillis How long a reloaded index is trusted
+     * @return True if it was reloaded longer ago than that or never was
+     */
+    public synchronized boolean isOlderThan( long maxAgeMillis ) {
+        return loadedMillis == 0 || System.currentTimeMillis() - loadedMillis > maxAgeMillis;
+    }
+
+    /**
+     * Summary of the schedule counters
+     * @return String that can be printed to the console
+     */
+    public synchronized String getStatistics() {
+        long meetingCount = 0;
+        for ( IntervalTree meetings : meetingsByTrainer.values() ) {
+            meetingCount += meetings.size();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Conflict checks: " + checkCount.get() + "\n" );
+        sb.append( "Conflicts found: " + conflictCount.get() + "\n" );
+        sb.append( "Classes indexed: " + classesByNum.size() + "\n" );
+        sb.append( "Meetings indexed: " + meetingCount );
+        return sb.toString();
+    }
+
+    /**
+     * Lists the start of every weekly meeting of a class, in wall clock minutes
+     * @param startTime Date and time of the first meeting
+     * @param endDate Last day the class can meet, null if it only meets once
+     * @return Start of each meeting
+     */
+    private static long[] meetingStarts( Timestamp startTime, Date endDate ) {
+        LocalDateTime first = startTime.toLocalDateTime();
+        int meetings = 1;
+        if ( endDate != null ) {
+            LocalDate lastDay = endDate.toLocalDate();
+            long days = lastDay.toEpochDay() - first.toLocalDate().toEpochDay();
+            meetings = (int) Math.min( MAX_MEETINGS, Math.max( 1, days / 7 + 1 ) );
+        }
+        long firstStart = first.toEpochSecond( ZoneOffset.UTC ) / 60;
+        long[] starts = new long[meetings];
+        for ( int i = 0 ; i < meetings ; i++ ) {
+            starts[i] = firstStart + i * MINUTES_PER_WEEK;
+        }
+        return starts;
+    }
+
+    /**
+     * Rounds a duration up to whole minutes, at least one so every meeting takes some time
+     */
+    private static long durationMinutes( float duration ) {
+        return Math.max( 1, (long) Math.ceil( duration ) );
+    }
+
+    /**
+     * Meetings of a class that was added, kept so they can be removed again
+     */
+    private static class IndexedClass {
+
+        private final int trainerID;
+
+        private final long[] starts;
+
+        private final long duration;
+
+        private IndexedClass( int trainerID, long[] starts, long duration ) {
+            this.trainerID = trainerID;
+            this.starts = starts;
+            this.duration = duration;
+        }
+    }
+
+}
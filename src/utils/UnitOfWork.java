@@ -0,0 +1,195 @@
+/**
+ * @version 1.0
+ * Class: UnitOfWork.java
+ * Purpose: Groups several DBUtils calls made on one connection into a single DB transaction. Auto commit is turned
+ *  off when the unit of work begins, so every statement after that is only made permanent by one commit() at the
+ *  end. If commit() is never reached ( a step failed or an exception was thrown ) close() rolls everything back, so a
+ *  member's balance can never be saved without the transaction row that goes with it.
+ *  Meant to be used with try-with-resources:
+ *      try ( UnitOfWork unitOfWork = UnitOfWork.begin( dbConnection ) ) {
+ *          ...
+ *          unitOfWork.commit();
+ *      }
+ *  Code that keeps state outside the DB ( like the member cache ) can register work to run once the transaction has
+ *  been committed or rolled back with afterCompletion().
+ *
+ * Utilizes:
+ *  - java.sql.*
+ *  - java.util.*
+ *  - java.util.concurrent.atomic.AtomicLong
+ *
+ * Constructor: UnitOfWork( Connection, boolean ):
+ *  - Private, units of work are started with begin()
+ *
+ * Methods:
+ *  begin( Connection ):
+ *      - Turns off auto commit on the connection and returns the new unit of work
+ *  activeOn( Connection ):
+ *      - Unit of work currently running on the connection, null if there is none
+ *  commit():
+ *      - Commits every statement run since begin()
+ *  rollback():
+ *      - Undoes every statement run since begin()
+ *  afterCompletion( Runnable ):
+ *      - Runs the task once the unit of work is committed or rolled back
+ *  close():
+ *      - Rolls back if commit() was not called and restores the connection's auto commit setting
+ */
+
+package utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UnitOfWork implements AutoCloseable {
+
+    // Unit of work running on each connection, connections are compared by identity
+    private static final Map<Connection, UnitOfWork> activeUnits = Collections
+        .synchronizedMap( new IdentityHashMap<>() );
+
+    // Counters across all connections
+    private static final AtomicLong commitCount = new AtomicLong();
+    private static final AtomicLong rollbackCount = new AtomicLong();
+
+    private final Connection dbConnection;
+
+    private final boolean previousAutoCommit;
+
+    private final List<Runnable> completionTasks = new ArrayList<>();
+
+    private boolean completed = false;
+
+    /**
+     * Creates a unit of work for a connection that already has auto commit off
+     * @param dbConnection Connection the statements are run on
+     * @param previousAutoCommit Auto commit setting to restore on close
+     */
+    private UnitOfWork( Connection dbConnection, boolean previousAutoCommit ) {
+        this.dbConnection = dbConnection;
+        this.previousAutoCommit = previousAutoCommit;
+    }
+
+    /**
+     * Starts a unit of work on a connection
+     * @param dbConnection Connection every statement of the unit of work will be run on
+     * @return New unit of work, must be closed
+     * @throws SQLException if auto commit could not be turned off
+     */
+    public static UnitOfWork begin( Connection dbConnection ) throws SQLException {
+        if ( activeUnits.containsKey( dbConnection ) ) {
+            throw new IllegalStateException( "A unit of work is already running on this connection" );
+        }
+        boolean previousAutoCommit = dbConnection.getAutoCommit();
+        if ( previousAutoCommit ) {
+            dbConnection.setAutoCommit( false );
+        }
+        UnitOfWork unitOfWork = new UnitOfWork( dbConnection, previousAutoCommit );
+        activeUnits.put( dbConnection, unitOfWork );
+        return unitOfWork;
+    }
+
+    /**
+     * Gets the unit of work running on a connection
+     * @param dbConnection Connection to check
+     * @return Running unit of work or null if statements on the connection are committed one at a time
+     */
+    public static UnitOfWork activeOn( Connection dbConnection ) {
+        return activeUnits.get( dbConnection );
+    }
+
+    /**
+     * Makes every statement run since begin() permanent
+     * @throws SQLException if the commit failed, in which case nothing was saved
+     */
+    public void commit() throws SQLException {
+        checkNotCompleted();
+        dbConnection.commit();
+        commitCount.incrementAndGet();
+        complete();
+    }
+
+    /**
+     * Undoes every statement run since begin()
+     * @throws SQLException if the rollback failed
+     */
+    public void rollback() throws SQLException {
+        checkNotCompleted();
+        try {
+            dbConnection.rollback();
+            rollbackCount.incrementAndGet();
+        } finally {
+            complete();
+        }
+    }
+
+    /**
+     * Registers a task to run after the unit of work is committed or rolled back. If no unit of work is running the
+     * caller should just run the task itself.
+     * @param task Task to run
+     */
+    public void afterCompletion( Runnable task ) {
+        checkNotCompleted();
+        completionTasks.add( task );
+    }
+
+    /**
+     * Rolls back anything not committed and gives the connection back its auto commit setting
+     */
+    @Override
+    public void close() {
+        if ( !completed ) {
+            try {
+                rollback();
+            } catch ( SQLException e ) {
+                System.out.println( "Unable to roll back changes" );
+                System.out.println( e.getMessage() );
+            }
+        }
+        if ( previousAutoCommit ) {
+            try {
+                dbConnection.setAutoCommit( true );
+            } catch ( SQLException e ) {
+                // Pool puts auto commit back when the connection is returned
+            }
+        }
+    }
+
+    /**
+     * Summary of the unit of work counters
+     * @return String that can be printed to the console
+     */
+    public static String getStatistics() {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "Units of work committed: " + commitCount.get() + "\n" );
+        sb.append( "Units of work rolled back: " + rollbackCount.get() );
+        return sb.toString();
+    }
+
+    /**
+     * Marks the unit of work as finished and runs the tasks waiting for it
+     */
+    private void complete() {
+        completed = true;
+        activeUnits.remove( dbConnection );
+        for ( Runnable task : completionTasks ) {
+            task.run();
+        }
+        completionTasks.clear();
+    }
+
+    /**
+     * Makes sure commit() or rollback() has not been called already
+     */
+    private void checkNotCompleted() {
+        if ( completed ) {
+            throw new IllegalStateException( "Unit of work has already been committed or rolled back" );
+        }
+    }
+
+}